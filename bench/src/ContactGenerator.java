@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generators of synthetic contact traces, for benchmarking.
+ * <p>
+ * The same kind of graph, number of people and seed always give the same
+ * traces in the same order. Traces come roughly in time order, a day at a
+ * time, with each person in about {@value #CONTACTS_PER_DAY} traces a day.
+ * Person names are made once and shared between traces.
+ */
+abstract class ContactGenerator {
+
+    // Minutes in a day.
+    static final int DAY = 24 * 60;
+    // Average number of traces each person is in per day.
+    static final int CONTACTS_PER_DAY = 10;
+
+    // Source of every random choice.
+    final SplittableRandom random;
+    // Number of people.
+    final int people;
+    // Name of each person.
+    private final String[] names;
+    // Number of traces each day.
+    private final long tracesPerDay;
+    // Number of traces generated so far.
+    private long generated;
+    // The two people in the trace being generated.
+    private final int[] pair = new int[2];
+
+    /**
+     * Creates a generator.
+     *
+     * @param people Number of people.
+     * @param seed   Seed for every random choice.
+     */
+    ContactGenerator(int people, long seed) {
+        if (people < 2) {
+            throw new IllegalArgumentException("need at least two people: "
+                    + people);
+        }
+        this.random = new SplittableRandom(seed);
+        this.people = people;
+        this.names = new String[people];
+        for (int i = 0; i < people; i++) {
+            names[i] = "P" + i;
+        }
+        this.tracesPerDay = Math.max(1, (long) people * CONTACTS_PER_DAY / 2);
+    }
+
+    /**
+     * Creates a generator of the named kind of graph.
+     * <ul>
+     * <li>{@code powerlaw}: anyone can meet anyone, but how many contacts
+     * people have follows a power law, so a few people meet very many
+     * others.</li>
+     * <li>{@code households}: most contacts are repeated ones between
+     * members of the same small household, in the evening, with a few
+     * contacts out in the community.</li>
+     * <li>{@code workplaces}: most weekday contacts are between colleagues
+     * during working hours, in workplaces whose sizes follow a power law.
+     * Weekend contacts are out in the community.</li>
+     * </ul>
+     *
+     * @param kind   The kind of graph.
+     * @param people Number of people.
+     * @param seed   Seed for every random choice.
+     * @return the generator
+     */
+    static ContactGenerator create(String kind, int people, long seed) {
+        switch (kind) {
+            case "powerlaw":
+                return new PowerLaw(people, seed);
+            case "households":
+                return new Households(people, seed);
+            case "workplaces":
+                return new Workplaces(people, seed);
+            default:
+                throw new IllegalArgumentException("unknown graph: " + kind);
+        }
+    }
+
+    /**
+     * Generate the next trace.
+     *
+     * @return the trace
+     */
+    Trace next() {
+        long day = generated++ / tracesPerDay;
+        int minute = pair((int) (day % 7), pair);
+        return new Trace(names[pair[0]], names[pair[1]],
+                (int) (day * DAY + minute));
+    }
+
+    /**
+     * Generate the given number of traces.
+     *
+     * @param count Number of traces.
+     * @return the traces, in the order generated
+     */
+    List<Trace> next(int count) {
+        List<Trace> traces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            traces.add(next());
+        }
+        return traces;
+    }
+
+    /**
+     * Choose the two people in a contact, and when in the day it happens.
+     *
+     * @param weekday Day of the week, with 5 and 6 the weekend.
+     * @param pair    Array to fill with the two people, who must differ.
+     * @return the minute of the day
+     */
+    abstract int pair(int weekday, int[] pair);
+
+    /**
+     * Choose someone other than the given person, uniformly at random.
+     *
+     * @param person ID of the person.
+     * @return ID of someone else
+     */
+    int anyoneBut(int person) {
+        int other = random.nextInt(people - 1);
+        return other >= person ? other + 1 : other;
+    }
+
+    /**
+     * Contacts whose two people are each chosen with probability falling off
+     * as a power of their rank. Degrees follow a power law with an exponent
+     * of about 3, as in many measured contact networks.
+     */
+    private static final class PowerLaw extends ContactGenerator {
+
+        // Maps a person's rank to their ID, so the busiest people aren't
+        // simply the lowest IDs.
+        private final int[] ranked;
+
+        private PowerLaw(int people, long seed) {
+            super(people, seed);
+            ranked = new int[people];
+            for (int i = 0; i < people; i++) {
+                ranked[i] = i;
+            }
+            for (int i = people - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = ranked[i];
+                ranked[i] = ranked[j];
+                ranked[j] = swap;
+            }
+        }
+
+        @Override
+        int pair(int weekday, int[] pair) {
+            do {
+                pair[0] = ranked[rank()];
+                pair[1] = ranked[rank()];
+            } while (pair[0] == pair[1]);
+            return random.nextInt(DAY);
+        }
+
+        /**
+         * @return a rank, with low ranks far more likely than high ones
+         */
+        private int rank() {
+            double u = random.nextDouble();
+            return (int) (people * u * u);
+        }
+    }
+
+    /**
+     * People live in households of one to six, sized like a typical census.
+     * Four in five contacts are at home in the evening, the rest out in the
+     * community with anyone during the day.
+     */
+    private static final class Households extends ContactGenerator {
+
+        // Cumulative share of households of each size, from one person up.
+        private static final double[] SIZES = {0.28, 0.63, 0.78, 0.91, 0.97,
+                1.0};
+        // Share of contacts at home.
+        private static final double HOME = 0.8;
+
+        // First member of each person's household.
+        private final int[] first;
+        // Size of each person's household.
+        private final byte[] size;
+
+        private Households(int people, long seed) {
+            super(people, seed);
+            first = new int[people];
+            size = new byte[people];
+            for (int start = 0; start < people; ) {
+                int members = 1;
+                double u = random.nextDouble();
+                while (u > SIZES[members - 1]) {
+                    members++;
+                }
+                members = Math.min(members, people - start);
+                for (int i = start; i < start + members; i++) {
+                    first[i] = start;
+                    size[i] = (byte) members;
+                }
+                start += members;
+            }
+        }
+
+        @Override
+        int pair(int weekday, int[] pair) {
+            int person = random.nextInt(people);
+            pair[0] = person;
+            if (size[person] > 1 && random.nextDouble() < HOME) {
+                int other = first[person] + random.nextInt(size[person] - 1);
+                pair[1] = other >= person ? other + 1 : other;
+                // 17:00 to 23:00.
+                return 17 * 60 + random.nextInt(6 * 60);
+            }
+            pair[1] = anyoneBut(person);
+            // 08:00 to 20:00.
+            return 8 * 60 + random.nextInt(12 * 60);
+        }
+    }
+
+    /**
+     * People work in workplaces of 5 to 1000, with sizes following a power
+     * law. On weekdays most contacts are with colleagues between 09:00 and
+     * 17:00. Other contacts, and every contact at the weekend, are out in
+     * the community with anyone.
+     */
+    private static final class Workplaces extends ContactGenerator {
+
+        // Smallest and largest workplace.
+        private static final int SMALLEST = 5;
+        private static final int LARGEST = 1000;
+        // Share of weekday contacts at work.
+        private static final double WORK = 0.85;
+
+        // First employee of each person's workplace.
+        private final int[] first;
+        // Size of each person's workplace.
+        private final int[] size;
+
+        private Workplaces(int people, long seed) {
+            super(people, seed);
+            first = new int[people];
+            size = new int[people];
+            for (int start = 0; start < people; ) {
+                // Pareto with exponent 1, cut off at the largest size.
+                double u = random.nextDouble();
+                int employees = (int) Math.min(LARGEST, SMALLEST / (1 - u));
+                employees = Math.min(employees, people - start);
+                for (int i = start; i < start + employees; i++) {
+                    first[i] = start;
+                    size[i] = employees;
+                }
+                start += employees;
+            }
+        }
+
+        @Override
+        int pair(int weekday, int[] pair) {
+            int person = random.nextInt(people);
+            pair[0] = person;
+            if (weekday < 5 && size[person] > 1
+                    && random.nextDouble() < WORK) {
+                int other = first[person] + random.nextInt(size[person] - 1);
+                pair[1] = other >= person ? other + 1 : other;
+                return 9 * 60 + random.nextInt(8 * 60);
+            }
+            pair[1] = anyoneBut(person);
+            return 8 * 60 + random.nextInt(14 * 60);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bench.Workload;
+
+/**
+ * Runs the benchmarked operations of a {@link Workload} on a
+ * {@link ContactTracer}.
+ * <p>
+ * Each person is in about {@value #TRACES_PER_PERSON} traces, so the number of
+ * people grows with the number of traces and every graph spans the same
+ * number of days.
+ */
+public class TracerWorkload implements Workload {
+
+    // Average number of traces each person is in.
+    static final int TRACES_PER_PERSON = 50;
+    // Number of queries chosen, cycled through by the query benchmarks.
+    private static final int QUERIES = 1 << 12;
+
+    // The kind of contact graph.
+    private final String graph;
+    // Number of traces.
+    private final int traces;
+    // How to store the traces.
+    private final String storage;
+    // Seed for the generator and the queries.
+    private final long seed;
+    // Traces kept by generate(), or null.
+    private List<Trace> generated;
+    // Tracer built by load(), or null.
+    private ContactTracer tracer;
+    // Person and time of each query.
+    private final int[] queryPeople = new int[QUERIES];
+    private final int[] queryTimes = new int[QUERIES];
+    // Tracer built by partition(), or null.
+    private PartitionedTracer partitioned;
+    // Sum of the infection times collected, so tracing can't be skipped.
+    private long collected;
+    // Collector reused by every collected trace.
+    private final TraceCollector collector =
+            (person, infectionTime) -> collected += infectionTime;
+
+    /**
+     * Creates a workload.
+     *
+     * @see Workload#create(String, int, String, long)
+     */
+    public TracerWorkload(String graph, int traces, String storage,
+                          long seed) {
+        if (traces <= 0) {
+            throw new IllegalArgumentException("traces must be positive: "
+                    + traces);
+        }
+        if (!storage.equals("addTrace") && !storage.equals("bulk")
+                && !storage.equals("concurrent")
+                && !storage.equals("offHeap")
+                && !storage.equals("logStructured")) {
+            throw new IllegalArgumentException("unknown storage: " + storage);
+        }
+        this.graph = graph;
+        this.traces = traces;
+        this.storage = storage;
+        this.seed = seed;
+        // Fail now on an unknown graph, not part way through a benchmark.
+        ContactGenerator.create(graph, 2, seed);
+    }
+
+    @Override
+    public int traces() {
+        return traces;
+    }
+
+    @Override
+    public void generate(int lateHours) {
+        generated = generator().next(traces);
+        if (lateHours > 0) {
+            // Sort by the time each trace is reported, keeping the index in
+            // the low bits.
+            SplittableRandom random = new SplittableRandom(seed + 2);
+            long[] arrivals = new long[generated.size()];
+            for (int i = 0; i < arrivals.length; i++) {
+                long reported = generated.get(i).getTime()
+                        + random.nextInt(lateHours * 60 + 1);
+                arrivals[i] = reported << 32 | i;
+            }
+            Arrays.sort(arrivals);
+            List<Trace> late = new ArrayList<>(arrivals.length);
+            for (long arrival : arrivals) {
+                late.add(generated.get((int) arrival));
+            }
+            generated = late;
+        }
+    }
+
+    @Override
+    public Object ingest() {
+        if (storage.equals("bulk")) {
+            return new ContactTracer(generated);
+        }
+        ContactTracer result = emptyTracer();
+        for (Trace trace : generated) {
+            result.addTrace(trace);
+        }
+        return result;
+    }
+
+    @Override
+    public Object build() {
+        ContactGenerator generator = generator();
+        if (storage.equals("bulk")) {
+            return new ContactTracer(generator.next(traces));
+        }
+        ContactTracer result = emptyTracer();
+        for (int i = 0; i < traces; i++) {
+            result.addTrace(generator.next());
+        }
+        return result;
+    }
+
+    @Override
+    public void load() {
+        tracer = (ContactTracer) build();
+        int people = people();
+        int days = traces / (people * ContactGenerator.CONTACTS_PER_DAY / 2)
+                + 1;
+        SplittableRandom random = new SplittableRandom(seed + 1);
+        for (int i = 0; i < QUERIES; i++) {
+            int person;
+            do {
+                person = tracer.getPersonId("P" + random.nextInt(people));
+            } while (person < 0);
+            queryPeople[i] = person;
+            queryTimes[i] = random.nextInt(days * ContactGenerator.DAY);
+        }
+    }
+
+    @Override
+    public int queries() {
+        return QUERIES;
+    }
+
+    @Override
+    public int contactsAfter(int query) {
+        return tracer.getContactsAfter(queryPeople[query], queryTimes[query])
+                .length;
+    }
+
+    @Override
+    public int contactTrace(int query) {
+        return tracer.contactTrace(queryPeople[query], queryTimes[query])
+                .length;
+    }
+
+    @Override
+    public int contactTraceCollected(int query) {
+        return tracer.contactTrace(queryPeople[query], queryTimes[query],
+                collector);
+    }
+
+    @Override
+    public int possibleSources(int query) {
+        return tracer.possibleSources(queryPeople[query], queryTimes[query])
+                .size();
+    }
+
+    @Override
+    public int contactTraceFirst(int query, int count) {
+        return (int) tracer.contactTraceStream(queryPeople[query],
+                queryTimes[query]).limit(count).count();
+    }
+
+    @Override
+    public int contactTraceWithin(int query, int days, int generations) {
+        int start = queryTimes[query];
+        return tracer.contactTraceWithin(queryPeople[query], start,
+                start + days * ContactGenerator.DAY, generations).size();
+    }
+
+    @Override
+    public void partition(int shards) {
+        partitioned = tracer.partition(shards);
+        tracer.enableMetrics();
+    }
+
+    @Override
+    public int contactTracePartitioned(int query) {
+        return partitioned.contactTrace(queryPeople[query], queryTimes[query])
+                .length;
+    }
+
+    @Override
+    public long[] exchangeTotals() {
+        QueryStats totals = tracer.getMetrics()
+                .getTotals(QueryMetrics.Query.CONTACT_TRACE);
+        return new long[]{tracer.getMetrics().getLatency(
+                QueryMetrics.Query.CONTACT_TRACE).getCount(),
+                totals.getSupersteps(), totals.getMessagesSent()};
+    }
+
+    /**
+     * @return the number of people in the graph
+     */
+    private int people() {
+        return Math.max(2, traces / TRACES_PER_PERSON);
+    }
+
+    /**
+     * @return a new generator of the graph, from the start
+     */
+    private ContactGenerator generator() {
+        return ContactGenerator.create(graph, people(), seed);
+    }
+
+    /**
+     * @return a new empty tracer to add traces to one at a time
+     */
+    private ContactTracer emptyTracer() {
+        switch (storage) {
+            case "concurrent":
+                return ContactTracer.concurrent();
+            case "offHeap":
+                return ContactTracer.offHeap();
+            case "logStructured":
+                return ContactTracer.logStructured();
+            default:
+                return new ContactTracer();
+        }
+    }
+}
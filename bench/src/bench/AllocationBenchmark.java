@@ -0,0 +1,75 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap allocated by each contact trace, meant to be run with JMH's GC
+ * profiler ({@code -prof gc}), whose {@code gc.alloc.rate.norm} is the bytes
+ * allocated per trace. Traces returning an array of IDs are compared with
+ * traces passing people to a reused collector, which should allocate nothing
+ * once warmed up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class AllocationBenchmark {
+
+    // The kind of contact graph.
+    @Param({"powerlaw", "households", "workplaces"})
+    public String graph;
+    // Number of traces stored.
+    @Param({"10000", "100000", "1000000"})
+    public int traces;
+    // How the traces are stored.
+    @Param({"bulk", "offHeap"})
+    public String storage;
+
+    // The stored graph and queries.
+    private Workload workload;
+    // Index of the next query.
+    private int next;
+
+    /**
+     * Store the graph and choose the queries.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(graph, traces, storage, 42);
+        workload.load();
+    }
+
+    @Benchmark
+    public int contactTrace() {
+        return workload.contactTrace(nextQuery());
+    }
+
+    @Benchmark
+    public int contactTraceCollected() {
+        return workload.contactTraceCollected(nextQuery());
+    }
+
+    /**
+     * @return the index of the next query
+     */
+    private int nextQuery() {
+        int query = next;
+        next = (next + 1) % workload.queries();
+        return query;
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of contact traces cut off after a number of days and generations,
+ * against the full trace to the end of the stored history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class BoundedBenchmark {
+
+    // The kind of contact graph.
+    @Param({"powerlaw", "households", "workplaces"})
+    public String graph;
+    // Number of traces stored.
+    @Param({"10000", "100000", "1000000"})
+    public int traces;
+    // Number of days of contacts followed. The stored history covers
+    // traces / 100000 + 1 days.
+    @Param({"2", "14"})
+    public int days;
+    // Most generations followed, where 2147483647 is no limit.
+    @Param({"2147483647", "3"})
+    public int generations;
+
+    // The stored graph and queries.
+    private Workload workload;
+    // Index of the next query.
+    private int next;
+
+    /**
+     * Store the graph and choose the queries.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(graph, traces, "bulk", 42);
+        workload.load();
+    }
+
+    @Benchmark
+    public int unbounded() {
+        return workload.contactTrace(nextQuery());
+    }
+
+    @Benchmark
+    public int bounded() {
+        return workload.contactTraceWithin(nextQuery(), days, generations);
+    }
+
+    /**
+     * @return the index of the next query
+     */
+    private int nextQuery() {
+        int query = next;
+        next = (next + 1) % workload.queries();
+        return query;
+    }
+}
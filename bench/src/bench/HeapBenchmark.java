@@ -0,0 +1,97 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained by a stored graph, reported by the
+ * {@code bytesPerMillionTraces} counter. Each invocation stores the graph in
+ * a new tracer, generating the traces as they are added, and measures the
+ * heap in use after a full collection before and after. The time reported
+ * is how long storing took.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class HeapBenchmark {
+
+    // The kind of contact graph.
+    @Param({"powerlaw", "households", "workplaces"})
+    public String graph;
+    // Number of traces stored.
+    @Param({"10000", "100000", "1000000", "10000000", "100000000"})
+    public int traces;
+    // How the traces are stored.
+    @Param({"addTrace", "bulk", "concurrent", "offHeap"})
+    public String storage;
+
+    // Generates and stores the graph.
+    private Workload workload;
+    // The tracer stored by the last invocation. Kept here rather than
+    // returned, so it can be let go of before the next one measures.
+    private Object tracer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(graph, traces, storage, 42);
+    }
+
+    /**
+     * Heap retained by the tracer.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+        // Bytes retained per million traces stored.
+        public long bytesPerMillionTraces;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesPerMillionTraces = 0;
+        }
+    }
+
+    @Benchmark
+    public void retainedHeap(Heap heap) {
+        tracer = null;
+        long before = usedAfterGc();
+        tracer = workload.build();
+        long after = usedAfterGc();
+        heap.bytesPerMillionTraces = (after - before) * 1_000_000 / traces;
+    }
+
+    /**
+     * @return the bytes of heap in use once collections stop freeing any
+     */
+    private static long usedAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How fast traces are stored: each invocation stores every generated trace in
+ * a new tracer. The {@code traces} counter gives the rate in traces per
+ * second.
+ * <p>
+ * The traces are generated before timing starts and stay in memory while it
+ * runs, so the largest sizes need a heap of several times the tracer's own
+ * size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class IngestBenchmark {
+
+    // The kind of contact graph.
+    @Param({"powerlaw", "households", "workplaces"})
+    public String graph;
+    // Number of traces stored.
+    @Param({"10000", "100000", "1000000", "10000000", "100000000"})
+    public int traces;
+    // How the traces are stored.
+    @Param({"addTrace", "bulk", "concurrent", "offHeap", "logStructured"})
+    public String storage;
+    // Most hours a trace is reported late, so traces arrive out of order.
+    @Param({"0", "48"})
+    public int lateHours;
+
+    // The generated traces.
+    private Workload workload;
+
+    /**
+     * Generate the traces.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(graph, traces, storage, 42);
+        workload.generate(lateHours);
+    }
+
+    /**
+     * Number of traces stored, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        // Traces stored during the iteration.
+        public long traces;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            traces = 0;
+        }
+    }
+
+    @Benchmark
+    public Object ingest(Counters counters) {
+        Object tracer = workload.ingest();
+        counters.traces += workload.traces();
+        return tracer;
+    }
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of contact traces over a graph divided among shards in one
+ * process, exchanging frontier messages in supersteps. The supersteps and
+ * messages each trace took on average are reported beside the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PartitionBenchmark {
+
+    // The kind of contact graph.
+    @Param({"powerlaw", "households", "workplaces"})
+    public String graph;
+    // Number of traces stored.
+    @Param({"10000", "100000", "1000000"})
+    public int traces;
+    // Number of shards the graph is divided among.
+    @Param({"1", "4", "16"})
+    public int shards;
+
+    // The stored graph and queries.
+    private Workload workload;
+    // Index of the next query.
+    private int next;
+
+    /**
+     * Store the graph, choose the queries and divide the graph into shards.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(graph, traces, "bulk", 42);
+        workload.load();
+        workload.partition(shards);
+    }
+
+    /**
+     * Average exchange of the traces run in an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Exchange {
+        // Supersteps and frontier messages per trace.
+        public double superstepsPerTrace;
+        public double messagesPerTrace;
+        // Totals of the workload when the iteration started.
+        private long[] start;
+
+        @Setup(Level.Iteration)
+        public void start(PartitionBenchmark benchmark) {
+            superstepsPerTrace = 0;
+            messagesPerTrace = 0;
+            start = benchmark.workload.exchangeTotals();
+        }
+
+        @TearDown(Level.Iteration)
+        public void finish(PartitionBenchmark benchmark) {
+            long[] totals = benchmark.workload.exchangeTotals();
+            long runs = totals[0] - start[0];
+            if (runs > 0) {
+                superstepsPerTrace = (double) (totals[1] - start[1]) / runs;
+                messagesPerTrace = (double) (totals[2] - start[2]) / runs;
+            }
+        }
+    }
+
+    @Benchmark
+    public int contactTrace(Exchange exchange) {
+        int query = next;
+        next = (next + 1) % workload.queries();
+        return workload.contactTracePartitioned(query);
+    }
+}
@@ -0,0 +1,87 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of queries on a stored graph, sampled so JMH reports percentiles.
+ * Each call runs the next of a fixed set of queries, about random people at
+ * random times within the graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class QueryBenchmark {
+
+    // The kind of contact graph.
+    @Param({"powerlaw", "households", "workplaces"})
+    public String graph;
+    // Number of traces stored.
+    @Param({"10000", "100000", "1000000", "10000000", "100000000"})
+    public int traces;
+    // How the traces are stored. Bulk storage queries a compressed snapshot,
+    // addTrace the graph traces are added to, offHeap segments held off
+    // the heap, and logStructured segments on the heap.
+    @Param({"bulk", "addTrace", "offHeap", "logStructured"})
+    public String storage;
+
+    // The stored graph and queries.
+    private Workload workload;
+
+    /**
+     * Store the graph and choose the queries.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(graph, traces, storage, 42);
+        workload.load();
+    }
+
+    /**
+     * Which query each thread runs next.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        // Index of the next query.
+        private int next;
+
+        /**
+         * @return the index of the next query
+         */
+        int next(Workload workload) {
+            int query = next;
+            next = (next + 1) % workload.queries();
+            return query;
+        }
+    }
+
+    @Benchmark
+    public int contactsAfter(Cursor cursor) {
+        return workload.contactsAfter(cursor.next(workload));
+    }
+
+    @Benchmark
+    public int contactTrace(Cursor cursor) {
+        return workload.contactTrace(cursor.next(workload));
+    }
+
+    @Benchmark
+    public int possibleSources(Cursor cursor) {
+        return workload.possibleSources(cursor.next(workload));
+    }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency to the first few people of a contact trace, streamed lazily in
+ * order of infection time, against the full trace that must finish before
+ * any of them are known.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class StreamingBenchmark {
+
+    // The kind of contact graph.
+    @Param({"powerlaw", "households", "workplaces"})
+    public String graph;
+    // Number of traces stored.
+    @Param({"10000", "100000", "1000000"})
+    public int traces;
+    // Number of people taken from the stream.
+    @Param({"1", "50"})
+    public int first;
+
+    // The stored graph and queries.
+    private Workload workload;
+    // Index of the next query.
+    private int next;
+
+    /**
+     * Store the graph and choose the queries.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(graph, traces, "bulk", 42);
+        workload.load();
+    }
+
+    @Benchmark
+    public int eager() {
+        return workload.contactTrace(nextQuery());
+    }
+
+    @Benchmark
+    public int streamed() {
+        return workload.contactTraceFirst(nextQuery(), first);
+    }
+
+    /**
+     * @return the index of the next query
+     */
+    private int nextQuery() {
+        int query = next;
+        next = (next + 1) % workload.queries();
+        return query;
+    }
+}
@@ -0,0 +1,168 @@
+package bench;
+
+/**
+ * A generated contact graph, and the tracer operations the benchmarks time.
+ * <p>
+ * JMH can only generate benchmarks for classes in a named package, and code in
+ * a named package can't refer to the tracer, which is in the unnamed one. So
+ * the benchmarks reach the tracer through this interface, implemented in the
+ * unnamed package by {@code TracerWorkload}.
+ */
+public interface Workload {
+
+    /**
+     * Creates a workload. Nothing is generated until one of its methods
+     * needs it.
+     *
+     * @param graph   The kind of contact graph to generate: {@code powerlaw},
+     *                {@code households} or {@code workplaces}.
+     * @param traces  Number of traces to generate.
+     * @param storage How to store them: {@code addTrace} adds them one at a
+     *                time to an empty tracer, {@code bulk} passes them all to
+     *                the constructor, {@code concurrent} adds them one at a
+     *                time to a thread-safe tracer, {@code offHeap} adds
+     *                them one at a time to a tracer storing them off the
+     *                heap, and {@code logStructured} appends them one at a
+     *                time to a log-structured tracer.
+     * @param seed    Seed for the generator.
+     * @return the workload
+     */
+    static Workload create(String graph, int traces, String storage,
+                           long seed) {
+        try {
+            return (Workload) Class.forName("TracerWorkload")
+                    .getConstructor(String.class, int.class, String.class,
+                            long.class)
+                    .newInstance(graph, traces, storage, seed);
+        } catch (ReflectiveOperationException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the number of traces in the graph
+     */
+    int traces();
+
+    /**
+     * Generate the graph's traces and keep them, ready for {@link #ingest()},
+     * in the order they would arrive if each were reported late by up to the
+     * given number of hours.
+     *
+     * @param lateHours Most hours any trace is reported late, or 0 to keep
+     *                  them in the order generated.
+     */
+    void generate(int lateHours);
+
+    /**
+     * Store the traces kept by {@link #generate()} in a new tracer.
+     *
+     * @return the tracer
+     */
+    Object ingest();
+
+    /**
+     * Store the graph in a new tracer, generating the traces as they are
+     * added, so that nothing but the tracer is left afterwards.
+     *
+     * @return the tracer
+     */
+    Object build();
+
+    /**
+     * Build the graph into the tracer queried by {@link #contactsAfter(int)}
+     * and {@link #contactTrace(int)}, and choose the queries.
+     */
+    void load();
+
+    /**
+     * @return the number of queries chosen by {@link #load()}
+     */
+    int queries();
+
+    /**
+     * Find everyone a query's person met after the query's time.
+     *
+     * @param query Index of the query.
+     * @return the number of people found
+     */
+    int contactsAfter(int query);
+
+    /**
+     * Trace everyone a query's person could have infected, contagious from
+     * the query's time.
+     *
+     * @param query Index of the query.
+     * @return the number of people found
+     */
+    int contactTrace(int query);
+
+    /**
+     * Trace back to everyone who could have infected a query's person by
+     * the query's time.
+     *
+     * @param query Index of the query.
+     * @return the number of people found
+     */
+    int possibleSources(int query);
+
+    /**
+     * Trace everyone a query's person could have infected, as
+     * {@link #contactTrace(int)} does, passing them to a collector reused by
+     * every query instead of returning them.
+     *
+     * @param query Index of the query.
+     * @return the number of people found
+     */
+    int contactTraceCollected(int query);
+
+    /**
+     * Trace the first people a query's person could have infected, in
+     * order of infection time, stopping once the given number are found.
+     *
+     * @param query Index of the query.
+     * @param count Number of people to find.
+     * @return the number of people found
+     */
+    int contactTraceFirst(int query, int count);
+
+    /**
+     * Trace the people a query's person could have infected within the given
+     * number of days of becoming contagious and generations of transmission.
+     *
+     * @param query       Index of the query.
+     * @param days        Number of days of contacts to follow.
+     * @param generations Most transmissions to follow, or
+     *                    {@link Integer#MAX_VALUE} for no limit.
+     * @return the number of people found
+     */
+    int contactTraceWithin(int query, int days, int generations);
+
+    /**
+     * Divide the tracer built by {@link #load()} among shards in this
+     * process, for {@link #contactTracePartitioned(int)}.
+     *
+     * @param shards Number of shards.
+     */
+    void partition(int shards);
+
+    /**
+     * Trace everyone a query's person could have infected, as
+     * {@link #contactTrace(int)} does, by exchanging messages between the
+     * shards made by {@link #partition(int)}.
+     *
+     * @param query Index of the query.
+     * @return the number of people found
+     */
+    int contactTracePartitioned(int query);
+
+    /**
+     * @return the number of partitioned traces run, and the supersteps and
+     * frontier messages they took in total
+     */
+    long[] exchangeTotals();
+}
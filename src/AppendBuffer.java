@@ -0,0 +1,238 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Mutable contact graph that records contacts by appending them to flat
+ * arrays, in whatever order they arrive.
+ * <p>
+ * Adding a contact writes three ints at the end of the arrays and one slot
+ * of a hash set of the contacts held, which finds repeats. Nothing is kept
+ * in order, so contacts arriving late or out of order cost no more than any
+ * others. The contacts are sorted only when the graph is read: the first
+ * read after contacts were added sorts those added since the last read into
+ * a {@link CsrGraph} and merges it with the one built before, which serves
+ * every read until more are added. The sorted graph of a sealed buffer is
+ * the read-only segment it is sealed into, so sealing copies nothing more.
+ * <p>
+ * Contacts are added from one thread at a time, and may be read from others
+ * meanwhile. A query reading the graph several times should read the graph
+ * returned by {@link #pin()} instead, so that every read sees the same
+ * contacts.
+ * <p>
+ * Suits feeds of many traces with few queries in between. Merging copies
+ * the whole buffer, so reading after every add, as standing traces do,
+ * costs time quadratic in the size of the buffer, and the buffer should be
+ * sealed regularly, as {@link ContactTracer#logStructured()} does.
+ */
+final class AppendBuffer implements MutableContactGraph {
+
+    // Smaller ID, larger ID and time of each contact, in the order added.
+    // Only replaced while holding this object's lock, so readers holding it
+    // see the contacts copied into them.
+    private int[] lows = new int[256];
+    private int[] highs = new int[256];
+    private int[] times = new int[256];
+    // Number of contacts added. Written after the contact it counts, so
+    // readers see every contact below it.
+    private volatile int count;
+    // One more than the highest ID with a contact.
+    private int vertexCount;
+    // Open-addressed set of the contacts added, as positions in the arrays
+    // plus one, or 0 for empty slots. At most half full.
+    private int[] slots = new int[512];
+    // The contacts sorted, or null if none have been read. Stale once its
+    // contact count falls behind count. Only replaced while holding this
+    // object's lock.
+    private volatile CsrGraph view;
+
+    /**
+     * Compaction for tracers buffering in an AppendBuffer. Sealing a lone
+     * buffer takes the sorted graph it already built for reads, or builds it
+     * once, instead of copying it again.
+     *
+     * @param layers The graphs to read contacts from. Must not be written
+     *               while this runs.
+     * @param cutoff The earliest contact time to keep.
+     * @return The built graph.
+     */
+    static CsrGraph compact(ContactGraph[] layers, int cutoff) {
+        if (layers.length == 1 && layers[0] instanceof AppendBuffer
+                && cutoff <= 0) {
+            return ((AppendBuffer) layers[0]).view();
+        }
+        return CsrGraph.compact(layers, cutoff);
+    }
+
+    @Override
+    public boolean addContact(int person1, int person2, int time) {
+        int low = Math.min(person1, person2);
+        int high = Math.max(person1, person2);
+        int mask = slots.length - 1;
+        int slot = hash(low, high, time) & mask;
+        while (slots[slot] != 0) {
+            int position = slots[slot] - 1;
+            if (lows[position] == low && highs[position] == high
+                    && times[position] == time) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int added = count;
+        if (added == lows.length) {
+            synchronized (this) {
+                lows = Arrays.copyOf(lows, added * 2);
+                highs = Arrays.copyOf(highs, added * 2);
+                times = Arrays.copyOf(times, added * 2);
+            }
+        }
+        lows[added] = low;
+        highs[added] = high;
+        times[added] = time;
+        vertexCount = Math.max(vertexCount, high + 1);
+        slots[slot] = ++added;
+        // Publishes the contact to readers, so it is written last.
+        count = added;
+        if (added * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        return view().degree(vertex);
+    }
+
+    @Override
+    public int neighbour(int vertex, int edge) {
+        return view().neighbour(vertex, edge);
+    }
+
+    @Override
+    public int findEdge(int vertex, int other) {
+        return view().findEdge(vertex, other);
+    }
+
+    @Override
+    public int firstContact(int vertex, int edge) {
+        return view().firstContact(vertex, edge);
+    }
+
+    @Override
+    public int lastContact(int vertex, int edge) {
+        return view().lastContact(vertex, edge);
+    }
+
+    @Override
+    public int ceilingContact(int vertex, int edge, int time) {
+        return view().ceilingContact(vertex, edge, time);
+    }
+
+    @Override
+    public int floorContact(int vertex, int edge, int time) {
+        return view().floorContact(vertex, edge, time);
+    }
+
+    @Override
+    public IntBuffer contactTimes(int vertex, int edge, int from, int to) {
+        return view().contactTimes(vertex, edge, from, to);
+    }
+
+    @Override
+    public int timelineSize(int vertex) {
+        return view().timelineSize(vertex);
+    }
+
+    @Override
+    public int timelineSearch(int vertex, int time) {
+        return view().timelineSearch(vertex, time);
+    }
+
+    @Override
+    public int timelineTime(int vertex, int position) {
+        return view().timelineTime(vertex, position);
+    }
+
+    @Override
+    public int timelineNeighbour(int vertex, int position) {
+        return view().timelineNeighbour(vertex, position);
+    }
+
+    @Override
+    public ContactGraph pin() {
+        return view();
+    }
+
+    /**
+     * @return The contacts added so far, sorted, with any added since it was
+     * last built merged in.
+     */
+    CsrGraph view() {
+        CsrGraph current = view;
+        if (current != null && current.contactCount() >= count) {
+            return current;
+        }
+        synchronized (this) {
+            current = view;
+            int added = count;
+            int sorted = current == null ? 0 : (int) current.contactCount();
+            if (current == null || sorted < added) {
+                int[] tailLows = Arrays.copyOfRange(lows, sorted, added);
+                int[] tailHighs = Arrays.copyOfRange(highs, sorted, added);
+                int[] tailTimes = Arrays.copyOfRange(times, sorted, added);
+                int tailVertices = 0;
+                for (int high : tailHighs) {
+                    tailVertices = Math.max(tailVertices, high + 1);
+                }
+                CsrGraph tail = CsrGraph.build(tailVertices, tailLows,
+                        tailHighs, tailTimes, added - sorted);
+                current = current == null ? tail
+                        : CsrGraph.merge(current, tail);
+                view = current;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Move the set of contacts into a table of the given size.
+     *
+     * @param capacity The new number of slots, a power of two.
+     */
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        int added = count;
+        for (int position = 0; position < added; position++) {
+            int slot = hash(lows[position], highs[position], times[position])
+                    & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = position + 1;
+        }
+        slots = rehashed;
+    }
+
+    /**
+     * @param low  The smaller ID of a contact.
+     * @param high The larger ID.
+     * @param time The time of the contact.
+     * @return A well-mixed hash of the contact.
+     */
+    private static int hash(int low, int high, int time) {
+        long key = (CsrGraph.pack(low, high) ^ time * 0xC2B2AE3D27D4EB4FL)
+                * 0x9E3779B97F4A7C15L;
+        return (int) (key >>> 32);
+    }
+}
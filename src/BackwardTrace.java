@@ -0,0 +1,79 @@
+import java.util.List;
+
+/**
+ * Latest-departure traces backward from a case, the mirror image of an
+ * earliest-arrival trace: people are settled in descending order of the
+ * latest time they could have been infected, and each follows the latest
+ * contact on each edge at or before that time. Times are kept negated, so
+ * the scratch heap's earliest is the latest.
+ */
+final class BackwardTrace {
+
+    // Minutes after being infected that a person becomes contagious.
+    private static final int DELAY = ContactTracer.CONTAGION_DELAY;
+
+    private BackwardTrace() {
+    }
+
+    /**
+     * Trace backward from a case.
+     *
+     * @param layers          The layers of the graph to trace over.
+     * @param names           The names of the people.
+     * @param person          ID of the case.
+     * @param timeOfInfection Latest time the case could have been infected.
+     * @param scratch         Working state.
+     * @param sources         List to add everyone reached other than person
+     *                        to, in the order they are settled.
+     * @param stats           Counters of the query's work, or null.
+     * @require person is in use &amp;&amp; timeOfInfection &gt;= 0
+     */
+    static void trace(ContactGraph[] layers, NameTable names, int person,
+                      int timeOfInfection, TraceScratch scratch,
+                      List<InfectionSource> sources, QueryStats stats) {
+        scratch.start();
+        long settled = 0;
+        long scanned = 0;
+        long pushes = 1;
+        scratch.reach(person, -timeOfInfection);
+        scratch.setGeneration(person, 0);
+        while (!scratch.isEmpty()) {
+            int latest = -scratch.peekTime();
+            int vertex = scratch.pop();
+            settled++;
+            int generation = scratch.generation(vertex);
+            if (vertex != person) {
+                sources.add(new InfectionSource(vertex, names.nameOf(vertex),
+                        latest, generation));
+            }
+            for (ContactGraph layer : layers) {
+                int degree = layer.degree(vertex);
+                scanned += degree;
+                for (int i = 0; i < degree; i++) {
+                    int time = layer.floorContact(vertex, i, latest);
+                    if (time < 0) {
+                        continue;
+                    }
+                    int other = layer.neighbour(vertex, i);
+                    int departure = -(time - DELAY);
+                    int previous = scratch.time(other);
+                    if (departure < previous) {
+                        scratch.reach(other, departure);
+                        scratch.setGeneration(other, generation + 1);
+                        pushes++;
+                    } else if (departure == previous
+                            && generation + 1 < scratch.generation(other)) {
+                        // Not settled yet, as everyone settled so far could
+                        // have been infected later than this.
+                        scratch.setGeneration(other, generation + 1);
+                    }
+                }
+            }
+        }
+        if (stats != null) {
+            // Every entry in the heap is settled, none are stale.
+            stats.add(settled, scanned, pushes, settled, scanned);
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Contact traces cut off at an end time and after a number of generations
+ * of transmission, with the generation each person was infected in.
+ * <p>
+ * Contacts after the end time are ignored, and nobody who became contagious
+ * after it is followed, so the traversal stops at the end time rather than
+ * at the end of recorded history.
+ * <p>
+ * Without a generation limit the trace is earliest-arrival, and a person's
+ * generation is the fewest transmissions among the chains that infect them
+ * earliest with everyone in the chain infected earliest too. With one,
+ * earliest-arrival no longer works: the earliest chain to a person may be
+ * too long while a later, shorter one is within the limit. So the trace
+ * runs a round per generation instead, round {@code k} finding the earliest
+ * each person could be infected in at most {@code k} transmissions by
+ * following only the people whose time improved in round {@code k - 1}.
+ * A person's generation is then the first round that found their time.
+ */
+final class BoundedTrace {
+
+    private BoundedTrace() {
+    }
+
+    /**
+     * Trace from a person within the given bounds.
+     *
+     * @param layers          The layers of the graph to trace over.
+     * @param names           The names of the people.
+     * @param person          ID of the person to trace from.
+     * @param timeOfContagion Time the person became contagious.
+     * @param endTime         Latest contact to follow.
+     * @param maxGenerations  Most transmissions to follow from person, or
+     *                        {@link Integer#MAX_VALUE} for no limit.
+     * @param stats           Counters of the query's work, or null.
+     * @return Everyone reached other than person, in ascending order of
+     * infection time.
+     * @require person is in use &amp;&amp; timeOfContagion &gt;= 0
+     */
+    static List<Infection> trace(ContactGraph[] layers, NameTable names,
+                                 int person, int timeOfContagion,
+                                 int endTime, int maxGenerations,
+                                 QueryStats stats) {
+        if (maxGenerations <= 0 || endTime < timeOfContagion) {
+            return new ArrayList<>();
+        }
+        if (maxGenerations == Integer.MAX_VALUE) {
+            return earliest(layers, names, person, timeOfContagion, endTime,
+                    stats);
+        }
+        return rounds(layers, names, person, timeOfContagion, endTime,
+                maxGenerations, stats);
+    }
+
+    /**
+     * Earliest-arrival trace ignoring contacts after the end time.
+     *
+     * @param layers          The layers of the graph to trace over.
+     * @param names           The names of the people.
+     * @param person          ID of the person to trace from.
+     * @param timeOfContagion Time the person became contagious.
+     * @param endTime         Latest contact to follow.
+     * @param stats           Counters of the query's work, or null.
+     * @return Everyone reached other than person, in ascending order of
+     * infection time.
+     */
+    private static List<Infection> earliest(ContactGraph[] layers,
+                                            NameTable names, int person,
+                                            int timeOfContagion, int endTime,
+                                            QueryStats stats) {
+        List<Infection> result = new ArrayList<>();
+        TraceScratch scratch = TraceScratch.acquire();
+        try {
+            scratch.start();
+            scratch.reach(person, timeOfContagion);
+            scratch.setGeneration(person, 0);
+            long settled = 0;
+            long scanned = 0;
+            long pushes = 1;
+            while (!scratch.isEmpty()) {
+                int contagious = scratch.peekTime();
+                int vertex = scratch.pop();
+                settled++;
+                int generation = scratch.generation(vertex);
+                if (vertex != person) {
+                    result.add(new Infection(vertex, names.nameOf(vertex),
+                            contagious - ContactTracer.CONTAGION_DELAY,
+                            generation));
+                }
+                if (contagious > endTime) {
+                    // Every contact they could pass it on at is too late.
+                    continue;
+                }
+                for (ContactGraph layer : layers) {
+                    int degree = layer.degree(vertex);
+                    scanned += degree;
+                    for (int i = 0; i < degree; i++) {
+                        int time = layer.ceilingContact(vertex, i, contagious);
+                        if (time < 0 || time > endTime) {
+                            continue;
+                        }
+                        int other = layer.neighbour(vertex, i);
+                        int arrival = time + ContactTracer.CONTAGION_DELAY;
+                        int previous = scratch.time(other);
+                        if (arrival < previous) {
+                            scratch.reach(other, arrival);
+                            scratch.setGeneration(other, generation + 1);
+                            pushes++;
+                        } else if (arrival == previous
+                                && generation + 1
+                                < scratch.generation(other)) {
+                            // Not settled yet, as everyone settled so far
+                            // became contagious before this arrival.
+                            scratch.setGeneration(other, generation + 1);
+                        }
+                    }
+                }
+            }
+            if (stats != null) {
+                // Every entry in the heap is settled, none are stale.
+                stats.add(settled, scanned, pushes, settled, scanned);
+            }
+        } finally {
+            scratch.release();
+        }
+        return result;
+    }
+
+    /**
+     * Trace by rounds of transmission, ignoring contacts after the end time.
+     *
+     * @param layers          The layers of the graph to trace over.
+     * @param names           The names of the people.
+     * @param person          ID of the person to trace from.
+     * @param timeOfContagion Time the person became contagious.
+     * @param endTime         Latest contact to follow.
+     * @param maxGenerations  Most transmissions to follow from person.
+     * @param stats           Counters of the query's work, or null.
+     * @return Everyone reached other than person, in ascending order of
+     * infection time, then ID.
+     */
+    private static List<Infection> rounds(ContactGraph[] layers,
+                                          NameTable names, int person,
+                                          int timeOfContagion, int endTime,
+                                          int maxGenerations,
+                                          QueryStats stats) {
+        // Earliest contagious time found for each person, and the round it
+        // was found in.
+        IntIntMap times = new IntIntMap();
+        IntIntMap generations = new IntIntMap();
+        times.put(person, timeOfContagion);
+        // People whose time improved in the last round, with that time.
+        IntList frontier = new IntList();
+        IntList frontierTimes = new IntList();
+        frontier.add(person);
+        frontierTimes.add(timeOfContagion);
+        IntList improved = new IntList();
+        long expanded = 0;
+        long scanned = 0;
+        long pushes = 1;
+        for (int generation = 1; generation <= maxGenerations
+                && frontier.size() > 0; generation++) {
+            improved.clear();
+            for (int f = 0; f < frontier.size(); f++) {
+                int vertex = frontier.get(f);
+                // Their time as of the last round: an improvement made in
+                // this round already took this round's transmission.
+                int contagious = frontierTimes.get(f);
+                if (contagious > endTime) {
+                    continue;
+                }
+                expanded++;
+                for (ContactGraph layer : layers) {
+                    int degree = layer.degree(vertex);
+                    scanned += degree;
+                    for (int i = 0; i < degree; i++) {
+                        int time = layer.ceilingContact(vertex, i, contagious);
+                        if (time < 0 || time > endTime) {
+                            continue;
+                        }
+                        int other = layer.neighbour(vertex, i);
+                        int arrival = time + ContactTracer.CONTAGION_DELAY;
+                        int previous = times.get(other, Integer.MAX_VALUE);
+                        if (arrival < previous) {
+                            if (generations.get(other, 0) != generation) {
+                                improved.add(other);
+                            }
+                            times.put(other, arrival);
+                            generations.put(other, generation);
+                            pushes++;
+                        }
+                    }
+                }
+            }
+            IntList swap = frontier;
+            frontier = improved;
+            improved = swap;
+            frontierTimes.clear();
+            for (int f = 0; f < frontier.size(); f++) {
+                frontierTimes.add(times.get(frontier.get(f), 0));
+            }
+        }
+        if (stats != null) {
+            stats.add(expanded, scanned, pushes, expanded, scanned);
+        }
+
+        // Order by infection time, then ID.
+        int[] people = generations.keys();
+        long[] order = new long[people.length];
+        for (int i = 0; i < people.length; i++) {
+            order[i] = CsrGraph.pack(times.get(people[i], 0), people[i]);
+        }
+        Arrays.sort(order);
+        List<Infection> result = new ArrayList<>(people.length);
+        for (long key : order) {
+            int vertex = CsrGraph.low(key);
+            result.add(new Infection(vertex, names.nameOf(vertex),
+                    CsrGraph.high(key) - ContactTracer.CONTAGION_DELAY,
+                    generations.get(vertex, 0)));
+        }
+        return result;
+    }
+}
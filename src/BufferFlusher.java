@@ -0,0 +1,68 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Seals a {@link ContactTracer}'s buffer into a read-only segment each time
+ * it holds a set number of contacts, so the buffer's size on the heap stays
+ * bounded.
+ * <p>
+ * The buffer is sealed on the thread that added the contact filling it.
+ * Other threads keep adding contacts to a new buffer meanwhile. The newest
+ * segments are then merged on the same thread with
+ * {@link ContactTracer#flush()}, or by a {@link SegmentMerger} in the
+ * background.
+ */
+class BufferFlusher implements ContactListener {
+
+    // Default number of contacts held in the buffer before it is sealed.
+    static final int DEFAULT_LIMIT = 1 << 20;
+
+    // The tracer whose buffer to seal.
+    private final ContactTracer tracer;
+    // Number of contacts held in the buffer before it is sealed.
+    private final int limit;
+    // Contacts added since the buffer was last replaced.
+    private final LongAdder added = new LongAdder();
+    // Set while the buffer is being sealed.
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Merges segments in the background, or null to merge them on sealing.
+    private final SegmentMerger merger;
+
+    /**
+     * Creates a flusher for the given tracer.
+     *
+     * @param tracer The tracer whose buffer to seal.
+     * @param limit  The number of contacts to hold in the buffer.
+     * @param merger Merges segments in the background, or null to merge
+     *               them as the buffer is sealed.
+     */
+    BufferFlusher(ContactTracer tracer, int limit, SegmentMerger merger) {
+        this.tracer = tracer;
+        this.limit = limit;
+        this.merger = merger;
+    }
+
+    @Override
+    public void contactAdded(int person1, int person2, int time) {
+        added.increment();
+        if (added.sum() >= limit && running.compareAndSet(false, true)) {
+            try {
+                added.reset();
+                if (merger == null) {
+                    tracer.flush();
+                } else {
+                    tracer.seal();
+                    merger.segmentSealed();
+                }
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void contactsDropped(int cutoff) {
+        // Compacting replaces the buffer too.
+        added.reset();
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Read-only contact graph built by compacting the contacts of other graphs,
+ * which {@link ContactTracer} queries as its snapshot.
+ */
+interface CompactGraph extends ContactGraph {
+
+    /**
+     * @return the number of distinct contacts stored.
+     */
+    long contactCount();
+}
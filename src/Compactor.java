@@ -0,0 +1,136 @@
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sliding-window retention policy for a {@link ContactTracer}, compacting the
+ * graph in the background as contacts are added.
+ * <p>
+ * A compaction copies every contact inside the window, so it runs once the
+ * contacts added since the last one reach half the number it kept (and at
+ * least {@value #MIN_BATCH}). The cost per contact stays constant and the
+ * graph never holds much more than one and a half windows of contacts.
+ */
+class Compactor {
+
+    // Fewest contacts added between compactions.
+    static final int MIN_BATCH = 1 << 16;
+
+    // The tracer to compact.
+    private final ContactTracer tracer;
+    // How far before the latest contact to keep contacts.
+    private final int horizon;
+    // Latest contact time added.
+    private final LongAccumulator latest =
+            new LongAccumulator(Math::max, Long.MIN_VALUE);
+    // Contacts added since the last compaction started.
+    private final LongAdder added = new LongAdder();
+    // Set while a compaction is queued or running.
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Runs compactions on a single daemon thread that exits when idle.
+    private final ThreadPoolExecutor executor;
+    // Earliest contact time kept by the last compaction started.
+    private volatile int cutoff;
+    // Number of contacts to add before compacting again.
+    private volatile long threshold = MIN_BATCH;
+
+    /**
+     * Creates a retention policy.
+     *
+     * @param tracer  The tracer to compact.
+     * @param horizon How far before the latest contact to keep contacts.
+     */
+    Compactor(ContactTracer tracer, int horizon) {
+        this.tracer = tracer;
+        this.horizon = horizon;
+        this.executor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "contact-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @return the earliest contact time kept by the last compaction started.
+     */
+    int cutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Count a newly added contact, starting a compaction in the background
+     * if enough have been added since the last one.
+     *
+     * @param time The time of the contact.
+     */
+    void contactAdded(int time) {
+        latest.accumulate(time);
+        added.increment();
+        if (added.sum() >= threshold && running.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::compactNow);
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile, and replaced by another policy.
+                finished();
+            }
+        }
+    }
+
+    /**
+     * Compact the tracer, dropping contacts outside the window.
+     */
+    private void compactNow() {
+        try {
+            added.reset();
+            long start = latest.get() - horizon;
+            if (start > cutoff) {
+                cutoff = (int) start;
+            }
+            tracer.compact(cutoff);
+        } finally {
+            finished();
+        }
+    }
+
+    /**
+     * Clear running and wake any threads waiting for the compaction.
+     */
+    private synchronized void finished() {
+        running.set(false);
+        notifyAll();
+    }
+
+    /**
+     * Record the size of a finished compaction, to decide when to run the
+     * next.
+     *
+     * @param kept The number of contacts the compaction kept.
+     */
+    void compacted(long kept) {
+        threshold = Math.max(MIN_BATCH, kept / 2);
+    }
+
+    /**
+     * Wait for any queued or running compaction to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void await() throws InterruptedException {
+        while (running.get()) {
+            wait();
+        }
+    }
+
+    /**
+     * Stop compacting once any queued or running compaction finishes, and
+     * let the background thread exit.
+     */
+    void close() {
+        executor.shutdown();
+    }
+}
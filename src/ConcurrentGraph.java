@@ -0,0 +1,542 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Mutable contact graph that contacts can be recorded in from many threads
+ * while other threads query it.
+ * <p>
+ * Writers lock the two vertices of a contact, through a fixed set of striped
+ * locks, so contacts between unrelated people are recorded in parallel.
+ * Readers take no locks at all and never wait for a writer.
+ * <p>
+ * Readers stay safe because a writer never changes an array entry that a
+ * reader may already see. Each run of values (a vertex's edges, its timeline,
+ * an edge's contact times) is an array with a count of the entries in use.
+ * Appending writes the entry past the count and then publishes the new
+ * count. A vertex's edges only ever grow at the end, so a grown copy is
+ * published before the count, and a reader that reads the count first finds
+ * every entry below it in whichever array it reads. Timelines and contact
+ * times also take inserts in the middle, which shift entries along, so each
+ * is kept in a run object holding the array together with its count. An
+ * insert publishes a new run with a copy of the array, and a reader that
+ * loads a run reads a count and an array that belong together. A view of an
+ * edge's contact times never changes underneath the caller.
+ * <p>
+ * Edge positions never change once assigned. A contact inserted into the
+ * middle of a timeline moves the later contacts one position on, so a reader
+ * scanning a timeline while it is being written may see a contact twice but
+ * never misses one that was there when it started.
+ */
+class ConcurrentGraph implements MutableContactGraph {
+
+    // Number of vertices held in each chunk of the vertex table.
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // Number of locks that vertices are spread across. Must be a power of
+    // two.
+    private static final int STRIPES = 1024;
+
+    // Vertices indexed by the ID of the person they represent, in chunks
+    // created on first use.
+    private final AtomicReferenceArray<AtomicReferenceArray<Vertex>> chunks =
+            new AtomicReferenceArray<>((Integer.MAX_VALUE >>> CHUNK_BITS) + 1);
+    // Locks guarding writes to vertices, indexed by stripe.
+    private final Object[] locks = new Object[STRIPES];
+    // One more than the highest ID with a vertex.
+    private final AtomicInteger vertexCount = new AtomicInteger();
+
+    /**
+     * Creates an empty graph.
+     */
+    ConcurrentGraph() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public boolean addContact(int person1, int person2, int time) {
+        int stripe1 = NameTable.mix(person1) & (STRIPES - 1);
+        int stripe2 = NameTable.mix(person2) & (STRIPES - 1);
+        // Take the two locks in a fixed order so writers can't deadlock.
+        Object first = locks[Math.min(stripe1, stripe2)];
+        Object second = locks[Math.max(stripe1, stripe2)];
+        synchronized (first) {
+            synchronized (second) {
+                return addLocked(person1, person2, time);
+            }
+        }
+    }
+
+    /**
+     * Record a contact while holding the locks of both people.
+     *
+     * @param person1 The ID of the first person.
+     * @param person2 The ID of the second person.
+     * @param time    The time at which the two people met.
+     * @return true if the contact was added, false if it was already stored.
+     */
+    private boolean addLocked(int person1, int person2, int time) {
+        Vertex start = insertVertex(person1);
+        Vertex end = insertVertex(person2);
+        int position = start.findEdge(person2);
+        if (position < 0) {
+            Edge newEdge = new Edge(time);
+            start.insertEdge(newEdge, person2);
+            end.insertEdge(newEdge, person1);
+        } else if (!start.edges[position].addContactTime(time)) {
+            // Contact already recorded.
+            return false;
+        }
+        start.insertContact(CsrGraph.pack(time, person2));
+        end.insertContact(CsrGraph.pack(time, person1));
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return vertexCount.get() == 0;
+    }
+
+    @Override
+    public int vertexCount() {
+        return vertexCount.get();
+    }
+
+    @Override
+    public int degree(int vertex) {
+        Vertex current = getVertex(vertex);
+        return current == null ? 0 : current.degree;
+    }
+
+    @Override
+    public int neighbour(int vertex, int edge) {
+        return getVertex(vertex).neighbours[edge];
+    }
+
+    @Override
+    public int findEdge(int vertex, int other) {
+        Vertex current = getVertex(vertex);
+        return current == null ? -1 : current.findEdge(other);
+    }
+
+    @Override
+    public int firstContact(int vertex, int edge) {
+        return getVertex(vertex).edges[edge].getFirstContact();
+    }
+
+    @Override
+    public int lastContact(int vertex, int edge) {
+        return getVertex(vertex).edges[edge].getLastContact();
+    }
+
+    @Override
+    public int ceilingContact(int vertex, int edge, int time) {
+        return getVertex(vertex).edges[edge].ceilingContact(time);
+    }
+
+    @Override
+    public int floorContact(int vertex, int edge, int time) {
+        return getVertex(vertex).edges[edge].floorContact(time);
+    }
+
+    @Override
+    public IntBuffer contactTimes(int vertex, int edge, int from, int to) {
+        return getVertex(vertex).edges[edge].view(from, to);
+    }
+
+    @Override
+    public int timelineSize(int vertex) {
+        Vertex current = getVertex(vertex);
+        return current == null ? 0 : current.timeline.count;
+    }
+
+    @Override
+    public int timelineSearch(int vertex, int time) {
+        LongRun run = getVertex(vertex).timeline;
+        int count = run.count;
+        long[] timeline = run.values;
+        // The first contact at the time is the first entry at or above the
+        // time packed with neighbour 0.
+        long key = CsrGraph.pack(time, 0);
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timeline[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public int timelineTime(int vertex, int position) {
+        return CsrGraph.high(getVertex(vertex).timeline.values[position]);
+    }
+
+    @Override
+    public int timelineNeighbour(int vertex, int position) {
+        return CsrGraph.low(getVertex(vertex).timeline.values[position]);
+    }
+
+    /**
+     * Return the vertex with the given ID, creating it if it doesn't exist.
+     * The caller must hold the lock of the vertex.
+     *
+     * @param id The ID of the person to create the vertex for.
+     * @return The vertex associated with this ID.
+     */
+    private Vertex insertVertex(int id) {
+        AtomicReferenceArray<Vertex> chunk = chunks.get(id >>> CHUNK_BITS);
+        if (chunk == null) {
+            chunks.compareAndSet(id >>> CHUNK_BITS, null,
+                    new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(id >>> CHUNK_BITS);
+        }
+        Vertex vertex = chunk.get(id & (CHUNK_SIZE - 1));
+        if (vertex == null) {
+            vertex = new Vertex();
+            chunk.set(id & (CHUNK_SIZE - 1), vertex);
+            vertexCount.accumulateAndGet(id + 1, Math::max);
+        }
+        return vertex;
+    }
+
+    /**
+     * Return the vertex with the given ID.
+     *
+     * @param id The ID of the vertex to retrieve.
+     * @return The vertex, or null if it does not exist.
+     */
+    private Vertex getVertex(int id) {
+        if (id < 0) {
+            return null;
+        }
+        AtomicReferenceArray<Vertex> chunk = chunks.get(id >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get(id & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Vertex of the graph, written only while holding its lock.
+     * <p>
+     * Edges are stored in parallel arrays in insertion order, with an
+     * open-addressing index over the neighbour IDs once there are more than a
+     * handful. The timeline packs the time and neighbour of each contact into
+     * one long, so a reader can't pair the time of one contact with the
+     * neighbour of another.
+     */
+    private static final class Vertex {
+        // Degree above which edges are found through the hash index.
+        private static final int INDEX_THRESHOLD = 8;
+
+        // IDs of the vertices opposite each edge.
+        volatile int[] neighbours;
+        // Edges starting from this vertex, parallel to neighbours.
+        volatile Edge[] edges;
+        // Number of edges stored. Written after the arrays.
+        volatile int degree;
+        // Open-addressing index of neighbour IDs, storing the position of
+        // each neighbour plus one (0 marks an empty slot). Null while the
+        // degree is small enough to scan.
+        volatile int[] index;
+        // Every contact of this vertex as its time packed above the ID of
+        // the vertex met, in ascending order. Replaced when a contact is
+        // inserted before the end or the array is full.
+        volatile LongRun timeline = new LongRun(new long[2], 0);
+
+        /**
+         * Create a Vertex with no edges.
+         */
+        private Vertex() {
+            this.neighbours = new int[2];
+            this.edges = new Edge[2];
+        }
+
+        /**
+         * Return the position of the edge whose end is the target vertex.
+         * Safe to call without the lock; a reader may miss an edge being
+         * added at the same time.
+         *
+         * @param target The ID of the other end of the desired edge.
+         * @return The position of the edge, or -1 if there is none.
+         */
+        private int findEdge(int target) {
+            int count = degree;
+            int[] ids = neighbours;
+            int[] slots = index;
+            if (slots == null || count <= INDEX_THRESHOLD) {
+                for (int i = 0; i < count; i++) {
+                    if (ids[i] == target) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            int mask = slots.length - 1;
+            int slot = NameTable.mix(target) & mask;
+            while (slots[slot] != 0) {
+                int position = slots[slot] - 1;
+                // Skip edges added after the degree was read.
+                if (position < count && ids[position] == target) {
+                    return position;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Append the given edge to the edge arrays.
+         *
+         * @param newEdge The newly created edge to insert.
+         * @param toId    The ID of the vertex at the opposite end of the edge.
+         */
+        private void insertEdge(Edge newEdge, int toId) {
+            int count = degree;
+            if (count == neighbours.length) {
+                neighbours = Arrays.copyOf(neighbours, count * 2);
+                edges = Arrays.copyOf(edges, count * 2);
+            }
+            neighbours[count] = toId;
+            edges[count] = newEdge;
+            if (count + 1 > INDEX_THRESHOLD) {
+                if (index == null || (count + 1) * 2 > index.length) {
+                    rebuildIndex(count + 1);
+                } else {
+                    indexPosition(index, count);
+                }
+            }
+            degree = count + 1;
+        }
+
+        /**
+         * Insert a contact into the timeline, after any contacts at the same
+         * time. Appending writes in place; inserting earlier writes a copy.
+         *
+         * @param contact The time of the contact packed above the ID of the
+         *                vertex met.
+         */
+        private void insertContact(long contact) {
+            LongRun run = timeline;
+            int count = run.count;
+            long[] current = run.values;
+            if (count == 0 || contact >= current[count - 1]) {
+                if (count < current.length) {
+                    current[count] = contact;
+                    run.count = count + 1;
+                    return;
+                }
+                current = Arrays.copyOf(current, count * 2);
+                current[count] = contact;
+            } else {
+                int position = Arrays.binarySearch(current, 0, count,
+                        contact);
+                // Equal packed contacts can't occur, since the edge
+                // rejects repeated times.
+                position = -position - 1;
+                long[] copy = new long[count == current.length
+                        ? count * 2 : current.length];
+                System.arraycopy(current, 0, copy, 0, position);
+                copy[position] = contact;
+                System.arraycopy(current, position, copy, position + 1,
+                        count - position);
+                current = copy;
+            }
+            timeline = new LongRun(current, count + 1);
+        }
+
+        /**
+         * Build a new neighbour index with room for twice the given degree
+         * and publish it.
+         *
+         * @param count The number of edges to index.
+         */
+        private void rebuildIndex(int count) {
+            int[] rebuilt = new int[Integer.highestOneBit(count) * 4];
+            for (int i = 0; i < count; i++) {
+                indexPosition(rebuilt, i);
+            }
+            index = rebuilt;
+        }
+
+        /**
+         * Add the neighbour at the given position to an index.
+         *
+         * @param slots    The index to add to.
+         * @param position The position of the neighbour in the edge arrays.
+         */
+        private void indexPosition(int[] slots, int position) {
+            int mask = slots.length - 1;
+            int slot = NameTable.mix(neighbours[position]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = position + 1;
+        }
+    }
+
+    /**
+     * Edge between two vertices, holding the times the two people met.
+     * Written only while holding the locks of both vertices.
+     */
+    private static final class Edge {
+        // The time(s) at which the two vertices were in contact, in ascending
+        // order. Replaced when a time is inserted before the last or the
+        // array is full.
+        volatile IntRun contactTimes;
+
+        /**
+         * Create an edge with a single contact.
+         *
+         * @param contactTime The first time of contact.
+         */
+        private Edge(int contactTime) {
+            this.contactTimes = new IntRun(new int[]{contactTime}, 1);
+        }
+
+        /**
+         * @return The earliest time of contact for this edge.
+         */
+        private int getFirstContact() {
+            return contactTimes.values[0];
+        }
+
+        /**
+         * @return The latest time of contact for this edge.
+         */
+        private int getLastContact() {
+            IntRun run = contactTimes;
+            return run.values[run.count - 1];
+        }
+
+        /**
+         * Find the earliest contact at or after the given time.
+         *
+         * @param time The time to search from (inclusive).
+         * @return The earliest contact time &gt;= time, or -1 if there is none.
+         */
+        private int ceilingContact(int time) {
+            IntRun run = contactTimes;
+            int count = run.count;
+            int[] times = run.values;
+            int position = SortedInts.lowerBound(times, 0, count, time);
+            return position < count ? times[position] : -1;
+        }
+
+        /**
+         * Find the latest contact at or before the given time.
+         *
+         * @param time The time to search back from (inclusive).
+         * @return The latest contact time &lt;= time, or -1 if there is none.
+         */
+        private int floorContact(int time) {
+            IntRun run = contactTimes;
+            int count = run.count;
+            int[] times = run.values;
+            int position = SortedInts.upperBound(times, 0, count, time) - 1;
+            return position >= 0 ? times[position] : -1;
+        }
+
+        /**
+         * Add the given time of contact to this edge. Appending writes in
+         * place; inserting earlier writes a copy.
+         *
+         * @param time The contact time to add.
+         * @return true if the time was added, false if it was already stored.
+         */
+        private boolean addContactTime(int time) {
+            IntRun run = contactTimes;
+            int count = run.count;
+            int[] times = run.values;
+            if (time > times[count - 1]) {
+                if (count < times.length) {
+                    times[count] = time;
+                    run.count = count + 1;
+                    return true;
+                }
+                times = Arrays.copyOf(times, count * 2);
+                times[count] = time;
+            } else {
+                int position = SortedInts.lowerBound(times, 0, count, time);
+                if (times[position] == time) {
+                    return false;
+                }
+                int[] copy = new int[count == times.length
+                        ? count * 2 : times.length];
+                System.arraycopy(times, 0, copy, 0, position);
+                copy[position] = time;
+                System.arraycopy(times, position, copy, position + 1,
+                        count - position);
+                times = copy;
+            }
+            contactTimes = new IntRun(times, count + 1);
+            return true;
+        }
+
+        /**
+         * Return a read-only view of the contact times in the given range.
+         * Entries below the count are never changed in place, so the view is
+         * stable however many times are added afterwards.
+         *
+         * @param from The earliest time to include.
+         * @param to   The latest time to include.
+         * @return The contact times within [from, to], in ascending order.
+         */
+        private IntBuffer view(int from, int to) {
+            IntRun run = contactTimes;
+            int count = run.count;
+            int[] times = run.values;
+            int first = SortedInts.lowerBound(times, 0, count, from);
+            int last = SortedInts.upperBound(times, first, count, to);
+            return IntBuffer.wrap(times, first, last - first).slice()
+                    .asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Sorted ints in an array with room to append, with the number in use.
+     * Entries below the count never change, so a reader sees the same values
+     * however many are appended afterwards.
+     */
+    private static final class IntRun {
+        // The values, only the first count of them in use.
+        final int[] values;
+        // Number of values in use. Written after the value it counts.
+        volatile int count;
+
+        /**
+         * @param values The values, only the first count of them in use.
+         * @param count  The number of values in use.
+         */
+        private IntRun(int[] values, int count) {
+            this.values = values;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Sorted longs in an array with room to append, with the number in use.
+     * Entries below the count never change, so a reader sees the same values
+     * however many are appended afterwards.
+     */
+    private static final class LongRun {
+        // The values, only the first count of them in use.
+        final long[] values;
+        // Number of values in use. Written after the value it counts.
+        volatile int count;
+
+        /**
+         * @param values The values, only the first count of them in use.
+         * @param count  The number of values in use.
+         */
+        private LongRun(long[] values, int count) {
+            this.values = values;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Name table that names can be interned in from many threads while other
+ * threads look them up.
+ * <p>
+ * Lookups never lock. Interning a new name locks only its bin of the hash
+ * index while it is assigned the next ID.
+ */
+class ConcurrentNameTable implements NameTable {
+
+    // Number of names held in each chunk of the name array.
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    // ID of every interned name.
+    private final ConcurrentHashMap<String, Integer> ids =
+            new ConcurrentHashMap<>();
+    // Interned names indexed by ID, in chunks created on first use.
+    private final AtomicReferenceArray<AtomicReferenceArray<String>> chunks =
+            new AtomicReferenceArray<>((Integer.MAX_VALUE >>> CHUNK_BITS) + 1);
+    // Next ID to assign.
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    @Override
+    public int size() {
+        return nextId.get();
+    }
+
+    @Override
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = ids.computeIfAbsent(name, this::assign);
+        }
+        return id;
+    }
+
+    @Override
+    public int idOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public String nameOf(int id) {
+        if (id < 0 || id >= nextId.get()) {
+            return null;
+        }
+        AtomicReferenceArray<String> chunk = chunks.get(id >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get(id & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Assign the next ID to a name and record the name against it.
+     *
+     * @param name The name being interned.
+     * @return The ID assigned.
+     */
+    private Integer assign(String name) {
+        int id = nextId.getAndIncrement();
+        AtomicReferenceArray<String> chunk = chunks.get(id >>> CHUNK_BITS);
+        if (chunk == null) {
+            chunks.compareAndSet(id >>> CHUNK_BITS, null,
+                    new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(id >>> CHUNK_BITS);
+        }
+        chunk.set(id & (CHUNK_SIZE - 1), name);
+        return id;
+    }
+}
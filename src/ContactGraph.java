@@ -0,0 +1,117 @@
+import java.nio.IntBuffer;
+
+/**
+ * Read-only view of a contact graph over dense person IDs, as interned by a
+ * {@link NameTable}.
+ * <p>
+ * Each vertex has an ordered list of edges, addressed by position from 0 to
+ * {@code degree(vertex) - 1}. Each edge holds the ascending, duplicate-free
+ * times at which the two people met. Each vertex also has a timeline of all
+ * of its contacts in ascending order of time, addressed by position from 0 to
+ * {@code timelineSize(vertex) - 1}.
+ * <p>
+ * IDs outside the graph are treated as people with no contacts.
+ */
+interface ContactGraph {
+
+    /**
+     * @return one more than the highest ID that may have contacts in this
+     * graph.
+     */
+    int vertexCount();
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @return The number of edges of the vertex, or 0 if it has none.
+     */
+    int degree(int vertex);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @return The ID of the vertex at the other end of the edge.
+     */
+    int neighbour(int vertex, int edge);
+
+    /**
+     * Find the edge joining the given vertices.
+     *
+     * @param vertex The ID of the vertex whose edge list to search.
+     * @param other  The ID of the vertex at the other end.
+     * @return The position of the edge in the vertex's edge list, or -1 if
+     * the two have never met.
+     */
+    int findEdge(int vertex, int other);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @return The earliest contact time on the edge.
+     */
+    int firstContact(int vertex, int edge);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @return The latest contact time on the edge.
+     */
+    int lastContact(int vertex, int edge);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @param time   The time to search from (inclusive).
+     * @return The earliest contact time on the edge at or after the given
+     * time, or -1 if there is none.
+     */
+    int ceilingContact(int vertex, int edge, int time);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @param time   The time to search back from (inclusive).
+     * @return The latest contact time on the edge at or before the given
+     * time, or -1 if there is none.
+     */
+    int floorContact(int vertex, int edge, int time);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @param from   The earliest time to include.
+     * @param to     The latest time to include.
+     * @return A read-only view of the contact times on the edge within
+     * [from, to], in ascending order.
+     */
+    IntBuffer contactTimes(int vertex, int edge, int from, int to);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @return The number of contacts in the vertex's timeline, or 0 if it
+     * has none.
+     */
+    int timelineSize(int vertex);
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param time   The time to search for.
+     * @return The first position in the vertex's timeline with a contact at
+     * or after the given time, or {@code timelineSize(vertex)} if there is
+     * none.
+     */
+    int timelineSearch(int vertex, int time);
+
+    /**
+     * @param vertex   The ID of the vertex.
+     * @param position The position in the vertex's timeline.
+     * @return The time of the contact at that position.
+     */
+    int timelineTime(int vertex, int position);
+
+    /**
+     * @param vertex   The ID of the vertex.
+     * @param position The position in the vertex's timeline.
+     * @return The ID of the vertex met in the contact at that position.
+     */
+    int timelineNeighbour(int vertex, int position);
+}
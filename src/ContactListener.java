@@ -0,0 +1,26 @@
+/**
+ * Receives every contact added to a {@link ContactTracer} after the listener
+ * is registered, and every cutoff before which contacts are dropped.
+ * <p>
+ * Listeners are called on the thread that added the contact, after it is
+ * visible to queries, and only for contacts that weren't already stored.
+ */
+interface ContactListener {
+
+    /**
+     * Called after a new contact is recorded.
+     *
+     * @param person1 The ID of the first person.
+     * @param person2 The ID of the second person.
+     * @param time    The time at which the two people met.
+     */
+    void contactAdded(int person1, int person2, int time);
+
+    /**
+     * Called after every contact before the given time has been dropped.
+     *
+     * @param cutoff The earliest contact time still kept.
+     */
+    default void contactsDropped(int cutoff) {
+    }
+}
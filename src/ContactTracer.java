@@ -1,20 +1,72 @@
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ContactTracer {
 
-    // Map of names to their associated vertex.
-    private final HashMap<String, Vertex> vertices;
+    // Minutes after being infected that a person becomes contagious.
+    static final int CONTAGION_DELAY = 60;
+    // Number of contacts a log-structured tracer holds in its buffer before
+    // sealing it.
+    static final int LOG_BUFFER_LIMIT = 1 << 16;
+    // Returned for pairs of people who have never been in contact.
+    private static final IntBuffer EMPTY_TIMES =
+            IntBuffer.allocate(0).asReadOnlyBuffer();
+
+    // Interned IDs of every person seen in a contact trace.
+    private final NameTable names;
+    // Creates the graph that traces added one at a time are recorded in.
+    private final Supplier<MutableContactGraph> newBuffer;
+    // Builds a read-only snapshot of the contacts in some layers from a
+    // cutoff time on.
+    private final BiFunction<ContactGraph[], Integer, CompactGraph> compaction;
+    // Graph that traces added one at a time are recorded in. Replaced with
+    // an empty one when the graph is compacted.
+    private volatile MutableContactGraph buffer;
+    // Every graph holding contacts, oldest first. Immutable snapshots built
+    // in bulk come before the buffer. Queries read all of them. Replaced,
+    // never changed in place.
+    private volatile ContactGraph[] layers;
+    // Held shared while adding a contact to the buffer, and exclusively
+    // while replacing the buffer.
+    private final StampedLock bufferLock = new StampedLock();
+    // Held while compacting, so only one compaction runs at a time.
+    private final Object compactLock = new Object();
+    // Sliding-window retention policy, or null to keep every contact.
+    private volatile Compactor compactor;
+    // Merges segments in the background as the buffer is sealed, or null if
+    // they are merged as they are sealed.
+    private volatile SegmentMerger merger;
+    // Keeps the reachability index for canInfect, or null if there is none.
+    private volatile IndexMaintainer reachability;
+    // Latencies and work of queries, or null while they aren't measured.
+    private volatile QueryMetrics metrics;
+    // Listeners told about every new contact. Replaced, never changed in
+    // place, so adding a contact can read it without locking.
+    private volatile ContactListener[] listeners = new ContactListener[0];
 
     /**
      * Initialises an empty ContactTracer with no populated contact traces.
      */
     public ContactTracer() {
-        this.vertices = new HashMap<>();
+        this(new HashNameTable(), IncrementalGraph::new, CsrGraph::compact,
+                null);
     }
 
     /**
      * Initialises the ContactTracer and populates the internal data structures
      * with the given list of contract traces.
+     * <p>
+     * The traces are sorted once, in parallel, into a read-only compressed
+     * snapshot of the graph. Traces added afterwards are recorded alongside
+     * the snapshot.
      *
      * @param traces to populate with
      * @require traces != null
@@ -22,12 +74,167 @@ public class ContactTracer {
     public ContactTracer(List<Trace> traces) {
         this();
         if (traces != null) {
-            for (Trace currTrace : traces) {
-                addTrace(currTrace);
-            }
+            this.layers = new ContactGraph[]{CsrGraph.build(traces, names),
+                    buffer};
         }
     }
 
+    /**
+     * Initialises a ContactTracer from its parts.
+     *
+     * @param names      the name table
+     * @param newBuffer  creates the graph to record added traces in
+     * @param compaction builds a snapshot of the contacts in some layers
+     * @param snapshot   a read-only graph of earlier traces, or null if none
+     */
+    private ContactTracer(NameTable names,
+                          Supplier<MutableContactGraph> newBuffer,
+                          BiFunction<ContactGraph[], Integer,
+                                  CompactGraph> compaction,
+                          ContactGraph snapshot) {
+        this.names = names;
+        this.newBuffer = newBuffer;
+        this.compaction = compaction;
+        this.buffer = newBuffer.get();
+        this.layers = snapshot == null ? new ContactGraph[]{buffer}
+                : new ContactGraph[]{snapshot, buffer};
+    }
+
+    /**
+     * Creates an empty ContactTracer that traces can be added to from many
+     * threads while other threads query it, without any external locking.
+     * <p>
+     * Adding a trace locks only the two people involved, so traces between
+     * unrelated people are added in parallel. Queries take no locks and never
+     * hold up a thread adding traces. A query running while traces are added
+     * sees every trace added before it started, and may or may not see the
+     * ones added while it runs.
+     * <p>
+     * Saving with {@link #save(Path)} should wait until no traces are being
+     * added.
+     *
+     * @return an empty, thread-safe ContactTracer
+     */
+    public static ContactTracer concurrent() {
+        return new ContactTracer(new ConcurrentNameTable(),
+                ConcurrentGraph::new, CsrGraph::compact, null);
+    }
+
+    /**
+     * Creates an empty ContactTracer that keeps names and contacts outside
+     * the Java heap, so it can hold billions of contacts with a small heap
+     * and short garbage collection pauses.
+     * <p>
+     * Traces are added to a small buffer on the heap. Each time it holds
+     * {@value BufferFlusher#DEFAULT_LIMIT} contacts, the buffer is sealed into
+     * a read-only segment in direct memory, and the newest segments are
+     * merged so there are only a few of them. Compaction, retention and the
+     * reachability index build their snapshots in direct memory too. Every
+     * query works as for any other ContactTracer.
+     * <p>
+     * Direct memory is limited by {@code -XX:MaxDirectMemorySize}, which
+     * defaults to the maximum heap size, so it should be raised to fit the
+     * contacts: 20 bytes per contact, plus 24 per pair of people who have
+     * met, plus the names.
+     *
+     * @return an empty ContactTracer holding its data off the heap
+     */
+    public static ContactTracer offHeap() {
+        return offHeap(BufferFlusher.DEFAULT_LIMIT);
+    }
+
+    /**
+     * Creates an empty ContactTracer that keeps names and contacts outside
+     * the Java heap, sealing its buffer once it holds the given number of
+     * contacts.
+     *
+     * @param bufferLimit the number of contacts to hold on the heap
+     * @return an empty ContactTracer holding its data off the heap
+     */
+    static ContactTracer offHeap(int bufferLimit) {
+        ContactTracer tracer = new ContactTracer(new OffHeapNames(),
+                IncrementalGraph::new, OffHeapGraph::compact, null);
+        tracer.addListener(new BufferFlusher(tracer, bufferLimit, null));
+        return tracer;
+    }
+
+    /**
+     * Creates an empty ContactTracer built for feeds of traces that arrive
+     * late and out of order, as a log-structured merge tree.
+     * <p>
+     * Traces are appended to a buffer as they arrive, without putting them
+     * in order. Each time it holds {@value #LOG_BUFFER_LIMIT} contacts, the
+     * buffer is sorted once and sealed into a read-only segment, and a new
+     * buffer takes its place. Segments are merged on a background thread so
+     * that there are only logarithmically many, and adding traces never
+     * waits for a merge. Queries read the buffer and every segment together,
+     * so their results are exactly those of any other ContactTracer.
+     * <p>
+     * Reading the buffer sorts whatever was added since it was last read and
+     * merges it with the rest of the buffer, so each query after a trace is
+     * added costs time linear in the size of the buffer. Queries interleaved
+     * with every trace added, as standing traces are, cost much more than
+     * with the default tracer. Traces should be added from one thread at a
+     * time.
+     *
+     * @return an empty ContactTracer that appends traces as they arrive
+     */
+    public static ContactTracer logStructured() {
+        return logStructured(LOG_BUFFER_LIMIT);
+    }
+
+    /**
+     * Creates an empty log-structured ContactTracer, sealing its buffer once
+     * it holds the given number of contacts.
+     *
+     * @param bufferLimit the number of contacts to hold in the buffer
+     * @return an empty ContactTracer that appends traces as they arrive
+     */
+    static ContactTracer logStructured(int bufferLimit) {
+        ContactTracer tracer = new ContactTracer(new HashNameTable(),
+                AppendBuffer::new, AppendBuffer::compact, null);
+        tracer.merger = new SegmentMerger(tracer);
+        tracer.addListener(new BufferFlusher(tracer, bufferLimit,
+                tracer.merger));
+        return tracer;
+    }
+
+    /**
+     * Opens a snapshot written by {@link #save(Path)}.
+     * <p>
+     * The file is memory-mapped and nothing beyond its header is read up
+     * front, so opening takes the same time however large the snapshot is.
+     * Each person's contacts are read and checked against their checksum the
+     * first time they are queried. Traces added afterwards are recorded
+     * alongside the snapshot and do not change the file.
+     *
+     * @param file the snapshot to open
+     * @return a ContactTracer holding every trace in the snapshot
+     * @throws IOException if the file can't be read or isn't a valid snapshot
+     * @throws java.io.UncheckedIOException from later queries if part of the
+     *                                      snapshot fails its checksum
+     */
+    public static ContactTracer open(Path file) throws IOException {
+        SnapshotFile snapshot = SnapshotFile.open(file);
+        return new ContactTracer(new HashNameTable(snapshot.names()),
+                IncrementalGraph::new, CsrGraph::compact, snapshot.graph());
+    }
+
+    /**
+     * Saves every trace in this ContactTracer to a snapshot that can be
+     * reopened with {@link #open(Path)}.
+     * <p>
+     * Person IDs are kept, so IDs held by callers stay valid after reopening.
+     * The snapshot is written to a temporary file and moved into place, so an
+     * existing file is never left half written.
+     *
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void save(Path file) throws IOException {
+        SnapshotFile.write(file, this);
+    }
+
     /**
      * Adds a new contact trace.
      * <p>
@@ -43,375 +250,1777 @@ public class ContactTracer {
             String person2 = trace.getPerson2();
             int time = trace.getTime();
             if (person1 != null && person2 != null && time >= 0 &&
-                    !person1.equals(person2)) {
-                Vertex start = insertVertex(person1);
-                Vertex end = insertVertex(person2);
-                insertEdge(start, end, time);
+                    !person1.equals(person2) && isRetained(time)) {
+                addContact(names.intern(person1), names.intern(person2),
+                        time);
             }
         }
     }
 
     /**
-     * Gets a list of times that person1 and person2 have come into direct
-     * contact (as per the tracing data).
-     * <p>
-     * If the two people haven't come into contact before, an empty list is
-     * returned.
-     * <p>
-     * Otherwise the list should be sorted in ascending order.
+     * Adds a batch of contacts between people already interned in this
+     * tracer's name table. Contacts that {@link #addTrace(Trace)} would ignore
+     * are skipped.
      *
-     * @param person1
-     * @param person2
-     * @return a list of contact times, in ascending order.
-     * @require person1 != null && person2 != null
+     * @param people1 ID of the first person of each contact
+     * @param people2 ID of the second person of each contact
+     * @param times   time of each contact
+     * @param count   number of contacts to read from the arrays
+     * @return the number of contacts added, leaving out those skipped and
+     * those already stored
      */
-    public List<Integer> getContactTimes(String person1, String person2) {
-        Vertex start = getVertex(person1);
-        Vertex end = getVertex(person2);
-        if (start != null && end != null) {
-            Edge contact = getEdge(start, end);
-            if (contact != null) {
-                // Each edge contains a sorted TreeSet of times that contact
-                // occurred between the two vertices.
-                TreeSet<Integer> times = contact.getContactTimes();
-                if (times != null && !times.isEmpty()) {
-                    return List.copyOf(times);
-                }
+    int addContacts(int[] people1, int[] people2, int[] times, int count) {
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (isPerson(people1[i]) && isPerson(people2[i])
+                    && people1[i] != people2[i] && times[i] >= 0
+                    && addContact(people1[i], people2[i], times[i])) {
+                added++;
             }
         }
-        return new ArrayList<>();
+        return added;
     }
 
     /**
-     * Gets all the people that the given person has been in direct contact
-     * with over the entire history of the tracing dataset.
+     * @param time time of a contact
+     * @return true if a contact at the given time is inside the retention
+     * window, or every contact is kept
+     */
+    boolean isRetained(int time) {
+        Compactor retention = compactor;
+        return retention == null || time >= retention.cutoff();
+    }
+
+    /**
+     * Record a contact in the buffer and tell the listeners if it is new.
      *
-     * @param person to list direct contacts of
-     * @return set of the person's direct contacts
+     * @param person1 ID of the first person
+     * @param person2 ID of the second person
+     * @param time    time of the contact
+     * @return true if the contact was added, false if it was already stored
+     * or is outside the retention window
      */
-    public Set<String> getContacts(String person) {
-        Vertex current = getVertex(person);
-        if (current != null) {
-            return current.getEdges().keySet();
+    private boolean addContact(int person1, int person2, int time) {
+        Compactor retention = compactor;
+        if (retention != null && time < retention.cutoff()) {
+            // Already outside the retention window.
+            return false;
+        }
+        boolean added;
+        long stamp = bufferLock.readLock();
+        try {
+            // The buffer is only replaced under the write lock, so it is the
+            // last of these layers.
+            added = !isSealed(layers, person1, person2, time)
+                    && buffer.addContact(person1, person2, time);
+        } finally {
+            bufferLock.unlockRead(stamp);
+        }
+        if (added) {
+            for (ContactListener listener : listeners) {
+                listener.contactAdded(person1, person2, time);
+            }
+            if (retention != null) {
+                retention.contactAdded(time);
+            }
         }
-        return new HashSet<>();
+        return added;
     }
 
     /**
-     * Gets all the people that the given person has been in direct contact
-     * with at OR after the given timestamp (i.e. inclusive).
+     * Check whether a read-only layer already holds a contact.
      *
-     * @param person    to list direct contacts of
-     * @param timestamp to filter contacts being at or after
-     * @return set of the person's direct contacts at or after the timestamp
+     * @param current The layers of the graph, ending with the buffer.
+     * @param person1 ID of the first person.
+     * @param person2 ID of the second person.
+     * @param time    Time of the contact.
+     * @return true if a layer before the buffer holds the contact.
      */
-    public Set<String> getContactsAfter(String person, int timestamp) {
-        HashSet<String> contactsAfter = new HashSet<>();
-        if (person != null && timestamp >= 0) {
-            Vertex current = getVertex(person);
-            if (current != null) {
-                HashMap<String, Edge> edges = current.getEdges();
-                // for each edge of the current vertex.
-                for (Map.Entry<String, Edge> next : edges.entrySet()) {
-                    // check each contact time stored in that edge.
-                    for (Integer time : next.getValue().getContactTimes()) {
-                        if (time >= timestamp) {
-                            contactsAfter.add(next.getKey());
-                            break;
-                        }
-                    }
-                }
+    private static boolean isSealed(ContactGraph[] current, int person1,
+                                    int person2, int time) {
+        for (int i = 0; i < current.length - 1; i++) {
+            ContactGraph layer = current[i];
+            int edge = layer.findEdge(person1, person2);
+            if (edge >= 0 && layer.ceilingContact(person1, edge, time)
+                    == time) {
+                return true;
             }
         }
-        return contactsAfter;
+        return false;
     }
 
     /**
-     * Initiates a contact trace starting with the given person, who
-     * became contagious at timeOfContagion.
+     * Keeps only contacts within the given horizon of the latest contact
+     * added, dropping older ones as new traces arrive.
      * <p>
-     * Note that the return set shouldn't include the original person the trace
-     * started from.
+     * Older contacts are dropped in the background, once enough new traces
+     * have been added to make it worthwhile, by rebuilding every contact in
+     * the window into a compact read-only snapshot. Queries carry on against
+     * the previous snapshot while this happens. People left with no contacts
+     * keep their ID but have no contacts. Traces added afterwards with a time
+     * already outside the window are ignored.
+     * <p>
+     * Results of queries about times within the window are unchanged.
+     * Queries about earlier times only see the contacts still kept.
      *
-     * @param person          to start contact tracing from
-     * @param timeOfContagion the exact time person became contagious
-     * @return set of people who may have contracted the disease, originating
-     * from person
+     * @param horizon how far before the latest contact to keep contacts, in
+     *                the same units as contact times
+     * @require horizon &gt; 0
      */
-    public Set<String> contactTrace(String person, int timeOfContagion) {
-        // Map name of infected person to time at which they are contagious.
-        HashMap<String, Integer> infected = new HashMap<>();
-        // Maintain list of edges that have already been checked.
-        HashSet<Edge> checked = new HashSet<>();
-        if (person != null && timeOfContagion >= 0) {
-            Vertex current = getVertex(person);
-            if (current != null) {
-                infected.put(person, timeOfContagion);
-                trace(infected, checked, current);
-                infected.remove(person);
-            }
+    public void setRetention(int horizon) {
+        if (horizon <= 0) {
+            throw new IllegalArgumentException("horizon must be positive: "
+                    + horizon);
         }
-        return infected.keySet();
+        Compactor replaced;
+        synchronized (this) {
+            replaced = compactor;
+            compactor = new Compactor(this, horizon);
+        }
+        if (replaced != null) {
+            replaced.close();
+        }
+    }
+
+    /**
+     * @return the background merger of a log-structured tracer, or null.
+     */
+    SegmentMerger merger() {
+        return merger;
+    }
+
+    /**
+     * @return the retention policy set by {@link #setRetention(int)}, or null.
+     */
+    Compactor compactor() {
+        return compactor;
     }
 
     /**
-     * Recursively trace the infected path through the graph.
-     * Checks infected vertices' edges in ascending order of time.
+     * Drops every contact before the given time, rebuilding the remaining
+     * contacts into a compact read-only snapshot.
+     * <p>
+     * Queries and added traces carry on while the snapshot is rebuilt, and
+     * queries switch to the new snapshot once it is ready. Traces added
+     * meanwhile are kept whatever their time.
      *
-     * @param infected All infected people found so far, mapped to the time at
-     *                 which they became contagious themselves.
-     * @param checked  Set of all edges that have been checked so far in our
-     *                 traversal.
-     * @param source   The vertex to start tracing from.
+     * @param cutoff the earliest contact time to keep
      */
-    private void trace(HashMap<String, Integer> infected,
-                       HashSet<Edge> checked, Vertex source) {
-        if (source == null) {
-            return;
+    public void compact(int cutoff) {
+        synchronized (compactLock) {
+            ContactGraph[] frozen = freezeBuffer();
+            CompactGraph compacted = compaction.apply(frozen, cutoff);
+            layers = new ContactGraph[]{compacted, buffer};
+            Compactor retention = compactor;
+            if (retention != null) {
+                retention.compacted(compacted.contactCount());
+            }
+            for (ContactListener listener : listeners) {
+                listener.contactsDropped(cutoff);
+            }
         }
-        // Place source vertex edges in min-heap priority queue.
-        HashMap<String, Edge> edges = source.getEdges();
-        PriorityQueue<Edge> edgeHeap = new PriorityQueue<>(edges.values());
-        // Check every edge of the given source vertex, in ascending order.
-        while (!edgeHeap.isEmpty()) {
-            Edge edge = edgeHeap.poll();
-            if (!checked.contains(edge)) {
-                checked.add(edge);
-                Vertex current = opposite(source, edge);
-                if (current == null) {
-                    return;
-                }
-                String currName = current.getName();
-                // Check each contact time against the time at which source
-                // vertex became contagious (in ascending order of time).
-                for (Integer time : edge.getContactTimes()) {
-                    // If this edge's contact time exceeds/matches source
-                    // vertex contagious time, log the infection and continue
-                    // to trace from current vertex.
-                    if (time >= infected.get(source.name)) {
-                        infected.put(currName, (time + 60));
-                        trace(infected, checked, current);
-                        // If we found an infection time, we don't need
-                        // to check any higher times.
-                        break;
-                    }
-                }
+    }
+
+    /**
+     * Seals the buffer into a read-only segment without dropping any
+     * contacts. The segment is then merged with the newest segments before it
+     * for as long as each is no more than twice the size of everything merged
+     * so far. Segments shrink by at least half from oldest to newest, so there
+     * are only logarithmically many, and each contact is copied only
+     * logarithmically many times.
+     */
+    void flush() {
+        synchronized (compactLock) {
+            seal();
+            ContactGraph[] current = layers;
+            int newest = current.length - 2;
+            int first = mergeStart(current, newest);
+            if (first < newest) {
+                CompactGraph merged = compaction.apply(
+                        Arrays.copyOfRange(current, first, newest + 1), 0);
+                replaceSegments(current, first, newest, merged);
             }
         }
     }
 
     /**
-     * Return the vertex at the other end of the given edge.
-     *
-     * @param source The start vertex of the edge.
-     * @param edge   The edge to find the other end of.
-     * @return The vertex opposite the given vertex.
+     * Seals the buffer into a read-only segment after the others, leaving
+     * the segments to be merged by {@link #mergeSegments()}.
      */
-    private Vertex opposite(Vertex source, Edge edge) {
-        Vertex[] ends = edge.getVertices();
-        if (ends[0] == source) {
-            return ends[1];
-        } else if (ends[1] == source) {
-            return ends[0];
-        } else {
-            return null;
+    void seal() {
+        synchronized (compactLock) {
+            ContactGraph[] frozen = freezeBuffer();
+            int sealed = frozen.length - 1;
+            // The old buffer followed by the new one.
+            ContactGraph[] current = layers;
+            if (((MutableContactGraph) frozen[sealed]).isEmpty()) {
+                replaceSegments(current, sealed, sealed);
+            } else {
+                replaceSegments(current, sealed, sealed, compaction.apply(
+                        new ContactGraph[]{frozen[sealed]}, 0));
+            }
         }
     }
 
     /**
-     * Create and insert new vertex with the given name.
-     * If a vertex with this name already exists, return it instead.
+     * Merges the newest segments as {@link #flush()} does, without holding
+     * up sealing, compaction or queries while the merged segment is built.
+     * If the segments were replaced meanwhile, such as by a compaction, the
+     * merged segment is thrown away.
      *
-     * @param name The name of the person to create the vertex with.
-     * @return The vertex associated with this name.
+     * @return true if segments were merged, so there may be more to merge
      */
-    private Vertex insertVertex(String name) {
-        if (name == null) {
-            return null;
+    boolean mergeSegments() {
+        ContactGraph[] merging;
+        int first;
+        synchronized (compactLock) {
+            ContactGraph[] current = layers;
+            int newest = current.length - 2;
+            first = mergeStart(current, newest);
+            if (first >= newest) {
+                return false;
+            }
+            merging = Arrays.copyOfRange(current, first, newest + 1);
         }
-        Vertex currVert;
-        if (!vertices.containsKey(name)) {
-            currVert = new Vertex(name);
-            vertices.put(name, currVert);
-        } else {
-            currVert = vertices.get(name);
+        CompactGraph merged = compaction.apply(merging, 0);
+        synchronized (compactLock) {
+            // Segments are only ever sealed after these, so unless they were
+            // replaced they are where they were.
+            ContactGraph[] current = layers;
+            int last = first + merging.length - 1;
+            if (last >= current.length) {
+                return false;
+            }
+            for (int i = 0; i < merging.length; i++) {
+                if (current[first + i] != merging[i]) {
+                    return false;
+                }
+            }
+            replaceSegments(current, first, last, merged);
+            return true;
         }
-        return currVert;
     }
 
     /**
-     * Create and insert an edge between the given vertices.
+     * Find the oldest segment to merge the newest one with: segments before
+     * it are included for as long as each is no more than twice the size of
+     * everything included so far.
      *
-     * @param start The start vertex of the edge.
-     * @param end   The end vertex of the edge.
-     * @param time  The time at which the two vertices met.
+     * @param current The layers of the graph.
+     * @param newest  The position of the newest segment, or -1 if none.
+     * @return The position of the oldest segment to merge, newest if no
+     * others need merging.
      */
-    private void insertEdge(Vertex start, Vertex end, int time) {
-        if (start == null || end == null || time < 0) {
-            return;
+    private static int mergeStart(ContactGraph[] current, int newest) {
+        if (newest < 0 || !(current[newest] instanceof CompactGraph)) {
+            return newest;
         }
-        Edge existingEdge = getEdge(start, end);
-        if (existingEdge == null) {
-            Edge newEdge = new Edge(start, end, time);
-            start.insertEdge(newEdge, end.getName());
-            end.insertEdge(newEdge, start.getName());
-        } else {
-            existingEdge.addContactTime(time);
+        int first = newest;
+        long merged = ((CompactGraph) current[newest]).contactCount();
+        while (first > 0 && current[first - 1] instanceof CompactGraph
+                && ((CompactGraph) current[first - 1]).contactCount()
+                <= 2 * merged) {
+            first--;
+            merged += ((CompactGraph) current[first]).contactCount();
         }
+        return first;
     }
 
     /**
-     * Return the edge that joins the given start and end vertices.
+     * Replace a run of layers with the given ones. Must be called holding
+     * compactLock, with current the layers read while holding it.
      *
-     * @param start The start vertex of the edge.
-     * @param end   The end vertex of the edge.
-     * @return The edge if it exists, else null.
+     * @param current     The layers of the graph.
+     * @param first       The position of the first layer to replace.
+     * @param last        The position of the last layer to replace.
+     * @param replacement The layers to put in their place.
      */
-    private Edge getEdge(Vertex start, Vertex end) {
-        return start.getEdge(end.getName());
+    private void replaceSegments(ContactGraph[] current, int first, int last,
+                                 ContactGraph... replacement) {
+        ContactGraph[] replaced = new ContactGraph[current.length
+                - (last - first + 1) + replacement.length];
+        System.arraycopy(current, 0, replaced, 0, first);
+        System.arraycopy(replacement, 0, replaced, first, replacement.length);
+        System.arraycopy(current, last + 1, replaced,
+                first + replacement.length, current.length - last - 1);
+        layers = replaced;
     }
 
     /**
-     * Return the vertex with the given name.
+     * Replace the buffer with an empty one, waiting for contacts being added
+     * to the old buffer to finish, so nothing is written to it afterwards.
+     * Must be called holding compactLock.
      *
-     * @param name The name of the vertex to retrieve.
-     * @return The vertex, or null if it does not exist.
+     * @return every layer before the new buffer, ending with the old buffer
      */
-    private Vertex getVertex(String name) {
-        return vertices.get(name);
+    private ContactGraph[] freezeBuffer() {
+        long stamp = bufferLock.writeLock();
+        try {
+            ContactGraph[] frozen = layers;
+            MutableContactGraph fresh = newBuffer.get();
+            ContactGraph[] withFresh = Arrays.copyOf(frozen,
+                    frozen.length + 1);
+            withFresh[frozen.length] = fresh;
+            layers = withFresh;
+            buffer = fresh;
+            return frozen;
+        } finally {
+            bufferLock.unlockWrite(stamp);
+        }
     }
 
     /**
-     * Vertex class for use in a graph data structure.
+     * @return the read-only snapshot of compacted or bulk-loaded contacts, or
+     * null if every contact is in the buffer.
      */
-    private class Vertex {
-        // The name of this vertex, to be used as a key in the graph's
-        // vertex hashmap.
-        String name;
-        // Edges starting from this vertex and ending at another. The key
-        // is the name of the vertex opposite.
-        HashMap<String, Edge> edges;
+    ContactGraph snapshot() {
+        ContactGraph[] current = layers;
+        return current.length > 1 ? current[0] : null;
+    }
 
-        /**
-         * Create a Vertex with the given name.
-         *
-         * @param name This person's name.
-         */
-        private Vertex(String name) {
-            this.name = name;
-            this.edges = new HashMap<>();
+    /**
+     * Builds a reachability index answering {@link #canInfect(String, String,
+     * int)} without a search, and keeps it up to date from now on.
+     * <p>
+     * The graph is compacted first, and the index covers the resulting
+     * snapshot. Traces added afterwards are checked by a search until enough
+     * have been added to make rebuilding worthwhile, when the index is
+     * rebuilt in the background. It is also rebuilt after the retention
+     * policy drops old contacts.
+     *
+     * @return the index built, reporting its size and build time
+     */
+    public ReachabilityIndex buildReachabilityIndex() {
+        IndexMaintainer maintainer;
+        synchronized (this) {
+            maintainer = reachability;
+            if (maintainer == null) {
+                maintainer = new IndexMaintainer(this);
+                addListener(maintainer);
+                reachability = maintainer;
+            }
         }
+        return maintainer.rebuild();
+    }
 
-        /**
-         * @return this vertices' edges.
-         */
-        private HashMap<String, Edge> getEdges() {
-            return this.edges;
-        }
+    /**
+     * Divides the contacts among the given number of shards in this process,
+     * to be traced by exchanging messages between them.
+     *
+     * @param shards the number of shards
+     * @return a snapshot of the contacts, divided among the shards
+     * @require shards &gt; 0
+     * @see #partition(ShardTransport)
+     */
+    public PartitionedTracer partition(int shards) {
+        return partition(new LocalTransport(shards));
+    }
 
-        /**
-         * Return the edges whose end is the target vertex.
-         *
-         * @param target The other end of the desired edge.
-         * @return The edge that has the target vertex.
-         */
-        private Edge getEdge(String target) {
-            return this.edges.get(target);
-        }
+    /**
+     * Divides the contacts among shards connected by the given transport,
+     * one for each shard it connects.
+     * <p>
+     * Traces added one at a time are sealed into a read-only segment first,
+     * as for a tracer held off the heap. Traces added afterwards are recorded
+     * here as usual but aren't seen by the shards.
+     *
+     * @param transport carries frontier messages between the shards
+     * @return a snapshot of the contacts, divided among the shards
+     * @require transport != null &amp;&amp; transport.shardCount() &gt; 0
+     */
+    public PartitionedTracer partition(ShardTransport transport) {
+        flush();
+        ContactGraph[] current = layers;
+        // Every layer but the buffer is read-only once flushed.
+        ContactGraph[] sealed = Arrays.copyOf(current, current.length - 1);
+        int vertexCount = names.size();
+        int shardCount = transport.shardCount();
+        GraphShard[] shards = new GraphShard[shardCount];
+        IntStream.range(0, shardCount).parallel().forEach(shard ->
+                shards[shard] = GraphShard.build(sealed, vertexCount, shard,
+                        shardCount));
+        return new PartitionedTracer(this, vertexCount, shards, transport);
+    }
 
-        /**
-         * @return this vertices' name.
-         */
-        private String getName() {
-            return this.name;
+    /**
+     * @return the maintainer of the reachability index, or null if there is
+     * none.
+     */
+    IndexMaintainer reachability() {
+        return reachability;
+    }
+
+    /**
+     * Starts measuring queries: the latency of each query method, and the
+     * work each query does, such as how many people and edges it visits.
+     * <p>
+     * Queries taking longer than the metrics' slow query threshold are
+     * logged, with their parameters and the work they did. While metrics are
+     * disabled, queries do no more than check whether they are enabled.
+     *
+     * @return the metrics queries are recorded in, the same ones as before if
+     * they were already enabled
+     */
+    public synchronized QueryMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new QueryMetrics();
         }
+        return metrics;
+    }
 
-        /**
-         * Insert the given edge into the edges map.
-         *
-         * @param newEdge The newly created edge to insert.
-         * @param toName  The name of the vertex at the opposite end of the
-         *                edge.
-         */
-        private void insertEdge(Edge newEdge, String toName) {
-            if (newEdge != null && toName != null) {
-                this.edges.put(toName, newEdge);
+    /**
+     * Stops measuring queries. Metrics already returned by
+     * {@link #enableMetrics()} keep what they recorded, but record nothing
+     * more, and enabling metrics again starts afresh.
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * @return the metrics queries are recorded in, or null if they aren't
+     * being measured
+     */
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Register a listener to be told about every contact added from now on.
+     *
+     * @param listener The listener to add.
+     */
+    synchronized void addListener(ContactListener listener) {
+        ContactListener[] current = listeners;
+        ContactListener[] added = Arrays.copyOf(current, current.length + 1);
+        added[current.length] = listener;
+        listeners = added;
+    }
+
+    /**
+     * Stop telling a listener about new contacts.
+     *
+     * @param listener The listener to remove.
+     */
+    synchronized void removeListener(ContactListener listener) {
+        ContactListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                ContactListener[] removed = new ContactListener[current.length
+                        - 1];
+                System.arraycopy(current, 0, removed, 0, i);
+                System.arraycopy(current, i + 1, removed, i,
+                        current.length - i - 1);
+                listeners = removed;
+                return;
             }
         }
+    }
 
+    /**
+     * @return the table of interned person IDs.
+     */
+    NameTable names() {
+        return names;
     }
 
     /**
-     * Edge class connecting two vertices in a graph, with the weight being the
-     * given times of contact between the two vertices.
+     * Gets the ID assigned to the given person when they first appeared in a
+     * contact trace.
+     * <p>
+     * IDs are dense, starting from 0, and never change once assigned. Callers
+     * holding IDs can use the int overloads of the query methods to skip name
+     * lookups entirely.
+     *
+     * @param person to get the ID of
+     * @return the person's ID, or -1 if they have no contact traces
      */
-    private class Edge implements Comparable<Edge> {
-        // The vertices at each end of this edge.
-        Vertex start;
-        Vertex end;
-        // The time(s) at which the two vertices were in contact.
-        TreeSet<Integer> contactTimes;
+    public int getPersonId(String person) {
+        return names.idOf(person);
+    }
 
-        /**
-         * Create an edge with the given start and end vertices.
-         *
-         * @param start The start vertex.
-         * @param end   The end vertex.
-         */
-        private Edge(Vertex start, Vertex end, int contactTime) {
-            this.start = start;
-            this.end = end;
-            this.contactTimes = new TreeSet<>();
-            this.contactTimes.add(contactTime);
-        }
+    /**
+     * Gets the name of the person with the given ID.
+     *
+     * @param id of the person
+     * @return the person's name, or null if no person has this ID
+     */
+    public String getPersonName(int id) {
+        return names.nameOf(id);
+    }
 
-        /**
-         * @return This edge's start and end vertices, where index 0
-         * is the start vertex and index 1 is the end vertex.
-         */
-        private Vertex[] getVertices() {
-            Vertex[] vertices = new Vertex[2];
-            vertices[0] = start;
-            vertices[1] = end;
-            return vertices;
-        }
+    /**
+     * Gets a list of times that person1 and person2 have come into direct
+     * contact (as per the tracing data).
+     * <p>
+     * If the two people haven't come into contact before, an empty list is
+     * returned.
+     * <p>
+     * Otherwise the list should be sorted in ascending order.
+     *
+     * @param person1
+     * @param person2
+     * @return a list of contact times, in ascending order.
+     * @require person1 != null && person2 != null
+     */
+    public List<Integer> getContactTimes(String person1, String person2) {
+        return getContactTimes(names.idOf(person1), names.idOf(person2));
+    }
 
-        /**
-         * @return The contact time between this edges' vertices.
-         */
-        private TreeSet<Integer> getContactTimes() {
-            return contactTimes;
-        }
+    /**
+     * Gets a list of times that the people with the given IDs have come into
+     * direct contact.
+     *
+     * @param person1 ID of the first person
+     * @param person2 ID of the second person
+     * @return a list of contact times, in ascending order.
+     * @see #getContactTimes(String, String)
+     */
+    public List<Integer> getContactTimes(int person1, int person2) {
+        return getContactTimes(person1, person2, 0, Integer.MAX_VALUE);
+    }
 
-        /**
-         * @return The earliest time of contact for this edge.
-         */
-        private int getFirstContact() {
-            return this.contactTimes.first();
-        }
+    /**
+     * Gets a list of times that person1 and person2 have come into direct
+     * contact within the given range of times (inclusive at both ends).
+     *
+     * @param person1
+     * @param person2
+     * @param from    the earliest contact time to include
+     * @param to      the latest contact time to include
+     * @return a list of contact times within [from, to], in ascending order.
+     * @see #getContactTimes(String, String)
+     */
+    public List<Integer> getContactTimes(String person1, String person2,
+                                         int from, int to) {
+        return getContactTimes(names.idOf(person1), names.idOf(person2),
+                from, to);
+    }
 
-        /**
-         * Add the given time of contact to the set of contact times for
-         * this edge.
-         *
-         * @param time The contact time to add.
-         */
-        private void addContactTime(int time) {
-            contactTimes.add(time);
+    /**
+     * Gets a list of times that the people with the given IDs have come into
+     * direct contact within the given range of times (inclusive at both ends).
+     *
+     * @param person1 ID of the first person
+     * @param person2 ID of the second person
+     * @param from    the earliest contact time to include
+     * @param to      the latest contact time to include
+     * @return a list of contact times within [from, to], in ascending order.
+     * @see #getContactTimes(String, String, int, int)
+     */
+    public List<Integer> getContactTimes(int person1, int person2,
+                                         int from, int to) {
+        IntBuffer times = getContactTimesView(person1, person2, from, to);
+        List<Integer> result = new ArrayList<>(times.remaining());
+        while (times.hasRemaining()) {
+            result.add(times.get());
         }
+        return result;
+    }
 
-        /**
-         * Compare this edge against another to find if one is greater, less
-         * than or equal to the other.
-         *
-         * @param other The edge to compare this one against.
-         * @return 0 if they are equal, less than 0 if this edge is less than
-         * the other, greater than 0 if this edge is greater than the other.
-         */
-        @Override
-        public int compareTo(Edge other) {
-            return Integer.compare(getFirstContact(), other.getFirstContact());
-        }
+    /**
+     * Gets a read-only view of the times that person1 and person2 have come
+     * into direct contact, without copying them.
+     * <p>
+     * The view shares storage with the tracer, so it is only valid until the
+     * next trace between the same two people is added.
+     *
+     * @param person1
+     * @param person2
+     * @return a read-only buffer of contact times, in ascending order. Empty
+     * if the two people haven't come into contact before.
+     * @see #getContactTimes(String, String)
+     */
+    public IntBuffer getContactTimesView(String person1, String person2) {
+        return getContactTimesView(names.idOf(person1), names.idOf(person2));
+    }
+
+    /**
+     * Gets a read-only view of the times that the people with the given IDs
+     * have come into direct contact, without copying them.
+     *
+     * @param person1 ID of the first person
+     * @param person2 ID of the second person
+     * @return a read-only buffer of contact times, in ascending order.
+     * @see #getContactTimesView(String, String)
+     */
+    public IntBuffer getContactTimesView(int person1, int person2) {
+        return getContactTimesView(person1, person2, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets a read-only view of the times that person1 and person2 have come
+     * into direct contact within the given range of times (inclusive at both
+     * ends), without copying them.
+     *
+     * @param person1
+     * @param person2
+     * @param from    the earliest contact time to include
+     * @param to      the latest contact time to include
+     * @return a read-only buffer of contact times within [from, to], in
+     * ascending order.
+     * @see #getContactTimesView(String, String)
+     */
+    public IntBuffer getContactTimesView(String person1, String person2,
+                                         int from, int to) {
+        return getContactTimesView(names.idOf(person1), names.idOf(person2),
+                from, to);
+    }
+
+    /**
+     * Gets a read-only view of the times that the people with the given IDs
+     * have come into direct contact within the given range of times
+     * (inclusive at both ends), without copying them.
+     * <p>
+     * If the contacts are split between a bulk-built snapshot and traces added
+     * since, the returned buffer is a merged copy instead.
+     *
+     * @param person1 ID of the first person
+     * @param person2 ID of the second person
+     * @param from    the earliest contact time to include
+     * @param to      the latest contact time to include
+     * @return a read-only buffer of contact times within [from, to], in
+     * ascending order.
+     * @see #getContactTimesView(String, String)
+     */
+    public IntBuffer getContactTimesView(int person1, int person2,
+                                         int from, int to) {
+        QueryStats stats = startQuery();
+        IntBuffer found = contactTimesOf(person1, person2, from, to);
+        if (stats != null) {
+            stats.add(0, 0, 0, 0, found.remaining());
+            stats.finish(QueryMetrics.Query.GET_CONTACT_TIMES,
+                    nameOf(person1), nameOf(person2), from, to);
+        }
+        return found;
+    }
+
+    /**
+     * Gets a read-only view of the times that the people with the given IDs
+     * have come into direct contact within the given range of times, without
+     * measuring it as a query.
+     *
+     * @param person1 ID of the first person
+     * @param person2 ID of the second person
+     * @param from    the earliest contact time to include
+     * @param to      the latest contact time to include
+     * @return a read-only buffer of contact times within [from, to], in
+     * ascending order.
+     * @see #getContactTimesView(int, int, int, int)
+     */
+    IntBuffer contactTimesOf(int person1, int person2, int from, int to) {
+        if (!isPerson(person1) || !isPerson(person2)) {
+            return EMPTY_TIMES;
+        }
+        return contactTimesOf(pinnedLayers(), person1, person2, from, to);
+    }
+
+    /**
+     * Read the times two people have come into direct contact within the
+     * given range of times from every layer of the graph.
+     *
+     * @param current The layers of the graph.
+     * @param person1 ID of the first person.
+     * @param person2 ID of the second person.
+     * @param from    The earliest contact time to include.
+     * @param to      The latest contact time to include.
+     * @return A read-only buffer of contact times within [from, to], in
+     * ascending order.
+     * @require person1 and person2 are in use
+     */
+    static IntBuffer contactTimesOf(ContactGraph[] current, int person1,
+                                    int person2, int from, int to) {
+        IntBuffer found = EMPTY_TIMES;
+        if (from > to) {
+            return found;
+        }
+        for (ContactGraph layer : current) {
+            int edge = layer.findEdge(person1, person2);
+            if (edge >= 0) {
+                IntBuffer times = layer.contactTimes(person1, edge, from, to);
+                found = found.hasRemaining() ? merge(found, times) : times;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets all the people that the given person has been in direct contact
+     * with over the entire history of the tracing dataset.
+     *
+     * @param person to list direct contacts of
+     * @return set of the person's direct contacts
+     */
+    public Set<String> getContacts(String person) {
+        return toNames(getContacts(names.idOf(person)));
+    }
+
+    /**
+     * Gets the IDs of all the people that the person with the given ID has
+     * been in direct contact with.
+     *
+     * @param person ID of the person to list direct contacts of
+     * @return IDs of the person's direct contacts, in no particular order
+     * @see #getContacts(String)
+     */
+    public int[] getContacts(int person) {
+        QueryStats stats = startQuery();
+        int[] contacts = contactsOf(person);
+        if (stats != null) {
+            stats.add(1, contacts.length, 0, 0, 0);
+            stats.finish(QueryMetrics.Query.GET_CONTACTS, nameOf(person));
+        }
+        return contacts;
+    }
+
+    /**
+     * Gets the IDs of all the people that the person with the given ID has
+     * been in direct contact with, without measuring it as a query.
+     *
+     * @param person ID of the person to list direct contacts of
+     * @return IDs of the person's direct contacts, in no particular order
+     * @see #getContacts(int)
+     */
+    int[] contactsOf(int person) {
+        if (!isPerson(person)) {
+            return new int[0];
+        }
+        // Read once, so the count of layers matches the layers read.
+        return contactsOf(pinnedLayers(), person);
+    }
+
+    /**
+     * Read the IDs of everyone a person has been in direct contact with from
+     * every layer of the graph.
+     *
+     * @param current The layers of the graph.
+     * @param person  ID of the person.
+     * @return IDs of the person's direct contacts, in no particular order.
+     * @require person is in use
+     */
+    static int[] contactsOf(ContactGraph[] current, int person) {
+        IntList contacts = new IntList();
+        // Contacts only need de-duplicating if they span several layers.
+        IntIntMap seen = layersWithContacts(current, person) > 1
+                ? new IntIntMap() : null;
+        for (ContactGraph layer : current) {
+            int degree = layer.degree(person);
+            for (int i = 0; i < degree; i++) {
+                int neighbour = layer.neighbour(person, i);
+                if (seen == null || !seen.containsKey(neighbour)) {
+                    if (seen != null) {
+                        seen.put(neighbour, i);
+                    }
+                    contacts.add(neighbour);
+                }
+            }
+        }
+        return contacts.toArray();
+    }
+
+    /**
+     * Gets all the people that the given person has been in direct contact
+     * with at OR after the given timestamp (i.e. inclusive).
+     *
+     * @param person    to list direct contacts of
+     * @param timestamp to filter contacts being at or after
+     * @return set of the person's direct contacts at or after the timestamp
+     */
+    public Set<String> getContactsAfter(String person, int timestamp) {
+        return toNames(getContactsAfter(names.idOf(person), timestamp));
+    }
+
+    /**
+     * Gets the IDs of all the people that the person with the given ID has
+     * been in direct contact with at OR after the given timestamp.
+     *
+     * @param person    ID of the person to list direct contacts of
+     * @param timestamp to filter contacts being at or after
+     * @return IDs of the person's direct contacts at or after the timestamp,
+     * in no particular order
+     * @see #getContactsAfter(String, int)
+     */
+    public int[] getContactsAfter(int person, int timestamp) {
+        return getContactsAfter(person, timestamp, new Scratch());
+    }
+
+    /**
+     * Gets the IDs of all the people that the person with the given ID has
+     * been in direct contact with at OR after the given timestamp, using the
+     * given working state.
+     *
+     * @param person    ID of the person to list direct contacts of
+     * @param timestamp to filter contacts being at or after
+     * @param scratch   working state, not in use by any other query
+     * @return IDs of the person's direct contacts at or after the timestamp,
+     * in no particular order
+     */
+    int[] getContactsAfter(int person, int timestamp, Scratch scratch) {
+        QueryStats stats = startQuery();
+        IntList contactsAfter = scratch.found;
+        IntIntMap seen = scratch.seen;
+        contactsAfter.clear();
+        seen.clear();
+        if (isPerson(person) && timestamp >= 0) {
+            for (ContactGraph layer : pinnedLayers()) {
+                collectContactsAfter(layer, person, timestamp, seen,
+                        contactsAfter, stats);
+            }
+        }
+        if (stats != null) {
+            stats.add(1, 0, 0, 0, 0);
+            stats.finish(QueryMetrics.Query.GET_CONTACTS_AFTER,
+                    nameOf(person), timestamp);
+        }
+        return contactsAfter.toArray();
+    }
+
+    /**
+     * Collect the people the given person met at or after the given timestamp
+     * in one layer of the graph.
+     *
+     * @param layer     The layer to search.
+     * @param person    The ID of the person to list direct contacts of.
+     * @param timestamp The time contacts must be at or after.
+     * @param seen      IDs of contacts collected so far.
+     * @param result    The list to add newly found contacts to.
+     * @param stats     Counters of the query's work, or null.
+     */
+    private void collectContactsAfter(ContactGraph layer, int person,
+                                      int timestamp, IntIntMap seen,
+                                      IntList result, QueryStats stats) {
+        int size = layer.timelineSize(person);
+        if (size == 0) {
+            return;
+        }
+        // Contacts at or after the timestamp form a suffix of the vertex's
+        // timeline, found by binary search.
+        int first = layer.timelineSearch(person, timestamp);
+        int degree = layer.degree(person);
+        if (size - first > degree) {
+            // Scanning a long suffix costs more than checking the latest
+            // contact time of each edge.
+            if (stats != null) {
+                stats.add(0, degree, 0, 0, degree);
+            }
+            for (int i = 0; i < degree; i++) {
+                int neighbour = layer.neighbour(person, i);
+                if (layer.lastContact(person, i) >= timestamp
+                        && !seen.containsKey(neighbour)) {
+                    seen.put(neighbour, i);
+                    result.add(neighbour);
+                }
+            }
+        } else {
+            // Contacts inserted while scanning only move later contacts on,
+            // so re-reading the size and checking each time still finds
+            // every contact that was there when the scan began.
+            int i = first;
+            for (; i < layer.timelineSize(person); i++) {
+                int neighbour = layer.timelineNeighbour(person, i);
+                if (layer.timelineTime(person, i) >= timestamp
+                        && !seen.containsKey(neighbour)) {
+                    seen.put(neighbour, i);
+                    result.add(neighbour);
+                }
+            }
+            if (stats != null) {
+                stats.add(0, 0, 0, 0, i - first);
+            }
+        }
+    }
+
+    /**
+     * Initiates a contact trace starting with the given person, who
+     * became contagious at timeOfContagion.
+     * <p>
+     * Note that the return set shouldn't include the original person the trace
+     * started from.
+     *
+     * @param person          to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return set of people who may have contracted the disease, originating
+     * from person
+     */
+    public Set<String> contactTrace(String person, int timeOfContagion) {
+        return contactTrace(person, timeOfContagion, TraceMode.EARLIEST_ARRIVAL);
+    }
+
+    /**
+     * Initiates a contact trace starting with the given person, who
+     * became contagious at timeOfContagion, using the given tracing engine.
+     * <p>
+     * {@link TraceMode#EARLIEST_ARRIVAL} is the engine used by
+     * {@link #contactTrace(String, int)}. {@link TraceMode#RECURSIVE} is the
+     * original depth-first engine, kept as a reference to compare results
+     * against.
+     *
+     * @param person          to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param mode            the tracing engine to use
+     * @return set of people who may have contracted the disease, originating
+     * from person
+     * @require mode != null
+     */
+    public Set<String> contactTrace(String person, int timeOfContagion,
+                                    TraceMode mode) {
+        return toNames(contactTrace(names.idOf(person), timeOfContagion,
+                mode));
+    }
+
+    /**
+     * Initiates a contact trace starting with the person with the given ID.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return IDs of people who may have contracted the disease, originating
+     * from person, in no particular order
+     * @see #contactTrace(String, int)
+     */
+    public int[] contactTrace(int person, int timeOfContagion) {
+        return contactTrace(person, timeOfContagion, TraceMode.EARLIEST_ARRIVAL);
+    }
+
+    /**
+     * Initiates a contact trace starting with the person with the given ID,
+     * using the given tracing engine.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param mode            the tracing engine to use
+     * @return IDs of people who may have contracted the disease, originating
+     * from person, in no particular order
+     * @require mode != null
+     * @see #contactTrace(String, int, TraceMode)
+     */
+    public int[] contactTrace(int person, int timeOfContagion, TraceMode mode) {
+        if (mode != TraceMode.RECURSIVE) {
+            TraceScratch scratch = TraceScratch.acquire();
+            try {
+                return contactTrace(person, timeOfContagion, scratch);
+            } finally {
+                scratch.release();
+            }
+        }
+        QueryStats stats = startQuery();
+        // Map ID of infected person to time at which they are contagious.
+        IntIntMap infected = new IntIntMap();
+        if (isPerson(person) && timeOfContagion >= 0) {
+            infected.put(person, timeOfContagion);
+            // Maintain list of edges that have already been checked.
+            RecursiveTrace.trace(pinnedLayers(), infected, new HashSet<>(),
+                    person, stats);
+            infected.remove(person);
+        }
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE, nameOf(person),
+                    timeOfContagion, mode);
+        }
+        return infected.keys();
+    }
+
+    /**
+     * Initiates an earliest-arrival contact trace starting with the person
+     * with the given ID, using the given working state.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param scratch         working state, not in use by any other query
+     * @return IDs of people who may have contracted the disease, originating
+     * from person, in no particular order
+     */
+    int[] contactTrace(int person, int timeOfContagion, Scratch scratch) {
+        return contactTrace(person, timeOfContagion, scratch.trace);
+    }
+
+    /**
+     * Initiates a contact trace starting with the person with the given ID,
+     * passing each person reached to the given collector as the trace
+     * reaches them, in ascending order of infection time.
+     * <p>
+     * Working state is kept by each thread and reused, and nothing is
+     * collected unless the collector keeps it, so once the working state has
+     * grown to fit the traces a thread runs, a trace allocates nothing while
+     * query metrics are disabled. A collector may start other queries.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param collector       receives each person who may have contracted
+     *                        the disease, originating from person
+     * @return the number of people passed to the collector
+     * @require collector != null
+     * @see #contactTrace(String, int)
+     */
+    public int contactTrace(int person, int timeOfContagion,
+                            TraceCollector collector) {
+        QueryStats stats = startQuery();
+        TraceScratch scratch = TraceScratch.acquire();
+        int reached;
+        try {
+            reached = traceInto(person, timeOfContagion, scratch, collector,
+                    stats);
+        } finally {
+            scratch.release();
+        }
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE, nameOf(person),
+                    timeOfContagion);
+        }
+        return reached;
+    }
+
+    /**
+     * Initiates a contact trace starting with the given person, streaming
+     * the people it reaches in ascending order of infection time as they are
+     * pulled from the stream.
+     * <p>
+     * The trace only goes as far as the stream is consumed, so taking the
+     * first few people with {@link Stream#limit(long)} or
+     * {@link Stream#findFirst()} costs a small part of a full trace. The
+     * stream sees the traces added before it was created, and may or may not
+     * see ones added while it is consumed. While query metrics are enabled,
+     * the trace is recorded once the stream is exhausted or closed.
+     *
+     * @param person          to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return a sequential stream of the people who may have contracted the
+     * disease, originating from person, with their infection times
+     * @see #contactTrace(String, int)
+     */
+    public Stream<Infection> contactTraceStream(String person,
+                                                int timeOfContagion) {
+        return contactTraceStream(names.idOf(person), timeOfContagion);
+    }
+
+    /**
+     * Initiates a contact trace starting with the person with the given ID,
+     * streaming the people it reaches in ascending order of infection time
+     * as they are pulled from the stream.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return a sequential stream of the people who may have contracted the
+     * disease, originating from person, with their infection times
+     * @see #contactTraceStream(String, int)
+     */
+    public Stream<Infection> contactTraceStream(int person,
+                                                int timeOfContagion) {
+        int source = isPerson(person) && timeOfContagion >= 0 ? person : -1;
+        TraceSpliterator trace = new TraceSpliterator(pinnedLayers(), names,
+                source, timeOfContagion, startQuery(), nameOf(person),
+                timeOfContagion);
+        return StreamSupport.stream(trace, false).onClose(trace::finish);
+    }
+
+    /**
+     * Initiates a contact trace starting with the given person that only
+     * follows contacts up to the given end time, and only for the given
+     * number of generations of transmission. The traversal stops as soon as
+     * either bound is passed, so it costs less the tighter they are.
+     * <p>
+     * Each person is returned with the generation they were infected in: 1
+     * if person could have infected them directly, 2 if through one other
+     * person, and so on. Their infection time is the earliest they could
+     * have been infected within the bounds, which may be later than in an
+     * unbounded trace if the earlier chains take too many generations. With
+     * a generation limit, their generation is that of the shortest chain
+     * infecting them at that time, even if people in the chain pass it on
+     * later than their own earliest infection time, so it can be lower than
+     * {@link Infection#getGeneration()} says without a limit.
+     *
+     * @param person          the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param endTime         the latest time of a contact to follow
+     * @param maxGenerations  the most transmissions to follow from person,
+     *                        or {@link Integer#MAX_VALUE} for no limit
+     * @return the people who may have contracted the disease from person
+     * by endTime within maxGenerations, with their infection times and
+     * generations, in ascending order of infection time. Empty if the person
+     * doesn't exist, timeOfContagion is negative, endTime is before
+     * timeOfContagion or maxGenerations is less than 1.
+     */
+    public List<Infection> contactTraceWithin(String person,
+                                              int timeOfContagion,
+                                              int endTime,
+                                              int maxGenerations) {
+        return contactTraceWithin(names.idOf(person), timeOfContagion,
+                endTime, maxGenerations);
+    }
+
+    /**
+     * Initiates a contact trace starting with the person with the given ID,
+     * bounded by an end time and a number of generations.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param endTime         the latest time of a contact to follow
+     * @param maxGenerations  the most transmissions to follow from person,
+     *                        or {@link Integer#MAX_VALUE} for no limit
+     * @return the people who may have contracted the disease from person
+     * by endTime within maxGenerations, with their infection times and
+     * generations, in ascending order of infection time
+     * @see #contactTraceWithin(String, int, int, int)
+     */
+    public List<Infection> contactTraceWithin(int person,
+                                              int timeOfContagion,
+                                              int endTime,
+                                              int maxGenerations) {
+        QueryStats stats = startQuery();
+        List<Infection> result = isPerson(person) && timeOfContagion >= 0
+                ? BoundedTrace.trace(pinnedLayers(), names, person,
+                timeOfContagion, endTime, maxGenerations, stats)
+                : new ArrayList<>();
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE_WITHIN,
+                    nameOf(person), timeOfContagion, endTime, maxGenerations);
+        }
+        return result;
+    }
+
+    /**
+     * Traces backward from a case to everyone who could have infected them
+     * by the given time, such as when they showed symptoms. Contacts are
+     * walked backward in time, each person needing to have been infected 60
+     * minutes before a contact to pass it on at that contact.
+     *
+     * @param person          the case to trace back from
+     * @param timeOfInfection the latest time person could have been infected
+     * @return everyone who could have infected person by timeOfInfection,
+     * directly or through others, with the latest time each could have been
+     * infected themselves, in descending order of that time. Empty if the
+     * person doesn't exist or timeOfInfection is negative.
+     */
+    public List<InfectionSource> possibleSources(String person,
+                                                 int timeOfInfection) {
+        return possibleSources(names.idOf(person), timeOfInfection);
+    }
+
+    /**
+     * Traces backward from the case with the given ID to everyone who could
+     * have infected them by the given time.
+     *
+     * @param person          ID of the case to trace back from
+     * @param timeOfInfection the latest time person could have been infected
+     * @return everyone who could have infected person by timeOfInfection,
+     * with the latest time each could have been infected themselves, in
+     * descending order of that time
+     * @see #possibleSources(String, int)
+     */
+    public List<InfectionSource> possibleSources(int person,
+                                                 int timeOfInfection) {
+        QueryStats stats = startQuery();
+        List<InfectionSource> result = new ArrayList<>();
+        if (isPerson(person) && timeOfInfection >= 0) {
+            TraceScratch scratch = TraceScratch.acquire();
+            try {
+                BackwardTrace.trace(pinnedLayers(), names, person,
+                        timeOfInfection, scratch, result, stats);
+            } finally {
+                scratch.release();
+            }
+        }
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.POSSIBLE_SOURCES, nameOf(person),
+                    timeOfInfection);
+        }
+        return result;
+    }
+
+    /**
+     * Initiates an earliest-arrival contact trace starting with the person
+     * with the given ID, using the given working state.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param scratch         working state, not in use by any other query
+     * @return IDs of people who may have contracted the disease, originating
+     * from person, in ascending order of infection time
+     */
+    private int[] contactTrace(int person, int timeOfContagion,
+                               TraceScratch scratch) {
+        QueryStats stats = startQuery();
+        traceInto(person, timeOfContagion, scratch, null, stats);
+        IntList settled = scratch.settled;
+        // The first person settled is the one the trace started from.
+        int[] result = new int[Math.max(settled.size() - 1, 0)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = settled.get(i + 1);
+        }
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE, nameOf(person),
+                    timeOfContagion);
+        }
+        return result;
+    }
+
+    /**
+     * Initiates an earliest-arrival contact trace starting with the person
+     * with the given ID, keeping the time each person became contagious.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return every person reached, including the source, mapped to the
+     * earliest time they could have become contagious. Empty if no person
+     * has the ID or the time is negative.
+     */
+    IntIntMap contagiousTimes(int person, int timeOfContagion) {
+        IntIntMap infected = new IntIntMap();
+        if (isPerson(person) && timeOfContagion >= 0) {
+            infected.put(person, timeOfContagion);
+            EarliestArrival.trace(pinnedLayers(), infected, null, null);
+        }
+        return infected;
+    }
+
+    /**
+     * Initiates one contact trace from several index cases at once, each of
+     * whom became contagious at their own time.
+     * <p>
+     * The result is the same as tracing from each index case separately and
+     * combining the results, without the index cases themselves, but people
+     * reachable from several index cases are only traced once.
+     *
+     * @param indexCases each index case mapped to the exact time they became
+     *                   contagious
+     * @return set of people who may have contracted the disease, originating
+     * from any of the index cases
+     * @require indexCases != null
+     */
+    public Set<String> contactTrace(Map<String, Integer> indexCases) {
+        QueryStats stats = startQuery();
+        Set<String> result = toNames(traceFrom(indexCases, null, stats)
+                .keys());
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE, indexCases);
+        }
+        return result;
+    }
+
+    /**
+     * Initiates one contact trace from several index cases at once, reporting
+     * which index case reached each person first.
+     * <p>
+     * Each person is attributed to the index case whose chain of contacts
+     * could have made them contagious earliest. If an index case could have
+     * been infected earlier by another, people they reach are attributed to
+     * that other index case.
+     *
+     * @param indexCases each index case mapped to the exact time they became
+     *                   contagious
+     * @return every person who may have contracted the disease, other than
+     * the index cases, mapped to the index case that reached them first
+     * @require indexCases != null
+     * @see #contactTrace(Map)
+     */
+    public Map<String, String> contactTraceSources(
+            Map<String, Integer> indexCases) {
+        QueryStats stats = startQuery();
+        IntIntMap sources = new IntIntMap();
+        IntIntMap infected = traceFrom(indexCases, sources, stats);
+        Map<String, String> result = new HashMap<>();
+        for (int id : infected.keys()) {
+            result.put(names.nameOf(id), names.nameOf(sources.get(id, -1)));
+        }
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE_SOURCES,
+                    indexCases);
+        }
+        return result;
+    }
+
+    /**
+     * Initiates one contact trace from the index cases with the given IDs.
+     *
+     * @param people           IDs of the index cases
+     * @param timesOfContagion the exact time each index case became
+     *                         contagious, parallel to people
+     * @return IDs of people who may have contracted the disease, originating
+     * from any of the index cases, in no particular order
+     * @require people != null &amp;&amp; timesOfContagion != null &amp;&amp;
+     * people.length == timesOfContagion.length
+     * @see #contactTrace(Map)
+     */
+    public int[] contactTrace(int[] people, int[] timesOfContagion) {
+        QueryStats stats = startQuery();
+        IntIntMap infected = new IntIntMap();
+        IntList seeds = new IntList();
+        for (int i = 0; i < people.length; i++) {
+            seed(infected, seeds, people[i], timesOfContagion[i]);
+        }
+        int[] result = traceSeeds(infected, seeds, null, stats).keys();
+        if (stats != null) {
+            // Formatted only if the query is logged as slow.
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE, people,
+                    timesOfContagion);
+        }
+        return result;
+    }
+
+    /**
+     * Ranks the people who could have infected the most others if they had
+     * been contagious from the given time, by the estimated size of
+     * {@link #contactTrace(String, int)} from each of them.
+     * <p>
+     * Every person is estimated at once, in one sweep over the contacts from
+     * the latest back to the given time, using a HyperLogLog sketch of 128
+     * bytes per person with contacts. Estimates have a relative standard
+     * error of about 9%, and each comes with bounds that the exact size
+     * falls within about 95% of the time.
+     *
+     * @param count the number of people to rank
+     * @param from  the time every person is taken to become contagious
+     * @return up to count people, by descending estimate, then by ID
+     * @see #rankSpreaders(int, int, int)
+     */
+    public List<Spreader> rankSpreaders(int count, int from) {
+        return rankSpreaders(count, from, SpreaderRanking.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Ranks the people who could have infected the most others if they had
+     * been contagious from the given time, using sketches of
+     * {@code 2^precision} bytes per person. Each extra bit of precision
+     * doubles the memory used and cuts the error by a factor of about 1.4.
+     *
+     * @param count     the number of people to rank
+     * @param from      the time every person is taken to become contagious
+     * @param precision the log2 of the size of each person's sketch, from 4
+     *                  to 16
+     * @return up to count people, by descending estimate, then by ID
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    public List<Spreader> rankSpreaders(int count, int from, int precision) {
+        if (precision < SpreaderRanking.MIN_PRECISION
+                || precision > SpreaderRanking.MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "precision must be from 4 to 16: " + precision);
+        }
+        QueryStats stats = startQuery();
+        ContactGraph[] current = pinnedLayers();
+        SpreaderRanking ranking = new SpreaderRanking(names.size(),
+                precision);
+        ranking.sweep(current, Math.max(from, 0), stats);
+        List<Spreader> result = ranking.top(count, names);
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.RANK_SPREADERS, count, from,
+                    precision);
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether a person who became contagious at the given time could
+     * have passed the disease on to another, directly or through others.
+     * <p>
+     * Gives the same answer as checking whether other is in the result of
+     * {@link #contactTrace(String, int)}, but answers from the reachability
+     * index when one has been built with {@link #buildReachabilityIndex()},
+     * searching only when the index can't rule out a path through traces
+     * added since it was built.
+     *
+     * @param person          the person who became contagious
+     * @param other           the person who may have been infected
+     * @param timeOfContagion the exact time person became contagious
+     * @return true if other may have contracted the disease from person.
+     * False if either has no contact traces, or they are the same person.
+     * @require person != null &amp;&amp; other != null &amp;&amp;
+     * timeOfContagion &gt;= 0
+     */
+    public boolean canInfect(String person, String other,
+                             int timeOfContagion) {
+        return canInfect(names.idOf(person), names.idOf(other),
+                timeOfContagion);
+    }
+
+    /**
+     * Checks whether the person with the given ID, contagious at the given
+     * time, could have passed the disease on to the person with the other ID.
+     *
+     * @param person          ID of the person who became contagious
+     * @param other           ID of the person who may have been infected
+     * @param timeOfContagion the exact time person became contagious
+     * @return true if other may have contracted the disease from person
+     * @see #canInfect(String, String, int)
+     */
+    public boolean canInfect(int person, int other, int timeOfContagion) {
+        QueryStats stats = startQuery();
+        boolean result = canInfect(person, other, timeOfContagion, stats);
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.CAN_INFECT, nameOf(person),
+                    nameOf(other), timeOfContagion);
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the person with the given ID, contagious at the given
+     * time, could have passed the disease on to the person with the other ID.
+     *
+     * @param person          ID of the person who became contagious.
+     * @param other           ID of the person who may have been infected.
+     * @param timeOfContagion The exact time person became contagious.
+     * @param stats           Counters of the query's work, or null.
+     * @return true if other may have contracted the disease from person.
+     */
+    private boolean canInfect(int person, int other, int timeOfContagion,
+                              QueryStats stats) {
+        if (!isPerson(person) || !isPerson(other) || person == other
+                || timeOfContagion < 0) {
+            return false;
+        }
+        ContactGraph[] current = pinnedLayers();
+        IndexMaintainer maintainer = reachability;
+        ReachabilityIndex index = maintainer == null ? null
+                : maintainer.index();
+        if (index != null && current.length == 2
+                && current[0] == index.graph()) {
+            // Contacts are only ever added to the snapshot's graph, so a
+            // path the index finds is still there.
+            if (index.canInfect(person, other, timeOfContagion)) {
+                return true;
+            }
+            if (((MutableContactGraph) current[1]).isEmpty()) {
+                return false;
+            }
+        }
+        return EarliestArrival.reaches(current, person, other,
+                timeOfContagion, stats);
+    }
+
+    /**
+     * Finds the earliest time one person, contagious from the given time,
+     * could have infected another, and a chain of contacts that does it.
+     * <p>
+     * The infection time is the same as the contact at which
+     * {@link #contactTrace(String, int)} would first reach the other person.
+     * Rather than tracing everyone the first person could reach, the search
+     * also works backward from the other person and only follows people who
+     * could still pass the disease on to them in time.
+     *
+     * @param person          the person who became contagious
+     * @param timeOfContagion the exact time person became contagious
+     * @param other           the person who may have been infected
+     * @return the earliest infection of other and the contacts leading to
+     * it, or null if other can't have been infected by person
+     * @require person != null &amp;&amp; other != null &amp;&amp;
+     * timeOfContagion &gt;= 0
+     */
+    public InfectionPath infectionPath(String person, int timeOfContagion,
+                                       String other) {
+        return infectionPath(names.idOf(person), timeOfContagion,
+                names.idOf(other));
+    }
+
+    /**
+     * Finds the earliest time the person with the given ID, contagious from
+     * the given time, could have infected the person with the other ID.
+     *
+     * @param person          ID of the person who became contagious
+     * @param timeOfContagion the exact time person became contagious
+     * @param other           ID of the person who may have been infected
+     * @return the earliest infection of other and the contacts leading to
+     * it, or null if other can't have been infected by person
+     * @see #infectionPath(String, int, String)
+     */
+    public InfectionPath infectionPath(int person, int timeOfContagion,
+                                       int other) {
+        QueryStats stats = startQuery();
+        InfectionPath result = null;
+        if (isPerson(person) && isPerson(other) && person != other
+                && timeOfContagion >= 0) {
+            PairSearch search = new PairSearch(pinnedLayers(), person,
+                    timeOfContagion, other);
+            if (search.run()) {
+                result = toPath(person, other, search.contagious(),
+                        search.infector(), search.edgesVisited());
+            }
+            if (stats != null) {
+                search.addTo(stats);
+            }
+        }
+        if (stats != null) {
+            stats.finish(QueryMetrics.Query.INFECTION_PATH, nameOf(person),
+                    timeOfContagion, nameOf(other));
+        }
+        return result;
+    }
+
+    /**
+     * Follow the infectors back from the end of a path to its start.
+     *
+     * @param person       ID of the person at the start of the path.
+     * @param other        ID of the person at the end of the path.
+     * @param contagious   Each person reached mapped to the time they became
+     *                     contagious.
+     * @param infector     Each person reached mapped to who infected them.
+     * @param edgesVisited Number of edges the search looked at.
+     * @return The path.
+     */
+    private InfectionPath toPath(int person, int other, IntIntMap contagious,
+                                 IntIntMap infector, int edgesVisited) {
+        List<Trace> chain = new ArrayList<>();
+        for (int at = other; at != person; at = infector.get(at, -1)) {
+            chain.add(new Trace(names.nameOf(infector.get(at, -1)),
+                    names.nameOf(at),
+                    contagious.get(at, -1) - CONTAGION_DELAY));
+        }
+        Collections.reverse(chain);
+        return new InfectionPath(chain, edgesVisited);
+    }
+
+    /**
+     * Trace from the named index cases, skipping any that have no contacts
+     * or an invalid time.
+     *
+     * @param indexCases Each index case mapped to the time they became
+     *                   contagious.
+     * @param sources    Map to fill with the index case that reached each
+     *                   person first, or null if not needed.
+     * @param stats      Counters of the query's work, or null.
+     * @return Every person reached, other than the index cases, mapped to the
+     * time they became contagious.
+     */
+    private IntIntMap traceFrom(Map<String, Integer> indexCases,
+                                IntIntMap sources, QueryStats stats) {
+        IntIntMap infected = new IntIntMap();
+        IntList seeds = new IntList();
+        for (Map.Entry<String, Integer> indexCase : indexCases.entrySet()) {
+            if (indexCase.getValue() != null) {
+                seed(infected, seeds, names.idOf(indexCase.getKey()),
+                        indexCase.getValue());
+            }
+        }
+        return traceSeeds(infected, seeds, sources, stats);
+    }
+
+    /**
+     * Add an index case to a multi-source trace, keeping the earliest time if
+     * the same person is given twice.
+     *
+     * @param infected        People infected so far, mapped to the time they
+     *                        became contagious.
+     * @param seeds           IDs of the index cases added so far.
+     * @param person          ID of the index case.
+     * @param timeOfContagion Time the index case became contagious.
+     */
+    private void seed(IntIntMap infected, IntList seeds, int person,
+                      int timeOfContagion) {
+        if (!isPerson(person) || timeOfContagion < 0) {
+            return;
+        }
+        int existing = infected.get(person, -1);
+        if (existing < 0) {
+            seeds.add(person);
+        }
+        if (existing < 0 || timeOfContagion < existing) {
+            infected.put(person, timeOfContagion);
+        }
+    }
+
+    /**
+     * Trace from the given index cases, then drop them from the result.
+     *
+     * @param infected Each index case mapped to the time they became
+     *                 contagious.
+     * @param seeds    IDs of the index cases.
+     * @param sources  Map to fill with the index case that reached each
+     *                 person first, or null if not needed.
+     * @param stats    Counters of the query's work, or null.
+     * @return Every person reached, other than the index cases, mapped to the
+     * time they became contagious.
+     */
+    private IntIntMap traceSeeds(IntIntMap infected, IntList seeds,
+                                 IntIntMap sources, QueryStats stats) {
+        if (sources != null) {
+            for (int i = 0; i < seeds.size(); i++) {
+                sources.put(seeds.get(i), seeds.get(i));
+            }
+        }
+        EarliestArrival.trace(pinnedLayers(), infected, sources, stats);
+        for (int i = 0; i < seeds.size(); i++) {
+            infected.remove(seeds.get(i));
+        }
+        return infected;
+    }
+
+    /**
+     * Earliest-arrival trace from one person on reusable working state.
+     *
+     * @param person          ID of the person to trace from.
+     * @param timeOfContagion Time the person became contagious.
+     * @param scratch         Working state, left holding the people settled
+     *                        in order, starting with person.
+     * @param collector       Receives everyone reached other than person, or
+     *                        null.
+     * @param stats           Counters of the query's work, or null.
+     * @return The number of people reached other than person.
+     */
+    private int traceInto(int person, int timeOfContagion,
+                          TraceScratch scratch, TraceCollector collector,
+                          QueryStats stats) {
+        if (!isPerson(person) || timeOfContagion < 0) {
+            scratch.start();
+            return 0;
+        }
+        return EarliestArrival.trace(pinnedLayers(), person, timeOfContagion,
+                scratch, collector, stats);
+    }
+
+    /**
+     * Extend an earliest-arrival trace after finding that a person could
+     * have become contagious earlier than the trace records, such as through
+     * a newly added contact.
+     *
+     * @param infected   everyone reached by the trace, mapped to the time
+     *                   they became contagious, updated in place
+     * @param person     ID of the person whose time improved
+     * @param contagious the earlier time the person became contagious
+     * @param reached    list to add people newly added to the trace to
+     * @see EarliestArrival#propagate
+     */
+    void propagate(IntIntMap infected, int person, int contagious,
+                   IntList reached) {
+        EarliestArrival.propagate(pinnedLayers(), infected, person,
+                contagious, reached);
+    }
+
+    /**
+     * Merge two ascending runs of contact times into one, dropping repeats.
+     *
+     * @param first  The first run of times.
+     * @param second The second run of times.
+     * @return A read-only buffer of every time in either run, in ascending
+     * order.
+     */
+    private static IntBuffer merge(IntBuffer first, IntBuffer second) {
+        int[] merged = new int[first.remaining() + second.remaining()];
+        int i = first.position();
+        int j = second.position();
+        int count = 0;
+        while (i < first.limit() || j < second.limit()) {
+            int next;
+            if (j >= second.limit()
+                    || (i < first.limit() && first.get(i) <= second.get(j))) {
+                next = first.get(i++);
+            } else {
+                next = second.get(j++);
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return IntBuffer.wrap(merged, 0, count).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Read the layers of the graph for a query, with every buffer replaced
+     * by a graph that holds the same contacts throughout the query.
+     *
+     * @return The layers of the graph, oldest first.
+     * @see MutableContactGraph#pin()
+     */
+    private ContactGraph[] pinnedLayers() {
+        ContactGraph[] current = layers;
+        ContactGraph[] pinned = current;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] instanceof MutableContactGraph) {
+                ContactGraph view = ((MutableContactGraph) current[i]).pin();
+                if (view != current[i]) {
+                    if (pinned == current) {
+                        pinned = current.clone();
+                    }
+                    pinned[i] = view;
+                }
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Count the layers of the graph holding contacts of the given person.
+     *
+     * @param current The layers of the graph.
+     * @param person  The ID of the person.
+     * @return The number of layers where the person has at least one edge.
+     */
+    private static int layersWithContacts(ContactGraph[] current, int person) {
+        int count = 0;
+        for (ContactGraph layer : current) {
+            if (layer.degree(person) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Start counting the work of a query, if queries are being measured.
+     *
+     * @return Counters for the query, or null if queries aren't measured.
+     */
+    private QueryStats startQuery() {
+        QueryMetrics current = metrics;
+        return current == null ? null : current.start();
+    }
+
+    /**
+     * @param id The ID of a person.
+     * @return Their name, or the ID itself if no person has it, to log as a
+     * query parameter.
+     */
+    private Object nameOf(int id) {
+        return isPerson(id) ? names.nameOf(id) : id;
+    }
+
+    /**
+     * @param id The ID to check.
+     * @return true if a person has been assigned the given ID.
+     */
+    private boolean isPerson(int id) {
+        return id >= 0 && id < names.size();
+    }
+
+    /**
+     * Map the given IDs to their names.
+     *
+     * @param ids The IDs of people.
+     * @return The set of names of those people.
+     */
+    private Set<String> toNames(int[] ids) {
+        HashSet<String> result = new HashSet<>();
+        for (int id : ids) {
+            result.add(names.nameOf(id));
+        }
+        return result;
+    }
+
+    /**
+     * Working state of a query, kept by a thread that runs many queries so
+     * each one doesn't allocate its own.
+     */
+    static final class Scratch {
+        // Working state of a trace.
+        final TraceScratch trace = new TraceScratch();
+        // Contacts already listed by getContactsAfter.
+        final IntIntMap seen = new IntIntMap();
+        // Contacts listed by getContactsAfter, in the order found.
+        final IntList found = new IntList();
+    }
+
+    /**
+     * Engines available to perform a contact trace with.
+     */
+    public enum TraceMode {
+        /**
+         * Iterative earliest-arrival search. Each person is visited once, at
+         * the earliest time they could have become contagious.
+         */
+        EARLIEST_ARRIVAL,
+        /**
+         * Original recursive depth-first search. Recursion depth grows with
+         * the length of the transmission chain.
+         */
+        RECURSIVE
     }
 
 }
@@ -0,0 +1,574 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable contact graph in compressed sparse row (CSR) form.
+ * <p>
+ * Every array is flat. The edges of vertex {@code v} occupy positions
+ * {@code edgeOffsets[v]} to {@code edgeOffsets[v + 1]} of the neighbour and
+ * edge ID arrays, sorted by neighbour ID. Each undirected edge stores its
+ * contact times once, as a slice of the times array, and both directions refer
+ * to it by edge ID. The timeline of vertex {@code v} occupies positions
+ * {@code timelineOffsets[v]} to {@code timelineOffsets[v + 1]} of the
+ * timeline arrays.
+ */
+class CsrGraph implements CompactGraph {
+
+    // Slices at least this long are sorted with a parallel sort of their own.
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    // One more than the highest vertex ID in the graph.
+    private final int vertexCount;
+    // Start of each vertex's edges, with a final entry marking the end.
+    private final int[] edgeOffsets;
+    // ID of the vertex opposite each edge, ascending within each vertex.
+    private final int[] neighbours;
+    // ID of the undirected edge behind each directed edge.
+    private final int[] edgeIds;
+    // Start of each undirected edge's contact times, with a final entry
+    // marking the end.
+    private final int[] timeOffsets;
+    // Contact times of every undirected edge, ascending within each edge.
+    private final int[] times;
+    // Start of each vertex's timeline, with a final entry marking the end.
+    private final int[] timelineOffsets;
+    // Time of every contact in each vertex's timeline.
+    private final int[] timelineTimes;
+    // ID of the vertex met in each contact, parallel to timelineTimes.
+    private final int[] timelineNeighbours;
+
+    /**
+     * Creates a graph from fully built CSR arrays.
+     */
+    private CsrGraph(int vertexCount, int[] edgeOffsets, int[] neighbours,
+                     int[] edgeIds, int[] timeOffsets, int[] times,
+                     int[] timelineOffsets, int[] timelineTimes,
+                     int[] timelineNeighbours) {
+        this.vertexCount = vertexCount;
+        this.edgeOffsets = edgeOffsets;
+        this.neighbours = neighbours;
+        this.edgeIds = edgeIds;
+        this.timeOffsets = timeOffsets;
+        this.times = times;
+        this.timelineOffsets = timelineOffsets;
+        this.timelineTimes = timelineTimes;
+        this.timelineNeighbours = timelineNeighbours;
+    }
+
+    /**
+     * Build a graph from a list of contact traces in bulk.
+     * <p>
+     * Names are interned in order of first appearance. Contacts are grouped
+     * by the smaller of their two IDs, then every group is sorted once, in
+     * parallel. Invalid traces are skipped and repeated contacts are stored
+     * once, as {@link ContactTracer#addTrace(Trace)} would.
+     *
+     * @param traces The contact traces to build from.
+     * @param names  The table to intern names into.
+     * @return The built graph.
+     * @require traces != null &amp;&amp; names != null
+     */
+    static CsrGraph build(List<Trace> traces, NameTable names) {
+        int[] lows = new int[traces.size()];
+        int[] highs = new int[traces.size()];
+        int[] contactTimes = new int[traces.size()];
+        int count = 0;
+        for (Trace trace : traces) {
+            if (trace == null) {
+                continue;
+            }
+            String person1 = trace.getPerson1();
+            String person2 = trace.getPerson2();
+            int time = trace.getTime();
+            if (person1 != null && person2 != null && time >= 0 &&
+                    !person1.equals(person2)) {
+                int id1 = names.intern(person1);
+                int id2 = names.intern(person2);
+                lows[count] = Math.min(id1, id2);
+                highs[count] = Math.max(id1, id2);
+                contactTimes[count] = time;
+                count++;
+            }
+        }
+        return build(names.size(), lows, highs, contactTimes, count);
+    }
+
+    /**
+     * Build a graph holding every contact at or after a cutoff time from the
+     * given layers. People left with no contacts keep their ID but have no
+     * edges.
+     *
+     * @param layers The graphs to read contacts from. Must not be written
+     *               while this runs.
+     * @param cutoff The earliest contact time to keep.
+     * @return The built graph.
+     */
+    static CsrGraph compact(ContactGraph[] layers, int cutoff) {
+        int vertexCount = 0;
+        for (ContactGraph layer : layers) {
+            vertexCount = Math.max(vertexCount, layer.vertexCount());
+        }
+        // Each edge is read from its smaller end only.
+        int count = 0;
+        for (ContactGraph layer : layers) {
+            for (int v = 0; v < vertexCount; v++) {
+                int degree = layer.degree(v);
+                for (int i = 0; i < degree; i++) {
+                    if (layer.neighbour(v, i) > v
+                            && layer.lastContact(v, i) >= cutoff) {
+                        count += layer.contactTimes(v, i, cutoff,
+                                Integer.MAX_VALUE).remaining();
+                    }
+                }
+            }
+        }
+        int[] lows = new int[count];
+        int[] highs = new int[count];
+        int[] contactTimes = new int[count];
+        int position = 0;
+        for (ContactGraph layer : layers) {
+            for (int v = 0; v < vertexCount; v++) {
+                int degree = layer.degree(v);
+                for (int i = 0; i < degree; i++) {
+                    int other = layer.neighbour(v, i);
+                    if (other > v && layer.lastContact(v, i) >= cutoff) {
+                        IntBuffer kept = layer.contactTimes(v, i, cutoff,
+                                Integer.MAX_VALUE);
+                        while (kept.hasRemaining()) {
+                            lows[position] = v;
+                            highs[position] = other;
+                            contactTimes[position] = kept.get();
+                            position++;
+                        }
+                    }
+                }
+            }
+        }
+        return build(vertexCount, lows, highs, contactTimes, count);
+    }
+
+    /**
+     * Build a graph from contacts between interned IDs.
+     *
+     * @param vertexCount  One more than the highest ID in use.
+     * @param lows         The smaller ID of each contact.
+     * @param highs        The larger ID of each contact.
+     * @param contactTimes The time of each contact.
+     * @param count        The number of contacts to read from the arrays.
+     * @return The built graph.
+     */
+    static CsrGraph build(int vertexCount, int[] lows, int[] highs,
+                          int[] contactTimes, int count) {
+        // Group contacts by smaller ID. Packing the larger ID above the time
+        // means sorting a group orders it by neighbour, then by time.
+        int[] groupOffsets = new int[vertexCount + 1];
+        for (int i = 0; i < count; i++) {
+            groupOffsets[lows[i] + 1]++;
+        }
+        prefixSum(groupOffsets);
+        long[] grouped = new long[count];
+        int[] fill = Arrays.copyOf(groupOffsets, vertexCount);
+        for (int i = 0; i < count; i++) {
+            grouped[fill[lows[i]]++] = pack(highs[i], contactTimes[i]);
+        }
+        sortSlices(grouped, groupOffsets);
+
+        // Count distinct edges and contacts, skipping repeats.
+        int edgeCount = 0;
+        int contactCount = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            for (int i = groupOffsets[v]; i < groupOffsets[v + 1]; i++) {
+                boolean first = i == groupOffsets[v];
+                if (first || grouped[i] != grouped[i - 1]) {
+                    contactCount++;
+                }
+                if (first || high(grouped[i]) != high(grouped[i - 1])) {
+                    edgeCount++;
+                }
+            }
+        }
+
+        // Lay out each undirected edge and its contact times, in order of
+        // smaller ID then larger ID.
+        int[] edgeLows = new int[edgeCount];
+        int[] edgeHighs = new int[edgeCount];
+        int[] timeOffsets = new int[edgeCount + 1];
+        int[] times = new int[contactCount];
+        int edge = -1;
+        int contact = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            for (int i = groupOffsets[v]; i < groupOffsets[v + 1]; i++) {
+                boolean first = i == groupOffsets[v];
+                if (first || high(grouped[i]) != high(grouped[i - 1])) {
+                    edge++;
+                    edgeLows[edge] = v;
+                    edgeHighs[edge] = high(grouped[i]);
+                    timeOffsets[edge] = contact;
+                }
+                if (first || grouped[i] != grouped[i - 1]) {
+                    times[contact++] = low(grouped[i]);
+                }
+            }
+        }
+        timeOffsets[edgeCount] = contact;
+        grouped = null;
+
+        // Each contact appears in the timelines of both its vertices.
+        int[] timelineOffsets = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            int contacts = timeOffsets[e + 1] - timeOffsets[e];
+            timelineOffsets[edgeLows[e] + 1] += contacts;
+            timelineOffsets[edgeHighs[e] + 1] += contacts;
+        }
+        prefixSum(timelineOffsets);
+        long[] timeline = new long[contactCount * 2];
+        int[] timelineFill = Arrays.copyOf(timelineOffsets, vertexCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int low = edgeLows[e];
+            int high = edgeHighs[e];
+            for (int t = timeOffsets[e]; t < timeOffsets[e + 1]; t++) {
+                timeline[timelineFill[low]++] = pack(times[t], high);
+                timeline[timelineFill[high]++] = pack(times[t], low);
+            }
+        }
+
+        // Packing the time above the neighbour means sorting a timeline
+        // orders it by time.
+        sortSlices(timeline, timelineOffsets);
+        int[] timelineTimes = new int[timeline.length];
+        int[] timelineNeighbours = new int[timeline.length];
+        for (int i = 0; i < timeline.length; i++) {
+            timelineTimes[i] = high(timeline[i]);
+            timelineNeighbours[i] = low(timeline[i]);
+        }
+        return withEdgeLists(vertexCount, edgeLows, edgeHighs, timeOffsets,
+                times, timelineOffsets, timelineTimes, timelineNeighbours);
+    }
+
+    /**
+     * Build a graph holding the contacts of two graphs. Both are already
+     * sorted, so their edges and timelines are merged in a single pass
+     * instead of being sorted again. Contacts held by both are stored once.
+     *
+     * @param older One of the graphs to merge.
+     * @param newer The other graph to merge.
+     * @return The merged graph.
+     * @require older != null &amp;&amp; newer != null
+     */
+    static CsrGraph merge(CsrGraph older, CsrGraph newer) {
+        int vertexCount = Math.max(older.vertexCount, newer.vertexCount);
+        int maxEdges = older.timeOffsets.length + newer.timeOffsets.length - 2;
+        int maxContacts = older.times.length + newer.times.length;
+        int[] edgeLows = new int[maxEdges];
+        int[] edgeHighs = new int[maxEdges];
+        int[] timeOffsets = new int[maxEdges + 1];
+        int[] times = new int[maxContacts];
+        int[] timelineOffsets = new int[vertexCount + 1];
+        int[] timelineTimes = new int[maxContacts * 2];
+        int[] timelineNeighbours = new int[maxContacts * 2];
+        int edge = 0;
+        int contact = 0;
+        int position = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            // Each undirected edge is read from its smaller end, where both
+            // graphs list them by ascending larger ID.
+            int iEnd = older.edgeStart(v + 1);
+            int i = SortedInts.lowerBound(older.neighbours, older.edgeStart(v),
+                    iEnd, v + 1);
+            int jEnd = newer.edgeStart(v + 1);
+            int j = SortedInts.lowerBound(newer.neighbours, newer.edgeStart(v),
+                    jEnd, v + 1);
+            while (i < iEnd || j < jEnd) {
+                long a = i < iEnd ? older.neighbours[i] : Long.MAX_VALUE;
+                long b = j < jEnd ? newer.neighbours[j] : Long.MAX_VALUE;
+                edgeLows[edge] = v;
+                edgeHighs[edge] = (int) Math.min(a, b);
+                timeOffsets[edge++] = contact;
+                int s = 0;
+                int sEnd = 0;
+                int t = 0;
+                int tEnd = 0;
+                if (a <= b) {
+                    int id = older.edgeIds[i++];
+                    s = older.timeOffsets[id];
+                    sEnd = older.timeOffsets[id + 1];
+                }
+                if (b <= a) {
+                    int id = newer.edgeIds[j++];
+                    t = newer.timeOffsets[id];
+                    tEnd = newer.timeOffsets[id + 1];
+                }
+                while (s < sEnd || t < tEnd) {
+                    long first = s < sEnd ? older.times[s] : Long.MAX_VALUE;
+                    long second = t < tEnd ? newer.times[t] : Long.MAX_VALUE;
+                    times[contact++] = (int) Math.min(first, second);
+                    s += first <= second ? 1 : 0;
+                    t += second <= first ? 1 : 0;
+                }
+            }
+
+            // Timelines are ordered by time, then neighbour, as a packed
+            // long orders them.
+            timelineOffsets[v] = position;
+            int s = older.timelineStart(v);
+            int sEnd = older.timelineStart(v + 1);
+            int t = newer.timelineStart(v);
+            int tEnd = newer.timelineStart(v + 1);
+            while (s < sEnd || t < tEnd) {
+                long first = s < sEnd ? pack(older.timelineTimes[s],
+                        older.timelineNeighbours[s]) : Long.MAX_VALUE;
+                long second = t < tEnd ? pack(newer.timelineTimes[t],
+                        newer.timelineNeighbours[t]) : Long.MAX_VALUE;
+                long next = Math.min(first, second);
+                timelineTimes[position] = high(next);
+                timelineNeighbours[position++] = low(next);
+                s += first <= second ? 1 : 0;
+                t += second <= first ? 1 : 0;
+            }
+        }
+        timeOffsets[edge] = contact;
+        timelineOffsets[vertexCount] = position;
+        return withEdgeLists(vertexCount, edgeLows, edgeHighs,
+                Arrays.copyOf(timeOffsets, edge + 1),
+                Arrays.copyOf(times, contact), timelineOffsets,
+                Arrays.copyOf(timelineTimes, position),
+                Arrays.copyOf(timelineNeighbours, position));
+    }
+
+    /**
+     * Build a graph from its undirected edges and timelines by laying out
+     * the edge list of every vertex.
+     *
+     * @param vertexCount        One more than the highest ID in use.
+     * @param edgeLows           The smaller ID of each undirected edge, in
+     *                           order of smaller ID then larger ID.
+     * @param edgeHighs          The larger ID of each undirected edge.
+     * @param timeOffsets        The start of each undirected edge's contact
+     *                           times, with a final entry marking the end.
+     * @param times              The contact times of every undirected edge.
+     * @param timelineOffsets    The start of each vertex's timeline, with a
+     *                           final entry marking the end.
+     * @param timelineTimes      The time of every contact in each timeline.
+     * @param timelineNeighbours The ID of the vertex met in each contact.
+     * @return The built graph.
+     */
+    private static CsrGraph withEdgeLists(int vertexCount, int[] edgeLows,
+                                          int[] edgeHighs, int[] timeOffsets,
+                                          int[] times, int[] timelineOffsets,
+                                          int[] timelineTimes,
+                                          int[] timelineNeighbours) {
+        // Each undirected edge appears in the edge lists of both its
+        // vertices. Visiting edges in order keeps every list sorted.
+        int edgeCount = timeOffsets.length - 1;
+        int[] edgeOffsets = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            edgeOffsets[edgeLows[e] + 1]++;
+            edgeOffsets[edgeHighs[e] + 1]++;
+        }
+        prefixSum(edgeOffsets);
+        int[] neighbours = new int[edgeCount * 2];
+        int[] edgeIds = new int[edgeCount * 2];
+        int[] edgeFill = Arrays.copyOf(edgeOffsets, vertexCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int low = edgeLows[e];
+            int high = edgeHighs[e];
+            neighbours[edgeFill[low]] = high;
+            edgeIds[edgeFill[low]++] = e;
+            neighbours[edgeFill[high]] = low;
+            edgeIds[edgeFill[high]++] = e;
+        }
+        return new CsrGraph(vertexCount, edgeOffsets, neighbours, edgeIds,
+                timeOffsets, times, timelineOffsets, timelineTimes,
+                timelineNeighbours);
+    }
+
+    @Override
+    public long contactCount() {
+        return times.length;
+    }
+
+    @Override
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        if (vertex < 0 || vertex >= vertexCount) {
+            return 0;
+        }
+        return edgeOffsets[vertex + 1] - edgeOffsets[vertex];
+    }
+
+    @Override
+    public int neighbour(int vertex, int edge) {
+        return neighbours[edgeOffsets[vertex] + edge];
+    }
+
+    @Override
+    public int findEdge(int vertex, int other) {
+        if (vertex < 0 || vertex >= vertexCount) {
+            return -1;
+        }
+        int start = edgeOffsets[vertex];
+        int end = edgeOffsets[vertex + 1];
+        int position = SortedInts.lowerBound(neighbours, start, end, other);
+        if (position < end && neighbours[position] == other) {
+            return position - start;
+        }
+        return -1;
+    }
+
+    @Override
+    public int firstContact(int vertex, int edge) {
+        return times[timeOffsets[edgeId(vertex, edge)]];
+    }
+
+    @Override
+    public int lastContact(int vertex, int edge) {
+        return times[timeOffsets[edgeId(vertex, edge) + 1] - 1];
+    }
+
+    @Override
+    public int ceilingContact(int vertex, int edge, int time) {
+        int id = edgeId(vertex, edge);
+        int end = timeOffsets[id + 1];
+        int position = SortedInts.lowerBound(times, timeOffsets[id], end,
+                time);
+        return position < end ? times[position] : -1;
+    }
+
+    @Override
+    public int floorContact(int vertex, int edge, int time) {
+        int id = edgeId(vertex, edge);
+        int start = timeOffsets[id];
+        int position = SortedInts.upperBound(times, start, timeOffsets[id + 1],
+                time) - 1;
+        return position >= start ? times[position] : -1;
+    }
+
+    @Override
+    public IntBuffer contactTimes(int vertex, int edge, int from, int to) {
+        int id = edgeId(vertex, edge);
+        int first = SortedInts.lowerBound(times, timeOffsets[id],
+                timeOffsets[id + 1], from);
+        int last = SortedInts.upperBound(times, first, timeOffsets[id + 1],
+                to);
+        return IntBuffer.wrap(times, first, last - first).slice()
+                .asReadOnlyBuffer();
+    }
+
+    @Override
+    public int timelineSize(int vertex) {
+        if (vertex < 0 || vertex >= vertexCount) {
+            return 0;
+        }
+        return timelineOffsets[vertex + 1] - timelineOffsets[vertex];
+    }
+
+    @Override
+    public int timelineSearch(int vertex, int time) {
+        int start = timelineOffsets[vertex];
+        return SortedInts.lowerBound(timelineTimes, start,
+                timelineOffsets[vertex + 1], time) - start;
+    }
+
+    @Override
+    public int timelineTime(int vertex, int position) {
+        return timelineTimes[timelineOffsets[vertex] + position];
+    }
+
+    @Override
+    public int timelineNeighbour(int vertex, int position) {
+        return timelineNeighbours[timelineOffsets[vertex] + position];
+    }
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @return The ID of the undirected edge.
+     */
+    private int edgeId(int vertex, int edge) {
+        return edgeIds[edgeOffsets[vertex] + edge];
+    }
+
+    /**
+     * @param vertex The ID of a vertex, possibly past the highest in the
+     *               graph.
+     * @return The position of the vertex's first edge, or the end of the
+     * edges past the highest vertex.
+     */
+    private int edgeStart(int vertex) {
+        return edgeOffsets[Math.min(vertex, vertexCount)];
+    }
+
+    /**
+     * @param vertex The ID of a vertex, possibly past the highest in the
+     *               graph.
+     * @return The position of the vertex's timeline, or the end of the
+     * timelines past the highest vertex.
+     */
+    private int timelineStart(int vertex) {
+        return timelineOffsets[Math.min(vertex, vertexCount)];
+    }
+
+    /**
+     * Sort every slice of the given array in parallel.
+     *
+     * @param values  The array to sort slices of.
+     * @param offsets The start of each slice, with a final entry marking the
+     *                end of the last.
+     */
+    private static void sortSlices(long[] values, int[] offsets) {
+        IntStream.range(0, offsets.length - 1).parallel().forEach(slice -> {
+            int from = offsets[slice];
+            int to = offsets[slice + 1];
+            if (to - from >= PARALLEL_SORT_THRESHOLD) {
+                Arrays.parallelSort(values, from, to);
+            } else if (to - from > 1) {
+                Arrays.sort(values, from, to);
+            }
+        });
+    }
+
+    /**
+     * Replace each count with the sum of the counts before it.
+     *
+     * @param counts Counts shifted up by one position, so the first entry
+     *               is 0.
+     */
+    private static void prefixSum(int[] counts) {
+        for (int i = 1; i < counts.length; i++) {
+            counts[i] += counts[i - 1];
+        }
+    }
+
+    /**
+     * Pack two non-negative ints into a long that sorts by high, then low.
+     *
+     * @param high The int to store in the upper half.
+     * @param low  The int to store in the lower half.
+     * @return The packed long.
+     */
+    static long pack(int high, int low) {
+        return ((long) high << 32) | low;
+    }
+
+    /**
+     * @param packed A long made by {@link #pack(int, int)}.
+     * @return The int stored in the upper half.
+     */
+    static int high(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    /**
+     * @param packed A long made by {@link #pack(int, int)}.
+     * @return The int stored in the lower half.
+     */
+    static int low(long packed) {
+        return (int) packed;
+    }
+}
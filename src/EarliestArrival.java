@@ -0,0 +1,281 @@
+import java.util.PriorityQueue;
+
+/**
+ * Earliest-arrival contact traces, settling each person exactly once at the
+ * earliest time they could have become contagious (a temporal Dijkstra
+ * search).
+ * <p>
+ * People are settled in ascending order of contagious time from a min-heap.
+ * For each settled person, the first contact with each neighbour at or
+ * after their contagious time is the earliest that neighbour can be infected
+ * through them. Runs in O(E log V) with constant stack depth.
+ */
+final class EarliestArrival {
+
+    // Minutes after being infected that a person becomes contagious.
+    private static final int DELAY = ContactTracer.CONTAGION_DELAY;
+
+    private EarliestArrival() {
+    }
+
+    /**
+     * Trace from every person already in the infected map at once.
+     *
+     * @param layers   The layers of the graph to trace over.
+     * @param infected All infected people found so far, mapped to the time at
+     *                 which they became contagious themselves, updated in
+     *                 place. Must contain at least one source.
+     * @param sources  Each person mapped to the source that reached them
+     *                 first, updated as people are reached, or null to skip
+     *                 tracking sources. Must map every source to itself.
+     * @param stats    Counters of the query's work, or null.
+     */
+    static void trace(ContactGraph[] layers, IntIntMap infected,
+                      IntIntMap sources, QueryStats stats) {
+        PriorityQueue<Arrival> heap = new PriorityQueue<>();
+        for (int source : infected.keys()) {
+            heap.add(new Arrival(source, infected.get(source, -1)));
+        }
+        if (stats != null) {
+            stats.add(0, 0, heap.size(), 0, 0);
+        }
+        settle(layers, infected, sources, heap, null, stats);
+    }
+
+    /**
+     * Trace from one person on primitive, reusable working state, settling
+     * people from an indexed heap whose entries are updated in place when a
+     * person's contagious time improves.
+     *
+     * @param layers          The layers of the graph to trace over.
+     * @param person          ID of the person to trace from.
+     * @param timeOfContagion Time the person became contagious.
+     * @param scratch         Working state, left holding the people settled
+     *                        in order, starting with person.
+     * @param collector       Receives everyone reached other than person, or
+     *                        null.
+     * @param stats           Counters of the query's work, or null.
+     * @return The number of people reached other than person.
+     * @require person is in use &amp;&amp; timeOfContagion &gt;= 0
+     */
+    static int trace(ContactGraph[] layers, int person, int timeOfContagion,
+                     TraceScratch scratch, TraceCollector collector,
+                     QueryStats stats) {
+        scratch.start();
+        long settled = 0;
+        long scanned = 0;
+        long pushes = 1;
+        scratch.reach(person, timeOfContagion);
+        while (!scratch.isEmpty()) {
+            int contagious = scratch.peekTime();
+            int vertex = scratch.pop();
+            settled++;
+            if (collector != null && vertex != person) {
+                collector.infected(vertex, contagious - DELAY);
+            }
+            for (ContactGraph layer : layers) {
+                int degree = layer.degree(vertex);
+                scanned += degree;
+                for (int i = 0; i < degree; i++) {
+                    int time = layer.ceilingContact(vertex, i, contagious);
+                    if (time < 0) {
+                        continue;
+                    }
+                    int other = layer.neighbour(vertex, i);
+                    if (time + DELAY < scratch.time(other)) {
+                        scratch.reach(other, time + DELAY);
+                        pushes++;
+                    }
+                }
+            }
+        }
+        if (stats != null) {
+            // Every entry in the heap is settled, none are stale.
+            stats.add(settled, scanned, pushes, settled, scanned);
+        }
+        return (int) settled - 1;
+    }
+
+    /**
+     * Extend a trace after finding that a person could have become
+     * contagious earlier than the trace records, such as through a newly
+     * added contact.
+     * <p>
+     * Only people whose contagious time improves are visited, so the cost
+     * depends on how much of the trace changes rather than on its size.
+     *
+     * @param layers     The layers of the graph to trace over.
+     * @param infected   Everyone reached by the trace, mapped to the time
+     *                   they became contagious, updated in place.
+     * @param person     ID of the person whose time improved.
+     * @param contagious The earlier time the person became contagious.
+     * @param reached    List to add people newly added to the trace to.
+     */
+    static void propagate(ContactGraph[] layers, IntIntMap infected,
+                          int person, int contagious, IntList reached) {
+        if (contagious >= infected.get(person, Integer.MAX_VALUE)) {
+            return;
+        }
+        if (!infected.containsKey(person)) {
+            reached.add(person);
+        }
+        infected.put(person, contagious);
+        PriorityQueue<Arrival> heap = new PriorityQueue<>();
+        heap.add(new Arrival(person, contagious));
+        settle(layers, infected, null, heap, reached, null);
+    }
+
+    /**
+     * Search from one person that stops as soon as it reaches another.
+     *
+     * @param layers          The layers of the graph to search.
+     * @param person          ID of the person to search from.
+     * @param other           ID of the person to search for.
+     * @param timeOfContagion Time the first person became contagious.
+     * @param stats           Counters of the query's work, or null.
+     * @return true if the search reaches other.
+     */
+    static boolean reaches(ContactGraph[] layers, int person, int other,
+                           int timeOfContagion, QueryStats stats) {
+        IntIntMap infected = new IntIntMap();
+        PriorityQueue<Arrival> heap = new PriorityQueue<>();
+        infected.put(person, timeOfContagion);
+        heap.add(new Arrival(person, timeOfContagion));
+        int settled = 0;
+        int scanned = 0;
+        int pushes = 1;
+        int pops = 0;
+        boolean found = false;
+        search:
+        while (!heap.isEmpty()) {
+            Arrival next = heap.poll();
+            pops++;
+            if (next.time != infected.get(next.vertex, -1)) {
+                continue;
+            }
+            settled++;
+            for (ContactGraph layer : layers) {
+                int degree = layer.degree(next.vertex);
+                scanned += degree;
+                for (int i = 0; i < degree; i++) {
+                    int time = layer.ceilingContact(next.vertex, i, next.time);
+                    if (time < 0) {
+                        continue;
+                    }
+                    int neighbour = layer.neighbour(next.vertex, i);
+                    if (neighbour == other) {
+                        found = true;
+                        break search;
+                    }
+                    int contagious = time + DELAY;
+                    if (contagious < infected.get(neighbour,
+                            Integer.MAX_VALUE)) {
+                        infected.put(neighbour, contagious);
+                        heap.add(new Arrival(neighbour, contagious));
+                        pushes++;
+                    }
+                }
+            }
+        }
+        if (stats != null) {
+            stats.add(settled, scanned, pushes, pops, scanned);
+        }
+        return found;
+    }
+
+    /**
+     * Settle people from the heap in ascending order of contagious time,
+     * relaxing their contacts, until the heap is empty.
+     *
+     * @param layers   The layers of the graph to trace over.
+     * @param infected People reached so far, mapped to the time at which
+     *                 they became contagious, updated in place.
+     * @param sources  Each person mapped to the source that reached them
+     *                 first, or null to skip tracking sources.
+     * @param heap     Heap of people whose contagious time was set.
+     * @param reached  List to add people newly added to infected to, or null.
+     * @param stats    Counters of the query's work, or null.
+     */
+    private static void settle(ContactGraph[] layers, IntIntMap infected,
+                               IntIntMap sources, PriorityQueue<Arrival> heap,
+                               IntList reached, QueryStats stats) {
+        // Counted locally and added once at the end, so counting costs
+        // next to nothing whether or not the query is measured.
+        long settled = 0;
+        long scanned = 0;
+        long pushes = 0;
+        long pops = 0;
+        while (!heap.isEmpty()) {
+            Arrival next = heap.poll();
+            pops++;
+            // Skip stale entries that a later, earlier-arriving path beat.
+            if (next.time != infected.get(next.vertex, -1)) {
+                continue;
+            }
+            settled++;
+            for (ContactGraph layer : layers) {
+                int degree = layer.degree(next.vertex);
+                scanned += degree;
+                for (int i = 0; i < degree; i++) {
+                    int time = layer.ceilingContact(next.vertex, i, next.time);
+                    if (time < 0) {
+                        continue;
+                    }
+                    int other = layer.neighbour(next.vertex, i);
+                    int contagious = time + DELAY;
+                    int current = infected.get(other, Integer.MAX_VALUE);
+                    if (contagious < current) {
+                        if (reached != null && current == Integer.MAX_VALUE) {
+                            reached.add(other);
+                        }
+                        infected.put(other, contagious);
+                        heap.add(new Arrival(other, contagious));
+                        pushes++;
+                        if (sources != null) {
+                            sources.put(other, sources.get(next.vertex, -1));
+                        }
+                    }
+                }
+            }
+        }
+        if (stats != null) {
+            // Each edge's contact times are searched once.
+            stats.add(settled, scanned, pushes, pops, scanned);
+        }
+    }
+
+    /**
+     * A vertex reached during a trace, with the time at which it became
+     * contagious. Ordered by ascending time for use in a min-heap.
+     */
+    private static final class Arrival implements Comparable<Arrival> {
+        // The ID of the vertex that was reached.
+        final int vertex;
+        // The time at which the vertex became contagious.
+        final int time;
+
+        /**
+         * Create an arrival at the given vertex and time.
+         *
+         * @param vertex The ID of the vertex reached.
+         * @param time   The time the vertex became contagious.
+         */
+        private Arrival(int vertex, int time) {
+            this.vertex = vertex;
+            this.time = time;
+        }
+
+        /**
+         * Compare this arrival against another by contagious time.
+         *
+         * @param other The arrival to compare this one against.
+         * @return less than 0 if this arrival is earlier, 0 if they are at
+         * the same time, greater than 0 if this arrival is later.
+         */
+        @Override
+        public int compareTo(Arrival other) {
+            return Integer.compare(time, other.time);
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * One shard of a {@link PartitionedTracer}: the contacts of the people it
+ * owns, and its part of the trace being run.
+ * <p>
+ * Person {@code p} is owned by shard {@code p % shardCount}, where it has
+ * the local index {@code p / shardCount}. Edges are held in CSR form by
+ * local index, with neighbours as global IDs. An edge between people on two
+ * shards is held by both, so each shard follows the edges of its own people
+ * without asking another.
+ * <p>
+ * Within a superstep the shard runs an earliest-arrival search over its own
+ * people. Reaching a person owned by another shard queues a message to that
+ * shard instead. A message can make a person contagious earlier than a
+ * previous superstep found, in which case they are settled again and their
+ * contacts followed from the earlier time, so the times only ever decrease
+ * and the trace ends once no shard improves any.
+ */
+final class GraphShard {
+
+    // Position of this shard among the shards.
+    private final int shard;
+    // Number of shards the people are divided among.
+    private final int shardCount;
+    // Start of each local person's edges, with a final entry marking the
+    // end.
+    private final int[] edgeOffsets;
+    // Global ID of the person opposite each edge, ascending within each
+    // local person.
+    private final int[] neighbours;
+    // Start of each edge's contact times, with a final entry marking the
+    // end.
+    private final int[] timeOffsets;
+    // Contact times of every edge, ascending within each edge.
+    private final int[] times;
+
+    // Contagious time of each local person reached by the current trace.
+    private final TraceScratch scratch = new TraceScratch();
+    // Local people reached by the current trace, other than its source.
+    private final IntList reached = new IntList();
+    // Earliest contagious time sent to another shard for each remote
+    // person in the current trace.
+    private final IntIntMap sent = new IntIntMap();
+    // Messages queued in the current superstep for each shard, mapping each
+    // remote person to their contagious time.
+    private final IntIntMap[] outboxes;
+    // Work done by the current trace.
+    private long settled;
+    private long scanned;
+    private long pushes;
+
+    /**
+     * Creates a shard from fully built CSR arrays.
+     */
+    private GraphShard(int shard, int shardCount, int[] edgeOffsets,
+                       int[] neighbours, int[] timeOffsets, int[] times) {
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.edgeOffsets = edgeOffsets;
+        this.neighbours = neighbours;
+        this.timeOffsets = timeOffsets;
+        this.times = times;
+        this.outboxes = new IntIntMap[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            outboxes[i] = new IntIntMap();
+        }
+    }
+
+    /**
+     * Build one shard holding every contact of the people it owns.
+     *
+     * @param layers      The graphs to read contacts from. Must not be
+     *                    written while this runs.
+     * @param vertexCount One more than the highest ID in use.
+     * @param shard       The position of the shard to build.
+     * @param shardCount  The number of shards.
+     * @return The built shard.
+     */
+    static GraphShard build(ContactGraph[] layers, int vertexCount,
+                            int shard, int shardCount) {
+        int localCount = shard < vertexCount
+                ? (vertexCount - shard - 1) / shardCount + 1 : 0;
+        int[] edgeOffsets = new int[localCount + 1];
+        IntList neighbours = new IntList();
+        IntList timeOffsets = new IntList();
+        IntList times = new IntList();
+        // Packing the neighbour above the time means sorting a person's
+        // contacts from every layer orders them by neighbour, then by time.
+        long[] contacts = new long[16];
+        for (int local = 0; local < localCount; local++) {
+            int person = local * shardCount + shard;
+            int count = 0;
+            for (ContactGraph layer : layers) {
+                int degree = layer.degree(person);
+                for (int i = 0; i < degree; i++) {
+                    int other = layer.neighbour(person, i);
+                    IntBuffer edgeTimes = layer.contactTimes(person, i, 0,
+                            Integer.MAX_VALUE);
+                    if (count + edgeTimes.remaining() > contacts.length) {
+                        contacts = Arrays.copyOf(contacts, Math.max(
+                                2 * contacts.length,
+                                count + edgeTimes.remaining()));
+                    }
+                    while (edgeTimes.hasRemaining()) {
+                        contacts[count++] = CsrGraph.pack(other,
+                                edgeTimes.get());
+                    }
+                }
+            }
+            Arrays.sort(contacts, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (i > 0 && contacts[i] == contacts[i - 1]) {
+                    continue;
+                }
+                if (i == 0 || CsrGraph.high(contacts[i])
+                        != CsrGraph.high(contacts[i - 1])) {
+                    neighbours.add(CsrGraph.high(contacts[i]));
+                    timeOffsets.add(times.size());
+                }
+                times.add(CsrGraph.low(contacts[i]));
+            }
+            edgeOffsets[local + 1] = neighbours.size();
+        }
+        timeOffsets.add(times.size());
+        return new GraphShard(shard, shardCount, edgeOffsets,
+                neighbours.toArray(), timeOffsets.toArray(), times.toArray());
+    }
+
+    /**
+     * @return the number of contacts held, counting each contact between
+     * two local people twice.
+     */
+    long contactCount() {
+        return times.length;
+    }
+
+    /**
+     * Forget the previous trace and start a new one.
+     *
+     * @param person          ID of the person the trace starts from.
+     * @param timeOfContagion The time they became contagious.
+     */
+    void start(int person, int timeOfContagion) {
+        scratch.start();
+        reached.clear();
+        sent.clear();
+        settled = 0;
+        scanned = 0;
+        pushes = 0;
+        if (person % shardCount == shard) {
+            scratch.reach(person / shardCount, timeOfContagion);
+            pushes++;
+        }
+    }
+
+    /**
+     * Run one superstep: read the messages delivered to this shard, search
+     * its people from those whose time improved, and send a batch of
+     * messages to each shard owning people reached.
+     *
+     * @param transport The transport to read and send batches with.
+     * @return The number of messages sent.
+     */
+    int step(ShardTransport transport) {
+        for (ByteBuffer batch : transport.receive(shard)) {
+            ByteBuffer messages = batch.duplicate();
+            while (messages.hasRemaining()) {
+                int person = messages.getInt();
+                relax(person / shardCount, messages.getInt());
+            }
+        }
+        while (!scratch.isEmpty()) {
+            int contagious = scratch.peekTime();
+            int local = scratch.pop();
+            settled++;
+            scanned += edgeOffsets[local + 1] - edgeOffsets[local];
+            for (int e = edgeOffsets[local]; e < edgeOffsets[local + 1];
+                 e++) {
+                int t = SortedInts.lowerBound(times, timeOffsets[e],
+                        timeOffsets[e + 1], contagious);
+                if (t == timeOffsets[e + 1]) {
+                    continue;
+                }
+                int other = neighbours[e];
+                int arrival = times[t] + ContactTracer.CONTAGION_DELAY;
+                int owner = other % shardCount;
+                if (owner == shard) {
+                    relax(other / shardCount, arrival);
+                } else if (arrival < sent.get(other, Integer.MAX_VALUE)) {
+                    sent.put(other, arrival);
+                    outboxes[owner].put(other, arrival);
+                }
+            }
+        }
+        int messages = 0;
+        for (int to = 0; to < shardCount; to++) {
+            IntIntMap outbox = outboxes[to];
+            if (outbox.size() == 0) {
+                continue;
+            }
+            ByteBuffer batch = ByteBuffer.allocate(8 * outbox.size());
+            for (int person : outbox.keys()) {
+                batch.putInt(person).putInt(outbox.get(person, 0));
+            }
+            batch.flip();
+            transport.send(shard, to, batch);
+            messages += outbox.size();
+            outbox.clear();
+        }
+        return messages;
+    }
+
+    /**
+     * Add the people this shard reached in the current trace, other than
+     * its source, to a list.
+     *
+     * @param into The list to add their global IDs to.
+     */
+    void collect(IntList into) {
+        for (int i = 0; i < reached.size(); i++) {
+            into.add(reached.get(i) * shardCount + shard);
+        }
+    }
+
+    /**
+     * Add the work done by the current trace to a query's counters.
+     *
+     * @param stats The counters of the query.
+     */
+    void addTo(QueryStats stats) {
+        // Every entry in the heap is settled, none are stale.
+        stats.add(settled, scanned, pushes, settled, scanned);
+    }
+
+    /**
+     * Record that a local person could have become contagious at the given
+     * time, queueing them to be settled if that is earlier than before.
+     *
+     * @param local The local index of the person.
+     * @param time  The time they could have become contagious.
+     */
+    private void relax(int local, int time) {
+        int previous = scratch.time(local);
+        if (time < previous) {
+            if (previous == Integer.MAX_VALUE) {
+                reached.add(local);
+            }
+            scratch.reach(local, time);
+            pushes++;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+/**
+ * Name table holding names on the heap, in an array indexed by ID and an
+ * open-addressing hash index. Names must be interned from one thread at a
+ * time.
+ * <p>
+ * A table may be layered over the names of a snapshot, in which case the
+ * snapshot's names keep their IDs and new names are numbered after them.
+ */
+class HashNameTable implements NameTable {
+
+    // Marks an unused slot in the hash index.
+    private static final int EMPTY = -1;
+    // Initial number of slots in the hash index. Must be a power of two.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Names stored in a snapshot beneath this table, or null if none.
+    private final MappedNames base;
+    // Number of names in the snapshot, the first ID assigned by this table.
+    private final int baseSize;
+    // Names interned by this table, indexed by ID less baseSize.
+    private String[] names;
+    // Number of names interned by this table.
+    private int size;
+    // Open-addressing hash index of names, storing the ID of each name.
+    private int[] slots;
+
+    /**
+     * Creates an empty name table.
+     */
+    HashNameTable() {
+        this(null);
+    }
+
+    /**
+     * Creates a name table over the names of a snapshot.
+     *
+     * @param base The names of the snapshot, or null for an empty table.
+     */
+    HashNameTable(MappedNames base) {
+        this.base = base;
+        this.baseSize = base == null ? 0 : base.size();
+        this.names = new String[INITIAL_CAPACITY];
+        this.slots = newSlots(INITIAL_CAPACITY * 2);
+    }
+
+    @Override
+    public int size() {
+        return baseSize + size;
+    }
+
+    @Override
+    public int intern(String name) {
+        if (base != null) {
+            int id = base.idOf(name);
+            if (id != EMPTY) {
+                return id;
+            }
+        }
+        int slot = find(name);
+        if (slots[slot] != EMPTY) {
+            return baseSize + slots[slot];
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        int id = size++;
+        names[id] = name;
+        slots[slot] = id;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return baseSize + id;
+    }
+
+    @Override
+    public int idOf(String name) {
+        if (name == null) {
+            return EMPTY;
+        }
+        if (base != null) {
+            int id = base.idOf(name);
+            if (id != EMPTY) {
+                return id;
+            }
+        }
+        int id = slots[find(name)];
+        return id == EMPTY ? EMPTY : baseSize + id;
+    }
+
+    @Override
+    public String nameOf(int id) {
+        if (id < 0 || id >= baseSize + size) {
+            return null;
+        }
+        if (id < baseSize) {
+            return base.nameOf(id);
+        }
+        return names[id - baseSize];
+    }
+
+    /**
+     * Find the slot holding the given name, or the empty slot where it
+     * would be inserted.
+     *
+     * @param name The name to find.
+     * @return The slot index.
+     */
+    private int find(String name) {
+        int mask = slots.length - 1;
+        int slot = NameTable.mix(name.hashCode()) & mask;
+        while (slots[slot] != EMPTY && !names[slots[slot]].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Rebuild the hash index with the given number of slots.
+     *
+     * @param capacity The new number of slots, a power of two.
+     */
+    private void rehash(int capacity) {
+        slots = newSlots(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = NameTable.mix(names[id].hashCode()) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    /**
+     * @param capacity The number of slots.
+     * @return a new hash index with every slot empty.
+     */
+    private static int[] newSlots(int capacity) {
+        int[] empty = new int[capacity];
+        Arrays.fill(empty, EMPTY);
+        return empty;
+    }
+}
@@ -0,0 +1,416 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Mutable contact graph that records contacts one at a time.
+ * <p>
+ * Vertices are held in an array indexed by person ID. Each vertex keeps its
+ * edges in insertion order, and each edge keeps its contact times as a sorted
+ * int run shared by both of its vertices.
+ */
+class IncrementalGraph implements MutableContactGraph {
+
+    // Vertices indexed by the ID of the person they represent.
+    private Vertex[] vertices;
+    // One more than the highest ID with a vertex.
+    private int vertexCount;
+
+    /**
+     * Creates an empty graph.
+     */
+    IncrementalGraph() {
+        this.vertices = new Vertex[16];
+    }
+
+    @Override
+    public boolean addContact(int person1, int person2, int time) {
+        Vertex start = insertVertex(person1);
+        Vertex end = insertVertex(person2);
+        Edge existingEdge = start.getEdge(person2);
+        if (existingEdge == null) {
+            Edge newEdge = new Edge(time);
+            start.insertEdge(newEdge, person2);
+            end.insertEdge(newEdge, person1);
+        } else if (!existingEdge.addContactTime(time)) {
+            // Contact already recorded.
+            return false;
+        }
+        start.insertContact(time, person2);
+        end.insertContact(time, person1);
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return vertexCount == 0;
+    }
+
+    @Override
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        Vertex current = getVertex(vertex);
+        return current == null ? 0 : current.degree;
+    }
+
+    @Override
+    public int neighbour(int vertex, int edge) {
+        return vertices[vertex].neighbours[edge];
+    }
+
+    @Override
+    public int findEdge(int vertex, int other) {
+        Vertex current = getVertex(vertex);
+        return current == null ? -1 : current.findEdge(other);
+    }
+
+    @Override
+    public int firstContact(int vertex, int edge) {
+        return vertices[vertex].edges[edge].getFirstContact();
+    }
+
+    @Override
+    public int lastContact(int vertex, int edge) {
+        return vertices[vertex].edges[edge].getLastContact();
+    }
+
+    @Override
+    public int ceilingContact(int vertex, int edge, int time) {
+        return vertices[vertex].edges[edge].ceilingContact(time);
+    }
+
+    @Override
+    public int floorContact(int vertex, int edge, int time) {
+        return vertices[vertex].edges[edge].floorContact(time);
+    }
+
+    @Override
+    public IntBuffer contactTimes(int vertex, int edge, int from, int to) {
+        return vertices[vertex].edges[edge].view(from, to);
+    }
+
+    @Override
+    public int timelineSize(int vertex) {
+        Vertex current = getVertex(vertex);
+        return current == null ? 0 : current.timelineCount;
+    }
+
+    @Override
+    public int timelineSearch(int vertex, int time) {
+        Vertex current = vertices[vertex];
+        return SortedInts.lowerBound(current.timelineTimes, 0,
+                current.timelineCount, time);
+    }
+
+    @Override
+    public int timelineTime(int vertex, int position) {
+        return vertices[vertex].timelineTimes[position];
+    }
+
+    @Override
+    public int timelineNeighbour(int vertex, int position) {
+        return vertices[vertex].timelineNeighbours[position];
+    }
+
+    /**
+     * Return the vertex with the given ID, creating it if it doesn't exist.
+     *
+     * @param id The ID of the person to create the vertex for.
+     * @return The vertex associated with this ID.
+     */
+    private Vertex insertVertex(int id) {
+        if (id >= vertices.length) {
+            vertices = Arrays.copyOf(vertices,
+                    Math.max(vertices.length * 2, id + 1));
+        }
+        if (vertices[id] == null) {
+            vertices[id] = new Vertex();
+            vertexCount = Math.max(vertexCount, id + 1);
+        }
+        return vertices[id];
+    }
+
+    /**
+     * Return the vertex with the given ID.
+     *
+     * @param id The ID of the vertex to retrieve.
+     * @return The vertex, or null if it does not exist.
+     */
+    private Vertex getVertex(int id) {
+        if (id < 0 || id >= vertexCount) {
+            return null;
+        }
+        return vertices[id];
+    }
+
+    /**
+     * Vertex class for use in a graph data structure.
+     * <p>
+     * Edges are stored in parallel arrays in insertion order, keyed by the ID
+     * of the vertex opposite. Once a vertex has more than a handful of edges,
+     * an open-addressing index over the neighbour IDs is kept to find an edge
+     * without scanning.
+     * <p>
+     * Every contact of the vertex is also kept in a timeline ordered by time,
+     * so the contacts at or after a given time are a suffix found by binary
+     * search.
+     */
+    private static class Vertex {
+        // Degree above which edges are found through the hash index.
+        private static final int INDEX_THRESHOLD = 8;
+
+        // IDs of the vertices opposite each edge.
+        int[] neighbours;
+        // Edges starting from this vertex and ending at another, parallel to
+        // neighbours.
+        Edge[] edges;
+        // Number of edges stored.
+        int degree;
+        // Open-addressing index of neighbour IDs, storing the position of
+        // each neighbour plus one (0 marks an empty slot). Null while the
+        // degree is small enough to scan.
+        int[] index;
+        // Time of every contact of this vertex, in ascending order.
+        int[] timelineTimes;
+        // ID of the vertex met in each contact, parallel to timelineTimes.
+        int[] timelineNeighbours;
+        // Number of contacts in the timeline.
+        int timelineCount;
+
+        /**
+         * Create a Vertex with no edges.
+         */
+        private Vertex() {
+            this.neighbours = new int[2];
+            this.edges = new Edge[2];
+            this.timelineTimes = new int[2];
+            this.timelineNeighbours = new int[2];
+        }
+
+        /**
+         * Return the edge whose end is the target vertex.
+         *
+         * @param target The ID of the other end of the desired edge.
+         * @return The edge that has the target vertex, or null.
+         */
+        private Edge getEdge(int target) {
+            int position = findEdge(target);
+            return position < 0 ? null : edges[position];
+        }
+
+        /**
+         * Return the position of the edge whose end is the target vertex.
+         *
+         * @param target The ID of the other end of the desired edge.
+         * @return The position of the edge, or -1 if there is none.
+         */
+        private int findEdge(int target) {
+            if (index == null) {
+                for (int i = 0; i < degree; i++) {
+                    if (neighbours[i] == target) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            int mask = index.length - 1;
+            int slot = NameTable.mix(target) & mask;
+            while (index[slot] != 0) {
+                int position = index[slot] - 1;
+                if (neighbours[position] == target) {
+                    return position;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Insert the given edge into the edge arrays.
+         *
+         * @param newEdge The newly created edge to insert.
+         * @param toId    The ID of the vertex at the opposite end of the edge.
+         */
+        private void insertEdge(Edge newEdge, int toId) {
+            if (degree == neighbours.length) {
+                neighbours = Arrays.copyOf(neighbours, degree * 2);
+                edges = Arrays.copyOf(edges, degree * 2);
+            }
+            neighbours[degree] = toId;
+            edges[degree] = newEdge;
+            degree++;
+            if (degree > INDEX_THRESHOLD) {
+                if (index == null || degree * 2 > index.length) {
+                    rebuildIndex();
+                } else {
+                    indexPosition(degree - 1);
+                }
+            }
+        }
+
+        /**
+         * Insert a contact into the timeline, after any contacts at the same
+         * time. Contacts are usually recorded in order, so appending is
+         * checked first.
+         *
+         * @param time  The time of the contact.
+         * @param other The ID of the vertex met.
+         */
+        private void insertContact(int time, int other) {
+            if (timelineCount == timelineTimes.length) {
+                timelineTimes = Arrays.copyOf(timelineTimes,
+                        timelineCount * 2);
+                timelineNeighbours = Arrays.copyOf(timelineNeighbours,
+                        timelineCount * 2);
+            }
+            int position = timelineCount;
+            if (timelineCount > 0
+                    && time < timelineTimes[timelineCount - 1]) {
+                position = SortedInts.upperBound(timelineTimes, 0,
+                        timelineCount, time);
+                System.arraycopy(timelineTimes, position, timelineTimes,
+                        position + 1, timelineCount - position);
+                System.arraycopy(timelineNeighbours, position,
+                        timelineNeighbours, position + 1,
+                        timelineCount - position);
+            }
+            timelineTimes[position] = time;
+            timelineNeighbours[position] = other;
+            timelineCount++;
+        }
+
+        /**
+         * Rebuild the neighbour index with room for twice the current degree.
+         */
+        private void rebuildIndex() {
+            int capacity = Integer.highestOneBit(degree) * 4;
+            index = new int[capacity];
+            for (int i = 0; i < degree; i++) {
+                indexPosition(i);
+            }
+        }
+
+        /**
+         * Add the neighbour at the given position to the index.
+         *
+         * @param position The position of the neighbour in the edge arrays.
+         */
+        private void indexPosition(int position) {
+            int mask = index.length - 1;
+            int slot = NameTable.mix(neighbours[position]) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = position + 1;
+        }
+
+    }
+
+    /**
+     * Edge class connecting two vertices in a graph, with the weight being the
+     * given times of contact between the two vertices.
+     * <p>
+     * Contact times are kept as a sorted, duplicate-free run at the front of
+     * a growable int array, so looking up the first contact at or after a
+     * time is a binary search.
+     */
+    private static class Edge {
+        // The time(s) at which the two vertices were in contact, in ascending
+        // order. Only the first timeCount entries are in use.
+        int[] contactTimes;
+        // Number of contact times stored.
+        int timeCount;
+
+        /**
+         * Create an edge with a single contact.
+         *
+         * @param contactTime The first time of contact.
+         */
+        private Edge(int contactTime) {
+            this.contactTimes = new int[]{contactTime};
+            this.timeCount = 1;
+        }
+
+        /**
+         * @return The earliest time of contact for this edge.
+         */
+        private int getFirstContact() {
+            return contactTimes[0];
+        }
+
+        /**
+         * @return The latest time of contact for this edge.
+         */
+        private int getLastContact() {
+            return contactTimes[timeCount - 1];
+        }
+
+        /**
+         * Find the earliest contact at or after the given time.
+         *
+         * @param time The time to search from (inclusive).
+         * @return The earliest contact time &gt;= time, or -1 if there is none.
+         */
+        private int ceilingContact(int time) {
+            int position = SortedInts.lowerBound(contactTimes, 0, timeCount,
+                    time);
+            return position < timeCount ? contactTimes[position] : -1;
+        }
+
+        /**
+         * Find the latest contact at or before the given time.
+         *
+         * @param time The time to search back from (inclusive).
+         * @return The latest contact time &lt;= time, or -1 if there is none.
+         */
+        private int floorContact(int time) {
+            int position = SortedInts.upperBound(contactTimes, 0, timeCount,
+                    time) - 1;
+            return position >= 0 ? contactTimes[position] : -1;
+        }
+
+        /**
+         * Add the given time of contact to the set of contact times for
+         * this edge. Times are usually recorded in order, so appending is
+         * checked first.
+         *
+         * @param time The contact time to add.
+         * @return true if the time was added, false if it was already stored.
+         */
+        private boolean addContactTime(int time) {
+            int position = time > getLastContact() ? timeCount
+                    : SortedInts.lowerBound(contactTimes, 0, timeCount, time);
+            if (position < timeCount && contactTimes[position] == time) {
+                return false;
+            }
+            if (timeCount == contactTimes.length) {
+                contactTimes = Arrays.copyOf(contactTimes, timeCount * 2);
+            }
+            System.arraycopy(contactTimes, position, contactTimes,
+                    position + 1, timeCount - position);
+            contactTimes[position] = time;
+            timeCount++;
+            return true;
+        }
+
+        /**
+         * Return a read-only view of the contact times in the given range,
+         * sharing this edge's storage.
+         *
+         * @param from The earliest time to include.
+         * @param to   The latest time to include.
+         * @return The contact times within [from, to], in ascending order.
+         */
+        private IntBuffer view(int from, int to) {
+            int first = SortedInts.lowerBound(contactTimes, 0, timeCount, from);
+            int last = SortedInts.upperBound(contactTimes, first, timeCount,
+                    to);
+            return IntBuffer.wrap(contactTimes, first, last - first).slice()
+                    .asReadOnlyBuffer();
+        }
+    }
+
+}
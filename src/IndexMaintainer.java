@@ -0,0 +1,167 @@
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a {@link ReachabilityIndex} over a {@link ContactTracer}'s snapshot,
+ * rebuilding it in the background as contacts are added.
+ * <p>
+ * The index covers only the read-only snapshot, so a rebuild first compacts
+ * the tracer to fold newer contacts into the snapshot. Like compaction, a
+ * rebuild runs once the contacts added since the last one reach half the
+ * number indexed (and at least {@value Compactor#MIN_BATCH}), and whenever
+ * some other compaction replaces the snapshot.
+ */
+class IndexMaintainer implements ContactListener {
+
+    // The tracer whose snapshot is indexed.
+    private final ContactTracer tracer;
+    // Contacts added since the last rebuild started.
+    private final LongAdder added = new LongAdder();
+    // Set while a rebuild is queued or running.
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Runs rebuilds on a single daemon thread that exits when idle.
+    private final ThreadPoolExecutor executor;
+    // The latest index built, or null before the first.
+    private volatile ReachabilityIndex index;
+    // Number of contacts to add before rebuilding again.
+    private volatile long threshold = Compactor.MIN_BATCH;
+
+    /**
+     * Creates a maintainer with no index built yet.
+     *
+     * @param tracer The tracer whose snapshot to index.
+     */
+    IndexMaintainer(ContactTracer tracer) {
+        this.tracer = tracer;
+        this.executor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "reachability-index");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @return the latest index built, or null before the first. It may cover
+     * an older snapshot than the tracer's current one.
+     */
+    ReachabilityIndex index() {
+        return index;
+    }
+
+    /**
+     * Compact the tracer and index the resulting snapshot on the calling
+     * thread, waiting for any rebuild in the background to finish first.
+     *
+     * @return The index built.
+     */
+    ReachabilityIndex rebuild() {
+        claim();
+        try {
+            return rebuildClaimed();
+        } finally {
+            finished();
+        }
+    }
+
+    /**
+     * Set running, waiting for any rebuild in the background to finish.
+     */
+    private synchronized void claim() {
+        boolean interrupted = false;
+        while (!running.compareAndSet(false, true)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Clear running and wake any threads waiting for the rebuild to finish.
+     */
+    private synchronized void finished() {
+        running.set(false);
+        notifyAll();
+    }
+
+    /**
+     * Compact the tracer and index the resulting snapshot. Called with
+     * running set, so the compaction doesn't start another rebuild.
+     *
+     * @return The index built.
+     */
+    private ReachabilityIndex rebuildClaimed() {
+        ReachabilityIndex built;
+        do {
+            added.reset();
+            Compactor retention = tracer.compactor();
+            tracer.compact(retention == null ? 0 : retention.cutoff());
+            built = ReachabilityIndex.build(tracer.snapshot());
+            index = built;
+            threshold = Math.max(Compactor.MIN_BATCH,
+                    ((CompactGraph) built.graph()).contactCount() / 2);
+            // Start again if another compaction replaced the snapshot while
+            // it was being indexed.
+        } while (tracer.snapshot() != built.graph());
+        return built;
+    }
+
+    @Override
+    public void contactAdded(int person1, int person2, int time) {
+        added.increment();
+        if (added.sum() >= threshold) {
+            rebuildLater();
+        }
+    }
+
+    @Override
+    public void contactsDropped(int cutoff) {
+        // Called for this maintainer's own compactions too, while running is
+        // still set, so those don't start another rebuild.
+        rebuildLater();
+    }
+
+    /**
+     * Queue a rebuild in the background unless one is already queued or
+     * running.
+     */
+    private void rebuildLater() {
+        if (running.compareAndSet(false, true)) {
+            executor.execute(this::rebuildNow);
+        }
+    }
+
+    /**
+     * Rebuild the index, then check no compaction slipped in after the
+     * rebuild last looked.
+     */
+    private void rebuildNow() {
+        try {
+            rebuildClaimed();
+        } finally {
+            finished();
+        }
+        if (tracer.snapshot() != index.graph()) {
+            rebuildLater();
+        }
+    }
+
+    /**
+     * Wait for any queued or running rebuild to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void await() throws InterruptedException {
+        while (running.get()) {
+            wait();
+        }
+    }
+}
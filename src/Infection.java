@@ -0,0 +1,75 @@
+/**
+ * A person reached by a contact trace, with the earliest time they could
+ * have been infected and the generation of the transmission that infected
+ * them, as found by {@link ContactTracer#contactTraceStream(String, int)}
+ * and {@link ContactTracer#contactTraceWithin(String, int, int, int)}.
+ */
+public class Infection {
+
+    // The ID of the person.
+    private final int personId;
+    // The name of the person.
+    private final String person;
+    // The earliest time the person could have been infected.
+    private final int infectionTime;
+    // Number of transmissions from the source to the person.
+    private final int generation;
+
+    /**
+     * Creates an infection.
+     *
+     * @param personId      The ID of the person.
+     * @param person        The name of the person.
+     * @param infectionTime The earliest time they could have been infected.
+     * @param generation    Number of transmissions from the source to them.
+     */
+    Infection(int personId, String person, int infectionTime,
+              int generation) {
+        this.personId = personId;
+        this.person = person;
+        this.infectionTime = infectionTime;
+        this.generation = generation;
+    }
+
+    /**
+     * @return the ID of the person, as returned by
+     * {@link ContactTracer#getPersonId(String)}
+     */
+    public int getPersonId() {
+        return personId;
+    }
+
+    /**
+     * @return the name of the person
+     */
+    public String getPerson() {
+        return person;
+    }
+
+    /**
+     * @return the earliest time the person could have been infected. They
+     * became contagious 60 minutes later.
+     */
+    public int getInfectionTime() {
+        return infectionTime;
+    }
+
+    /**
+     * Gets the generation the person was infected in: 1 if the source could
+     * have infected them directly, 2 if through one other person, and so on.
+     * Of the chains of contacts that could have infected them at their
+     * infection time, with everyone in the chain passing it on once they
+     * were contagious from their own infection time, the one with the
+     * fewest transmissions is counted.
+     *
+     * @return the number of transmissions from the source to the person
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public String toString() {
+        return person + "@" + infectionTime;
+    }
+}
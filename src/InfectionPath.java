@@ -0,0 +1,67 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The earliest way a disease could have passed from one person to another,
+ * as found by {@link ContactTracer#infectionPath(String, int, String)}.
+ */
+public class InfectionPath {
+
+    // The earliest time the second person could have been infected.
+    private final int infectionTime;
+    // The contacts that carried the disease, in order.
+    private final List<Trace> chain;
+    // Number of edges the search looked at to find the path.
+    private final int edgesVisited;
+
+    /**
+     * Creates a path from its contacts.
+     *
+     * @param chain        The contacts that carried the disease, in order.
+     * @param edgesVisited Number of edges the search looked at.
+     */
+    InfectionPath(List<Trace> chain, int edgesVisited) {
+        this.infectionTime = chain.get(chain.size() - 1).getTime();
+        this.chain = Collections.unmodifiableList(chain);
+        this.edgesVisited = edgesVisited;
+    }
+
+    /**
+     * @return the earliest time the person at the end of the path could have
+     * been infected. They became contagious 60 minutes later.
+     */
+    public int getInfectionTime() {
+        return infectionTime;
+    }
+
+    /**
+     * Get the contacts that could have carried the disease, in order. Each
+     * trace's first person passed the disease to its second, who passed it
+     * on in the next trace.
+     *
+     * @return a read-only list of at least one trace
+     */
+    public List<Trace> getChain() {
+        return chain;
+    }
+
+    /**
+     * @return the number of edges the search looked at to find the path.
+     */
+    int edgesVisited() {
+        return edgesVisited;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Trace trace : chain) {
+            if (result.length() == 0) {
+                result.append(trace.getPerson1());
+            }
+            result.append(" -(").append(trace.getTime()).append(")-> ")
+                    .append(trace.getPerson2());
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * A person who could have infected a case, with the latest time they could
+ * have been infected themselves and still passed it on in time, as found by
+ * {@link ContactTracer#possibleSources(String, int)}.
+ */
+public class InfectionSource {
+
+    // The ID of the person.
+    private final int personId;
+    // The name of the person.
+    private final String person;
+    // The latest time the person could have been infected and still have
+    // infected the case in time.
+    private final int latestInfectionTime;
+    // Number of transmissions from the person to the case.
+    private final int generation;
+
+    /**
+     * Creates a possible source.
+     *
+     * @param personId            The ID of the person.
+     * @param person              The name of the person.
+     * @param latestInfectionTime The latest time they could have been
+     *                            infected.
+     * @param generation          Number of transmissions from them to the
+     *                            case.
+     */
+    InfectionSource(int personId, String person, int latestInfectionTime,
+                    int generation) {
+        this.personId = personId;
+        this.person = person;
+        this.latestInfectionTime = latestInfectionTime;
+        this.generation = generation;
+    }
+
+    /**
+     * @return the ID of the person, as returned by
+     * {@link ContactTracer#getPersonId(String)}
+     */
+    public int getPersonId() {
+        return personId;
+    }
+
+    /**
+     * @return the name of the person
+     */
+    public String getPerson() {
+        return person;
+    }
+
+    /**
+     * Gets the latest time the person could have been infected and still
+     * have infected the case by the time given. A trace from the person
+     * becoming contagious 60 minutes later reaches the case in time, and one
+     * from any later time doesn't. The time is negative if the person's
+     * chain to the case starts within the first hour.
+     *
+     * @return the latest time the person could have been infected
+     */
+    public int getLatestInfectionTime() {
+        return latestInfectionTime;
+    }
+
+    /**
+     * Gets the generation the case would be in, in a trace from the person:
+     * 1 if the person met the case, 2 if they met someone who met the case,
+     * and so on. Of the chains of contacts that infect the case in time from
+     * the latest infection time, with everyone in the chain infected at
+     * their own latest infection time, the one with the fewest transmissions
+     * is counted.
+     *
+     * @return the number of transmissions from the person to the case
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public String toString() {
+        return person + "@" + latestInfectionTime;
+    }
+}
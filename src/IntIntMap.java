@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative int keys to int values.
+ * <p>
+ * Avoids the boxed keys, values and entry objects of a
+ * {@code HashMap<Integer, Integer>}.
+ */
+class IntIntMap {
+
+    // Marks an unused slot. Keys must be non-negative.
+    private static final int EMPTY = -1;
+
+    // Key stored in each slot, or EMPTY.
+    private int[] keys;
+    // Value stored in each slot.
+    private int[] values;
+    // Number of keys stored.
+    private int size;
+
+    /**
+     * Creates an empty map.
+     */
+    IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty map sized to hold the given number of keys without
+     * growing.
+     *
+     * @param expected The number of keys expected.
+     */
+    IntIntMap(int expected) {
+        int capacity = 4;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @return the number of keys stored.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Return the value associated with the given key.
+     *
+     * @param key          The key to look up.
+     * @param defaultValue The value to return if the key isn't present.
+     * @return The associated value, or defaultValue.
+     */
+    int get(int key, int defaultValue) {
+        int slot = find(key);
+        return keys[slot] == EMPTY ? defaultValue : values[slot];
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return true if the key is present.
+     */
+    boolean containsKey(int key) {
+        return keys[find(key)] != EMPTY;
+    }
+
+    /**
+     * Associate the given value with the given key, replacing any existing
+     * value.
+     *
+     * @param key   The key, must be non-negative.
+     * @param value The value.
+     */
+    void put(int key, int value) {
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Remove the given key, if present.
+     *
+     * @param key The key to remove.
+     */
+    void remove(int key) {
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            return;
+        }
+        keys[slot] = EMPTY;
+        size--;
+        // Shift back any following entries that probed past the removed slot.
+        int mask = keys.length - 1;
+        int next = (slot + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int key2 = keys[next];
+            int value2 = values[next];
+            keys[next] = EMPTY;
+            int target = find(key2);
+            keys[target] = key2;
+            values[target] = value2;
+            next = (next + 1) & mask;
+        }
+    }
+
+    /**
+     * Remove every key.
+     */
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * @return every key stored, in no particular order.
+     */
+    int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                result[count++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the slot holding the given key, or the empty slot where it
+     * would be inserted.
+     *
+     * @param key The key to find.
+     * @return The slot index.
+     */
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = NameTable.mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Rebuild the table with the given number of slots.
+     *
+     * @param capacity The new number of slots, a power of two.
+     */
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+/**
+ * Growable list of ints, avoiding the boxing of a {@code List<Integer>}.
+ */
+class IntList {
+
+    // Values stored, only the first size entries are in use.
+    private int[] values;
+    // Number of values stored.
+    private int size;
+
+    /**
+     * Creates an empty list.
+     */
+    IntList() {
+        this(8);
+    }
+
+    /**
+     * Creates an empty list with room for the given number of values.
+     *
+     * @param capacity The number of values to make room for.
+     */
+    IntList(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @return the number of values stored.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param position The position of the value.
+     * @return The value at the given position.
+     */
+    int get(int position) {
+        return values[position];
+    }
+
+    /**
+     * Replace the value at the given position.
+     *
+     * @param position The position of the value.
+     * @param value    The new value.
+     */
+    void set(int position, int value) {
+        values[position] = value;
+    }
+
+    /**
+     * Remove the value at the end of the list.
+     *
+     * @return The value removed.
+     * @require size() &gt; 0
+     */
+    int removeLast() {
+        return values[--size];
+    }
+
+    /**
+     * Append a value to the end of the list.
+     *
+     * @param value The value to append.
+     */
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Remove every value.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return a copy of the values stored, in order.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
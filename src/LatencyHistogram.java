@@ -0,0 +1,153 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of query latencies, safe to record into from many threads at
+ * once without locking.
+ * <p>
+ * Latencies are counted in buckets whose width doubles with each power of
+ * two, split into {@value #SUB_BUCKETS} equal parts, so any percentile is
+ * within about 6% of the true latency whether it is microseconds or minutes.
+ */
+public final class LatencyHistogram {
+
+    // Bits of each latency below its highest set bit that pick the bucket.
+    private static final int SUB_BITS = 4;
+    // Buckets per power of two.
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Enough buckets for any non-negative long, whose highest set bit is at
+    // most bit 62.
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    // Number of latencies recorded in each bucket.
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    // Number of latencies recorded.
+    private final LongAdder count = new LongAdder();
+    // Sum of the latencies recorded, in nanoseconds.
+    private final LongAdder sum = new LongAdder();
+    // Longest latency recorded, in nanoseconds.
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates an empty histogram.
+     */
+    LatencyHistogram() {
+    }
+
+    /**
+     * Record one latency.
+     *
+     * @param nanos the latency in nanoseconds, clamped to at least 0
+     */
+    void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Forget every latency recorded.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean latency in nanoseconds, or 0 if none were recorded
+     */
+    public long getMeanNanos() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : sum.sum() / recorded;
+    }
+
+    /**
+     * @return the longest latency recorded in nanoseconds, or 0 if none were
+     * recorded
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Gets the latency that the given fraction of recorded latencies are no
+     * longer than, to within the width of one bucket.
+     *
+     * @param fraction the fraction of latencies, such as 0.99
+     * @return the latency in nanoseconds, or 0 if none were recorded
+     * @require fraction &gt;= 0 &amp;&amp; fraction &lt;= 1
+     */
+    public long getPercentileNanos(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // The bucket's highest latency, but never more than the
+                // longest actually recorded.
+                return Math.min(lowest(i + 1) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dus p50=%dus p99=%dus max=%dus",
+                getCount(), getMeanNanos() / 1000,
+                getPercentileNanos(0.5) / 1000,
+                getPercentileNanos(0.99) / 1000, getMaxNanos() / 1000);
+    }
+
+    /**
+     * @param nanos A latency, at least 0.
+     * @return the index of the bucket counting it
+     */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param bucket Index of a bucket, up to one past the last.
+     * @return the lowest latency counted in the bucket
+     */
+    private static long lowest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket >= BUCKETS) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+}
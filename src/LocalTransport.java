@@ -0,0 +1,66 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transport between shards in the same process, handing batches over
+ * without copying them.
+ * <p>
+ * Sending is thread-safe, so shards can run their supersteps in parallel.
+ * The barrier is called by the one thread running the trace, after every
+ * shard has finished its superstep.
+ */
+public final class LocalTransport implements ShardTransport {
+
+    // Batches sent to each shard in the current superstep.
+    private final List<List<ByteBuffer>> sent;
+    // Batches delivered to each shard by the last barrier.
+    private final List<List<ByteBuffer>> delivered;
+
+    /**
+     * Creates a transport between the given number of shards.
+     *
+     * @param shards the number of shards
+     * @require shards &gt; 0
+     */
+    public LocalTransport(int shards) {
+        sent = new ArrayList<>(shards);
+        delivered = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            sent.add(new ArrayList<>());
+            delivered.add(new ArrayList<>());
+        }
+    }
+
+    @Override
+    public int shardCount() {
+        return sent.size();
+    }
+
+    @Override
+    public void send(int from, int to, ByteBuffer messages) {
+        List<ByteBuffer> inbox = sent.get(to);
+        synchronized (inbox) {
+            inbox.add(messages);
+        }
+    }
+
+    @Override
+    public int barrier() {
+        int batches = 0;
+        for (int shard = 0; shard < sent.size(); shard++) {
+            List<ByteBuffer> inbox = sent.get(shard);
+            synchronized (inbox) {
+                batches += inbox.size();
+                delivered.set(shard, new ArrayList<>(inbox));
+                inbox.clear();
+            }
+        }
+        return batches;
+    }
+
+    @Override
+    public List<ByteBuffer> receive(int shard) {
+        return delivered.get(shard);
+    }
+}
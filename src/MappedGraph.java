@@ -0,0 +1,215 @@
+import java.nio.IntBuffer;
+
+/**
+ * Read-only contact graph stored in a {@link SnapshotFile}.
+ * <p>
+ * Opening the graph reads nothing. The adjacency block of each vertex is
+ * checked against its checksum and decoded into arrays the first time the
+ * vertex is accessed, so the cost of opening a snapshot doesn't grow with the
+ * size of the graph.
+ */
+class MappedGraph implements ContactGraph {
+
+    // Number of decoded vertices held in each chunk of the cache.
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    // The snapshot holding the graph.
+    private final SnapshotFile file;
+    // Decoded vertices, in chunks created on first access.
+    private final Block[][] decoded;
+
+    /**
+     * Creates a graph over the adjacency stored in the given snapshot.
+     *
+     * @param file The snapshot holding the graph.
+     */
+    MappedGraph(SnapshotFile file) {
+        this.file = file;
+        this.decoded = new Block[(file.vertexCount + CHUNK_SIZE - 1)
+                >>> CHUNK_BITS][];
+    }
+
+    @Override
+    public int vertexCount() {
+        return file.vertexCount;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        if (vertex < 0 || vertex >= file.vertexCount) {
+            return 0;
+        }
+        return block(vertex).neighbours.length;
+    }
+
+    @Override
+    public int neighbour(int vertex, int edge) {
+        return block(vertex).neighbours[edge];
+    }
+
+    @Override
+    public int findEdge(int vertex, int other) {
+        if (vertex < 0 || vertex >= file.vertexCount) {
+            return -1;
+        }
+        int[] neighbours = block(vertex).neighbours;
+        int position = SortedInts.lowerBound(neighbours, 0, neighbours.length,
+                other);
+        if (position < neighbours.length && neighbours[position] == other) {
+            return position;
+        }
+        return -1;
+    }
+
+    @Override
+    public int firstContact(int vertex, int edge) {
+        Block current = block(vertex);
+        return current.times[current.timeOffsets[edge]];
+    }
+
+    @Override
+    public int lastContact(int vertex, int edge) {
+        Block current = block(vertex);
+        return current.times[current.timeOffsets[edge + 1] - 1];
+    }
+
+    @Override
+    public int ceilingContact(int vertex, int edge, int time) {
+        Block current = block(vertex);
+        int end = current.timeOffsets[edge + 1];
+        int position = SortedInts.lowerBound(current.times,
+                current.timeOffsets[edge], end, time);
+        return position < end ? current.times[position] : -1;
+    }
+
+    @Override
+    public int floorContact(int vertex, int edge, int time) {
+        Block current = block(vertex);
+        int start = current.timeOffsets[edge];
+        int position = SortedInts.upperBound(current.times, start,
+                current.timeOffsets[edge + 1], time) - 1;
+        return position >= start ? current.times[position] : -1;
+    }
+
+    @Override
+    public IntBuffer contactTimes(int vertex, int edge, int from, int to) {
+        Block current = block(vertex);
+        int end = current.timeOffsets[edge + 1];
+        int first = SortedInts.lowerBound(current.times,
+                current.timeOffsets[edge], end, from);
+        int last = SortedInts.upperBound(current.times, first, end, to);
+        return IntBuffer.wrap(current.times, first, last - first).slice()
+                .asReadOnlyBuffer();
+    }
+
+    @Override
+    public int timelineSize(int vertex) {
+        if (vertex < 0 || vertex >= file.vertexCount) {
+            return 0;
+        }
+        return block(vertex).timelineTimes.length;
+    }
+
+    @Override
+    public int timelineSearch(int vertex, int time) {
+        int[] times = block(vertex).timelineTimes;
+        return SortedInts.lowerBound(times, 0, times.length, time);
+    }
+
+    @Override
+    public int timelineTime(int vertex, int position) {
+        return block(vertex).timelineTimes[position];
+    }
+
+    @Override
+    public int timelineNeighbour(int vertex, int position) {
+        return block(vertex).timelineNeighbours[position];
+    }
+
+    /**
+     * Return the decoded adjacency of the given vertex, decoding it on first
+     * access.
+     * <p>
+     * Blocks are immutable, so a block decoded twice by racing readers is
+     * harmless and any thread seeing a published block sees it fully built.
+     *
+     * @param vertex The ID of the vertex, within the graph.
+     * @return The decoded adjacency.
+     */
+    private Block block(int vertex) {
+        int chunk = vertex >>> CHUNK_BITS;
+        Block[] blocks = decoded[chunk];
+        if (blocks == null) {
+            blocks = new Block[CHUNK_SIZE];
+            decoded[chunk] = blocks;
+        }
+        Block current = blocks[vertex & (CHUNK_SIZE - 1)];
+        if (current == null) {
+            current = decode(vertex);
+            blocks[vertex & (CHUNK_SIZE - 1)] = current;
+        }
+        return current;
+    }
+
+    /**
+     * Check the adjacency block of the given vertex against its checksum and
+     * decode it.
+     *
+     * @param vertex The ID of the vertex.
+     * @return The decoded adjacency.
+     */
+    private Block decode(int vertex) {
+        SnapshotFile.MappedFile data = file.data;
+        long entry = file.directoryPos
+                + (long) vertex * SnapshotFile.DIRECTORY_ENTRY;
+        long position = data.getLong(entry);
+        int length = data.getInt(entry + 8);
+        if (data.crc(position, length) != data.getInt(entry + 12)) {
+            throw SnapshotFile.corrupt("adjacency of vertex " + vertex);
+        }
+        int degree = data.getInt(position);
+        int timelineSize = data.getInt(position + 4);
+        position += 8;
+        int[] neighbours = data.getInts(position, degree);
+        position += 4L * degree;
+        int[] timeOffsets = data.getInts(position, degree + 1);
+        position += 4L * (degree + 1);
+        int[] times = data.getInts(position, timeOffsets[degree]);
+        position += 4L * timeOffsets[degree];
+        int[] timelineTimes = data.getInts(position, timelineSize);
+        position += 4L * timelineSize;
+        int[] timelineNeighbours = data.getInts(position, timelineSize);
+        return new Block(neighbours, timeOffsets, times, timelineTimes,
+                timelineNeighbours);
+    }
+
+    /**
+     * Decoded adjacency of one vertex.
+     */
+    private static final class Block {
+        // IDs of the vertices opposite each edge, ascending.
+        final int[] neighbours;
+        // Start of each edge's contact times, with a final entry marking the
+        // end.
+        final int[] timeOffsets;
+        // Contact times of every edge, ascending within each edge.
+        final int[] times;
+        // Time of every contact of the vertex, ascending.
+        final int[] timelineTimes;
+        // ID of the vertex met in each contact, parallel to timelineTimes.
+        final int[] timelineNeighbours;
+
+        /**
+         * Create a decoded block from its arrays.
+         */
+        private Block(int[] neighbours, int[] timeOffsets, int[] times,
+                      int[] timelineTimes, int[] timelineNeighbours) {
+            this.neighbours = neighbours;
+            this.timeOffsets = timeOffsets;
+            this.times = times;
+            this.timelineTimes = timelineTimes;
+            this.timelineNeighbours = timelineNeighbours;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only name table stored in a {@link SnapshotFile}.
+ * <p>
+ * Names are looked up through the hash slots stored in the file, so opening
+ * the table reads nothing. Each block of names is checked against its
+ * checksum the first time one of its names is read, and decoded names are
+ * cached.
+ */
+class MappedNames {
+
+    // The snapshot holding the names.
+    private final SnapshotFile file;
+    // Decoded names, in chunks of one checksum block each, created on first
+    // access. Published atomically so other threads see every name of a
+    // chunk.
+    private final AtomicReferenceArray<String[]> decoded;
+
+    /**
+     * Creates a name table over the names in the given snapshot.
+     *
+     * @param file The snapshot holding the names.
+     */
+    MappedNames(SnapshotFile file) {
+        this.file = file;
+        this.decoded = new AtomicReferenceArray<>((file.vertexCount
+                + SnapshotFile.NAME_BLOCK - 1) / SnapshotFile.NAME_BLOCK);
+    }
+
+    /**
+     * @return the number of names stored.
+     */
+    int size() {
+        return file.vertexCount;
+    }
+
+    /**
+     * Return the ID of the given name.
+     *
+     * @param name The name to look up.
+     * @return The ID of the name, or -1 if it isn't stored.
+     */
+    int idOf(String name) {
+        int mask = file.nameSlotCount - 1;
+        int slot = NameTable.mix(name.hashCode()) & mask;
+        while (true) {
+            int id = file.data.getInt(file.nameSlotsPos + 4L * slot);
+            if (id == SnapshotFile.EMPTY) {
+                return -1;
+            }
+            if (nameOf(id).equals(name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Return the name with the given ID.
+     *
+     * @param id The ID to look up, from 0 to {@code size() - 1}.
+     * @return The name.
+     */
+    String nameOf(int id) {
+        int block = id / SnapshotFile.NAME_BLOCK;
+        String[] names = decoded.get(block);
+        if (names == null) {
+            names = decodeBlock(block);
+            decoded.set(block, names);
+        }
+        return names[id % SnapshotFile.NAME_BLOCK];
+    }
+
+    /**
+     * Check one block of names against its checksum and decode it.
+     *
+     * @param block The number of the block.
+     * @return The decoded names of the block.
+     */
+    private String[] decodeBlock(int block) {
+        int first = block * SnapshotFile.NAME_BLOCK;
+        int last = Math.min(first + SnapshotFile.NAME_BLOCK, file.vertexCount);
+        SnapshotFile.MappedFile data = file.data;
+        long offsets = file.nameOffsetsPos + 4L * first;
+        int start = data.getInt(offsets);
+        int end = data.getInt(offsets + 4L * (last - first));
+        CRC32 crc = new CRC32();
+        byte[] offsetBytes = new byte[4 * (last - first + 1)];
+        for (int i = 0; i < offsetBytes.length; i++) {
+            offsetBytes[i] = data.getByte(offsets + i);
+        }
+        crc.update(offsetBytes);
+        int expected = data.getInt(file.nameChecksumsPos + 4L * block);
+        byte[] bytes = new byte[Math.max(end - start, 0)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.getByte(file.nameBytesPos + start + i);
+        }
+        crc.update(bytes);
+        if ((int) crc.getValue() != expected) {
+            throw SnapshotFile.corrupt("names " + first + " to " + (last - 1));
+        }
+        String[] names = new String[last - first];
+        for (int id = first; id < last; id++) {
+            int from = data.getInt(offsets + 4L * (id - first)) - start;
+            int to = data.getInt(offsets + 4L * (id - first + 1)) - start;
+            names[id - first] = new String(bytes, from, to - from,
+                    StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Contact graph that contacts can be recorded in.
+ */
+interface MutableContactGraph extends ContactGraph {
+
+    /**
+     * Record a contact between the given people at the given time.
+     *
+     * @param person1 The ID of the first person.
+     * @param person2 The ID of the second person.
+     * @param time    The time at which the two people met.
+     * @return true if the contact was added, false if it was already stored.
+     * @require person1 &gt;= 0 &amp;&amp; person2 &gt;= 0 &amp;&amp;
+     * person1 != person2 &amp;&amp; time &gt;= 0
+     */
+    boolean addContact(int person1, int person2, int time);
+
+    /**
+     * @return true if no contacts have been recorded.
+     */
+    boolean isEmpty();
+
+    /**
+     * @return A graph of the contacts recorded so far that a query can read
+     * several times over, seeing the same contacts each time. This graph
+     * itself unless it needs a copy for that.
+     */
+    default ContactGraph pin() {
+        return this;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Symbol table that interns person names as dense int IDs.
+ * <p>
+ * IDs are assigned in order of first appearance, starting from 0, so they can
+ * be used directly as array indices. Names are hashed once when interned;
+ * everything downstream of the table works on IDs.
+ */
+interface NameTable {
+
+    /**
+     * @return the number of names interned so far.
+     */
+    int size();
+
+    /**
+     * Return the ID of the given name, interning it if it hasn't been
+     * seen before.
+     *
+     * @param name The name to intern.
+     * @return The ID of the name.
+     * @require name != null
+     */
+    int intern(String name);
+
+    /**
+     * Return the ID of the given name.
+     *
+     * @param name The name to look up.
+     * @return The ID of the name, or -1 if it hasn't been interned.
+     */
+    int idOf(String name);
+
+    /**
+     * Return the name with the given ID.
+     *
+     * @param id The ID to look up.
+     * @return The name, or null if no name has this ID.
+     */
+    String nameOf(int id);
+
+    /**
+     * Spread the bits of a hash code so that linear probing over a power of
+     * two table doesn't cluster on the low bits.
+     *
+     * @param hash The hash code to mix.
+     * @return The mixed hash.
+     */
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,249 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable block of memory outside the Java heap, addressed by long byte
+ * positions.
+ * <p>
+ * The memory is held in direct buffers of up to 1 GiB each, so a block can
+ * be far larger than one buffer and the garbage collector sees only a few
+ * objects however much it holds. Every chunk but the last is full size. The
+ * last grows by doubling until it is full, then a new one is started. Ints
+ * and longs are stored in native byte order at aligned positions, so they
+ * never straddle two chunks.
+ * <p>
+ * The memory is freed once the block is unreachable, as for any direct
+ * buffer, so it counts towards {@code -XX:MaxDirectMemorySize}. Reading from
+ * many threads at once is safe once writing has finished.
+ */
+final class OffHeapBuffer {
+
+    // Bits of a position that pick the position within a full chunk.
+    private static final int DEFAULT_CHUNK_BITS = 30;
+    // Smallest last chunk allocated.
+    private static final int MIN_CHUNK = 64;
+
+    // Bits of a position that pick the position within a chunk.
+    private final int chunkBits;
+    // Number of bytes in a full chunk.
+    private final int chunkSize;
+    // The chunks, in order.
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    // Int views of the chunks, for handing out slices.
+    private IntBuffer[] intViews = new IntBuffer[0];
+    // Number of bytes the chunks hold.
+    private long capacity;
+
+    /**
+     * Creates an empty block with chunks of up to 1 GiB.
+     */
+    OffHeapBuffer() {
+        this(DEFAULT_CHUNK_BITS);
+    }
+
+    /**
+     * Creates an empty block with chunks of the given size.
+     *
+     * @param chunkBits The log2 of the number of bytes in a full chunk.
+     * @require chunkBits &gt;= 6 &amp;&amp; chunkBits &lt;= 30
+     */
+    OffHeapBuffer(int chunkBits) {
+        this.chunkBits = chunkBits;
+        this.chunkSize = 1 << chunkBits;
+    }
+
+    /**
+     * @return the number of bytes that can be written without growing.
+     */
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Grow the block to hold at least the given number of bytes. Bytes
+     * already written keep their positions and values.
+     *
+     * @param bytes The number of bytes to make room for.
+     */
+    void ensureCapacity(long bytes) {
+        if (bytes <= capacity) {
+            return;
+        }
+        int last = chunks.length - 1;
+        if (last >= 0 && chunks[last].capacity() < chunkSize) {
+            long wanted = bytes - ((long) last << chunkBits);
+            long doubled = 2L * chunks[last].capacity();
+            resizeLast((int) Math.min(chunkSize, Math.max(wanted, doubled)));
+        }
+        while (capacity < bytes) {
+            long wanted = bytes - capacity;
+            addChunk((int) Math.min(chunkSize, Math.max(wanted, MIN_CHUNK)));
+        }
+    }
+
+    /**
+     * Release the memory beyond the given number of bytes, once writing has
+     * finished.
+     *
+     * @param bytes The number of bytes to keep.
+     */
+    void trim(long bytes) {
+        int count = (int) ((bytes + chunkSize - 1) >>> chunkBits);
+        if (count < chunks.length) {
+            chunks = Arrays.copyOf(chunks, count);
+            intViews = Arrays.copyOf(intViews, count);
+            capacity = (long) count << chunkBits;
+        }
+        if (count > 0) {
+            int last = (int) (bytes - ((long) (count - 1) << chunkBits));
+            if (last < chunks[count - 1].capacity()) {
+                resizeLast(last);
+            }
+        } else {
+            capacity = 0;
+        }
+    }
+
+    /**
+     * @param position A 4-byte aligned position in the block.
+     * @return The int at that position.
+     */
+    int getInt(long position) {
+        return chunks[(int) (position >>> chunkBits)]
+                .getInt((int) position & (chunkSize - 1));
+    }
+
+    /**
+     * @param position A 4-byte aligned position in the block.
+     * @param value    The int to store there.
+     */
+    void putInt(long position, int value) {
+        chunks[(int) (position >>> chunkBits)]
+                .putInt((int) position & (chunkSize - 1), value);
+    }
+
+    /**
+     * @param position An 8-byte aligned position in the block.
+     * @return The long at that position.
+     */
+    long getLong(long position) {
+        return chunks[(int) (position >>> chunkBits)]
+                .getLong((int) position & (chunkSize - 1));
+    }
+
+    /**
+     * @param position An 8-byte aligned position in the block.
+     * @param value    The long to store there.
+     */
+    void putLong(long position, long value) {
+        chunks[(int) (position >>> chunkBits)]
+                .putLong((int) position & (chunkSize - 1), value);
+    }
+
+    /**
+     * Copy bytes out of the block.
+     *
+     * @param position The position of the first byte.
+     * @param into     The array to copy into, from its start.
+     * @param count    The number of bytes to copy.
+     */
+    void getBytes(long position, byte[] into, int count) {
+        int copied = 0;
+        while (copied < count) {
+            ByteBuffer chunk = chunks[(int) (position >>> chunkBits)];
+            int start = (int) position & (chunkSize - 1);
+            int part = Math.min(count - copied, chunk.capacity() - start);
+            chunk.get(start, into, copied, part);
+            copied += part;
+            position += part;
+        }
+    }
+
+    /**
+     * Copy bytes into the block.
+     *
+     * @param position The position to copy the first byte to.
+     * @param bytes    The bytes to copy.
+     */
+    void putBytes(long position, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            ByteBuffer chunk = chunks[(int) (position >>> chunkBits)];
+            int start = (int) position & (chunkSize - 1);
+            int part = Math.min(bytes.length - copied,
+                    chunk.capacity() - start);
+            chunk.put(start, bytes, copied, part);
+            copied += part;
+            position += part;
+        }
+    }
+
+    /**
+     * Return a read-only view of a run of ints. The rare run that straddles
+     * two chunks is copied onto the heap instead.
+     *
+     * @param position The 4-byte aligned position of the first int.
+     * @param count    The number of ints.
+     * @return The ints, from the buffer's position to its limit.
+     */
+    IntBuffer intSlice(long position, int count) {
+        if (count == 0) {
+            return IntBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        int chunk = (int) (position >>> chunkBits);
+        int start = ((int) position & (chunkSize - 1)) >>> 2;
+        if (start + count <= intViews[chunk].capacity()) {
+            return intViews[chunk].slice(start, count).asReadOnlyBuffer();
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = getInt(position + 4L * i);
+        }
+        return IntBuffer.wrap(values).asReadOnlyBuffer();
+    }
+
+    /**
+     * Append a new chunk.
+     *
+     * @param size The number of bytes in the chunk.
+     */
+    private void addChunk(int size) {
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        intViews = Arrays.copyOf(intViews, intViews.length + 1);
+        setChunk(chunks.length - 1, allocate(size));
+        capacity += size;
+    }
+
+    /**
+     * Replace the last chunk with one of a new size, copying what fits.
+     *
+     * @param size The number of bytes in the new chunk.
+     */
+    private void resizeLast(int size) {
+        int last = chunks.length - 1;
+        ByteBuffer old = chunks[last];
+        ByteBuffer resized = allocate(size);
+        resized.put(0, old, 0, Math.min(size, old.capacity()));
+        setChunk(last, resized);
+        capacity += size - old.capacity();
+    }
+
+    /**
+     * @param index The index of the chunk.
+     * @param chunk The chunk to store there.
+     */
+    private void setChunk(int index, ByteBuffer chunk) {
+        chunks[index] = chunk;
+        intViews[index] = chunk.asIntBuffer();
+    }
+
+    /**
+     * @param size The number of bytes.
+     * @return a new zeroed direct buffer in native byte order.
+     */
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,387 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable contact graph in compressed sparse row form, held outside the
+ * Java heap.
+ * <p>
+ * The layout is that of {@link CsrGraph}, with every array stored in an
+ * {@link OffHeapBuffer} instead, so the graph costs the garbage collector a
+ * few dozen objects however many contacts it holds. Offsets are longs, so a
+ * graph may hold more than 2<sup>31</sup> directed edges or timeline entries.
+ * <p>
+ * Graphs are built by merging other graphs one vertex at a time, so building
+ * needs heap space only for the contacts of one person.
+ */
+class OffHeapGraph implements CompactGraph {
+
+    // One more than the highest vertex ID in the graph.
+    private final int vertexCount;
+    // Start of each vertex's edges as longs, with a final entry marking the
+    // end.
+    private final OffHeapBuffer edgeOffsets = new OffHeapBuffer();
+    // ID of the vertex opposite each edge, ascending within each vertex.
+    private final OffHeapBuffer neighbours = new OffHeapBuffer();
+    // ID of the undirected edge behind each directed edge.
+    private final OffHeapBuffer edgeIds = new OffHeapBuffer();
+    // Start of each undirected edge's contact times as longs, with a final
+    // entry marking the end.
+    private final OffHeapBuffer timeOffsets = new OffHeapBuffer();
+    // Contact times of every undirected edge, ascending within each edge.
+    private final OffHeapBuffer times = new OffHeapBuffer();
+    // Start of each vertex's timeline as longs, with a final entry marking
+    // the end.
+    private final OffHeapBuffer timelineOffsets = new OffHeapBuffer();
+    // Time of every contact in each vertex's timeline.
+    private final OffHeapBuffer timelineTimes = new OffHeapBuffer();
+    // ID of the vertex met in each contact, parallel to timelineTimes.
+    private final OffHeapBuffer timelineNeighbours = new OffHeapBuffer();
+    // Number of distinct contacts stored.
+    private long contactCount;
+
+    /**
+     * Creates a graph with no edges, to be filled by {@link #compact}.
+     *
+     * @param vertexCount One more than the highest vertex ID.
+     */
+    private OffHeapGraph(int vertexCount) {
+        this.vertexCount = vertexCount;
+    }
+
+    /**
+     * Build a graph holding every contact at or after a cutoff time from the
+     * given layers. People left with no contacts keep their ID but have no
+     * edges.
+     * <p>
+     * Each vertex's edges are gathered from every layer and merged in order
+     * of neighbour, so no layer needs its edges sorted. Edges to a smaller
+     * neighbour were already written with that neighbour, and are found by
+     * searching its edge list.
+     *
+     * @param layers The graphs to read contacts from. Must not be written
+     *               while this runs.
+     * @param cutoff The earliest contact time to keep.
+     * @return The built graph.
+     */
+    static OffHeapGraph compact(ContactGraph[] layers, int cutoff) {
+        int vertexCount = 0;
+        for (ContactGraph layer : layers) {
+            vertexCount = Math.max(vertexCount, layer.vertexCount());
+        }
+        OffHeapGraph graph = new OffHeapGraph(vertexCount);
+        graph.edgeOffsets.ensureCapacity(8L * (vertexCount + 1));
+        graph.timelineOffsets.ensureCapacity(8L * (vertexCount + 1));
+        graph.timeOffsets.ensureCapacity(8);
+        Merge merge = new Merge();
+        int edgeCount = 0;
+        long edge = 0;
+        long contact = 0;
+        long timeline = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            graph.edgeOffsets.putLong(8L * v, edge);
+            graph.timelineOffsets.putLong(8L * v, timeline);
+            int found = merge.gather(layers, v, cutoff);
+            graph.neighbours.ensureCapacity(4 * (edge + found));
+            graph.edgeIds.ensureCapacity(4 * (edge + found));
+            merge.contacts = 0;
+            for (int i = 0; i < found; ) {
+                int other = CsrGraph.high(merge.keys[i]);
+                int end = i + 1;
+                while (end < found && CsrGraph.high(merge.keys[end]) == other) {
+                    end++;
+                }
+                int id;
+                if (other > v) {
+                    // First time this edge is seen: write its contact times.
+                    int count = merge.times(layers, v, i, end, cutoff);
+                    id = edgeCount++;
+                    graph.times.ensureCapacity(4 * (contact + count));
+                    graph.timeOffsets.ensureCapacity(8L * (edgeCount + 1));
+                    for (int t = 0; t < count; t++) {
+                        graph.times.putInt(4 * (contact + t),
+                                merge.edgeTimes[t]);
+                    }
+                    contact += count;
+                    graph.timeOffsets.putLong(8L * edgeCount, contact);
+                } else {
+                    id = graph.edgeIds.getInt(4 * SortedInts.lowerBound(
+                            graph.neighbours,
+                            graph.edgeOffsets.getLong(8L * other),
+                            graph.edgeOffsets.getLong(8L * other + 8), v));
+                }
+                graph.neighbours.putInt(4 * edge, other);
+                graph.edgeIds.putInt(4 * edge, id);
+                edge++;
+                merge.addTimeline(graph.times, graph.timeOffset(id),
+                        graph.timeOffset(id + 1), other);
+                i = end;
+            }
+            // Packing the time above the neighbour means sorting a timeline
+            // orders it by time.
+            Arrays.sort(merge.timeline, 0, merge.contacts);
+            graph.timelineTimes.ensureCapacity(4 * (timeline + merge.contacts));
+            graph.timelineNeighbours.ensureCapacity(
+                    4 * (timeline + merge.contacts));
+            for (int t = 0; t < merge.contacts; t++) {
+                graph.timelineTimes.putInt(4 * timeline,
+                        CsrGraph.high(merge.timeline[t]));
+                graph.timelineNeighbours.putInt(4 * timeline,
+                        CsrGraph.low(merge.timeline[t]));
+                timeline++;
+            }
+        }
+        graph.edgeOffsets.putLong(8L * vertexCount, edge);
+        graph.timelineOffsets.putLong(8L * vertexCount, timeline);
+        graph.contactCount = contact;
+        graph.neighbours.trim(4 * edge);
+        graph.edgeIds.trim(4 * edge);
+        graph.timeOffsets.trim(8L * (edgeCount + 1));
+        graph.times.trim(4 * contact);
+        graph.timelineTimes.trim(4 * timeline);
+        graph.timelineNeighbours.trim(4 * timeline);
+        return graph;
+    }
+
+    @Override
+    public long contactCount() {
+        return contactCount;
+    }
+
+    @Override
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public int degree(int vertex) {
+        if (vertex < 0 || vertex >= vertexCount) {
+            return 0;
+        }
+        return (int) (edgeOffset(vertex + 1) - edgeOffset(vertex));
+    }
+
+    @Override
+    public int neighbour(int vertex, int edge) {
+        return neighbours.getInt(4 * (edgeOffset(vertex) + edge));
+    }
+
+    @Override
+    public int findEdge(int vertex, int other) {
+        if (vertex < 0 || vertex >= vertexCount) {
+            return -1;
+        }
+        long start = edgeOffset(vertex);
+        long end = edgeOffset(vertex + 1);
+        long position = SortedInts.lowerBound(neighbours, start, end, other);
+        if (position < end && neighbours.getInt(4 * position) == other) {
+            return (int) (position - start);
+        }
+        return -1;
+    }
+
+    @Override
+    public int firstContact(int vertex, int edge) {
+        return times.getInt(4 * timeOffset(edgeId(vertex, edge)));
+    }
+
+    @Override
+    public int lastContact(int vertex, int edge) {
+        return times.getInt(4 * timeOffset(edgeId(vertex, edge) + 1) - 4);
+    }
+
+    @Override
+    public int ceilingContact(int vertex, int edge, int time) {
+        int id = edgeId(vertex, edge);
+        long end = timeOffset(id + 1);
+        long position = SortedInts.lowerBound(times, timeOffset(id), end,
+                time);
+        return position < end ? times.getInt(4 * position) : -1;
+    }
+
+    @Override
+    public int floorContact(int vertex, int edge, int time) {
+        int id = edgeId(vertex, edge);
+        long start = timeOffset(id);
+        long position = SortedInts.upperBound(times, start,
+                timeOffset(id + 1), time) - 1;
+        return position >= start ? times.getInt(4 * position) : -1;
+    }
+
+    @Override
+    public IntBuffer contactTimes(int vertex, int edge, int from, int to) {
+        int id = edgeId(vertex, edge);
+        long end = timeOffset(id + 1);
+        long first = SortedInts.lowerBound(times, timeOffset(id), end, from);
+        long last = SortedInts.upperBound(times, first, end, to);
+        return times.intSlice(4 * first, (int) (last - first));
+    }
+
+    @Override
+    public int timelineSize(int vertex) {
+        if (vertex < 0 || vertex >= vertexCount) {
+            return 0;
+        }
+        return (int) (timelineOffset(vertex + 1) - timelineOffset(vertex));
+    }
+
+    @Override
+    public int timelineSearch(int vertex, int time) {
+        long start = timelineOffset(vertex);
+        return (int) (SortedInts.lowerBound(timelineTimes, start,
+                timelineOffset(vertex + 1), time) - start);
+    }
+
+    @Override
+    public int timelineTime(int vertex, int position) {
+        return timelineTimes.getInt(4 * (timelineOffset(vertex) + position));
+    }
+
+    @Override
+    public int timelineNeighbour(int vertex, int position) {
+        return timelineNeighbours.getInt(
+                4 * (timelineOffset(vertex) + position));
+    }
+
+    /**
+     * @param vertex The ID of a vertex, up to vertexCount.
+     * @return The index of the vertex's first edge.
+     */
+    private long edgeOffset(int vertex) {
+        return edgeOffsets.getLong(8L * vertex);
+    }
+
+    /**
+     * @param vertex The ID of a vertex, up to vertexCount.
+     * @return The index of the first contact in the vertex's timeline.
+     */
+    private long timelineOffset(int vertex) {
+        return timelineOffsets.getLong(8L * vertex);
+    }
+
+    /**
+     * @param id The ID of an undirected edge, up to the number of edges.
+     * @return The index of the edge's first contact time.
+     */
+    private long timeOffset(int id) {
+        return timeOffsets.getLong(8L * id);
+    }
+
+    /**
+     * @param vertex The ID of the vertex.
+     * @param edge   The position of the edge in the vertex's edge list.
+     * @return The ID of the undirected edge.
+     */
+    private int edgeId(int vertex, int edge) {
+        return edgeIds.getInt(4 * (edgeOffset(vertex) + edge));
+    }
+
+    /**
+     * Heap space for merging the contacts of one vertex from every layer,
+     * reused from one vertex to the next and grown as needed.
+     */
+    private static class Merge {
+
+        // Neighbour of each edge found above the index of its slot, sorted.
+        private long[] keys = new long[16];
+        // Layer and position in that layer's edge list of each slot.
+        private int[] slotLayers = new int[16];
+        private int[] slotEdges = new int[16];
+        // Contact times of the edge being merged.
+        private int[] edgeTimes = new int[16];
+        // Contacts of the vertex, with the time above the neighbour.
+        private long[] timeline = new long[16];
+        // Number of contacts in the timeline.
+        private int contacts;
+
+        /**
+         * Find the edges of a vertex in every layer with a contact at or
+         * after the cutoff, and sort them by neighbour.
+         *
+         * @param layers The graphs to read.
+         * @param vertex The ID of the vertex.
+         * @param cutoff The earliest contact time to keep.
+         * @return The number of edges found.
+         */
+        int gather(ContactGraph[] layers, int vertex, int cutoff) {
+            int found = 0;
+            for (int layer = 0; layer < layers.length; layer++) {
+                int degree = layers[layer].degree(vertex);
+                for (int edge = 0; edge < degree; edge++) {
+                    if (layers[layer].lastContact(vertex, edge) >= cutoff) {
+                        if (found == keys.length) {
+                            keys = Arrays.copyOf(keys, found * 2);
+                            slotLayers = Arrays.copyOf(slotLayers, found * 2);
+                            slotEdges = Arrays.copyOf(slotEdges, found * 2);
+                        }
+                        slotLayers[found] = layer;
+                        slotEdges[found] = edge;
+                        keys[found] = CsrGraph.pack(
+                                layers[layer].neighbour(vertex, edge), found);
+                        found++;
+                    }
+                }
+            }
+            Arrays.sort(keys, 0, found);
+            return found;
+        }
+
+        /**
+         * Merge the contact times at or after the cutoff of one edge found
+         * in several layers into edgeTimes, dropping repeats.
+         *
+         * @param layers The graphs to read.
+         * @param vertex The ID of the vertex.
+         * @param from   The first sorted slot of the edge.
+         * @param to     The end of the edge's slots.
+         * @param cutoff The earliest contact time to keep.
+         * @return The number of distinct times.
+         */
+        int times(ContactGraph[] layers, int vertex, int from, int to,
+                  int cutoff) {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int slot = CsrGraph.low(keys[i]);
+                IntBuffer kept = layers[slotLayers[slot]].contactTimes(vertex,
+                        slotEdges[slot], cutoff, Integer.MAX_VALUE);
+                int size = kept.remaining();
+                if (count + size > edgeTimes.length) {
+                    edgeTimes = Arrays.copyOf(edgeTimes,
+                            Math.max(edgeTimes.length * 2, count + size));
+                }
+                kept.get(edgeTimes, count, size);
+                count += size;
+            }
+            if (to - from == 1) {
+                return count;
+            }
+            Arrays.sort(edgeTimes, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || edgeTimes[i] != edgeTimes[i - 1]) {
+                    edgeTimes[distinct++] = edgeTimes[i];
+                }
+            }
+            return distinct;
+        }
+
+        /**
+         * Add the contacts of one edge to the vertex's timeline.
+         *
+         * @param times The block holding the edge's contact times.
+         * @param from  The index of the edge's first contact time.
+         * @param to    The end of the edge's contact times.
+         * @param other The ID of the vertex at the other end.
+         */
+        void addTimeline(OffHeapBuffer times, long from, long to, int other) {
+            int count = (int) (to - from);
+            if (contacts + count > timeline.length) {
+                timeline = Arrays.copyOf(timeline,
+                        Math.max(timeline.length * 2, contacts + count));
+            }
+            for (int t = 0; t < count; t++) {
+                timeline[contacts++] = CsrGraph.pack(
+                        times.getInt(4 * (from + t)), other);
+            }
+        }
+    }
+}
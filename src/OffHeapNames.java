@@ -0,0 +1,162 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Name table held outside the Java heap.
+ * <p>
+ * The UTF-8 bytes of every name are appended to an arena, and names are found
+ * through an open-addressing hash index of IDs, all in {@link OffHeapBuffer}s.
+ * The hash code of each name is kept beside it, so growing the index never
+ * decodes a name. Looking a name up encodes it once; returning a name decodes
+ * a new String each time.
+ * <p>
+ * Like {@link HashNameTable}, names must be interned from one thread at a time.
+ */
+class OffHeapNames implements NameTable {
+
+    // Marks an unused slot in the hash index.
+    private static final int EMPTY = -1;
+    // Initial number of slots in the hash index. Must be a power of two.
+    private static final int INITIAL_SLOTS = 1 << 10;
+
+    // UTF-8 bytes of every name, in order of ID.
+    private final OffHeapBuffer bytes = new OffHeapBuffer();
+    // Start of each name's bytes as longs, with a final entry marking the
+    // end of the last.
+    private final OffHeapBuffer offsets = new OffHeapBuffer();
+    // String hash code of each name.
+    private final OffHeapBuffer hashes = new OffHeapBuffer();
+    // Open-addressing hash index of names, storing the ID of each name.
+    private OffHeapBuffer slots;
+    // Number of slots in the hash index, a power of two.
+    private int slotCount;
+    // Number of names interned.
+    private int size;
+
+    /**
+     * Creates an empty name table.
+     */
+    OffHeapNames() {
+        offsets.ensureCapacity(8);
+        slots = newSlots(INITIAL_SLOTS);
+        slotCount = INITIAL_SLOTS;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int intern(String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int hash = name.hashCode();
+        long slot = find(encoded, hash);
+        int existing = slots.getInt(4 * slot);
+        if (existing != EMPTY) {
+            return existing;
+        }
+        int id = size;
+        long start = offsets.getLong(8L * id);
+        bytes.ensureCapacity(start + encoded.length);
+        bytes.putBytes(start, encoded);
+        offsets.ensureCapacity(8L * (id + 2));
+        offsets.putLong(8L * (id + 1), start + encoded.length);
+        hashes.ensureCapacity(4L * (id + 1));
+        hashes.putInt(4L * id, hash);
+        slots.putInt(4 * slot, id);
+        size = id + 1;
+        if (2L * size > slotCount) {
+            rehash(slotCount * 2);
+        }
+        return id;
+    }
+
+    @Override
+    public int idOf(String name) {
+        if (name == null) {
+            return EMPTY;
+        }
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        return slots.getInt(4 * find(encoded, name.hashCode()));
+    }
+
+    @Override
+    public String nameOf(int id) {
+        if (id < 0 || id >= size) {
+            return null;
+        }
+        long start = offsets.getLong(8L * id);
+        byte[] name = new byte[(int) (offsets.getLong(8L * id + 8) - start)];
+        bytes.getBytes(start, name, name.length);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find the slot holding the given name, or the empty slot where it
+     * would be inserted.
+     *
+     * @param name The UTF-8 bytes of the name.
+     * @param hash The String hash code of the name.
+     * @return The slot index.
+     */
+    private long find(byte[] name, int hash) {
+        int mask = slotCount - 1;
+        int slot = NameTable.mix(hash) & mask;
+        while (true) {
+            int id = slots.getInt(4L * slot);
+            if (id == EMPTY || (hashes.getInt(4L * id) == hash
+                    && sameBytes(id, name))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param id   The ID of a stored name.
+     * @param name The UTF-8 bytes of a name.
+     * @return true if the stored name has exactly those bytes.
+     */
+    private boolean sameBytes(int id, byte[] name) {
+        long start = offsets.getLong(8L * id);
+        if (offsets.getLong(8L * id + 8) - start != name.length) {
+            return false;
+        }
+        byte[] stored = new byte[name.length];
+        bytes.getBytes(start, stored, stored.length);
+        return Arrays.equals(stored, name);
+    }
+
+    /**
+     * Rebuild the hash index with the given number of slots.
+     *
+     * @param capacity The new number of slots, a power of two.
+     */
+    private void rehash(int capacity) {
+        OffHeapBuffer rehashed = newSlots(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = NameTable.mix(hashes.getInt(4L * id)) & mask;
+            while (rehashed.getInt(4L * slot) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed.putInt(4L * slot, id);
+        }
+        slots = rehashed;
+        slotCount = capacity;
+    }
+
+    /**
+     * @param capacity The number of slots.
+     * @return a new hash index with every slot empty.
+     */
+    private static OffHeapBuffer newSlots(int capacity) {
+        OffHeapBuffer empty = new OffHeapBuffer();
+        empty.ensureCapacity(4L * capacity);
+        for (long slot = 0; slot < capacity; slot++) {
+            empty.putInt(4 * slot, EMPTY);
+        }
+        return empty;
+    }
+}
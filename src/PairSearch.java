@@ -0,0 +1,248 @@
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * Bidirectional search for the earliest time one person could have infected
+ * another.
+ * <p>
+ * The forward side is the usual earliest-arrival search from the first
+ * person, settling people in ascending order of the time they became
+ * contagious, and stops once it settles the other person. The backward side
+ * works from the other person in descending order of time, finding the
+ * latest time each person could be contagious and still infect them. Anyone
+ * the forward side reaches after that time can't lead to the other person,
+ * so the forward side skips them. People the backward side hasn't reached
+ * yet have no later deadline than the next one it would settle, so once the
+ * two sides cross, the forward side only follows people on both.
+ * <p>
+ * Once the forward side finds any way to infect the other person, only
+ * earlier infections matter, so the backward side starts again counting only
+ * contacts with them before that time. Its deadlines get earlier, and the
+ * forward side skips more people.
+ */
+class PairSearch {
+
+    // Minutes after being infected that a person becomes contagious.
+    private static final int DELAY = ContactTracer.CONTAGION_DELAY;
+
+    // Every graph holding contacts.
+    private final ContactGraph[] layers;
+    // ID of the person who became contagious.
+    private final int person;
+    // The time they became contagious.
+    private final int timeOfContagion;
+    // ID of the person who may have been infected.
+    private final int other;
+    // Forward, the earliest time each person reached could be contagious,
+    // who infected them, and the people settled.
+    private final IntIntMap contagious = new IntIntMap();
+    private final IntIntMap infector = new IntIntMap();
+    private final IntIntMap settled = new IntIntMap();
+    private final PriorityQueue<Arrival> forward = new PriorityQueue<>();
+    // Backward, the latest time each person reached could be contagious and
+    // still infect the other person in time, and the people settled.
+    private final IntIntMap deadline = new IntIntMap();
+    private final IntIntMap settledBack = new IntIntMap();
+    private final PriorityQueue<Arrival> backward =
+            new PriorityQueue<>(Collections.reverseOrder());
+    // The earliest infection of the other person found so far, or
+    // Integer.MAX_VALUE. The backward side counts only contacts before it.
+    private int best = Integer.MAX_VALUE;
+    // Number of edges looked at by each side.
+    private int forwardEdges;
+    private int backwardEdges;
+    // Number of people settled, and added to and taken from either heap.
+    private int settledCount;
+    private int pushes;
+    private int pops;
+
+    /**
+     * Creates a search between two people.
+     *
+     * @param layers          Every graph holding contacts.
+     * @param person          ID of the person who became contagious.
+     * @param timeOfContagion The time they became contagious.
+     * @param other           ID of the person who may have been infected.
+     */
+    PairSearch(ContactGraph[] layers, int person, int timeOfContagion,
+               int other) {
+        this.layers = layers;
+        this.person = person;
+        this.timeOfContagion = timeOfContagion;
+        this.other = other;
+    }
+
+    /**
+     * Run the search.
+     *
+     * @return true if the other person could have been infected, in which
+     * case {@link #infector()} and {@link #contagious()} hold the path.
+     */
+    boolean run() {
+        contagious.put(person, timeOfContagion);
+        forward.add(new Arrival(person, timeOfContagion));
+        pushes++;
+        restartBackward();
+        while (!forward.isEmpty()) {
+            // Step backward while it can still rule people out ahead of the
+            // forward side, balancing the work done on each.
+            if (!backward.isEmpty()
+                    && backward.peek().time >= forward.peek().time
+                    && backwardEdges <= forwardEdges) {
+                stepBackward();
+                continue;
+            }
+            Arrival next = forward.poll();
+            pops++;
+            if (next.time != contagious.get(next.vertex, -1)
+                    || settled.containsKey(next.vertex)) {
+                continue;
+            }
+            settled.put(next.vertex, 0);
+            settledCount++;
+            if (next.vertex == other) {
+                return true;
+            }
+            // People the backward side hasn't settled have a deadline no
+            // later than the next one it would.
+            int latest = settledBack.containsKey(next.vertex)
+                    ? deadline.get(next.vertex, -1)
+                    : backward.isEmpty() ? -1 : backward.peek().time;
+            if (next.time <= latest) {
+                stepForward(next);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return each person on the path mapped to who infected them.
+     */
+    IntIntMap infector() {
+        return infector;
+    }
+
+    /**
+     * @return each person on the path mapped to when they became contagious.
+     */
+    IntIntMap contagious() {
+        return contagious;
+    }
+
+    /**
+     * @return the number of edges the search looked at.
+     */
+    int edgesVisited() {
+        return forwardEdges + backwardEdges;
+    }
+
+    /**
+     * Add the work the search did to a query's counters.
+     *
+     * @param stats The query's counters.
+     */
+    void addTo(QueryStats stats) {
+        stats.add(settledCount, edgesVisited(), pushes, pops, edgesVisited());
+    }
+
+    /**
+     * Relax the contacts of a person settled by the forward side.
+     *
+     * @param next The person and the time they became contagious.
+     */
+    private void stepForward(Arrival next) {
+        for (ContactGraph layer : layers) {
+            int degree = layer.degree(next.vertex);
+            forwardEdges += degree;
+            for (int i = 0; i < degree; i++) {
+                int time = layer.ceilingContact(next.vertex, i, next.time);
+                if (time < 0) {
+                    continue;
+                }
+                int neighbour = layer.neighbour(next.vertex, i);
+                int arrival = time + DELAY;
+                if (arrival < contagious.get(neighbour, Integer.MAX_VALUE)) {
+                    contagious.put(neighbour, arrival);
+                    infector.put(neighbour, next.vertex);
+                    forward.add(new Arrival(neighbour, arrival));
+                    pushes++;
+                    if (neighbour == other) {
+                        best = time;
+                        restartBackward();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Settle the person with the latest deadline on the backward side, and
+     * relax their contacts.
+     */
+    private void stepBackward() {
+        Arrival next = backward.poll();
+        pops++;
+        if (next.time != deadline.get(next.vertex, -1)
+                || settledBack.containsKey(next.vertex)) {
+            return;
+        }
+        settledBack.put(next.vertex, 0);
+        settledCount++;
+        for (ContactGraph layer : layers) {
+            int degree = layer.degree(next.vertex);
+            backwardEdges += degree;
+            for (int i = 0; i < degree; i++) {
+                // Contacts with the other person only count if they come
+                // before the best infection found so far.
+                int time = layer.floorContact(next.vertex, i,
+                        next.vertex == other ? best - 1 : next.time - DELAY);
+                // Nobody is contagious before the first person.
+                if (time < timeOfContagion) {
+                    continue;
+                }
+                int neighbour = layer.neighbour(next.vertex, i);
+                if (time > deadline.get(neighbour, -1)) {
+                    deadline.put(neighbour, time);
+                    backward.add(new Arrival(neighbour, time));
+                    pushes++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start the backward side again from the other person, counting only
+     * contacts with them before the best infection found so far.
+     */
+    private void restartBackward() {
+        deadline.clear();
+        settledBack.clear();
+        backward.clear();
+        deadline.put(other, Integer.MAX_VALUE);
+        backward.add(new Arrival(other, Integer.MAX_VALUE));
+        pushes++;
+    }
+
+    /**
+     * A person reached by one side of the search, and their time.
+     */
+    private static final class Arrival implements Comparable<Arrival> {
+        // The ID of the person.
+        private final int vertex;
+        // The time they became contagious, or their deadline.
+        private final int time;
+
+        /**
+         * Creates an arrival.
+         */
+        private Arrival(int vertex, int time) {
+            this.vertex = vertex;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(Arrival other) {
+            return Integer.compare(time, other.time);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Contacts of a {@link ContactTracer} divided among shards, traced by
+ * exchanging frontier messages between the shards in supersteps.
+ * <p>
+ * People are assigned to shards by ID, round robin, and each shard holds
+ * every contact of the people it owns. In each superstep every shard runs an
+ * earliest-arrival search over its own people and sends the people it
+ * reached on other shards, with the time they became contagious, through a
+ * {@link ShardTransport}. A trace ends after a superstep in which no shard
+ * sent anything, and returns the same people as
+ * {@link ContactTracer#contactTrace(String, int)}.
+ * <p>
+ * The shards are a snapshot of the tracer when it was partitioned. Traces
+ * added to the tracer afterwards are not seen until it is partitioned again.
+ * Traces are run one at a time, each running its shards' supersteps in
+ * parallel. While the tracer's query metrics are enabled, each trace is
+ * recorded as a {@code contactTrace} query, with the number of supersteps it
+ * took and the messages and bytes it sent between shards.
+ */
+public class PartitionedTracer {
+
+    // Bytes taken by one frontier message.
+    private static final int MESSAGE_BYTES = 8;
+
+    // The tracer that was partitioned, whose names and metrics are used.
+    private final ContactTracer tracer;
+    // One more than the highest ID with contacts in the shards.
+    private final int vertexCount;
+    // The shards, in order.
+    private final GraphShard[] shards;
+    // Carries frontier messages between the shards.
+    private final ShardTransport transport;
+
+    /**
+     * Creates a partitioned tracer from built shards.
+     *
+     * @param tracer      the tracer that was partitioned
+     * @param vertexCount one more than the highest ID in the shards
+     * @param shards      the shards, in order
+     * @param transport   carries messages between the shards
+     */
+    PartitionedTracer(ContactTracer tracer, int vertexCount,
+                      GraphShard[] shards, ShardTransport transport) {
+        this.tracer = tracer;
+        this.vertexCount = vertexCount;
+        this.shards = shards;
+        this.transport = transport;
+    }
+
+    /**
+     * @return the number of shards the contacts are divided among
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param person the ID of a person
+     * @return the shard owning the person's contacts
+     * @require person &gt;= 0
+     */
+    public int shardOf(int person) {
+        return person % shards.length;
+    }
+
+    /**
+     * @param shard the position of a shard
+     * @return the number of contacts the shard holds. Contacts between two
+     * people on the shard are counted twice, and contacts between people on
+     * two shards are counted by both.
+     * @require shard &gt;= 0 &amp;&amp; shard &lt; shardCount()
+     */
+    public long getContactCount(int shard) {
+        return shards[shard].contactCount();
+    }
+
+    /**
+     * Initiates a contact trace starting with the given person, who
+     * became contagious at timeOfContagion.
+     *
+     * @param person          to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return set of people who may have contracted the disease, originating
+     * from person
+     * @see ContactTracer#contactTrace(String, int)
+     */
+    public Set<String> contactTrace(String person, int timeOfContagion) {
+        NameTable names = tracer.names();
+        Set<String> result = new HashSet<>();
+        for (int id : contactTrace(names.idOf(person), timeOfContagion)) {
+            result.add(names.nameOf(id));
+        }
+        return result;
+    }
+
+    /**
+     * Initiates a contact trace starting with the person with the given ID.
+     *
+     * @param person          ID of the person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return IDs of people who may have contracted the disease, originating
+     * from person, in no particular order
+     * @see ContactTracer#contactTrace(int, int)
+     */
+    public synchronized int[] contactTrace(int person, int timeOfContagion) {
+        QueryMetrics metrics = tracer.getMetrics();
+        QueryStats stats = metrics == null ? null : metrics.start();
+        if (person < 0 || person >= vertexCount || timeOfContagion < 0) {
+            if (stats != null) {
+                stats.finish(QueryMetrics.Query.CONTACT_TRACE, person,
+                        timeOfContagion);
+            }
+            return new int[0];
+        }
+        for (GraphShard shard : shards) {
+            shard.start(person, timeOfContagion);
+        }
+        long supersteps = 0;
+        long messages = 0;
+        do {
+            messages += IntStream.range(0, shards.length).parallel()
+                    .map(shard -> shards[shard].step(transport)).sum();
+            supersteps++;
+        } while (transport.barrier() > 0);
+        IntList reached = new IntList();
+        for (GraphShard shard : shards) {
+            shard.collect(reached);
+        }
+        if (stats != null) {
+            for (GraphShard shard : shards) {
+                shard.addTo(stats);
+            }
+            stats.addExchange(supersteps, messages,
+                    messages * MESSAGE_BYTES);
+            stats.finish(QueryMetrics.Query.CONTACT_TRACE,
+                    tracer.names().nameOf(person), timeOfContagion);
+        }
+        return reached.toArray();
+    }
+}
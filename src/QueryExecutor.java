@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs batches of independent queries against a {@link ContactTracer} in
+ * parallel.
+ * <p>
+ * Each batch is shared between a fixed number of workers, which take the next
+ * unclaimed query until the batch is done, so cheap and expensive queries
+ * balance out across workers. Each worker keeps its own working state for the
+ * whole batch instead of allocating it per query. Results come back in the
+ * order the queries were submitted.
+ * <p>
+ * Queries only read the tracer. Traces must not be added while a batch is
+ * running unless the tracer was created with
+ * {@link ContactTracer#concurrent()}.
+ */
+public class QueryExecutor implements AutoCloseable {
+
+    // The tracer queries are run against.
+    private final ContactTracer tracer;
+    // Executor running the workers.
+    private final ExecutorService executor;
+    // Number of workers each batch is shared between.
+    private final int workers;
+    // Whether the executor was created here, and is shut down on close.
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates an executor with one worker per available processor, on its
+     * own fork-join pool.
+     *
+     * @param tracer to run queries against
+     * @require tracer != null
+     */
+    public QueryExecutor(ContactTracer tracer) {
+        this(tracer, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an executor with the given number of workers, on its own
+     * fork-join pool.
+     *
+     * @param tracer  to run queries against
+     * @param workers number of queries to run at once
+     * @require tracer != null &amp;&amp; workers &gt; 0
+     */
+    public QueryExecutor(ContactTracer tracer, int workers) {
+        this(tracer, new ForkJoinPool(workers), workers, true);
+    }
+
+    /**
+     * Creates an executor that runs its workers on the given executor
+     * service, such as a virtual thread per task executor. The service is
+     * not shut down when this executor is closed.
+     *
+     * @param tracer   to run queries against
+     * @param executor to run workers on
+     * @param workers  number of queries to run at once
+     * @require tracer != null &amp;&amp; executor != null &amp;&amp;
+     * workers &gt; 0
+     */
+    public QueryExecutor(ContactTracer tracer, ExecutorService executor,
+                         int workers) {
+        this(tracer, executor, workers, false);
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param tracer       to run queries against
+     * @param executor     to run workers on
+     * @param workers      number of queries to run at once
+     * @param ownsExecutor whether to shut the executor down on close
+     */
+    private QueryExecutor(ContactTracer tracer, ExecutorService executor,
+                          int workers, boolean ownsExecutor) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive: "
+                    + workers);
+        }
+        this.tracer = tracer;
+        this.executor = executor;
+        this.workers = workers;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Runs every query in the batch and waits for them all to finish.
+     *
+     * @param queries to run
+     * @return the result of each query, in the same order as the queries
+     * @throws InterruptedException if interrupted while waiting
+     * @require queries != null
+     */
+    public List<Set<String>> run(List<Query> queries)
+            throws InterruptedException {
+        int[][] ids = runIds(queries);
+        List<Set<String>> results = new ArrayList<>(ids.length);
+        for (int[] people : ids) {
+            Set<String> names = new HashSet<>();
+            for (int id : people) {
+                names.add(tracer.getPersonName(id));
+            }
+            results.add(names);
+        }
+        return results;
+    }
+
+    /**
+     * Runs every query in the batch and waits for them all to finish,
+     * returning person IDs instead of names.
+     *
+     * @param queries to run
+     * @return the IDs of the people found by each query, in the same order
+     * as the queries
+     * @throws InterruptedException if interrupted while waiting
+     * @require queries != null
+     * @see #run(List)
+     */
+    public int[][] runIds(List<Query> queries) throws InterruptedException {
+        Query[] batch = queries.toArray(new Query[0]);
+        int[][] results = new int[batch.length][];
+        AtomicInteger next = new AtomicInteger();
+        int started = Math.min(workers, batch.length);
+        List<Future<?>> futures = new ArrayList<>(started);
+        for (int i = 0; i < started; i++) {
+            futures.add(executor.submit(() -> work(batch, results, next)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // Stop the other workers picking up more queries.
+            next.set(batch.length);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            next.set(batch.length);
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Run queries from the batch until none are left unclaimed.
+     *
+     * @param batch   The queries to run.
+     * @param results The result of each query, filled in as they finish.
+     * @param next    Position of the next unclaimed query.
+     */
+    private void work(Query[] batch, int[][] results, AtomicInteger next) {
+        ContactTracer.Scratch scratch = new ContactTracer.Scratch();
+        for (int i = next.getAndIncrement(); i < batch.length;
+             i = next.getAndIncrement()) {
+            results[i] = batch[i].run(tracer, scratch);
+        }
+    }
+
+    /**
+     * Shuts down the fork-join pool created by this executor, if any.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A single query to run as part of a batch.
+     */
+    public static final class Query {
+
+        // The kind of query to run.
+        private final Kind kind;
+        // The person the query is about.
+        private final String person;
+        // The contagion time or timestamp of the query.
+        private final int time;
+
+        /**
+         * Create a query.
+         *
+         * @param kind   The kind of query to run.
+         * @param person The person the query is about.
+         * @param time   The contagion time or timestamp of the query.
+         */
+        private Query(Kind kind, String person, int time) {
+            this.kind = kind;
+            this.person = person;
+            this.time = time;
+        }
+
+        /**
+         * @param person          to start contact tracing from
+         * @param timeOfContagion the exact time person became contagious
+         * @return a query running {@link ContactTracer#contactTrace(String,
+         * int)}
+         */
+        public static Query contactTrace(String person, int timeOfContagion) {
+            return new Query(Kind.CONTACT_TRACE, person, timeOfContagion);
+        }
+
+        /**
+         * @param person    to list direct contacts of
+         * @param timestamp to filter contacts being at or after
+         * @return a query running {@link ContactTracer#getContactsAfter(String,
+         * int)}
+         */
+        public static Query contactsAfter(String person, int timestamp) {
+            return new Query(Kind.CONTACTS_AFTER, person, timestamp);
+        }
+
+        /**
+         * Run this query.
+         *
+         * @param tracer  The tracer to query.
+         * @param scratch Working state of the calling worker.
+         * @return The IDs of the people found.
+         */
+        private int[] run(ContactTracer tracer, ContactTracer.Scratch scratch) {
+            int id = tracer.getPersonId(person);
+            if (kind == Kind.CONTACT_TRACE) {
+                return tracer.contactTrace(id, time, scratch);
+            }
+            return tracer.getContactsAfter(id, time, scratch);
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + person + ", " + time + ")";
+        }
+    }
+
+    /**
+     * Kinds of query that can be batched.
+     */
+    private enum Kind {
+        CONTACT_TRACE,
+        CONTACTS_AFTER
+    }
+}
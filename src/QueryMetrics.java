@@ -0,0 +1,321 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms and work counters for the queries run on a
+ * {@link ContactTracer}, collected while enabled with
+ * {@link ContactTracer#enableMetrics()}.
+ * <p>
+ * Each query method has its own latency histogram and its own totals of the
+ * work queries did. Queries taking at least the slow query threshold are
+ * logged at {@link Level#WARNING} to this class's logger, with their
+ * parameters and the work they did. Recording is lock-free, so queries from
+ * many threads don't hold each other up.
+ */
+public class QueryMetrics implements QueryMetricsMXBean {
+
+    /**
+     * The query methods of {@link ContactTracer} that are measured. Overloads
+     * taking names or IDs are measured together.
+     */
+    public enum Query {
+        GET_CONTACTS("getContacts"),
+        GET_CONTACT_TIMES("getContactTimes"),
+        GET_CONTACTS_AFTER("getContactsAfter"),
+        CONTACT_TRACE("contactTrace"),
+        CONTACT_TRACE_WITHIN("contactTraceWithin"),
+        CONTACT_TRACE_STREAM("contactTraceStream"),
+        CONTACT_TRACE_SOURCES("contactTraceSources"),
+        CAN_INFECT("canInfect"),
+        INFECTION_PATH("infectionPath"),
+        POSSIBLE_SOURCES("possibleSources"),
+        RANK_SPREADERS("rankSpreaders");
+
+        // Name of the method.
+        private final String method;
+
+        Query(String method) {
+            this.method = method;
+        }
+
+        @Override
+        public String toString() {
+            return method;
+        }
+    }
+
+    // Logger slow queries are written to.
+    private static final Logger LOG =
+            Logger.getLogger(QueryMetrics.class.getName());
+    // Number of work counters kept per query method.
+    private static final int COUNTERS = 8;
+    // Numbers MBeans registered by this class, so their names are unique.
+    private static final AtomicInteger MBEANS = new AtomicInteger();
+
+    // Latencies of each query method, by ordinal.
+    private final LatencyHistogram[] latencies =
+            new LatencyHistogram[Query.values().length];
+    // Totals of each work counter for each query method, COUNTERS per
+    // method in the order of QueryStats' fields.
+    private final LongAdder[] totals =
+            new LongAdder[Query.values().length * COUNTERS];
+    // How long a query must take to be logged, in nanoseconds, or -1 if none
+    // are.
+    private volatile long slowQueryNanos = -1;
+    // Name this is registered under as an MBean, or null if it isn't.
+    private ObjectName mbeanName;
+
+    /**
+     * Creates empty metrics.
+     */
+    QueryMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Start counting the work of a query.
+     *
+     * @return the counters to give the query
+     */
+    QueryStats start() {
+        return new QueryStats(this);
+    }
+
+    /**
+     * Record a finished query, logging it if it was slow.
+     *
+     * @param query      The query method.
+     * @param nanos      How long the query took.
+     * @param stats      The work the query did.
+     * @param parameters The query's parameters, formatted only if it is
+     *                   logged. Int arrays are listed element by element.
+     */
+    void record(Query query, long nanos, QueryStats stats,
+                Object... parameters) {
+        latencies[query.ordinal()].record(nanos);
+        int base = query.ordinal() * COUNTERS;
+        totals[base].add(stats.verticesSettled);
+        totals[base + 1].add(stats.edgesScanned);
+        totals[base + 2].add(stats.heapPushes);
+        totals[base + 3].add(stats.heapPops);
+        totals[base + 4].add(stats.contactTimesExamined);
+        totals[base + 5].add(stats.supersteps);
+        totals[base + 6].add(stats.messagesSent);
+        totals[base + 7].add(stats.bytesSent);
+        long threshold = slowQueryNanos;
+        if (threshold >= 0 && nanos >= threshold
+                && LOG.isLoggable(Level.WARNING)) {
+            StringJoiner joined = new StringJoiner(", ");
+            for (Object parameter : parameters) {
+                joined.add(parameter instanceof int[]
+                        ? Arrays.toString((int[]) parameter)
+                        : String.valueOf(parameter));
+            }
+            LOG.warning(String.format("Slow query %s(%s) took %d ms: %s",
+                    query, joined, TimeUnit.NANOSECONDS.toMillis(nanos),
+                    stats));
+        }
+    }
+
+    /**
+     * Gets the latencies of a query method.
+     *
+     * @param query the query method
+     * @return the histogram of its latencies, updated as queries finish
+     * @require query != null
+     */
+    public LatencyHistogram getLatency(Query query) {
+        return latencies[query.ordinal()];
+    }
+
+    /**
+     * Gets the total work done by queries of a method so far.
+     *
+     * @param query the query method
+     * @return the totals, which don't change as more queries finish
+     * @require query != null
+     */
+    public QueryStats getTotals(Query query) {
+        int base = query.ordinal() * COUNTERS;
+        return new QueryStats(totals[base].sum(), totals[base + 1].sum(),
+                totals[base + 2].sum(), totals[base + 3].sum(),
+                totals[base + 4].sum(), totals[base + 5].sum(),
+                totals[base + 6].sum(), totals[base + 7].sum());
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        long threshold = slowQueryNanos;
+        return threshold < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        slowQueryNanos = millis < 0 ? -1
+                : TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+        for (LongAdder total : totals) {
+            total.reset();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getQueryCounts() {
+        return byMethod(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getMeanLatencyMicros() {
+        return byMethod(latency -> latency.getMeanNanos() / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getP50LatencyMicros() {
+        return byMethod(latency -> latency.getPercentileNanos(0.5) / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyMicros() {
+        return byMethod(latency -> latency.getPercentileNanos(0.99) / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyMicros() {
+        return byMethod(latency -> latency.getMaxNanos() / 1000);
+    }
+
+    @Override
+    public long getVerticesSettled() {
+        return total(0);
+    }
+
+    @Override
+    public long getEdgesScanned() {
+        return total(1);
+    }
+
+    @Override
+    public long getHeapPushes() {
+        return total(2);
+    }
+
+    @Override
+    public long getHeapPops() {
+        return total(3);
+    }
+
+    @Override
+    public long getContactTimesExamined() {
+        return total(4);
+    }
+
+    @Override
+    public long getSupersteps() {
+        return total(5);
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return total(6);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return total(7);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under a name
+     * of the form {@code ContactTracer:type=QueryMetrics,id=1}. Does nothing
+     * if they are already registered.
+     *
+     * @return the name registered under
+     * @throws JMException if registering fails
+     */
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (mbeanName == null) {
+            ObjectName name = new ObjectName(
+                    "ContactTracer:type=QueryMetrics,id="
+                            + MBEANS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, name);
+            mbeanName = name;
+        }
+        return mbeanName;
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if
+     * registered.
+     *
+     * @throws JMException if unregistering fails
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (mbeanName != null) {
+            ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(mbeanName);
+            mbeanName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Query query : Query.values()) {
+            LatencyHistogram latency = latencies[query.ordinal()];
+            if (latency.getCount() > 0) {
+                result.append(query).append(": ").append(latency)
+                        .append(", ").append(getTotals(query)).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param value Reads a value from a method's latencies.
+     * @return the value for each query method, keyed by method name
+     */
+    private Map<String, Long> byMethod(ToLongFunction<LatencyHistogram> value) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Query query : Query.values()) {
+            result.put(query.toString(),
+                    value.applyAsLong(latencies[query.ordinal()]));
+        }
+        return result;
+    }
+
+    /**
+     * @param counter Index of a work counter, in the order of QueryStats'
+     *                fields.
+     * @return the counter's total over every query method
+     */
+    private long total(int counter) {
+        long sum = 0;
+        for (int i = counter; i < totals.length; i += COUNTERS) {
+            sum += totals[i].sum();
+        }
+        return sum;
+    }
+}
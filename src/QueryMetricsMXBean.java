@@ -0,0 +1,92 @@
+import java.util.Map;
+
+/**
+ * JMX view of a tracer's {@link QueryMetrics}, registered with
+ * {@link QueryMetrics#registerMBean()}. Latencies are keyed by query method
+ * name.
+ */
+public interface QueryMetricsMXBean {
+
+    /**
+     * @return the number of queries of each method
+     */
+    Map<String, Long> getQueryCounts();
+
+    /**
+     * @return the mean latency of each query method, in microseconds
+     */
+    Map<String, Long> getMeanLatencyMicros();
+
+    /**
+     * @return the median latency of each query method, in microseconds
+     */
+    Map<String, Long> getP50LatencyMicros();
+
+    /**
+     * @return the 99th percentile latency of each query method, in
+     * microseconds
+     */
+    Map<String, Long> getP99LatencyMicros();
+
+    /**
+     * @return the longest latency of each query method, in microseconds
+     */
+    Map<String, Long> getMaxLatencyMicros();
+
+    /**
+     * @return the number of people whose contacts queries followed
+     */
+    long getVerticesSettled();
+
+    /**
+     * @return the number of edges queries looked at
+     */
+    long getEdgesScanned();
+
+    /**
+     * @return the number of people queries added to a priority queue
+     */
+    long getHeapPushes();
+
+    /**
+     * @return the number of people queries took from a priority queue
+     */
+    long getHeapPops();
+
+    /**
+     * @return the number of contact times queries looked at
+     */
+    long getContactTimesExamined();
+
+    /**
+     * @return the number of supersteps traces over a partitioned graph ran
+     */
+    long getSupersteps();
+
+    /**
+     * @return the number of frontier messages sent between shards
+     */
+    long getMessagesSent();
+
+    /**
+     * @return the number of bytes of frontier messages sent between shards
+     */
+    long getBytesSent();
+
+    /**
+     * @return how long a query must take to be logged, in milliseconds, or
+     * -1 if none are
+     */
+    long getSlowQueryThresholdMillis();
+
+    /**
+     * @param millis how long a query must take to be logged, in
+     *               milliseconds, or -1 to log none
+     */
+    void setSlowQueryThresholdMillis(long millis);
+
+    /**
+     * Forget every query recorded.
+     */
+    void reset();
+}
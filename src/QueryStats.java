@@ -0,0 +1,165 @@
+/**
+ * The work done by queries, counted while query metrics are enabled with
+ * {@link ContactTracer#enableMetrics()}.
+ * <p>
+ * Each query counts its own work into one of these, and
+ * {@link QueryMetrics#getTotals(QueryMetrics.Query)} adds them up per query
+ * method. Searches over one edge's contact times, which look at only a few
+ * of them, count as one contact time examined.
+ */
+public final class QueryStats {
+
+    // Metrics the query is recorded in, or null for totals.
+    private final QueryMetrics metrics;
+    // System.nanoTime() when the query started.
+    private final long start;
+    // People whose contacts the query followed.
+    long verticesSettled;
+    // Edges between two people the query looked at.
+    long edgesScanned;
+    // People added to and taken from the query's priority queue.
+    long heapPushes;
+    long heapPops;
+    // Contact times the query looked at.
+    long contactTimesExamined;
+    // Supersteps of a trace over a partitioned graph.
+    long supersteps;
+    // Frontier messages sent between shards, and the bytes they took.
+    long messagesSent;
+    long bytesSent;
+
+    /**
+     * Starts counting the work of a query.
+     *
+     * @param metrics Metrics to record the query in when it finishes.
+     */
+    QueryStats(QueryMetrics metrics) {
+        this.metrics = metrics;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Creates totals of the given counts.
+     */
+    QueryStats(long verticesSettled, long edgesScanned, long heapPushes,
+               long heapPops, long contactTimesExamined, long supersteps,
+               long messagesSent, long bytesSent) {
+        this.metrics = null;
+        this.start = 0;
+        this.verticesSettled = verticesSettled;
+        this.edgesScanned = edgesScanned;
+        this.heapPushes = heapPushes;
+        this.heapPops = heapPops;
+        this.contactTimesExamined = contactTimesExamined;
+        this.supersteps = supersteps;
+        this.messagesSent = messagesSent;
+        this.bytesSent = bytesSent;
+    }
+
+    /**
+     * Add to the counts of a search.
+     *
+     * @param settled People whose contacts were followed.
+     * @param scanned Edges looked at.
+     * @param pushes  People added to the priority queue.
+     * @param pops    People taken from the priority queue.
+     * @param times   Contact times looked at.
+     */
+    void add(long settled, long scanned, long pushes, long pops, long times) {
+        verticesSettled += settled;
+        edgesScanned += scanned;
+        heapPushes += pushes;
+        heapPops += pops;
+        contactTimesExamined += times;
+    }
+
+    /**
+     * Add to the counts of a trace over a partitioned graph.
+     *
+     * @param steps    Supersteps run.
+     * @param messages Frontier messages sent between shards.
+     * @param bytes    Bytes taken by those messages.
+     */
+    void addExchange(long steps, long messages, long bytes) {
+        supersteps += steps;
+        messagesSent += messages;
+        bytesSent += bytes;
+    }
+
+    /**
+     * Record the query as finished.
+     *
+     * @param query      The query method.
+     * @param parameters The query's parameters, for the slow query log.
+     */
+    void finish(QueryMetrics.Query query, Object... parameters) {
+        metrics.record(query, System.nanoTime() - start, this, parameters);
+    }
+
+    /**
+     * @return the number of people whose contacts were followed
+     */
+    public long getVerticesSettled() {
+        return verticesSettled;
+    }
+
+    /**
+     * @return the number of edges between two people looked at
+     */
+    public long getEdgesScanned() {
+        return edgesScanned;
+    }
+
+    /**
+     * @return the number of people added to a priority queue
+     */
+    public long getHeapPushes() {
+        return heapPushes;
+    }
+
+    /**
+     * @return the number of people taken from a priority queue
+     */
+    public long getHeapPops() {
+        return heapPops;
+    }
+
+    /**
+     * @return the number of contact times looked at
+     */
+    public long getContactTimesExamined() {
+        return contactTimesExamined;
+    }
+
+    /**
+     * @return the number of supersteps run by traces over a partitioned
+     * graph
+     */
+    public long getSupersteps() {
+        return supersteps;
+    }
+
+    /**
+     * @return the number of frontier messages sent between shards
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * @return the number of bytes of frontier messages sent between shards
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public String toString() {
+        String work = verticesSettled + " settled, " + edgesScanned
+                + " edges, " + heapPushes + " pushes, " + heapPops + " pops, "
+                + contactTimesExamined + " contact times";
+        return supersteps == 0 ? work : work + ", " + supersteps
+                + " supersteps, " + messagesSent + " messages, " + bytesSent
+                + " bytes";
+    }
+}
@@ -0,0 +1,612 @@
+import java.util.Arrays;
+
+/**
+ * Precomputed temporal reachability index over a read-only contact graph,
+ * answering whether one person could have infected another.
+ * <p>
+ * The graph is expanded over time into a directed acyclic graph whose nodes
+ * are the contacts in each person's timeline, plus a final node per person,
+ * so that each person's nodes form a chain. Each timeline node leads to the
+ * next node in its chain (waiting), and across its contact to the first node
+ * of the other person at or after the contact time plus the contagion delay
+ * (or to their final node if there is none). A person contagious at time t
+ * can infect another exactly when their first timeline node at or after t
+ * reaches any node of the other person's chain.
+ * <p>
+ * People are ranked, those with the most contacts first. Every node is
+ * labelled with the {@value #LABEL_SIZE} highest ranked chains it reaches and
+ * the earliest position it reaches on each, and every final node with the
+ * highest ranked chains reaching it and the latest position on each that
+ * does. Labels are built in two linear passes over the graph in time order.
+ * Since busy people sit on most chains of contacts, comparing the two labels
+ * settles most queries either way. The rest fall back to a search from both
+ * ends at once, cut short wherever the labels settle whether a node reaches
+ * the target.
+ * <p>
+ * Safe to query from many threads.
+ */
+public class ReachabilityIndex {
+
+    // Most chains kept in each label.
+    static final int LABEL_SIZE = 4;
+    // Results of settling a query from the labels alone.
+    private static final int NO = 0;
+    private static final int YES = 1;
+    private static final int UNKNOWN = 2;
+    // Sides of a bidirectional search.
+    private static final int FORWARD = 1;
+    private static final int BACKWARD = 2;
+
+    // The graph indexed.
+    private final ContactGraph graph;
+    // First node of each person, with a final entry marking the end. The
+    // last node of each person is their final node.
+    private final int[] nodeOffsets;
+    // Rank of each person's chain, 0 for the person with most contacts.
+    private final int[] ranks;
+    // Person whose chain holds each node.
+    private final int[] owners;
+    // Node reached across the contact of each node, or -1 for final nodes.
+    private final int[] across;
+    // Nodes whose contact leads to each node, grouped by node, with the
+    // start of each node's group.
+    private final int[] reverseOffsets;
+    private final int[] reverse;
+    // Chains each node reaches, LABEL_SIZE slots per node in ascending order
+    // of rank, and the earliest position reached on each.
+    private final int[] outRanks;
+    private final int[] outPositions;
+    // Number of chains in each node's out-label.
+    private final byte[] outSizes;
+    // Chains reaching each person's final node, LABEL_SIZE slots per person
+    // in ascending order of rank, and the latest position on each that does.
+    private final int[] inRanks;
+    private final int[] inPositions;
+    // Number of chains in each person's in-label.
+    private final byte[] inSizes;
+    // Time taken to build the index, in milliseconds.
+    private final long buildMillis;
+    // Working state of each thread's searches, created on first use.
+    private final ThreadLocal<Search> searches =
+            ThreadLocal.withInitial(() -> new Search(nodeCount()));
+
+    /**
+     * Creates an index from its built arrays.
+     */
+    private ReachabilityIndex(ContactGraph graph, int[] nodeOffsets,
+                              int[] ranks, int[] owners, int[] across,
+                              int[] reverseOffsets, int[] reverse, Labels out,
+                              int[] inRanks, int[] inPositions, byte[] inSizes,
+                              long buildMillis) {
+        this.graph = graph;
+        this.nodeOffsets = nodeOffsets;
+        this.ranks = ranks;
+        this.owners = owners;
+        this.across = across;
+        this.reverseOffsets = reverseOffsets;
+        this.reverse = reverse;
+        this.outRanks = out.ranks;
+        this.outPositions = out.positions;
+        this.outSizes = out.sizes;
+        this.inRanks = inRanks;
+        this.inPositions = inPositions;
+        this.inSizes = inSizes;
+        this.buildMillis = buildMillis;
+    }
+
+    /**
+     * Build an index over the given graph.
+     *
+     * @param graph The graph to index. Must not change afterwards.
+     * @return The built index.
+     */
+    static ReachabilityIndex build(ContactGraph graph) {
+        long start = System.nanoTime();
+        int people = graph.vertexCount();
+        int[] nodeOffsets = new int[people + 1];
+        for (int v = 0; v < people; v++) {
+            nodeOffsets[v + 1] = nodeOffsets[v] + graph.timelineSize(v) + 1;
+        }
+        int nodes = nodeOffsets[people];
+
+        // Rank people by number of contacts, most first.
+        long[] keyed = new long[people];
+        for (int v = 0; v < people; v++) {
+            keyed[v] = CsrGraph.pack(-graph.timelineSize(v), v);
+        }
+        Arrays.sort(keyed);
+        int[] ranks = new int[people];
+        for (int rank = 0; rank < people; rank++) {
+            ranks[CsrGraph.low(keyed[rank])] = rank;
+        }
+
+        // Lay out the contact edges, and order nodes by time. Contacts only
+        // lead to later times, and waiting to later positions, so this is a
+        // topological order.
+        int[] across = new int[nodes];
+        int[] owners = new int[nodes];
+        int[] reverseOffsets = new int[nodes + 1];
+        long[] byTime = new long[nodes];
+        for (int v = 0; v < people; v++) {
+            int size = graph.timelineSize(v);
+            for (int p = 0; p <= size; p++) {
+                int node = nodeOffsets[v] + p;
+                owners[node] = v;
+                if (p == size) {
+                    across[node] = -1;
+                    byTime[node] = CsrGraph.pack(Integer.MAX_VALUE, node);
+                    continue;
+                }
+                int time = graph.timelineTime(v, p);
+                int other = graph.timelineNeighbour(v, p);
+                int target = nodeOffsets[other] + graph.timelineSearch(other,
+                        time + ContactTracer.CONTAGION_DELAY);
+                across[node] = target;
+                reverseOffsets[target + 1]++;
+                byTime[node] = CsrGraph.pack(time, node);
+            }
+        }
+        Arrays.sort(byTime);
+        for (int i = 0; i < nodes; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        int[] reverse = new int[reverseOffsets[nodes]];
+        int[] fill = Arrays.copyOf(reverseOffsets, nodes);
+        for (int node = 0; node < nodes; node++) {
+            if (across[node] >= 0) {
+                reverse[fill[across[node]]++] = node;
+            }
+        }
+
+        // Chains reached, latest nodes first.
+        Labels out = new Labels(nodes, true);
+        for (int i = nodes - 1; i >= 0; i--) {
+            int node = CsrGraph.low(byTime[i]);
+            int v = owners[node];
+            out.start(ranks[v], node - nodeOffsets[v]);
+            if (across[node] >= 0) {
+                out.merge(node + 1);
+                out.merge(across[node]);
+            }
+            out.store(node);
+        }
+
+        // Chains reaching each node, earliest nodes first.
+        Labels in = new Labels(nodes, false);
+        for (int i = 0; i < nodes; i++) {
+            int node = CsrGraph.low(byTime[i]);
+            int v = owners[node];
+            in.start(ranks[v], node - nodeOffsets[v]);
+            if (node > nodeOffsets[v]) {
+                in.merge(node - 1);
+            }
+            for (int j = reverseOffsets[node]; j < reverseOffsets[node + 1];
+                 j++) {
+                in.merge(reverse[j]);
+            }
+            in.store(node);
+        }
+        // Only final nodes are ever the target of a query.
+        int[] inRanks = new int[people * LABEL_SIZE];
+        int[] inPositions = new int[people * LABEL_SIZE];
+        byte[] inSizes = new byte[people];
+        for (int v = 0; v < people; v++) {
+            int last = nodeOffsets[v + 1] - 1;
+            System.arraycopy(in.ranks, last * LABEL_SIZE, inRanks,
+                    v * LABEL_SIZE, LABEL_SIZE);
+            System.arraycopy(in.positions, last * LABEL_SIZE, inPositions,
+                    v * LABEL_SIZE, LABEL_SIZE);
+            inSizes[v] = in.sizes[last];
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return new ReachabilityIndex(graph, nodeOffsets, ranks, owners, across,
+                reverseOffsets, reverse, out, inRanks, inPositions, inSizes,
+                millis);
+    }
+
+    /**
+     * @return the graph this index was built over.
+     */
+    ContactGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Check whether a person contagious at the given time could have
+     * infected another, using only the contacts in the indexed graph.
+     *
+     * @param person          ID of the person who is contagious
+     * @param other           ID of the person who may have been infected
+     * @param timeOfContagion the time the first person became contagious
+     * @return true if a chain of contacts could have carried the disease from
+     * person to other
+     */
+    boolean canInfect(int person, int other, int timeOfContagion) {
+        int people = nodeOffsets.length - 1;
+        if (person < 0 || person >= people || other < 0 || other >= people
+                || person == other) {
+            return false;
+        }
+        int position = graph.timelineSearch(person, timeOfContagion);
+        if (position == graph.timelineSize(person)) {
+            // No contacts left to pass the disease on through.
+            return false;
+        }
+        int start = nodeOffsets[person] + position;
+        int settled = settle(start, other);
+        if (settled != UNKNOWN) {
+            return settled == YES;
+        }
+        return search(start, other);
+    }
+
+    /**
+     * Search forward from a node and backward from a person's final node at
+     * once, growing whichever side has fewer nodes waiting, until the sides
+     * meet or either runs out. Forward, the labels cut off nodes they settle.
+     * Backward, only nodes at or after the start's time can be on the path.
+     *
+     * @param start The node to search from.
+     * @param other The ID of the person to search for.
+     * @return true if the start reaches the person's chain.
+     */
+    private boolean search(int start, int other) {
+        int startTime = nodeTime(start);
+        Search sides = searches.get();
+        sides.reset();
+        IntList forward = sides.forward;
+        IntList backward = sides.backward;
+        visit(start, FORWARD, sides, forward);
+        visit(nodeOffsets[other + 1] - 1, BACKWARD, sides, backward);
+        int f = 0;
+        int b = 0;
+        while (f < forward.size() && b < backward.size()) {
+            if (forward.size() - f <= backward.size() - b) {
+                int node = forward.get(f++);
+                int result = node == start ? UNKNOWN : settle(node, other);
+                if (result == YES) {
+                    return true;
+                }
+                if (result == UNKNOWN
+                        && (visit(node + 1, FORWARD, sides, forward)
+                        || visit(across[node], FORWARD, sides, forward))) {
+                    return true;
+                }
+            } else {
+                int node = backward.get(b++);
+                if (node > nodeOffsets[owners[node]]
+                        && nodeTime(node - 1) >= startTime
+                        && visit(node - 1, BACKWARD, sides, backward)) {
+                    return true;
+                }
+                for (int i = reverseOffsets[node]; i < reverseOffsets[node + 1];
+                     i++) {
+                    if (nodeTime(reverse[i]) >= startTime
+                            && visit(reverse[i], BACKWARD, sides, backward)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a node to one side of the search unless it has already been
+     * added.
+     *
+     * @param node  The node.
+     * @param side  FORWARD or BACKWARD.
+     * @param sides The side each node added so far was added by.
+     * @param queue The side's queue of nodes to visit.
+     * @return true if the node was already added by the other side, so the
+     * two sides meet.
+     */
+    private static boolean visit(int node, int side, Search sides,
+                                 IntList queue) {
+        int seen = sides.side(node);
+        if (seen == 0) {
+            sides.mark(node, side);
+            queue.add(node);
+        }
+        return seen != 0 && seen != side;
+    }
+
+    /**
+     * Use the labels to decide whether a node reaches a person's chain.
+     *
+     * @param node  The node to search from.
+     * @param other The ID of the person to search for.
+     * @return YES or NO if the labels settle it, otherwise UNKNOWN.
+     */
+    private int settle(int node, int other) {
+        int person = owners[node];
+        if (person == other) {
+            return YES;
+        }
+        // A final node leads nowhere else.
+        if (across[node] < 0) {
+            return NO;
+        }
+        // Reaching the other person takes a contact with them at or after
+        // the node's time.
+        int contacts = graph.timelineSize(other);
+        if (contacts == 0 || nodeTime(node)
+                > graph.timelineTime(other, contacts - 1)) {
+            return NO;
+        }
+        int outStart = node * LABEL_SIZE;
+        int outEnd = outStart + outSizes[node];
+        int inStart = other * LABEL_SIZE;
+        int inEnd = inStart + inSizes[other];
+        // A chain both labels share, reached early enough to go on to the
+        // other person, proves a path.
+        int i = outStart;
+        int j = inStart;
+        while (i < outEnd && j < inEnd) {
+            if (outRanks[i] == inRanks[j]) {
+                if (outPositions[i] <= inPositions[j]) {
+                    return YES;
+                }
+                i++;
+                j++;
+            } else if (outRanks[i] < inRanks[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        // A label that isn't full lists every chain, and a full one every
+        // chain ranked above its last. If either label should list the
+        // other end's chain, it settles the query.
+        int otherRank = ranks[other];
+        if (outSizes[node] < LABEL_SIZE || otherRank <= outRanks[outEnd - 1]) {
+            return listed(outRanks, outPositions, outStart, outEnd, otherRank,
+                    Integer.MAX_VALUE, true);
+        }
+        int rank = ranks[person];
+        if (inSizes[other] < LABEL_SIZE || rank <= inRanks[inEnd - 1]) {
+            return listed(inRanks, inPositions, inStart, inEnd, rank,
+                    node - nodeOffsets[person], false);
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Settle a query from a label that would list the other end's chain if
+     * there were a path.
+     *
+     * @param labelRanks     The label's chains.
+     * @param labelPositions The label's positions.
+     * @param start          The label's first slot.
+     * @param end            The slot after the label's last.
+     * @param rank           The rank of the other end's chain.
+     * @param position       The other end's position on its chain.
+     * @param out            Whether the label lists chains reached, so the
+     *                       other end must be at or after the position
+     *                       listed, rather than at or before it.
+     * @return YES or NO.
+     */
+    private static int listed(int[] labelRanks, int[] labelPositions,
+                              int start, int end, int rank, int position,
+                              boolean out) {
+        for (int i = start; i < end; i++) {
+            if (labelRanks[i] == rank) {
+                boolean reached = out ? labelPositions[i] <= position
+                        : position <= labelPositions[i];
+                return reached ? YES : NO;
+            }
+        }
+        return NO;
+    }
+
+    /**
+     * @param node A node other than a final node.
+     * @return The time of the node's contact.
+     */
+    private int nodeTime(int node) {
+        int person = owners[node];
+        return graph.timelineTime(person, node - nodeOffsets[person]);
+    }
+
+    /**
+     * @return the number of nodes in the time-expanded graph.
+     */
+    public int nodeCount() {
+        return nodeOffsets[nodeOffsets.length - 1];
+    }
+
+    /**
+     * @return the number of chain entries stored across every label.
+     */
+    public long labelCount() {
+        long count = 0;
+        for (byte size : outSizes) {
+            count += size;
+        }
+        for (byte size : inSizes) {
+            count += size;
+        }
+        return count;
+    }
+
+    /**
+     * @return the approximate heap used by the index, in bytes.
+     */
+    public long sizeInBytes() {
+        return 4L * (nodeOffsets.length + ranks.length + owners.length
+                + across.length
+                + reverseOffsets.length + reverse.length
+                + outRanks.length + outPositions.length + inRanks.length
+                + inPositions.length) + outSizes.length + inSizes.length;
+    }
+
+    /**
+     * @return the time taken to build the index, in milliseconds.
+     */
+    public long buildTimeMillis() {
+        return buildMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ReachabilityIndex[nodes=" + nodeCount() + ", labels="
+                + labelCount() + ", bytes=" + sizeInBytes() + ", buildMs="
+                + buildMillis + "]";
+    }
+
+    /**
+     * Working state of a bidirectional search, reused by every search on one
+     * thread. Marks are stamped with the search they were made in, so
+     * starting a search doesn't have to clear them.
+     */
+    private static final class Search {
+        // Stamp of the last search to mark each node, shifted left two bits,
+        // and the side that marked it.
+        private final int[] marks;
+        // Stamp of the current search.
+        private int stamp;
+        // Nodes waiting to be visited on each side.
+        private final IntList forward = new IntList();
+        private final IntList backward = new IntList();
+
+        /**
+         * Creates the state for searching a graph.
+         *
+         * @param nodes The number of nodes in the graph.
+         */
+        private Search(int nodes) {
+            marks = new int[nodes];
+        }
+
+        /**
+         * Start a new search.
+         */
+        private void reset() {
+            if (++stamp == 1 << 29) {
+                Arrays.fill(marks, 0);
+                stamp = 1;
+            }
+            forward.clear();
+            backward.clear();
+        }
+
+        /**
+         * @param node The node.
+         * @return The side that marked the node in this search, or 0.
+         */
+        private int side(int node) {
+            int mark = marks[node];
+            return mark >>> 2 == stamp ? mark & 3 : 0;
+        }
+
+        /**
+         * Mark a node as added by one side in this search.
+         *
+         * @param node The node.
+         * @param side The side.
+         */
+        private void mark(int node, int side) {
+            marks[node] = stamp << 2 | side;
+        }
+    }
+
+    /**
+     * Labels of every node, each built by merging the labels of the nodes
+     * next to it.
+     */
+    private static final class Labels {
+        // Chains in each node's label, LABEL_SIZE slots per node.
+        private final int[] ranks;
+        // Position on each chain.
+        private final int[] positions;
+        // Number of chains in each node's label.
+        private final byte[] sizes;
+        // Whether to keep the earliest position on each chain, rather than
+        // the latest.
+        private final boolean earliest;
+        // Label being built, and a spare to merge into.
+        private int[] currentRanks = new int[LABEL_SIZE];
+        private int[] currentPositions = new int[LABEL_SIZE];
+        private int currentSize;
+        private int[] spareRanks = new int[LABEL_SIZE];
+        private int[] sparePositions = new int[LABEL_SIZE];
+
+        /**
+         * Creates empty labels.
+         *
+         * @param nodes    The number of nodes.
+         * @param earliest Whether to keep the earliest position on each
+         *                 chain, rather than the latest.
+         */
+        private Labels(int nodes, boolean earliest) {
+            ranks = new int[nodes * LABEL_SIZE];
+            positions = new int[nodes * LABEL_SIZE];
+            sizes = new byte[nodes];
+            this.earliest = earliest;
+        }
+
+        /**
+         * Start building a label holding only the node's own chain.
+         *
+         * @param rank     The rank of the node's chain.
+         * @param position The node's position on it.
+         */
+        private void start(int rank, int position) {
+            currentRanks[0] = rank;
+            currentPositions[0] = position;
+            currentSize = 1;
+        }
+
+        /**
+         * Merge a stored label into the one being built, keeping the highest
+         * ranked chains.
+         *
+         * @param node The node whose label to merge.
+         */
+        private void merge(int node) {
+            int i = 0;
+            int j = node * LABEL_SIZE;
+            int jEnd = j + sizes[node];
+            int size = 0;
+            while (size < LABEL_SIZE && (i < currentSize || j < jEnd)) {
+                if (j == jEnd || (i < currentSize
+                        && currentRanks[i] < ranks[j])) {
+                    spareRanks[size] = currentRanks[i];
+                    sparePositions[size] = currentPositions[i++];
+                } else if (i == currentSize || ranks[j] < currentRanks[i]) {
+                    spareRanks[size] = ranks[j];
+                    sparePositions[size] = positions[j++];
+                } else {
+                    spareRanks[size] = currentRanks[i];
+                    sparePositions[size] = earliest
+                            ? Math.min(currentPositions[i], positions[j])
+                            : Math.max(currentPositions[i], positions[j]);
+                    i++;
+                    j++;
+                }
+                size++;
+            }
+            int[] swap = currentRanks;
+            currentRanks = spareRanks;
+            spareRanks = swap;
+            swap = currentPositions;
+            currentPositions = sparePositions;
+            sparePositions = swap;
+            currentSize = size;
+        }
+
+        /**
+         * Store the label being built as a node's label.
+         *
+         * @param node The node.
+         */
+        private void store(int node) {
+            System.arraycopy(currentRanks, 0, ranks, node * LABEL_SIZE,
+                    currentSize);
+            System.arraycopy(currentPositions, 0, positions,
+                    node * LABEL_SIZE, currentSize);
+            sizes[node] = (byte) currentSize;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.nio.IntBuffer;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/**
+ * The original recursive contact trace, a depth-first search checking each
+ * infected person's edges in ascending order of their first contact time.
+ * Recursion depth grows with the length of the transmission chain.
+ */
+final class RecursiveTrace {
+
+    // Minutes after being infected that a person becomes contagious.
+    private static final int DELAY = ContactTracer.CONTAGION_DELAY;
+
+    private RecursiveTrace() {
+    }
+
+    /**
+     * Recursively trace the infected path through the graph.
+     *
+     * @param layers   The layers of the graph to trace over.
+     * @param infected All infected people found so far, mapped to the time at
+     *                 which they became contagious themselves.
+     * @param checked  Set of all edges that have been checked so far in our
+     *                 traversal, keyed by the IDs of both ends.
+     * @param source   The ID of the person to start tracing from.
+     * @param stats    Counters of the query's work, or null.
+     */
+    static void trace(ContactGraph[] layers, IntIntMap infected,
+                      HashSet<Long> checked, int source, QueryStats stats) {
+        int[] contacts = ContactTracer.contactsOf(layers, source);
+        IntBuffer[] contactTimes = new IntBuffer[contacts.length];
+        for (int i = 0; i < contacts.length; i++) {
+            contactTimes[i] = ContactTracer.contactTimesOf(layers, source,
+                    contacts[i], 0, Integer.MAX_VALUE);
+        }
+        // Place source vertex edges in min-heap priority queue.
+        PriorityQueue<Integer> edgeHeap = new PriorityQueue<>(
+                Comparator.comparingInt(edge -> contactTimes[edge].get(0)));
+        for (int i = 0; i < contacts.length; i++) {
+            edgeHeap.add(i);
+        }
+        if (stats != null) {
+            stats.add(1, contacts.length, contacts.length, contacts.length,
+                    0);
+        }
+        // Check every edge of the given source vertex, in ascending order.
+        while (!edgeHeap.isEmpty()) {
+            int edge = edgeHeap.poll();
+            int current = contacts[edge];
+            if (checked.add(CsrGraph.pack(Math.min(source, current),
+                    Math.max(source, current)))) {
+                IntBuffer times = contactTimes[edge];
+                // Check each contact time against the time at which source
+                // vertex became contagious (in ascending order of time).
+                for (int t = 0; t < times.limit(); t++) {
+                    int time = times.get(t);
+                    if (stats != null) {
+                        stats.add(0, 0, 0, 0, 1);
+                    }
+                    // If this edge's contact time exceeds/matches source
+                    // vertex contagious time, log the infection and continue
+                    // to trace from current vertex.
+                    if (time >= infected.get(source, -1)) {
+                        infected.put(current, (time + DELAY));
+                        trace(layers, infected, checked, current, stats);
+                        // If we found an infection time, we don't need
+                        // to check any higher times.
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Merges a {@link ContactTracer}'s newest segments in the background each
+ * time its buffer is sealed, so adding traces never waits for a merge.
+ * <p>
+ * Merges run one at a time on a single daemon thread that exits when idle.
+ * Each run merges with {@link ContactTracer#mergeSegments()} until nothing
+ * is left to merge, going round again if the buffer was sealed meanwhile.
+ */
+class SegmentMerger {
+
+    // The tracer whose segments to merge.
+    private final ContactTracer tracer;
+    // Set when a segment is sealed, cleared when a run starts merging.
+    private final AtomicBoolean requested = new AtomicBoolean();
+    // Set while a run is queued or running.
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Runs merges on a single daemon thread that exits when idle.
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a merger for the given tracer.
+     *
+     * @param tracer The tracer whose segments to merge.
+     */
+    SegmentMerger(ContactTracer tracer) {
+        this.tracer = tracer;
+        this.executor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "segment-merger");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Merge the newest segments in the background, after one was sealed.
+     */
+    void segmentSealed() {
+        requested.set(true);
+        if (running.compareAndSet(false, true)) {
+            executor.execute(this::mergeNow);
+        }
+    }
+
+    /**
+     * Merge until nothing is left to merge and no segment was sealed since.
+     */
+    private void mergeNow() {
+        do {
+            try {
+                while (requested.getAndSet(false)) {
+                    while (tracer.mergeSegments()) {
+                        // Merging may leave the result due to merge again.
+                    }
+                }
+            } finally {
+                finished();
+            }
+            // A segment sealed just as this run finished has nobody else to
+            // merge it.
+        } while (requested.get() && running.compareAndSet(false, true));
+    }
+
+    /**
+     * Clear running and wake any threads waiting for the merge to finish.
+     */
+    private synchronized void finished() {
+        running.set(false);
+        notifyAll();
+    }
+
+    /**
+     * Wait for any queued or running merge to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void await() throws InterruptedException {
+        while (running.get()) {
+            wait();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Carries frontier messages between the shards of a
+ * {@link PartitionedTracer}.
+ * <p>
+ * A trace runs in supersteps. In each one, every shard reads the batches
+ * delivered to it, searches its own people, and sends a batch to each shard
+ * owning people it reached. {@link #barrier()} ends the superstep: batches
+ * sent before it are delivered in the next one, and none earlier. The trace
+ * ends after a superstep in which no batch was sent.
+ * <p>
+ * Each message is 8 bytes: the ID of a person, then the time they became
+ * contagious, as big-endian ints. A batch holds at most one message per
+ * person. Shards send and receive from one thread each, but different
+ * shards may use the transport at once.
+ */
+public interface ShardTransport {
+
+    /**
+     * @return the number of shards the transport connects
+     */
+    int shardCount();
+
+    /**
+     * Sends a batch of messages from one shard to another, to be delivered
+     * after the next barrier.
+     *
+     * @param from     the shard sending the batch
+     * @param to       the shard owning every person in the batch
+     * @param messages the messages, from the buffer's position to its limit.
+     *                 The buffer must not be changed afterwards.
+     * @require from != to &amp;&amp; messages.remaining() % 8 == 0
+     */
+    void send(int from, int to, ByteBuffer messages);
+
+    /**
+     * Ends the current superstep, waiting for every shard to send its
+     * batches, and delivers them.
+     *
+     * @return the number of batches sent by every shard in the superstep
+     */
+    int barrier();
+
+    /**
+     * @param shard the shard to read batches for
+     * @return the batches delivered to the shard by the last barrier, in no
+     * particular order
+     */
+    List<ByteBuffer> receive(int shard);
+}
@@ -0,0 +1,544 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned, checksummed binary snapshot of a contact graph and its name
+ * table, read back through memory mapping.
+ * <p>
+ * Layout, with every int big-endian and every section 4-byte aligned:
+ * <ol>
+ * <li>A fixed header: magic {@code CTSN}, version, vertex count, number of
+ * name hash slots, the position of each following section and a CRC32 of
+ * the header itself.</li>
+ * <li>Name offsets: vertexCount + 1 ints giving the start of each name's
+ * UTF-8 bytes within the name bytes section.</li>
+ * <li>Name bytes, padded to a multiple of 4.</li>
+ * <li>Name hash slots: an open-addressing table of IDs (-1 when empty),
+ * probed linearly from {@code NameTable.mix(name.hashCode())}.</li>
+ * <li>Name checksums: one CRC32 per block of {@value #NAME_BLOCK} names,
+ * covering their offsets and bytes.</li>
+ * <li>Adjacency blocks, one per vertex: degree, timeline size, sorted
+ * neighbour IDs, degree + 1 offsets into the block's contact times, the
+ * contact times of each edge, then the timeline times and neighbours.</li>
+ * <li>A directory with the position, length and CRC32 of each vertex's
+ * adjacency block.</li>
+ * </ol>
+ * Opening a snapshot only reads and checks the header. Names and adjacency
+ * blocks are checked against their checksums when first read.
+ */
+final class SnapshotFile {
+
+    // Magic number at the start of a snapshot ("CTSN").
+    static final int MAGIC = 0x4354534E;
+    // Version of the snapshot format written by this class.
+    static final int VERSION = 1;
+    // Size of the header in bytes.
+    static final int HEADER_SIZE = 64;
+    // Number of names covered by each name checksum.
+    static final int NAME_BLOCK = 1024;
+    // Number of directory bytes per vertex.
+    static final int DIRECTORY_ENTRY = 16;
+    // Marks an empty name hash slot.
+    static final int EMPTY = -1;
+
+    // The mapped file.
+    final MappedFile data;
+    // Number of vertices (and names) in the snapshot.
+    final int vertexCount;
+    // Number of name hash slots, a power of two.
+    final int nameSlotCount;
+    // Position of each section in the file.
+    final long nameOffsetsPos;
+    final long nameBytesPos;
+    final long nameSlotsPos;
+    final long nameChecksumsPos;
+    final long directoryPos;
+
+    /**
+     * Creates a snapshot over a mapped file whose header has been checked.
+     *
+     * @param data The mapped file.
+     */
+    private SnapshotFile(MappedFile data) {
+        this.data = data;
+        this.vertexCount = data.getInt(8);
+        this.nameSlotCount = data.getInt(12);
+        this.nameOffsetsPos = data.getLong(16);
+        this.nameBytesPos = data.getLong(24);
+        this.nameSlotsPos = data.getLong(32);
+        this.nameChecksumsPos = data.getLong(40);
+        this.directoryPos = data.getLong(48);
+    }
+
+    /**
+     * Map the snapshot in the given file and check its header.
+     *
+     * @param file The snapshot file to open.
+     * @return The opened snapshot.
+     * @throws IOException if the file can't be read, isn't a snapshot of a
+     *                     supported version, or its header is corrupt.
+     */
+    static SnapshotFile open(Path file) throws IOException {
+        MappedFile data = MappedFile.map(file);
+        if (data.length() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a contact tracer snapshot: " + file);
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version "
+                    + data.getInt(4) + ": " + file);
+        }
+        if (data.crc(0, 56) != data.getInt(60)) {
+            throw new IOException("Snapshot header is corrupt: " + file);
+        }
+        if (data.getLong(48) + (long) data.getInt(8) * DIRECTORY_ENTRY
+                != data.length()) {
+            throw new IOException("Snapshot is truncated: " + file);
+        }
+        return new SnapshotFile(data);
+    }
+
+    /**
+     * @return The names stored in this snapshot.
+     */
+    MappedNames names() {
+        return new MappedNames(this);
+    }
+
+    /**
+     * @return The contact graph stored in this snapshot.
+     */
+    MappedGraph graph() {
+        return new MappedGraph(this);
+    }
+
+    /**
+     * Write every person and contact in the given tracer to a snapshot file.
+     * The snapshot is written to a temporary file first, then moved into
+     * place.
+     *
+     * @param file   The file to write, replacing any existing file.
+     * @param tracer The tracer to save.
+     * @throws IOException if the file can't be written.
+     */
+    static void write(Path file, ContactTracer tracer) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, ".snapshot", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeTo(channel, tracer);
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Write a snapshot of the given tracer to an open channel.
+     *
+     * @param channel The channel to write to, which must be empty.
+     * @param tracer  The tracer to save.
+     * @throws IOException if the channel can't be written.
+     */
+    private static void writeTo(FileChannel channel, ContactTracer tracer)
+            throws IOException {
+        NameTable names = tracer.names();
+        int vertexCount = names.size();
+        Output out = new Output(channel);
+        out.skip(HEADER_SIZE);
+
+        // Names.
+        byte[][] encoded = new byte[vertexCount][];
+        int[] nameOffsets = new int[vertexCount + 1];
+        for (int id = 0; id < vertexCount; id++) {
+            encoded[id] = names.nameOf(id).getBytes(StandardCharsets.UTF_8);
+            nameOffsets[id + 1] = nameOffsets[id] + encoded[id].length;
+        }
+        long nameOffsetsPos = out.position();
+        for (int offset : nameOffsets) {
+            out.putInt(offset);
+        }
+        long nameBytesPos = out.position();
+        for (byte[] name : encoded) {
+            out.put(name);
+        }
+        out.align();
+
+        int nameSlotCount = 4;
+        while (nameSlotCount < vertexCount * 2) {
+            nameSlotCount <<= 1;
+        }
+        int[] slots = new int[nameSlotCount];
+        Arrays.fill(slots, EMPTY);
+        for (int id = 0; id < vertexCount; id++) {
+            int slot = NameTable.mix(names.nameOf(id).hashCode())
+                    & (nameSlotCount - 1);
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & (nameSlotCount - 1);
+            }
+            slots[slot] = id;
+        }
+        long nameSlotsPos = out.position();
+        for (int slot : slots) {
+            out.putInt(slot);
+        }
+
+        long nameChecksumsPos = out.position();
+        for (int first = 0; first < vertexCount; first += NAME_BLOCK) {
+            int last = Math.min(first + NAME_BLOCK, vertexCount);
+            CRC32 crc = new CRC32();
+            ByteBuffer offsets = ByteBuffer.allocate((last - first + 1) * 4);
+            for (int id = first; id <= last; id++) {
+                offsets.putInt(nameOffsets[id]);
+            }
+            crc.update(offsets.array());
+            for (int id = first; id < last; id++) {
+                crc.update(encoded[id]);
+            }
+            out.putInt((int) crc.getValue());
+        }
+        encoded = null;
+
+        // Adjacency blocks.
+        long[] blockPositions = new long[vertexCount];
+        int[] blockLengths = new int[vertexCount];
+        int[] blockChecksums = new int[vertexCount];
+        for (int id = 0; id < vertexCount; id++) {
+            ByteBuffer block = encodeVertex(tracer, id);
+            blockPositions[id] = out.position();
+            blockLengths[id] = block.remaining();
+            CRC32 crc = new CRC32();
+            crc.update(block.duplicate());
+            blockChecksums[id] = (int) crc.getValue();
+            out.put(block);
+        }
+
+        long directoryPos = out.position();
+        for (int id = 0; id < vertexCount; id++) {
+            out.putLong(blockPositions[id]);
+            out.putInt(blockLengths[id]);
+            out.putInt(blockChecksums[id]);
+        }
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(vertexCount)
+                .putInt(nameSlotCount).putLong(nameOffsetsPos)
+                .putLong(nameBytesPos).putLong(nameSlotsPos)
+                .putLong(nameChecksumsPos).putLong(directoryPos);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, 56);
+        header.putInt(56, 0).putInt(60, (int) crc.getValue());
+        header.clear();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Encode the adjacency block of one vertex.
+     *
+     * @param tracer The tracer to read contacts from.
+     * @param id     The ID of the vertex.
+     * @return A buffer holding the encoded block.
+     */
+    private static ByteBuffer encodeVertex(ContactTracer tracer, int id) {
+        int[] neighbours = tracer.contactsOf(id);
+        Arrays.sort(neighbours);
+        IntBuffer[] times = new IntBuffer[neighbours.length];
+        int timeCount = 0;
+        for (int i = 0; i < neighbours.length; i++) {
+            times[i] = tracer.contactTimesOf(id, neighbours[i], 0,
+                    Integer.MAX_VALUE);
+            timeCount += times[i].remaining();
+        }
+        // Timeline ordered by time, then neighbour.
+        long[] timeline = new long[timeCount];
+        int position = 0;
+        for (int i = 0; i < neighbours.length; i++) {
+            for (int t = 0; t < times[i].limit(); t++) {
+                timeline[position++] = CsrGraph.pack(times[i].get(t),
+                        neighbours[i]);
+            }
+        }
+        Arrays.sort(timeline);
+
+        int degree = neighbours.length;
+        ByteBuffer block = ByteBuffer.allocate(
+                4 * (2 + degree + degree + 1 + timeCount + 2 * timeCount));
+        block.putInt(degree).putInt(timeCount);
+        for (int neighbour : neighbours) {
+            block.putInt(neighbour);
+        }
+        int offset = 0;
+        block.putInt(offset);
+        for (IntBuffer edgeTimes : times) {
+            offset += edgeTimes.remaining();
+            block.putInt(offset);
+        }
+        for (IntBuffer edgeTimes : times) {
+            for (int t = 0; t < edgeTimes.limit(); t++) {
+                block.putInt(edgeTimes.get(t));
+            }
+        }
+        for (long contact : timeline) {
+            block.putInt(CsrGraph.high(contact));
+        }
+        for (long contact : timeline) {
+            block.putInt(CsrGraph.low(contact));
+        }
+        block.flip();
+        return block;
+    }
+
+    /**
+     * Build the exception thrown when a section fails its checksum.
+     *
+     * @param what Description of the corrupt section.
+     * @return The exception to throw.
+     */
+    static UncheckedIOException corrupt(String what) {
+        return new UncheckedIOException(
+                new IOException("Snapshot " + what + " is corrupt"));
+    }
+
+    /**
+     * Buffered writer to a file channel that tracks its position.
+     */
+    private static class Output {
+        // The channel written to.
+        private final FileChannel channel;
+        // Bytes not yet written to the channel.
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        // Position in the file of the start of the buffer.
+        private long flushed;
+
+        /**
+         * Create a writer starting at the beginning of the given channel.
+         *
+         * @param channel The channel to write to.
+         */
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return The position in the file of the next byte written.
+         */
+        private long position() {
+            return flushed + buffer.position();
+        }
+
+        /**
+         * @param value The int to write.
+         */
+        private void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        /**
+         * @param value The long to write.
+         */
+        private void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        /**
+         * @param bytes The bytes to write.
+         */
+        private void put(byte[] bytes) throws IOException {
+            put(ByteBuffer.wrap(bytes));
+        }
+
+        /**
+         * @param bytes The remaining bytes of the buffer to write.
+         */
+        private void put(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                ensure(1);
+                int count = Math.min(bytes.remaining(), buffer.remaining());
+                ByteBuffer part = bytes.duplicate();
+                part.limit(part.position() + count);
+                buffer.put(part);
+                bytes.position(bytes.position() + count);
+            }
+        }
+
+        /**
+         * Write zero bytes until the position is a multiple of 4.
+         */
+        private void align() throws IOException {
+            while (position() % 4 != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        /**
+         * Leave the given number of zero bytes to be filled in later.
+         *
+         * @param count The number of bytes to leave.
+         */
+        private void skip(int count) throws IOException {
+            put(new byte[count]);
+        }
+
+        /**
+         * Make room for the given number of bytes in the buffer.
+         *
+         * @param count The number of bytes needed.
+         */
+        private void ensure(int count) throws IOException {
+            if (buffer.remaining() < count) {
+                flush();
+            }
+        }
+
+        /**
+         * Write every buffered byte to the channel.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer, flushed);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * A read-only file mapped into memory in chunks, so files larger than a
+     * single mapping can be read. Chunks are a multiple of 4 bytes, so an
+     * aligned int never spans two chunks.
+     */
+    static final class MappedFile {
+        // Number of bytes in each mapped chunk.
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+        // The mapped chunks, in order.
+        private final MappedByteBuffer[] chunks;
+        // Length of the file in bytes.
+        private final long length;
+
+        /**
+         * Create a mapped file from its chunks.
+         *
+         * @param chunks The mapped chunks, in order.
+         * @param length The length of the file in bytes.
+         */
+        private MappedFile(MappedByteBuffer[] chunks, long length) {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        /**
+         * Map the whole of the given file.
+         *
+         * @param file The file to map.
+         * @return The mapped file.
+         * @throws IOException if the file can't be mapped.
+         */
+        static MappedFile map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+                long length = channel.size();
+                int count = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+                MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+                for (int i = 0; i < count; i++) {
+                    long start = i * CHUNK_SIZE;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            start, Math.min(CHUNK_SIZE, length - start));
+                }
+                return new MappedFile(chunks, length);
+            }
+        }
+
+        /**
+         * @return The length of the file in bytes.
+         */
+        long length() {
+            return length;
+        }
+
+        /**
+         * @param position A 4-byte aligned position in the file.
+         * @return The int at that position.
+         */
+        int getInt(long position) {
+            return chunks[(int) (position >>> CHUNK_BITS)]
+                    .getInt((int) (position & (CHUNK_SIZE - 1)));
+        }
+
+        /**
+         * @param position A 4-byte aligned position in the file.
+         * @return The long at that position.
+         */
+        long getLong(long position) {
+            return ((long) getInt(position) << 32)
+                    | (getInt(position + 4) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * @param position A position in the file.
+         * @return The byte at that position.
+         */
+        byte getByte(long position) {
+            return chunks[(int) (position >>> CHUNK_BITS)]
+                    .get((int) (position & (CHUNK_SIZE - 1)));
+        }
+
+        /**
+         * Copy aligned ints from the file into a new array.
+         *
+         * @param position The 4-byte aligned position of the first int.
+         * @param count    The number of ints to copy.
+         * @return The copied ints.
+         */
+        int[] getInts(long position, int count) {
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = getInt(position + 4L * i);
+            }
+            return values;
+        }
+
+        /**
+         * Compute the CRC32 of a range of the file.
+         *
+         * @param position The position of the first byte.
+         * @param count    The number of bytes.
+         * @return The CRC32 of the range, truncated to an int.
+         */
+        int crc(long position, long count) {
+            CRC32 crc = new CRC32();
+            long end = position + count;
+            while (position < end) {
+                int chunk = (int) (position >>> CHUNK_BITS);
+                int start = (int) (position & (CHUNK_SIZE - 1));
+                int part = (int) Math.min(end - position,
+                        chunks[chunk].limit() - start);
+                ByteBuffer slice = chunks[chunk].duplicate();
+                slice.position(start).limit(start + part);
+                crc.update(slice);
+                position += part;
+            }
+            return (int) crc.getValue();
+        }
+    }
+}
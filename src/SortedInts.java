@@ -0,0 +1,91 @@
+/**
+ * Binary search helpers over runs of ascending ints stored in a slice of an
+ * array or of an {@link OffHeapBuffer}.
+ */
+final class SortedInts {
+
+    private SortedInts() {
+    }
+
+    /**
+     * Find the first position in a sorted slice holding a value at or above
+     * the given key.
+     *
+     * @param values The array holding the slice.
+     * @param from   The first position of the slice (inclusive).
+     * @param to     The end of the slice (exclusive).
+     * @param key    The value to search for.
+     * @return The first position whose value is &gt;= key, or {@code to} if
+     * every value is below it.
+     */
+    static int lowerBound(int[] values, int from, int to, int key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the first position in a sorted slice holding a value strictly
+     * above the given key.
+     *
+     * @param values The array holding the slice.
+     * @param from   The first position of the slice (inclusive).
+     * @param to     The end of the slice (exclusive).
+     * @param key    The value to search for.
+     * @return The first position whose value is &gt; key, or {@code to} if
+     * every value is at or below it.
+     */
+    static int upperBound(int[] values, int from, int to, int key) {
+        return key == Integer.MAX_VALUE
+                ? to : lowerBound(values, from, to, key + 1);
+    }
+
+    /**
+     * Find the first position in a sorted slice of off-heap ints holding a
+     * value at or above the given key.
+     *
+     * @param values The block holding the slice.
+     * @param from   The index of the first int of the slice (inclusive).
+     * @param to     The end of the slice (exclusive).
+     * @param key    The value to search for.
+     * @return The first index whose value is &gt;= key, or {@code to} if
+     * every value is below it.
+     */
+    static long lowerBound(OffHeapBuffer values, long from, long to, int key) {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (values.getInt(4 * mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the first position in a sorted slice of off-heap ints holding a
+     * value strictly above the given key.
+     *
+     * @param values The block holding the slice.
+     * @param from   The index of the first int of the slice (inclusive).
+     * @param to     The end of the slice (exclusive).
+     * @param key    The value to search for.
+     * @return The first index whose value is &gt; key, or {@code to} if
+     * every value is at or below it.
+     */
+    static long upperBound(OffHeapBuffer values, long from, long to, int key) {
+        return key == Integer.MAX_VALUE
+                ? to : lowerBound(values, from, to, key + 1);
+    }
+}
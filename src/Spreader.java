@@ -0,0 +1,66 @@
+/**
+ * A person ranked by {@link ContactTracer#rankSpreaders(int, int)}, with an
+ * estimate of how many people they could have infected.
+ */
+public class Spreader {
+
+    // The name of the person.
+    private final String person;
+    // Estimated number of people a trace from the person would reach.
+    private final long estimate;
+    // Bounds that the exact number falls within about 95% of the time.
+    private final long lower;
+    private final long upper;
+
+    /**
+     * Creates a ranked person.
+     *
+     * @param person   The name of the person.
+     * @param estimate The estimated number of people reached.
+     * @param lower    The lower bound of the estimate.
+     * @param upper    The upper bound of the estimate.
+     */
+    Spreader(String person, long estimate, long lower, long upper) {
+        this.person = person;
+        this.estimate = estimate;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * @return the name of the person
+     */
+    public String getPerson() {
+        return person;
+    }
+
+    /**
+     * @return the estimated number of people that
+     * {@link ContactTracer#contactTrace(String, int)} from the person would
+     * return
+     */
+    public long getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * @return a lower bound on the number of people reached, which the exact
+     * number is below about 2.5% of the time
+     */
+    public long getLowerBound() {
+        return lower;
+    }
+
+    /**
+     * @return an upper bound on the number of people reached, which the
+     * exact number is above about 2.5% of the time
+     */
+    public long getUpperBound() {
+        return upper;
+    }
+
+    @Override
+    public String toString() {
+        return person + ": " + estimate + " [" + lower + ", " + upper + "]";
+    }
+}
@@ -0,0 +1,273 @@
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Estimates how many people a trace from each person would reach, for every
+ * person at once, in one sweep over the contacts from latest to earliest.
+ * <p>
+ * The people a person could infect when contagious from time {@code t} are
+ * themselves plus, for each of their contacts with {@code w} at a time
+ * {@code c >= t}, everyone {@code w} could infect when contagious from
+ * {@code c + 60}. Sweeping contacts in descending time, each person's set
+ * only grows, so it can be held as a HyperLogLog sketch and each contact
+ * merges two sketches. The sketch merged in for a contact at time {@code c}
+ * must be the other person's as it stood before any contact earlier than
+ * {@code c + 60} was swept, so it is copied at that point and kept until the
+ * contact is reached. Only the copies for contacts within 60 minutes of the
+ * sweep are held at once.
+ * <p>
+ * A sketch of {@code 2^precision} one-byte registers has a relative
+ * standard error of about {@code 1.04 / sqrt(2^precision)}.
+ */
+final class SpreaderRanking {
+
+    // Registers per sketch as a power of two, by default and at most.
+    static final int DEFAULT_PRECISION = 7;
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 16;
+
+    // Number of bits of a hash that pick its register.
+    private final int precision;
+    // Number of registers in each sketch.
+    private final int registers;
+    // Sketch of the people each person could infect, or null for people
+    // with no contacts swept.
+    private final byte[][] sketches;
+    // Copies of sketches waiting for their contact to be swept, as a ring
+    // of registers-sized slots.
+    private byte[] pending;
+    // Slot of the oldest copy, and the number of copies held.
+    private int pendingHead;
+    private int pendingSize;
+
+    /**
+     * Creates empty sketches for the given number of people.
+     *
+     * @param vertexCount One more than the highest ID in use.
+     * @param precision   The log2 of the number of registers per sketch.
+     * @require precision &gt;= MIN_PRECISION &amp;&amp;
+     * precision &lt;= MAX_PRECISION
+     */
+    SpreaderRanking(int vertexCount, int precision) {
+        this.precision = precision;
+        this.registers = 1 << precision;
+        this.sketches = new byte[vertexCount][];
+        this.pending = new byte[16 * registers];
+    }
+
+    /**
+     * Sweep every contact at or after a time, latest first, leaving each
+     * person's sketch holding everyone they could infect when contagious
+     * from that time.
+     *
+     * @param layers The graphs to read contacts from.
+     * @param from   The time every person becomes contagious.
+     * @param stats  Counters of the query's work, or null.
+     */
+    void sweep(ContactGraph[] layers, int from, QueryStats stats) {
+        // Each contact is read from its smaller end only.
+        IntList lows = new IntList();
+        IntList highs = new IntList();
+        IntList times = new IntList();
+        long scanned = 0;
+        for (ContactGraph layer : layers) {
+            int vertexCount = Math.min(layer.vertexCount(), sketches.length);
+            for (int v = 0; v < vertexCount; v++) {
+                int degree = layer.degree(v);
+                scanned += degree;
+                for (int i = 0; i < degree; i++) {
+                    int other = layer.neighbour(v, i);
+                    if (other > v && layer.lastContact(v, i) >= from) {
+                        IntBuffer kept = layer.contactTimes(v, i, from,
+                                Integer.MAX_VALUE);
+                        while (kept.hasRemaining()) {
+                            lows.add(v);
+                            highs.add(other);
+                            times.add(kept.get());
+                        }
+                    }
+                }
+            }
+        }
+        if (stats != null) {
+            stats.add(0, scanned, 0, 0, times.size());
+        }
+        long[] order = new long[times.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = CsrGraph.pack(times.get(i), i);
+        }
+        Arrays.parallelSort(order);
+
+        // Contacts are swept from the end of order, and copied from there
+        // too, in the same order.
+        int next = order.length - 1;
+        int copied = order.length - 1;
+        while (next >= 0) {
+            int time = CsrGraph.high(order[next]);
+            while (copied >= 0 && CsrGraph.high(order[copied])
+                    > time - ContactTracer.CONTAGION_DELAY) {
+                int contact = CsrGraph.low(order[copied--]);
+                push(sketch(lows.get(contact)));
+                push(sketch(highs.get(contact)));
+            }
+            while (next >= 0 && CsrGraph.high(order[next]) == time) {
+                int contact = CsrGraph.low(order[next--]);
+                mergeOldest(sketch(highs.get(contact)));
+                mergeOldest(sketch(lows.get(contact)));
+            }
+        }
+    }
+
+    /**
+     * @param person The ID of a person.
+     * @return the estimated number of people a trace from them would reach.
+     */
+    long estimate(int person) {
+        long estimate = Math.round(cardinality(person)) - 1;
+        return Math.max(0, Math.min(sketches.length - 1, estimate));
+    }
+
+    /**
+     * Rank the people with the largest estimates.
+     *
+     * @param count The number of people to rank.
+     * @param names The names of the people.
+     * @return Up to count people, by descending estimate, then by ID.
+     */
+    List<Spreader> top(int count, NameTable names) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        // Lowest estimate first, then highest ID, so the head is evicted.
+        PriorityQueue<Long> best = new PriorityQueue<>();
+        for (int person = 0; person < sketches.length; person++) {
+            long key = (estimate(person) << 32)
+                    | (Integer.MAX_VALUE - person);
+            if (best.size() < count) {
+                best.add(key);
+            } else if (key > best.peek()) {
+                best.poll();
+                best.add(key);
+            }
+        }
+        double error = 2 * 1.04 / Math.sqrt(registers);
+        List<Spreader> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int person = Integer.MAX_VALUE - CsrGraph.low(best.poll());
+            double cardinality = cardinality(person);
+            long lower = 0;
+            long upper = 0;
+            if (sketches[person] != null) {
+                lower = Math.max(0,
+                        (long) Math.floor(cardinality * (1 - error)) - 1);
+                upper = Math.min(sketches.length - 1,
+                        (long) Math.ceil(cardinality * (1 + error)) - 1);
+            }
+            result.add(new Spreader(names.nameOf(person), estimate(person),
+                    lower, upper));
+        }
+        // Taken from the heap lowest first.
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * @param person The ID of a person.
+     * @return the estimated number of people in their sketch, including
+     * themselves.
+     */
+    private double cardinality(int person) {
+        byte[] sketch = sketches[person];
+        if (sketch == null) {
+            return 1;
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : sketch) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = registers == 16 ? 0.673 : registers == 32 ? 0.697
+                : registers == 64 ? 0.709 : 0.7213 / (1 + 1.079 / registers);
+        double estimate = alpha * registers * registers / sum;
+        if (estimate <= 2.5 * registers && zeros > 0) {
+            // Linear counting is more accurate for small sets.
+            estimate = registers * Math.log((double) registers / zeros);
+        }
+        return estimate;
+    }
+
+    /**
+     * @param person The ID of a person.
+     * @return their sketch, made holding only themselves if they had none.
+     */
+    private byte[] sketch(int person) {
+        byte[] sketch = sketches[person];
+        if (sketch == null) {
+            sketch = new byte[registers];
+            long hash = mix(person);
+            int register = (int) (hash >>> (64 - precision));
+            // The guard bit caps the rank for a hash of all zeros.
+            sketch[register] = (byte) (Long.numberOfLeadingZeros(
+                    (hash << precision) | (1L << (precision - 1))) + 1);
+            sketches[person] = sketch;
+        }
+        return sketch;
+    }
+
+    /**
+     * Copy a sketch into the newest pending slot.
+     *
+     * @param sketch The sketch to copy.
+     */
+    private void push(byte[] sketch) {
+        int slots = pending.length / registers;
+        if (pendingSize == slots) {
+            byte[] grown = new byte[pending.length * 2];
+            for (int i = 0; i < pendingSize; i++) {
+                System.arraycopy(pending, ((pendingHead + i) % slots)
+                        * registers, grown, i * registers, registers);
+            }
+            pending = grown;
+            pendingHead = 0;
+            slots *= 2;
+        }
+        System.arraycopy(sketch, 0, pending,
+                ((pendingHead + pendingSize) % slots) * registers, registers);
+        pendingSize++;
+    }
+
+    /**
+     * Merge the oldest pending copy into a sketch and drop the copy.
+     *
+     * @param into The sketch to merge into.
+     */
+    private void mergeOldest(byte[] into) {
+        int start = pendingHead * registers;
+        for (int i = 0; i < registers; i++) {
+            if (pending[start + i] > into[i]) {
+                into[i] = pending[start + i];
+            }
+        }
+        pendingHead = (pendingHead + 1) % (pending.length / registers);
+        pendingSize--;
+    }
+
+    /**
+     * @param person The ID of a person.
+     * @return a well mixed 64-bit hash of the ID.
+     */
+    private static long mix(int person) {
+        // The finalizer of SplitMix64.
+        long z = (person + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,262 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Contact traces kept up to date as traces are added, instead of being re-run.
+ * <p>
+ * Each standing trace stores the earliest time every person it reaches could
+ * have become contagious. A new contact can only extend a trace if one of its
+ * two people was contagious by the time of the contact and the contact makes
+ * the other contagious earlier than before. In that case the search resumes
+ * from the other person alone, visiting only people whose time improves, so
+ * the cost of a new contact depends on how much of each trace it changes
+ * rather than on the size of the graph.
+ * <p>
+ * Subscribers are told about people newly at risk on the thread that added
+ * the contact, after the standing trace has been updated. Callbacks run
+ * outside any lock held here.
+ * <p>
+ * Safe to use from many threads, alongside a tracer created with
+ * {@link ContactTracer#concurrent()}.
+ */
+public class StandingTraces implements AutoCloseable {
+
+    // The tracer whose traces are followed.
+    private final ContactTracer tracer;
+    // Listener registered with the tracer.
+    private final ContactListener listener = this::contactAdded;
+    // Every standing trace not yet cancelled.
+    private final List<Watch> watches = new ArrayList<>();
+    // Contacts added while a standing trace is being started, to replay
+    // against it once it is. Each list is in use while its trace starts.
+    private final List<List<int[]>> recording = new ArrayList<>();
+
+    /**
+     * Creates an empty set of standing traces following the given tracer.
+     *
+     * @param tracer to follow new traces of
+     * @require tracer != null
+     */
+    public StandingTraces(ContactTracer tracer) {
+        this.tracer = tracer;
+        tracer.addListener(listener);
+    }
+
+    /**
+     * Starts a standing trace from the given person, who became contagious at
+     * timeOfContagion.
+     * <p>
+     * If the person has no contact traces yet, the trace starts out empty and
+     * grows once they appear.
+     *
+     * @param person          to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param subscriber      to tell about newly at-risk people, or null
+     * @return the standing trace
+     * @require person != null &amp;&amp; timeOfContagion &gt;= 0
+     */
+    public Watch watch(String person, int timeOfContagion,
+                       Subscriber subscriber) {
+        if (person == null || timeOfContagion < 0) {
+            throw new IllegalArgumentException("invalid index case: "
+                    + person + " at " + timeOfContagion);
+        }
+        List<int[]> added = new ArrayList<>();
+        synchronized (this) {
+            recording.add(added);
+        }
+        // Traced outside the lock, so adding traces isn't held up.
+        int id = tracer.getPersonId(person);
+        Watch watch = new Watch(person, timeOfContagion, subscriber, id,
+                tracer.contagiousTimes(id, timeOfContagion));
+        synchronized (this) {
+            recording.remove(added);
+            // Contacts seen during the trace may already be part of it; the
+            // update does nothing for those.
+            for (int[] contact : added) {
+                watch.update(contact[0], contact[1], contact[2], null);
+            }
+            watches.add(watch);
+        }
+        return watch;
+    }
+
+    /**
+     * @return every standing trace not yet cancelled.
+     */
+    public synchronized List<Watch> getWatches() {
+        return new ArrayList<>(watches);
+    }
+
+    /**
+     * Update every standing trace with a new contact, then notify
+     * subscribers of anyone newly at risk.
+     *
+     * @param person1 The ID of the first person.
+     * @param person2 The ID of the second person.
+     * @param time    The time of the contact.
+     */
+    private void contactAdded(int person1, int person2, int time) {
+        List<Runnable> notifications = new ArrayList<>();
+        synchronized (this) {
+            for (List<int[]> added : recording) {
+                added.add(new int[]{person1, person2, time});
+            }
+            for (Watch watch : watches) {
+                watch.update(person1, person2, time, notifications);
+            }
+        }
+        for (Runnable notification : notifications) {
+            notification.run();
+        }
+    }
+
+    /**
+     * Cancels every standing trace and stops following new traces.
+     */
+    @Override
+    public synchronized void close() {
+        tracer.removeListener(listener);
+        watches.clear();
+    }
+
+    /**
+     * Told about people newly at risk in a standing trace.
+     */
+    @FunctionalInterface
+    public interface Subscriber {
+
+        /**
+         * Called after a new trace puts people at risk who weren't before.
+         *
+         * @param watch  the standing trace that grew
+         * @param people the people newly at risk
+         */
+        void newlyAtRisk(Watch watch, Set<String> people);
+    }
+
+    /**
+     * A standing contact trace from one index case.
+     */
+    public final class Watch {
+
+        // The index case.
+        private final String person;
+        // The time the index case became contagious.
+        private final int timeOfContagion;
+        // Told about people newly at risk, or null.
+        private final Subscriber subscriber;
+        // ID of the index case, or -1 until they appear in a trace.
+        private int id;
+        // Everyone reached, including the index case, mapped to the time
+        // they became contagious. Empty until the index case appears.
+        private final IntIntMap infected;
+
+        /**
+         * Create a standing trace from an initial full trace.
+         */
+        private Watch(String person, int timeOfContagion,
+                      Subscriber subscriber, int id, IntIntMap infected) {
+            this.person = person;
+            this.timeOfContagion = timeOfContagion;
+            this.subscriber = subscriber;
+            this.id = id;
+            this.infected = infected;
+        }
+
+        /**
+         * @return the index case this trace starts from.
+         */
+        public String getPerson() {
+            return person;
+        }
+
+        /**
+         * @return the time the index case became contagious.
+         */
+        public int getTimeOfContagion() {
+            return timeOfContagion;
+        }
+
+        /**
+         * @return the people currently at risk, not including the index case.
+         */
+        public Set<String> getAtRisk() {
+            synchronized (StandingTraces.this) {
+                Set<String> result = new HashSet<>();
+                for (int other : infected.keys()) {
+                    if (other != id) {
+                        result.add(tracer.getPersonName(other));
+                    }
+                }
+                return result;
+            }
+        }
+
+        /**
+         * Stops updating this trace and notifying its subscriber.
+         */
+        public void cancel() {
+            synchronized (StandingTraces.this) {
+                watches.remove(this);
+            }
+        }
+
+        /**
+         * Extend this trace with a new contact. Called holding the lock of
+         * the enclosing StandingTraces.
+         *
+         * @param person1       The ID of the first person.
+         * @param person2       The ID of the second person.
+         * @param time          The time of the contact.
+         * @param notifications List to add the subscriber's notification to,
+         *                      or null to skip notifying.
+         */
+        private void update(int person1, int person2, int time,
+                            List<Runnable> notifications) {
+            if (id < 0) {
+                // The index case may have just appeared. Every contact of
+                // theirs is passed to this method as it is added, so starting
+                // from them alone misses nothing.
+                id = tracer.getPersonId(person);
+                if (id < 0) {
+                    return;
+                }
+                infected.put(id, timeOfContagion);
+            }
+            IntList reached = new IntList();
+            spread(person1, person2, time, reached);
+            spread(person2, person1, time, reached);
+            if (reached.size() > 0 && subscriber != null
+                    && notifications != null) {
+                Set<String> people = new HashSet<>();
+                for (int i = 0; i < reached.size(); i++) {
+                    people.add(tracer.getPersonName(reached.get(i)));
+                }
+                Set<String> newlyAtRisk = Collections.unmodifiableSet(people);
+                notifications.add(() ->
+                        subscriber.newlyAtRisk(this, newlyAtRisk));
+            }
+        }
+
+        /**
+         * Spread the disease across a new contact in one direction, if the
+         * first person was contagious in time.
+         *
+         * @param from    The ID of the person who may pass it on.
+         * @param to      The ID of the person who may catch it.
+         * @param time    The time of the contact.
+         * @param reached List to add people newly at risk to.
+         */
+        private void spread(int from, int to, int time, IntList reached) {
+            int contagious = infected.get(from, -1);
+            if (contagious >= 0 && contagious <= time) {
+                tracer.propagate(infected, to,
+                        time + ContactTracer.CONTAGION_DELAY, reached);
+            }
+        }
+    }
+}
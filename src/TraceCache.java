@@ -0,0 +1,496 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded cache of {@link ContactTracer#contactTrace(String, int)} results,
+ * kept up to date as traces are added.
+ * <p>
+ * Results are keyed by person and contagion time and evicted least recently
+ * used first once the people held across all results exceed the capacity.
+ * <p>
+ * A new contact can only change a result if one of its two people was
+ * already contagious in that result by the time of the contact. The cache
+ * indexes every cached result by the people in it, so adding a trace drops
+ * exactly those results and leaves the rest in place.
+ * <p>
+ * The cache is safe to use from many threads, alongside a tracer created with
+ * {@link ContactTracer#concurrent()}. Traces added while a result is being
+ * computed are checked against it before it is cached.
+ */
+public class TraceCache implements AutoCloseable {
+
+    // Number of recent contacts remembered to check results computed while
+    // they were added.
+    private static final int LOG_SIZE = 1024;
+
+    // The tracer whose results are cached.
+    private final ContactTracer tracer;
+    // Listener registered with the tracer.
+    private final ContactListener listener = new ContactListener() {
+        @Override
+        public void contactAdded(int person1, int person2, int time) {
+            TraceCache.this.contactAdded(person1, person2, time);
+        }
+
+        @Override
+        public void contactsDropped(int cutoff) {
+            TraceCache.this.contactsDropped(cutoff);
+        }
+    };
+    // Maximum number of people held across all cached results.
+    private final long capacity;
+    // Cached results chained by packed contagion time and person ID through
+    // Entry.chain, in buckets by hash. A power of two long.
+    private Entry[] buckets = new Entry[16];
+    // Least and most recently used cached results, linked in order of use
+    // through Entry.older and Entry.newer.
+    private Entry eldest;
+    private Entry newest;
+    // Number of results cached.
+    private int size;
+    // Cached results by slot, or null for free slots.
+    private Entry[] slots = new Entry[16];
+    // Slots freed by removed results, to reuse.
+    private final IntList freeSlots = new IntList();
+    // Number of slots ever used.
+    private int slotCount;
+    // Slots of the cached results containing each person, indexed by person
+    // ID, or null for people in none.
+    private IntList[] containing = new IntList[16];
+    // Number of people held across all cached results.
+    private long weight;
+    // Number of contacts added since the cache was created.
+    private long epoch;
+    // The most recent contacts, indexed by epoch modulo LOG_SIZE.
+    private final int[] logPeople1 = new int[LOG_SIZE];
+    private final int[] logPeople2 = new int[LOG_SIZE];
+    private final int[] logTimes = new int[LOG_SIZE];
+
+    // Counters.
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Creates an empty cache of the given tracer's results.
+     *
+     * @param tracer   to cache results of
+     * @param capacity maximum number of people, summed over every cached
+     *                 result, to hold at once
+     * @require tracer != null &amp;&amp; capacity &gt; 0
+     */
+    public TraceCache(ContactTracer tracer, long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: "
+                    + capacity);
+        }
+        this.tracer = tracer;
+        this.capacity = capacity;
+        tracer.addListener(listener);
+    }
+
+    /**
+     * Initiates a contact trace starting with the given person, who became
+     * contagious at timeOfContagion, reusing a cached result if there is one.
+     *
+     * @param person          to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return an unmodifiable set of people who may have contracted the
+     * disease, originating from person
+     * @see ContactTracer#contactTrace(String, int)
+     */
+    public Set<String> contactTrace(String person, int timeOfContagion) {
+        int id = tracer.getPersonId(person);
+        if (id < 0 || timeOfContagion < 0) {
+            // Nothing to cache: the result is empty until the person appears,
+            // and then their ID is different.
+            return Collections.emptySet();
+        }
+        long key = CsrGraph.pack(timeOfContagion, id);
+        long start;
+        synchronized (this) {
+            Entry cached = find(key);
+            if (cached != null) {
+                hits++;
+                unlink(cached);
+                append(cached);
+                return cached.result;
+            }
+            misses++;
+            start = epoch;
+        }
+
+        IntIntMap infected = tracer.contagiousTimes(id, timeOfContagion);
+        Set<String> result = new HashSet<>();
+        for (int other : infected.keys()) {
+            if (other != id) {
+                result.add(tracer.getPersonName(other));
+            }
+        }
+        Entry entry = new Entry(key, infected,
+                Collections.unmodifiableSet(result));
+
+        synchronized (this) {
+            if (isCurrent(entry, start) && find(key) == null) {
+                insert(entry);
+            }
+        }
+        return entry.result;
+    }
+
+    /**
+     * Check that no contact added since the given epoch affects a result
+     * computed from that epoch.
+     *
+     * @param entry The computed result.
+     * @param start The epoch when the computation began.
+     * @return true if the result is still correct and can be cached.
+     */
+    private boolean isCurrent(Entry entry, long start) {
+        if (epoch - start > LOG_SIZE) {
+            // Too many contacts to check; just don't cache this result.
+            return false;
+        }
+        for (long e = start; e < epoch; e++) {
+            int slot = (int) (e % LOG_SIZE);
+            if (entry.affectedBy(logPeople1[slot], logPeople2[slot],
+                    logTimes[slot])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a result to the cache, evicting the least recently used results to
+     * make room.
+     *
+     * @param entry The result to add.
+     */
+    private void insert(Entry entry) {
+        if (size == buckets.length) {
+            rehash(buckets.length * 2);
+        }
+        int bucket = bucket(entry.key, buckets.length);
+        entry.chain = buckets[bucket];
+        buckets[bucket] = entry;
+        append(entry);
+        size++;
+
+        entry.slot = freeSlots.size() > 0 ? freeSlots.removeLast()
+                : slotCount++;
+        if (entry.slot == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        slots[entry.slot] = entry;
+        for (int person : entry.infected.keys()) {
+            if (person >= containing.length) {
+                containing = Arrays.copyOf(containing,
+                        Math.max(person + 1, containing.length * 2));
+            }
+            IntList withPerson = containing[person];
+            if (withPerson == null) {
+                withPerson = new IntList(4);
+                containing[person] = withPerson;
+            }
+            entry.positions.put(person, withPerson.size());
+            withPerson.add(entry.slot);
+        }
+        weight += entry.weight();
+
+        while (weight > capacity && eldest != null) {
+            if (eldest == entry && size == 1) {
+                // A single result larger than the whole cache is kept until
+                // the next one arrives.
+                break;
+            }
+            remove(eldest);
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove a result from the cache, the per-person index and the total
+     * weight.
+     *
+     * @param entry The cached result.
+     */
+    private void remove(Entry entry) {
+        int bucket = bucket(entry.key, buckets.length);
+        if (buckets[bucket] == entry) {
+            buckets[bucket] = entry.chain;
+        } else {
+            Entry previous = buckets[bucket];
+            while (previous.chain != entry) {
+                previous = previous.chain;
+            }
+            previous.chain = entry.chain;
+        }
+        entry.chain = null;
+        unlink(entry);
+        size--;
+
+        for (int person : entry.positions.keys()) {
+            // Move the last result containing the person into the gap.
+            IntList withPerson = containing[person];
+            int position = entry.positions.get(person, -1);
+            int moved = withPerson.removeLast();
+            if (moved != entry.slot) {
+                withPerson.set(position, moved);
+                slots[moved].positions.put(person, position);
+            }
+            if (withPerson.size() == 0) {
+                containing[person] = null;
+            }
+        }
+        entry.positions.clear();
+        slots[entry.slot] = null;
+        freeSlots.add(entry.slot);
+        weight -= entry.weight();
+    }
+
+    /**
+     * @param key The packed contagion time and person ID of a query.
+     * @return The cached result of the query, or null if there is none.
+     */
+    private Entry find(long key) {
+        Entry entry = buckets[bucket(key, buckets.length)];
+        while (entry != null && entry.key != key) {
+            entry = entry.chain;
+        }
+        return entry;
+    }
+
+    /**
+     * Link a result in as the most recently used.
+     *
+     * @param entry The result, not linked in.
+     */
+    private void append(Entry entry) {
+        entry.older = newest;
+        entry.newer = null;
+        if (newest == null) {
+            eldest = entry;
+        } else {
+            newest.newer = entry;
+        }
+        newest = entry;
+    }
+
+    /**
+     * Unlink a result from the order of use.
+     *
+     * @param entry The result, linked in.
+     */
+    private void unlink(Entry entry) {
+        if (entry.older == null) {
+            eldest = entry.newer;
+        } else {
+            entry.older.newer = entry.newer;
+        }
+        if (entry.newer == null) {
+            newest = entry.older;
+        } else {
+            entry.newer.older = entry.older;
+        }
+        entry.older = null;
+        entry.newer = null;
+    }
+
+    /**
+     * Rechain the cached results into the given number of buckets.
+     *
+     * @param capacity The new number of buckets, a power of two.
+     */
+    private void rehash(int capacity) {
+        Entry[] rehashed = new Entry[capacity];
+        for (Entry entry = eldest; entry != null; entry = entry.newer) {
+            int bucket = bucket(entry.key, capacity);
+            entry.chain = rehashed[bucket];
+            rehashed[bucket] = entry;
+        }
+        buckets = rehashed;
+    }
+
+    /**
+     * @param key      The packed contagion time and person ID of a query.
+     * @param capacity The number of buckets, a power of two.
+     * @return The bucket the query's result is chained in.
+     */
+    private static int bucket(long key, int capacity) {
+        return NameTable.mix(Long.hashCode(key)) & (capacity - 1);
+    }
+
+    /**
+     * Drop every cached result that a new contact could change.
+     *
+     * @param person1 The ID of the first person.
+     * @param person2 The ID of the second person.
+     * @param time    The time of the contact.
+     */
+    private synchronized void contactAdded(int person1, int person2,
+                                           int time) {
+        int slot = (int) (epoch % LOG_SIZE);
+        logPeople1[slot] = person1;
+        logPeople2[slot] = person2;
+        logTimes[slot] = time;
+        epoch++;
+        invalidate(person1, person2, time);
+        invalidate(person2, person1, time);
+    }
+
+    /**
+     * Drop every cached result that may have used contacts before the given
+     * cutoff. Results of traces starting at or after the cutoff never do.
+     *
+     * @param cutoff The earliest contact time still kept.
+     */
+    private synchronized void contactsDropped(int cutoff) {
+        // Contacts dropped during a computation aren't in the log, so no
+        // result computed before now can be trusted.
+        epoch += LOG_SIZE + 1;
+        Entry entry = eldest;
+        while (entry != null) {
+            Entry next = entry.newer;
+            if (CsrGraph.high(entry.key) < cutoff) {
+                remove(entry);
+                invalidations++;
+            }
+            entry = next;
+        }
+    }
+
+    /**
+     * Drop every cached result in which the given person was contagious by
+     * the time of a new contact.
+     *
+     * @param person One person in the contact.
+     * @param other  The other person in the contact.
+     * @param time   The time of the contact.
+     */
+    private void invalidate(int person, int other, int time) {
+        if (person >= containing.length || containing[person] == null) {
+            return;
+        }
+        IntList withPerson = containing[person];
+        List<Entry> stale = new ArrayList<>();
+        for (int i = 0; i < withPerson.size(); i++) {
+            Entry entry = slots[withPerson.get(i)];
+            if (entry.affectedBy(person, other, time)) {
+                stale.add(entry);
+            }
+        }
+        for (Entry entry : stale) {
+            remove(entry);
+            invalidations++;
+        }
+    }
+
+    /**
+     * @return the number of results currently cached.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of queries answered from the cache.
+     */
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    /**
+     * @return the number of queries that had to be traced.
+     */
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * @return the number of results evicted to stay within capacity.
+     */
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of results dropped because a new trace changed
+     * them.
+     */
+    public synchronized long invalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * Empties the cache and stops following new traces.
+     */
+    @Override
+    public synchronized void close() {
+        tracer.removeListener(listener);
+        while (eldest != null) {
+            remove(eldest);
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+        // Packed contagion time and person ID of the query.
+        final long key;
+        // Everyone reached, including the source, mapped to the time they
+        // became contagious.
+        final IntIntMap infected;
+        // Names of everyone reached other than the source.
+        final Set<String> result;
+        // Position of this result's slot in the list of results containing
+        // each person, keyed by person ID.
+        final IntIntMap positions;
+        // Slot of this result while cached.
+        int slot;
+        // Next result in the same bucket.
+        Entry chain;
+        // Results used just before and after this one.
+        Entry older;
+        Entry newer;
+
+        /**
+         * Create a cached result.
+         */
+        private Entry(long key, IntIntMap infected, Set<String> result) {
+            this.key = key;
+            this.infected = infected;
+            this.result = result;
+            this.positions = new IntIntMap(infected.size());
+        }
+
+        /**
+         * @return the number of people this result holds.
+         */
+        private int weight() {
+            return infected.size();
+        }
+
+        /**
+         * Check whether a new contact could change this result.
+         *
+         * @param person1 The ID of the first person.
+         * @param person2 The ID of the second person.
+         * @param time    The time of the contact.
+         * @return true if either person was contagious by the time of the
+         * contact.
+         */
+        private boolean affectedBy(int person1, int person2, int time) {
+            int contagious1 = infected.get(person1, -1);
+            int contagious2 = infected.get(person2, -1);
+            return (contagious1 >= 0 && contagious1 <= time)
+                    || (contagious2 >= 0 && contagious2 <= time);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Receives the people reached by a contact trace, as the trace reaches them.
+ * <p>
+ * People are reported in ascending order of infection time, each once. A
+ * collector reused from one trace to the next lets a trace run without
+ * allocating anything.
+ *
+ * @see ContactTracer#contactTrace(int, int, TraceCollector)
+ */
+public interface TraceCollector {
+
+    /**
+     * Called for each person the trace reaches, other than the person it
+     * started from.
+     *
+     * @param person        the ID of the person reached
+     * @param infectionTime the earliest time they could have been infected
+     */
+    void infected(int person, int infectionTime);
+}
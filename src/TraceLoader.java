@@ -0,0 +1,545 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Loads contact traces from files into a {@link ContactTracer} without
+ * creating a {@link Trace} or a name String per row.
+ * <p>
+ * Files are read through memory-mapped windows and fields are parsed straight
+ * from the mapped bytes. Each distinct name is decoded into a String once, the
+ * first time it is seen; later rows find its ID by hashing the raw bytes.
+ * Parsed rows are fed to the tracer in batches.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ * <li>CSV: one {@code person1,person2,time} row per line, UTF-8 encoded.
+ * Spaces around a field are ignored. Lines whose time isn't a number, such
+ * as a header, are skipped.</li>
+ * <li>Binary: the 4 byte magic {@code CTRB} and an int version, then one
+ * record per trace of an unsigned short name length and UTF-8 bytes for each
+ * person, followed by the int time. Ints are big-endian. See
+ * {@link #writeBinary(Path, Iterable)}.</li>
+ * </ul>
+ * Rows that {@link ContactTracer#addTrace(Trace)} would ignore are skipped,
+ * without interning their names.
+ */
+public class TraceLoader {
+
+    // Magic number at the start of a binary trace file ("CTRB").
+    static final int BINARY_MAGIC = 0x43545242;
+    // Version of the binary trace format written by this class.
+    static final int BINARY_VERSION = 1;
+    // Size of the binary file header in bytes.
+    private static final int BINARY_HEADER = 8;
+    // Default number of bytes mapped at a time.
+    private static final int DEFAULT_WINDOW = 1 << 28;
+    // Number of rows parsed before they are fed to the tracer.
+    private static final int BATCH_SIZE = 1 << 16;
+
+    // The tracer to load traces into.
+    private final ContactTracer tracer;
+    // Number of bytes mapped at a time. Every row must fit in one window.
+    private final int windowSize;
+    // IDs of names seen so far, keyed by their encoded bytes.
+    private final ByteNameIndex nameIndex;
+    // Rows parsed but not yet fed to the tracer.
+    private final int[] batchPeople1;
+    private final int[] batchPeople2;
+    private final int[] batchTimes;
+    // Number of rows in the current batch.
+    private int batchCount;
+    // Number of rows the tracer added during the current load.
+    private long rowsAdded;
+
+    /**
+     * Creates a loader that adds traces to the given tracer.
+     *
+     * @param tracer to load traces into
+     * @require tracer != null
+     */
+    public TraceLoader(ContactTracer tracer) {
+        this(tracer, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates a loader that maps files in windows of the given size.
+     *
+     * @param tracer     to load traces into
+     * @param windowSize the number of bytes to map at a time
+     */
+    TraceLoader(ContactTracer tracer, int windowSize) {
+        this.tracer = tracer;
+        this.windowSize = windowSize;
+        this.nameIndex = new ByteNameIndex();
+        this.batchPeople1 = new int[BATCH_SIZE];
+        this.batchPeople2 = new int[BATCH_SIZE];
+        this.batchTimes = new int[BATCH_SIZE];
+    }
+
+    /**
+     * Loads every trace in the given CSV file.
+     *
+     * @param file to load
+     * @return the number of rows added to the tracer, leaving out rows
+     * skipped and contacts it already held
+     * @throws IOException if the file can't be read, or holds a line longer
+     *                     than the mapping window
+     */
+    public long loadCsv(Path file) throws IOException {
+        rowsAdded = 0;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                int length = (int) Math.min(windowSize, size - start);
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY, start, length);
+                boolean last = start + length == size;
+                int consumed = 0;
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (window.get(i) == '\n') {
+                        parseCsvLine(window, lineStart, i);
+                        lineStart = i + 1;
+                        consumed = lineStart;
+                    }
+                }
+                if (last && lineStart < length) {
+                    // Final line without a trailing newline.
+                    parseCsvLine(window, lineStart, length);
+                    consumed = length;
+                }
+                if (consumed == 0) {
+                    throw new IOException("Line at byte " + start
+                            + " is longer than the mapping window");
+                }
+                start += consumed;
+            }
+        }
+        flush();
+        return rowsAdded;
+    }
+
+    /**
+     * Loads every trace in the given binary trace file.
+     *
+     * @param file to load
+     * @return the number of records added to the tracer, leaving out
+     * records skipped and contacts it already held
+     * @throws IOException if the file can't be read or isn't a binary trace
+     *                     file of a supported version
+     */
+    public long loadBinary(Path file) throws IOException {
+        rowsAdded = 0;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < BINARY_HEADER) {
+                throw new IOException("Not a binary trace file: " + file);
+            }
+            MappedByteBuffer header = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, BINARY_HEADER);
+            if (header.getInt(0) != BINARY_MAGIC) {
+                throw new IOException("Not a binary trace file: " + file);
+            }
+            if (header.getInt(4) != BINARY_VERSION) {
+                throw new IOException("Unsupported binary trace version "
+                        + header.getInt(4) + ": " + file);
+            }
+            long start = BINARY_HEADER;
+            while (start < size) {
+                int length = (int) Math.min(windowSize, size - start);
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY, start, length);
+                int position = 0;
+                while (true) {
+                    int end = binaryRecordEnd(window, position, length);
+                    if (end < 0) {
+                        break;
+                    }
+                    parseBinaryRecord(window, position);
+                    position = end;
+                }
+                if (position == 0) {
+                    throw new IOException("Record at byte " + start
+                            + (start + length == size ? " is truncated"
+                            : " is longer than the mapping window"));
+                }
+                start += position;
+            }
+        }
+        flush();
+        return rowsAdded;
+    }
+
+    /**
+     * Writes the given traces to a file in the binary trace format.
+     *
+     * @param file   to write to, replacing any existing file
+     * @param traces to write. Null traces and traces with a null person are
+     *               skipped.
+     * @throws IOException if the file can't be written, or a name is longer
+     *                     than 65535 bytes when encoded
+     */
+    public static void writeBinary(Path file, Iterable<Trace> traces)
+            throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(stream))) {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            for (Trace trace : traces) {
+                if (trace == null || trace.getPerson1() == null
+                        || trace.getPerson2() == null) {
+                    continue;
+                }
+                writeName(out, trace.getPerson1());
+                writeName(out, trace.getPerson2());
+                out.writeInt(trace.getTime());
+            }
+        }
+    }
+
+    /**
+     * Write a length-prefixed UTF-8 name.
+     *
+     * @param out  The stream to write to.
+     * @param name The name to write.
+     * @throws IOException if the name is too long or can't be written.
+     */
+    private static void writeName(DataOutputStream out, String name)
+            throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Name longer than 65535 bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Parse one CSV line and add it to the current batch.
+     *
+     * @param window The mapped bytes.
+     * @param start  The position of the first byte of the line.
+     * @param end    The position of the line's newline, or the end of data.
+     */
+    private void parseCsvLine(MappedByteBuffer window, int start, int end) {
+        if (end > start && window.get(end - 1) == '\r') {
+            end--;
+        }
+        int comma1 = indexOf(window, start, end, (byte) ',');
+        int comma2 = comma1 < 0 ? -1
+                : indexOf(window, comma1 + 1, end, (byte) ',');
+        if (comma2 < 0) {
+            return;
+        }
+        int time = parseTime(window, comma2 + 1, end);
+        if (time < 0 || !tracer.isRetained(time)) {
+            return;
+        }
+        int start1 = skipSpaces(window, start, comma1);
+        int length1 = trimSpaces(window, start1, comma1) - start1;
+        int start2 = skipSpaces(window, comma1 + 1, comma2);
+        int length2 = trimSpaces(window, start2, comma2) - start2;
+        if (!sameBytes(window, start1, length1, start2, length2)) {
+            addRow(nameIndex.intern(window, start1, length1),
+                    nameIndex.intern(window, start2, length2), time);
+        }
+    }
+
+    /**
+     * Find where the binary record at the given position ends.
+     *
+     * @param window   The mapped bytes.
+     * @param position The position of the start of the record.
+     * @param length   The number of bytes mapped.
+     * @return The position just past the record, or -1 if the record
+     * doesn't fit in the window.
+     */
+    private static int binaryRecordEnd(MappedByteBuffer window, int position,
+                                       int length) {
+        if (position + 2 > length) {
+            return -1;
+        }
+        int second = position + 2 + Short.toUnsignedInt(
+                window.getShort(position));
+        if (second + 2 > length) {
+            return -1;
+        }
+        int end = second + 2 + Short.toUnsignedInt(window.getShort(second))
+                + Integer.BYTES;
+        return end > length ? -1 : end;
+    }
+
+    /**
+     * Parse one binary record and add it to the current batch.
+     *
+     * @param window   The mapped bytes.
+     * @param position The position of the start of the record, which must fit
+     *                 in the window.
+     */
+    private void parseBinaryRecord(MappedByteBuffer window, int position) {
+        int length1 = Short.toUnsignedInt(window.getShort(position));
+        int second = position + 2 + length1;
+        int length2 = Short.toUnsignedInt(window.getShort(second));
+        int time = window.getInt(second + 2 + length2);
+        if (time < 0 || !tracer.isRetained(time) || sameBytes(window,
+                position + 2, length1, second + 2, length2)) {
+            return;
+        }
+        addRow(nameIndex.intern(window, position + 2, length1),
+                nameIndex.intern(window, second + 2, length2), time);
+    }
+
+    /**
+     * Add a parsed row to the current batch, feeding the batch to the tracer
+     * once it is full.
+     *
+     * @param person1 The ID of the first person.
+     * @param person2 The ID of the second person.
+     * @param time    The time of the contact.
+     */
+    private void addRow(int person1, int person2, int time) {
+        batchPeople1[batchCount] = person1;
+        batchPeople2[batchCount] = person2;
+        batchTimes[batchCount] = time;
+        batchCount++;
+        if (batchCount == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Feed the current batch to the tracer, counting the rows it adds.
+     */
+    private void flush() {
+        rowsAdded += tracer.addContacts(batchPeople1, batchPeople2,
+                batchTimes, batchCount);
+        batchCount = 0;
+    }
+
+    /**
+     * Parse a non-negative decimal time, allowing surrounding spaces.
+     *
+     * @param window The mapped bytes.
+     * @param start  The position of the first byte of the field.
+     * @param end    The position just past the field.
+     * @return The time, or -1 if the field isn't a non-negative int.
+     */
+    private static int parseTime(MappedByteBuffer window, int start, int end) {
+        start = skipSpaces(window, start, end);
+        end = trimSpaces(window, start, end);
+        if (start == end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = window.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param window The mapped bytes.
+     * @param start  The position of the first byte of a field.
+     * @param end    The position just past the field.
+     * @return The position of the field's first byte that isn't a space, or
+     * end if there is none.
+     */
+    private static int skipSpaces(MappedByteBuffer window, int start,
+                                  int end) {
+        while (start < end && window.get(start) == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * @param window The mapped bytes.
+     * @param start  The position of the first byte of a field.
+     * @param end    The position just past the field.
+     * @return The position just past the field's last byte that isn't a
+     * space, or start if there is none.
+     */
+    private static int trimSpaces(MappedByteBuffer window, int start,
+                                  int end) {
+        while (end > start && window.get(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * @return true if the two byte ranges hold the same bytes, meaning a
+     * person met themselves.
+     */
+    private static boolean sameBytes(MappedByteBuffer window, int start1,
+                                     int length1, int start2, int length2) {
+        if (length1 != length2) {
+            return false;
+        }
+        for (int i = 0; i < length1; i++) {
+            if (window.get(start1 + i) != window.get(start2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The position of the first occurrence of the given byte in
+     * [start, end), or -1 if it doesn't occur.
+     */
+    private static int indexOf(MappedByteBuffer window, int start, int end,
+                               byte value) {
+        for (int i = start; i < end; i++) {
+            if (window.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Open-addressing index from the UTF-8 bytes of a name to its ID in the
+     * tracer. Bytes of every distinct name are copied once into an arena.
+     */
+    private class ByteNameIndex {
+        // Marks an unused slot.
+        private static final int EMPTY = -1;
+
+        // Encoded bytes of every name, back to back.
+        private byte[] arena = new byte[1 << 12];
+        // Number of bytes used in the arena.
+        private int arenaSize;
+        // Start of each entry's bytes in the arena.
+        private int[] offsets = new int[16];
+        // Length of each entry's bytes.
+        private int[] lengths = new int[16];
+        // Hash of each entry's bytes.
+        private int[] hashes = new int[16];
+        // Tracer ID of each entry's name.
+        private int[] ids = new int[16];
+        // Number of entries.
+        private int size;
+        // Open-addressing slots, storing entry numbers.
+        private int[] slots = newSlots(32);
+
+        /**
+         * Return the tracer ID of the name encoded in the given bytes,
+         * interning the name into the tracer on first sight.
+         *
+         * @param window The mapped bytes.
+         * @param start  The position of the first byte of the name.
+         * @param length The number of bytes in the name.
+         * @return The ID of the name.
+         */
+        private int intern(MappedByteBuffer window, int start, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + window.get(start + i);
+            }
+            int mask = slots.length - 1;
+            int slot = NameTable.mix(hash) & mask;
+            while (slots[slot] != EMPTY) {
+                int entry = slots[slot];
+                if (hashes[entry] == hash
+                        && matches(entry, window, start, length)) {
+                    return ids[entry];
+                }
+                slot = (slot + 1) & mask;
+            }
+            byte[] bytes = new byte[length];
+            window.get(start, bytes);
+            int id = tracer.names().intern(
+                    new String(bytes, StandardCharsets.UTF_8));
+            add(slot, bytes, hash, id);
+            return id;
+        }
+
+        /**
+         * @return true if the entry's bytes equal the given bytes.
+         */
+        private boolean matches(int entry, MappedByteBuffer window, int start,
+                                int length) {
+            if (lengths[entry] != length) {
+                return false;
+            }
+            int offset = offsets[entry];
+            for (int i = 0; i < length; i++) {
+                if (arena[offset + i] != window.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Store a new entry in the given empty slot.
+         */
+        private void add(int slot, byte[] bytes, int hash, int id) {
+            if (arenaSize + bytes.length > arena.length) {
+                arena = Arrays.copyOf(arena,
+                        Math.max(arena.length * 2, arenaSize + bytes.length));
+            }
+            if (size == ids.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+            offsets[size] = arenaSize;
+            lengths[size] = bytes.length;
+            hashes[size] = hash;
+            ids[size] = id;
+            arenaSize += bytes.length;
+            slots[slot] = size++;
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+        }
+
+        /**
+         * Double the number of slots.
+         */
+        private void rehash() {
+            slots = newSlots(slots.length * 2);
+            int mask = slots.length - 1;
+            for (int entry = 0; entry < size; entry++) {
+                int slot = NameTable.mix(hashes[entry]) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = entry;
+            }
+        }
+
+        /**
+         * @return a new slot array with every slot empty.
+         */
+        private int[] newSlots(int capacity) {
+            int[] empty = new int[capacity];
+            Arrays.fill(empty, EMPTY);
+            return empty;
+        }
+    }
+}
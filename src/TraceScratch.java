@@ -0,0 +1,269 @@
+import java.util.Arrays;
+
+/**
+ * Reusable working state of an earliest-arrival trace: the time each person
+ * became contagious and the generation that infected them, and an indexed
+ * min-heap of people ordered by time.
+ * <p>
+ * Per-person state is stamped with the number of the trace that wrote it,
+ * so starting a trace forgets the previous one without clearing anything.
+ * It is kept in pages of {@value #PAGE_SIZE} people, allocated the first
+ * time a trace reaches one of them, so a thread that only ever traces a
+ * small part of a large graph holds only the pages it touched. Once the
+ * pages and heap have grown to fit, a trace allocates nothing.
+ * <p>
+ * Each thread has its own state, from {@link #acquire()}.
+ */
+final class TraceScratch {
+
+    // Number of people whose state is held in each page.
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    // Ints of state per person: stamp, contagious time, heap position,
+    // generation.
+    private static final int FIELDS = 4;
+    // Heap position of a person who has been settled.
+    private static final int SETTLED = -1;
+
+    // State of the calling thread, free between traces.
+    private static final ThreadLocal<TraceScratch> LOCAL =
+            ThreadLocal.withInitial(TraceScratch::new);
+
+    // Per-person state in pages, FIELDS ints per person, or null for pages
+    // not reached yet.
+    private int[][] pages = new int[16][];
+    // Number of the current trace. State stamped with any other number is
+    // stale.
+    private int stamp;
+    // People in the heap, as a binary min-heap on their times.
+    private int[] heapPeople = new int[64];
+    // Contagious time of each person in the heap, parallel to heapPeople.
+    private int[] heapTimes = new int[64];
+    // Number of people in the heap.
+    private int heapSize;
+    // People settled by the current trace, in the order they were settled.
+    final IntList settled = new IntList();
+    // Set while a trace is using this state.
+    private boolean inUse;
+
+    /**
+     * Take the calling thread's state for a trace, or new state if a trace
+     * on this thread is already using it, such as when a collector starts
+     * another trace. Give it back with {@link #release()}.
+     *
+     * @return state not in use by any other trace
+     */
+    static TraceScratch acquire() {
+        TraceScratch scratch = LOCAL.get();
+        if (scratch.inUse) {
+            scratch = new TraceScratch();
+        }
+        scratch.inUse = true;
+        return scratch;
+    }
+
+    /**
+     * Give back state taken with {@link #acquire()}.
+     */
+    void release() {
+        inUse = false;
+    }
+
+    /**
+     * Forget the previous trace and start a new one with nobody reached.
+     */
+    void start() {
+        if (++stamp == 0) {
+            // Stamps have wrapped around, so old state could look current.
+            for (int[] page : pages) {
+                if (page != null) {
+                    Arrays.fill(page, 0);
+                }
+            }
+            stamp = 1;
+        }
+        heapSize = 0;
+        settled.clear();
+    }
+
+    /**
+     * @param person The ID of a person.
+     * @return The time the person became contagious in the current trace,
+     * or {@link Integer#MAX_VALUE} if they haven't been reached.
+     */
+    int time(int person) {
+        int page = person >>> PAGE_BITS;
+        if (page >= pages.length || pages[page] == null) {
+            return Integer.MAX_VALUE;
+        }
+        int base = (person & (PAGE_SIZE - 1)) * FIELDS;
+        return pages[page][base] == stamp ? pages[page][base + 1]
+                : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param person The ID of a person reached by the current trace.
+     * @return The number of transmissions between the source and them, as
+     * last recorded.
+     */
+    int generation(int person) {
+        int base = (person & (PAGE_SIZE - 1)) * FIELDS;
+        return pages[person >>> PAGE_BITS][base + 3];
+    }
+
+    /**
+     * Record the number of transmissions between the source and a person
+     * reached by the current trace.
+     *
+     * @param person     The ID of the person.
+     * @param generation The number of transmissions.
+     */
+    void setGeneration(int person, int generation) {
+        int base = (person & (PAGE_SIZE - 1)) * FIELDS;
+        pages[person >>> PAGE_BITS][base + 3] = generation;
+    }
+
+    /**
+     * Record that a person became contagious at the given time, earlier than
+     * any time recorded for them so far, and queue them to be settled, again
+     * if they already have been.
+     *
+     * @param person The ID of the person.
+     * @param time   The time they became contagious.
+     * @require time &lt; time(person)
+     */
+    void reach(int person, int time) {
+        int[] page = page(person);
+        int base = (person & (PAGE_SIZE - 1)) * FIELDS;
+        int position;
+        if (page[base] != stamp || page[base + 2] == SETTLED) {
+            page[base] = stamp;
+            if (heapSize == heapPeople.length) {
+                heapPeople = Arrays.copyOf(heapPeople, heapSize * 2);
+                heapTimes = Arrays.copyOf(heapTimes, heapSize * 2);
+            }
+            position = heapSize++;
+        } else {
+            position = page[base + 2];
+        }
+        page[base + 1] = time;
+        siftUp(position, person, time);
+    }
+
+    /**
+     * @return true if nobody is waiting to be settled.
+     */
+    boolean isEmpty() {
+        return heapSize == 0;
+    }
+
+    /**
+     * @return The earliest contagious time of anybody waiting to be settled.
+     * @require !isEmpty()
+     */
+    int peekTime() {
+        return heapTimes[0];
+    }
+
+    /**
+     * Settle the person with the earliest contagious time.
+     *
+     * @return The ID of the person settled.
+     * @require !isEmpty()
+     */
+    int pop() {
+        int person = heapPeople[0];
+        setPosition(person, SETTLED);
+        settled.add(person);
+        heapSize--;
+        if (heapSize > 0) {
+            siftDown(0, heapPeople[heapSize], heapTimes[heapSize]);
+        }
+        return person;
+    }
+
+    /**
+     * Move a person up the heap from the given position until their parent
+     * is no later than them.
+     *
+     * @param position The position to start from, whose entry is replaced.
+     * @param person   The ID of the person.
+     * @param time     The time they became contagious.
+     */
+    private void siftUp(int position, int person, int time) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heapTimes[parent] <= time) {
+                break;
+            }
+            place(position, heapPeople[parent], heapTimes[parent]);
+            position = parent;
+        }
+        place(position, person, time);
+    }
+
+    /**
+     * Move a person down the heap from the given position until neither
+     * child is earlier than them.
+     *
+     * @param position The position to start from, whose entry is replaced.
+     * @param person   The ID of the person.
+     * @param time     The time they became contagious.
+     */
+    private void siftDown(int position, int person, int time) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && heapTimes[child + 1] < heapTimes[child]) {
+                child++;
+            }
+            if (heapTimes[child] >= time) {
+                break;
+            }
+            place(position, heapPeople[child], heapTimes[child]);
+            position = child;
+        }
+        place(position, person, time);
+    }
+
+    /**
+     * Store a person at a position in the heap.
+     *
+     * @param position The position in the heap.
+     * @param person   The ID of the person.
+     * @param time     The time they became contagious.
+     */
+    private void place(int position, int person, int time) {
+        heapPeople[position] = person;
+        heapTimes[position] = time;
+        setPosition(person, position);
+    }
+
+    /**
+     * @param person   The ID of a person with state in the current trace.
+     * @param position Their position in the heap, or SETTLED.
+     */
+    private void setPosition(int person, int position) {
+        pages[person >>> PAGE_BITS][(person & (PAGE_SIZE - 1)) * FIELDS + 2] =
+                position;
+    }
+
+    /**
+     * @param person The ID of a person.
+     * @return The page holding the person's state, allocated if need be.
+     */
+    private int[] page(int person) {
+        int page = person >>> PAGE_BITS;
+        if (page >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(page + 1,
+                    pages.length * 2));
+        }
+        if (pages[page] == null) {
+            pages[page] = new int[PAGE_SIZE * FIELDS];
+        }
+        return pages[page];
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * An earliest-arrival contact trace run a step at a time, as the people it
+ * reaches are pulled from it.
+ * <p>
+ * Each person is handed over as soon as they are settled, before their
+ * contacts are followed, and their contacts are followed only when the next
+ * person is pulled. So the work done is just enough to settle the people
+ * pulled so far, and none is done once pulling stops. People come out in
+ * ascending order of infection time.
+ */
+final class TraceSpliterator implements Spliterator<Infection> {
+
+    // The layers of the graph when the trace started.
+    private final ContactGraph[] layers;
+    // The names of the people.
+    private final NameTable names;
+    // Contagious time of each person reached, and the people to settle.
+    private final TraceScratch scratch = new TraceScratch();
+    // ID of the person the trace started from, or -1 if there is none.
+    private final int source;
+    // Counters of the query's work, or null if it isn't measured.
+    private final QueryStats stats;
+    // The query's parameters, for the slow query log.
+    private final Object[] parameters;
+    // Person settled last, whose contacts are still to be followed, or -1.
+    private int unfollowed = -1;
+    // Time that person became contagious.
+    private int unfollowedTime;
+    // Work done so far.
+    private long settled;
+    private long scanned;
+    private long pushes;
+    // Set once the query has been recorded.
+    private boolean finished;
+
+    /**
+     * Starts a trace.
+     *
+     * @param layers          The layers of the graph to trace over.
+     * @param names           The names of the people.
+     * @param source          ID of the person to start from, or -1 to reach
+     *                        nobody.
+     * @param timeOfContagion The time they became contagious.
+     * @param stats           Counters of the query's work, or null.
+     * @param parameters      The query's parameters.
+     */
+    TraceSpliterator(ContactGraph[] layers, NameTable names, int source,
+                     int timeOfContagion, QueryStats stats,
+                     Object... parameters) {
+        this.layers = layers;
+        this.names = names;
+        this.source = source;
+        this.stats = stats;
+        this.parameters = parameters;
+        scratch.start();
+        if (source >= 0) {
+            scratch.reach(source, timeOfContagion);
+            scratch.setGeneration(source, 0);
+            pushes++;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Infection> action) {
+        if (unfollowed >= 0) {
+            follow(unfollowed, unfollowedTime);
+            unfollowed = -1;
+        }
+        while (!scratch.isEmpty()) {
+            int contagious = scratch.peekTime();
+            int vertex = scratch.pop();
+            settled++;
+            if (vertex == source) {
+                follow(vertex, contagious);
+                continue;
+            }
+            unfollowed = vertex;
+            unfollowedTime = contagious;
+            action.accept(new Infection(vertex, names.nameOf(vertex),
+                    contagious - ContactTracer.CONTAGION_DELAY,
+                    scratch.generation(vertex)));
+            return true;
+        }
+        finish();
+        return false;
+    }
+
+    @Override
+    public Spliterator<Infection> trySplit() {
+        // Each person depends on those settled before them.
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+
+    /**
+     * Record the query with the work done so far, if it hasn't been
+     * recorded already. Called once the trace is exhausted, or when the
+     * stream over it is closed.
+     */
+    void finish() {
+        if (!finished) {
+            finished = true;
+            if (stats != null) {
+                // Every entry in the heap is settled, none are stale.
+                stats.add(settled, scanned, pushes, settled, scanned);
+                stats.finish(QueryMetrics.Query.CONTACT_TRACE_STREAM,
+                        parameters);
+            }
+        }
+    }
+
+    /**
+     * Follow the contacts of a settled person, reaching the people they
+     * could have infected.
+     *
+     * @param vertex     The ID of the person.
+     * @param contagious The time they became contagious.
+     */
+    private void follow(int vertex, int contagious) {
+        int generation = scratch.generation(vertex) + 1;
+        for (ContactGraph layer : layers) {
+            int degree = layer.degree(vertex);
+            scanned += degree;
+            for (int i = 0; i < degree; i++) {
+                int time = layer.ceilingContact(vertex, i, contagious);
+                if (time < 0) {
+                    continue;
+                }
+                int other = layer.neighbour(vertex, i);
+                int arrival = time + ContactTracer.CONTAGION_DELAY;
+                int previous = scratch.time(other);
+                if (arrival < previous) {
+                    scratch.reach(other, arrival);
+                    scratch.setGeneration(other, generation);
+                    pushes++;
+                } else if (arrival == previous
+                        && generation < scratch.generation(other)) {
+                    // Not settled yet, as everyone settled so far became
+                    // contagious before this arrival.
+                    scratch.setGeneration(other, generation);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class BoundedTraceTest {
+
+    private static Map<String, String> describe(List<Infection> infections) {
+        Map<String, String> result = new HashMap<>();
+        for (Infection infection : infections) {
+            result.put(infection.getPerson(), infection.getInfectionTime()
+                    + "/" + infection.getGeneration());
+        }
+        return result;
+    }
+
+    @Test
+    public void testGenerations() {
+        ContactTracer tracer = Fixtures.specTracer();
+        List<Infection> infections = tracer.contactTraceWithin("Anna", 0,
+                Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(Map.of("Sanni", "100/1", "Matt", "1740/1",
+                "Kristian", "3240/2", "Kenton", "3360/3", "Max", "3360/3"),
+                describe(infections));
+        assertEquals("Sanni", infections.get(0).getPerson());
+        assertEquals(infections, infections.stream().sorted((a, b) ->
+                a.getInfectionTime() - b.getInfectionTime())
+                .collect(Collectors.toList()));
+
+        // The stream reports the same generations.
+        assertEquals(describe(infections), describe(tracer
+                .contactTraceStream("Anna", 0).collect(Collectors.toList())));
+
+        assertEquals(Map.of("Sanni", "100/1", "Matt", "1740/1",
+                "Kristian", "3240/2"), describe(tracer.contactTraceWithin(
+                "Anna", 0, Integer.MAX_VALUE, 2)));
+        assertEquals(Map.of("Sanni", "100/1", "Matt", "1740/1",
+                "Kristian", "3240/2"), describe(tracer.contactTraceWithin(
+                "Anna", 0, 3300, Integer.MAX_VALUE)));
+        assertEquals(Map.of("Sanni", "100/1"), describe(
+                tracer.contactTraceWithin("Anna", 0, 1739, 5)));
+
+        assertTrue(tracer.contactTraceWithin("Anna", 0, 10000, 0).isEmpty());
+        assertTrue(tracer.contactTraceWithin("Anna", 200, 100, 5).isEmpty());
+        assertTrue(tracer.contactTraceWithin("Anna", -1, 100, 5).isEmpty());
+        assertTrue(tracer.contactTraceWithin("Nobody", 0, 100, 5).isEmpty());
+    }
+
+    @Test
+    public void testFewestGenerationsAtEarliestTime() {
+        // Erin can be infected at 500 through Bob and Cat, or through Dan.
+        ContactTracer tracer = new ContactTracer(List.of(
+                new Trace("Ann", "Bob", 0),
+                new Trace("Bob", "Cat", 70),
+                new Trace("Cat", "Erin", 500),
+                new Trace("Ann", "Dan", 300),
+                new Trace("Dan", "Erin", 500)
+        ));
+        assertEquals("500/2", describe(tracer.contactTraceWithin("Ann", 0,
+                Integer.MAX_VALUE, Integer.MAX_VALUE)).get("Erin"));
+        assertEquals("500/2", describe(tracer.contactTraceWithin("Ann", 0,
+                Integer.MAX_VALUE, 5)).get("Erin"));
+        assertEquals("500/2", describe(tracer.contactTraceStream("Ann", 0)
+                .collect(Collectors.toList())).get("Erin"));
+    }
+
+    @Test
+    public void testGenerationLimitFindsLaterShorterChain() {
+        ContactTracer tracer = new ContactTracer(List.of(
+                new Trace("A", "B", 10),
+                new Trace("B", "C", 100),
+                new Trace("C", "D", 200),
+                new Trace("A", "D", 1000)
+        ));
+        assertEquals(Map.of("B", "10/1", "C", "100/2", "D", "200/3"),
+                describe(tracer.contactTraceWithin("A", 0, Integer.MAX_VALUE,
+                        Integer.MAX_VALUE)));
+        assertEquals(Map.of("B", "10/1", "C", "100/2", "D", "1000/1"),
+                describe(tracer.contactTraceWithin("A", 0, Integer.MAX_VALUE,
+                        2)));
+        assertEquals(Map.of("B", "10/1", "D", "1000/1"),
+                describe(tracer.contactTraceWithin("A", 0, 1000, 1)));
+        assertEquals(Map.of("B", "10/1"),
+                describe(tracer.contactTraceWithin("A", 0, 999, 1)));
+    }
+
+    @Test
+    public void testMatchesRounds() {
+        Random random = new Random(23);
+        List<Trace> traces = Fixtures.randomTraces(random, 600, 3000, 10000);
+        ContactTracer tracer = new ContactTracer(traces.subList(0, 2900));
+        for (Trace trace : traces.subList(2900, 3000)) {
+            tracer.addTrace(trace);
+        }
+        int[] lows = new int[traces.size()];
+        int[] highs = new int[traces.size()];
+        int[] times = new int[traces.size()];
+        for (int i = 0; i < traces.size(); i++) {
+            lows[i] = tracer.getPersonId(traces.get(i).getPerson1());
+            highs[i] = tracer.getPersonId(traces.get(i).getPerson2());
+            times[i] = traces.get(i).getTime();
+        }
+        int people = 600;
+        int[][] bounds = {{Integer.MAX_VALUE, Integer.MAX_VALUE},
+                {Integer.MAX_VALUE, 3}, {6000, Integer.MAX_VALUE},
+                {7000, 2}, {9000, 1}};
+        for (int i = 0; i < 600; i += 13) {
+            int person = tracer.getPersonId("P" + i);
+            if (person < 0) {
+                continue;
+            }
+            int start = random.nextInt(5000);
+            for (int[] bound : bounds) {
+                int end = bound[0];
+                int maxGenerations = bound[1];
+                // Earliest contagious time in up to k transmissions, round
+                // by round, and the round each time was found in.
+                int[] best = new int[people];
+                int[] generation = new int[people];
+                Arrays.fill(best, Integer.MAX_VALUE);
+                best[person] = start;
+                for (int k = 1; k <= Math.min(maxGenerations, people); k++) {
+                    int[] next = best.clone();
+                    for (int e = 0; e < times.length; e++) {
+                        relax(best, next, generation, k, lows[e], highs[e],
+                                times[e], end);
+                        relax(best, next, generation, k, highs[e], lows[e],
+                                times[e], end);
+                    }
+                    if (Arrays.equals(next, best)) {
+                        break;
+                    }
+                    best = next;
+                }
+                Map<Integer, Integer> expected = new HashMap<>();
+                for (int v = 0; v < people; v++) {
+                    if (v != person && best[v] != Integer.MAX_VALUE) {
+                        expected.put(v, best[v] - 60);
+                    }
+                }
+                List<Infection> infections = tracer.contactTraceWithin(
+                        person, start, end, maxGenerations);
+                Map<Integer, Integer> actual = new HashMap<>();
+                for (int j = 0; j < infections.size(); j++) {
+                    Infection infection = infections.get(j);
+                    int id = infection.getPersonId();
+                    actual.put(id, infection.getInfectionTime());
+                    if (maxGenerations == Integer.MAX_VALUE) {
+                        // Earliest-arrival only finds chains of people
+                        // infected at their earliest, which may be longer.
+                        assertTrue(infection.getGeneration()
+                                >= generation[id]);
+                    } else {
+                        assertEquals(generation[id],
+                                infection.getGeneration());
+                    }
+                    if (j > 0) {
+                        assertTrue(infections.get(j - 1).getInfectionTime()
+                                <= infection.getInfectionTime());
+                    }
+                }
+                assertEquals(expected, actual);
+                if (end == Integer.MAX_VALUE
+                        && maxGenerations == Integer.MAX_VALUE) {
+                    IntIntMap contagious =
+                            tracer.contagiousTimes(person, start);
+                    assertEquals(contagious.size() - 1, infections.size());
+                    Map<Integer, Integer> streamed = new HashMap<>();
+                    tracer.contactTraceStream(person, start).forEach(
+                            infection -> streamed.put(
+                                    infection.getPersonId(),
+                                    infection.getGeneration()));
+                    for (Infection infection : infections) {
+                        assertEquals(streamed.get(infection.getPersonId()),
+                                Integer.valueOf(infection.getGeneration()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void relax(int[] best, int[] next, int[] generation, int k,
+                              int from, int to, int time, int end) {
+        if (best[from] <= time && time <= end
+                && time + 60 < next[to]) {
+            next[to] = time + 60;
+            generation[to] = k;
+        }
+    }
+
+    @Test
+    public void testBoundsCutWork() {
+        // A chain of 10000 people, each infecting the next a day later.
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            traces.add(new Trace("P" + i, "P" + (i + 1), i * 1440));
+        }
+        ContactTracer tracer = new ContactTracer(traces);
+        QueryMetrics metrics = tracer.enableMetrics();
+        QueryMetrics.Query query = QueryMetrics.Query.CONTACT_TRACE_WITHIN;
+
+        assertEquals(10000, tracer.contactTraceWithin("P0", 0,
+                Integer.MAX_VALUE, Integer.MAX_VALUE).size());
+        assertEquals(10001, metrics.getTotals(query).getVerticesSettled());
+        assertEquals(0, metrics.getLatency(QueryMetrics.Query.CONTACT_TRACE)
+                .getCount());
+
+        metrics.reset();
+        List<Infection> infections = tracer.contactTraceWithin("P0", 0,
+                14 * 1440, Integer.MAX_VALUE);
+        assertEquals(15, infections.size());
+        assertEquals(15, infections.get(14).getGeneration());
+        assertTrue(metrics.getTotals(query).getVerticesSettled() <= 16);
+
+        metrics.reset();
+        assertEquals(3, tracer.contactTraceWithin("P0", 0,
+                Integer.MAX_VALUE, 3).size());
+        assertEquals(3, metrics.getTotals(query).getVerticesSettled());
+    }
+}
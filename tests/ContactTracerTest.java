@@ -1,7 +1,15 @@
 import static org.junit.Assert.*;
 
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -596,4 +604,536 @@ public class ContactTracerTest {
 
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testTraceModesAgree() {
+        List<Trace> traces = List.of(
+                new Trace("Anna", "Sanni", 100),
+                new Trace("Anna", "Matt", 1740),
+                new Trace("Matt", "Kristian", 3240),
+                new Trace("Kristian", "Sanni", 3270),
+                new Trace("Kristian", "Kenton", 3360),
+                new Trace("Kristian", "Max", 3360),
+                new Trace("Kenton", "Kristian", 4020),
+                new Trace("Anna", "Bob", 0),
+                new Trace("Matt", "Sanni", 1800),
+                new Trace("Kenton", "Jim", 3420)
+        );
+
+        ContactTracer tracer = new ContactTracer(traces);
+
+        for (String person : List.of("Anna", "Bob", "Matt", "Sanni",
+                "Kristian", "Kenton", "Max", "Jim")) {
+            for (int time : new int[]{0, 130, 1800, 3270, 4020}) {
+                assertEquals(tracer.contactTrace(person, time,
+                                ContactTracer.TraceMode.RECURSIVE),
+                        tracer.contactTrace(person, time,
+                                ContactTracer.TraceMode.EARLIEST_ARRIVAL));
+            }
+        }
+    }
+
+    @Test
+    public void testEarliestArrivalLongChain() {
+        ContactTracer tracer = new ContactTracer();
+        int length = 200000;
+        for (int i = 0; i < length; i++) {
+            tracer.addTrace(new Trace("P" + i, "P" + (i + 1), i * 60));
+        }
+
+        Set<String> infected = tracer.contactTrace("P0", 0);
+        assertEquals(length, infected.size());
+        assertTrue(infected.contains("P" + length));
+    }
+
+    @Test
+    public void testEarliestArrivalPrefersEarlierPath() {
+        ContactTracer tracer = new ContactTracer();
+        // A slow path reaches C at 5000 but a faster path via B reaches C at
+        // 200, which lets C infect D at 300.
+        tracer.addTrace(new Trace("A", "C", 5000));
+        tracer.addTrace(new Trace("A", "B", 0));
+        tracer.addTrace(new Trace("B", "C", 100));
+        tracer.addTrace(new Trace("C", "D", 300));
+
+        assertEquals(Set.of("B", "C", "D"), tracer.contactTrace("A", 0));
+    }
+
+    @Test
+    public void testPersonIds() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Anna", "Anna", 1800));
+
+        assertEquals(0, tracer.getPersonId("Anna"));
+        assertEquals(1, tracer.getPersonId("Sanni"));
+        assertEquals(2, tracer.getPersonId("Matt"));
+        assertEquals(-1, tracer.getPersonId("Kristian"));
+        assertEquals(-1, tracer.getPersonId(null));
+
+        assertEquals("Matt", tracer.getPersonName(2));
+        assertNull(tracer.getPersonName(3));
+        assertNull(tracer.getPersonName(-1));
+    }
+
+    @Test
+    public void testIdQueries() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Matt", "Kristian", 3240));
+        tracer.addTrace(new Trace("Kristian", "Sanni", 3270));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 3360));
+        tracer.addTrace(new Trace("Kristian", "Max", 3360));
+        tracer.addTrace(new Trace("Kenton", "Kristian", 4020));
+
+        int anna = tracer.getPersonId("Anna");
+        int sanni = tracer.getPersonId("Sanni");
+        int matt = tracer.getPersonId("Matt");
+        int kristian = tracer.getPersonId("Kristian");
+        int kenton = tracer.getPersonId("Kenton");
+        int max = tracer.getPersonId("Max");
+
+        assertEquals(Set.of(sanni, matt), toSet(tracer.getContacts(anna)));
+        assertEquals(List.of(3360, 4020),
+                tracer.getContactTimes(kenton, kristian));
+        assertEquals(Set.of(matt), toSet(tracer.getContactsAfter(anna, 101)));
+        assertEquals(Set.of(matt, kristian, kenton, max),
+                toSet(tracer.contactTrace(anna, 130)));
+
+        assertEquals(0, tracer.getContacts(99).length);
+        assertEquals(List.of(), tracer.getContactTimes(anna, -1));
+        assertEquals(0, tracer.getContactsAfter(-1, 0).length);
+        assertEquals(0, tracer.contactTrace(anna, -1).length);
+    }
+
+    @Test
+    public void testHighDegreeContacts() {
+        ContactTracer tracer = new ContactTracer();
+        for (int i = 0; i < 1000; i++) {
+            tracer.addTrace(new Trace("Hub", "P" + i, i));
+            tracer.addTrace(new Trace("P" + i, "Hub", i + 5000));
+        }
+
+        assertEquals(1000, tracer.getContacts("Hub").size());
+        assertEquals(List.of(500, 5500), tracer.getContactTimes("Hub", "P500"));
+        assertEquals(List.of(999, 5999), tracer.getContactTimes("P999", "Hub"));
+        assertEquals(Set.of("Hub"), tracer.getContacts("P42"));
+    }
+
+    @Test
+    public void testContactTimesOutOfOrder() {
+        ContactTracer tracer = new ContactTracer();
+        int[] times = {500, 100, 900, 100, 300, 700, 900, 0, 500, 800};
+        for (int time : times) {
+            tracer.addTrace(new Trace("Anna", "Sanni", time));
+        }
+
+        assertEquals(List.of(0, 100, 300, 500, 700, 800, 900),
+                tracer.getContactTimes("Sanni", "Anna"));
+    }
+
+    @Test
+    public void testContactTimesRange() {
+        ContactTracer tracer = new ContactTracer();
+        for (int time = 0; time <= 1000; time += 100) {
+            tracer.addTrace(new Trace("Anna", "Sanni", time));
+        }
+
+        assertEquals(List.of(300, 400, 500),
+                tracer.getContactTimes("Anna", "Sanni", 250, 500));
+        assertEquals(List.of(0, 100),
+                tracer.getContactTimes("Anna", "Sanni", 0, 199));
+        assertEquals(List.of(1000),
+                tracer.getContactTimes("Anna", "Sanni", 1000, 5000));
+        assertEquals(List.of(),
+                tracer.getContactTimes("Anna", "Sanni", 501, 599));
+        assertEquals(List.of(),
+                tracer.getContactTimes("Anna", "Sanni", 500, 300));
+        assertEquals(List.of(),
+                tracer.getContactTimes("Anna", "Matt", 0, 1000));
+    }
+
+    @Test
+    public void testContactTimesView() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Kenton", "Kristian", 4020));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 3360));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 1));
+
+        IntBuffer view = tracer.getContactTimesView("Kenton", "Kristian");
+        assertTrue(view.isReadOnly());
+        assertEquals(3, view.remaining());
+        assertEquals(1, view.get(0));
+        assertEquals(3360, view.get(1));
+        assertEquals(4020, view.get(2));
+
+        IntBuffer range = tracer.getContactTimesView("Kristian", "Kenton",
+                2, 4020);
+        assertEquals(2, range.remaining());
+        assertEquals(3360, range.get(0));
+        assertEquals(4020, range.get(1));
+
+        assertEquals(0, tracer.getContactTimesView("Kenton", "Max")
+                .remaining());
+        assertEquals(0, tracer.getContactTimesView(null, "Max").remaining());
+    }
+
+    @Test
+    public void testContactsAfterRecentWindow() {
+        ContactTracer tracer = new ContactTracer();
+        // Recorded out of order, with repeated contacts per pair.
+        for (int i = 999; i >= 0; i--) {
+            tracer.addTrace(new Trace("Hub", "P" + (i % 100), i * 10));
+        }
+
+        assertEquals(Set.of("P99"), tracer.getContactsAfter("Hub", 9990));
+        assertEquals(Set.of("P97", "P98", "P99"),
+                tracer.getContactsAfter("Hub", 9965));
+        assertEquals(Set.of(), tracer.getContactsAfter("Hub", 9991));
+        assertEquals(100, tracer.getContactsAfter("Hub", 0).size());
+        assertEquals(100, tracer.getContactsAfter("Hub", 9000).size());
+        assertEquals(Set.of("Hub"), tracer.getContactsAfter("P5", 9050));
+        assertEquals(Set.of(), tracer.getContactsAfter("P5", 9051));
+    }
+
+    @Test
+    public void testBulkMatchesIncremental() {
+        List<Trace> traces = Fixtures.randomTraces(new Random(42), 200,
+                3000, 5000);
+        ContactTracer bulk = new ContactTracer(traces);
+        ContactTracer incremental = new ContactTracer();
+        for (Trace trace : traces) {
+            incremental.addTrace(trace);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            String person = "P" + i;
+            assertEquals(incremental.getContacts(person),
+                    bulk.getContacts(person));
+            assertEquals(incremental.getContactTimes(person, "P" + (i + 1)),
+                    bulk.getContactTimes(person, "P" + (i + 1)));
+            assertEquals(incremental.getContactsAfter(person, 2500),
+                    bulk.getContactsAfter(person, 2500));
+            assertEquals(incremental.contactTrace(person, i * 20),
+                    bulk.contactTrace(person, i * 20));
+        }
+    }
+
+    @Test
+    public void testBulkThenAddedTraces() {
+        ContactTracer tracer = new ContactTracer(List.of(
+                new Trace("Anna", "Sanni", 100),
+                new Trace("Anna", "Sanni", 300),
+                new Trace("Sanni", "Matt", 500)
+        ));
+        tracer.addTrace(new Trace("Sanni", "Anna", 200));
+        tracer.addTrace(new Trace("Sanni", "Anna", 300));
+        tracer.addTrace(new Trace("Matt", "Kristian", 600));
+
+        assertEquals(List.of(100, 200, 300),
+                tracer.getContactTimes("Anna", "Sanni"));
+        assertEquals(List.of(200, 300),
+                tracer.getContactTimes("Anna", "Sanni", 150, 1000));
+        assertEquals(Set.of("Anna", "Matt"), tracer.getContacts("Sanni"));
+        assertEquals(Set.of("Anna", "Matt"),
+                tracer.getContactsAfter("Sanni", 150));
+        assertEquals(Set.of("Matt"), tracer.getContactsAfter("Sanni", 301));
+        assertEquals(Set.of("Sanni", "Kristian"), tracer.getContacts("Matt"));
+        assertEquals(Set.of("Sanni", "Matt", "Kristian"),
+                tracer.contactTrace("Anna", 0));
+    }
+
+    @Test
+    public void testReaddedSealedContacts() {
+        ContactTracer tracer = new ContactTracer(List.of(
+                new Trace("Anna", "Sanni", 100)
+        ));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.flush();
+        List<Integer> added = new ArrayList<>();
+        tracer.addListener((person1, person2, time) -> added.add(time));
+
+        // Already in the bulk snapshot and the flushed segment.
+        tracer.addTrace(new Trace("Sanni", "Anna", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Anna", "Sanni", 200));
+        tracer.addTrace(new Trace("Anna", "Sanni", 200));
+
+        assertEquals(List.of(200), added);
+        assertEquals(List.of(100, 200),
+                tracer.getContactTimes("Anna", "Sanni"));
+        assertEquals(List.of(1740), tracer.getContactTimes("Matt", "Anna"));
+    }
+
+    @Test
+    public void testConcurrentMatchesSequential() throws Exception {
+        List<Trace> traces = Fixtures.randomTraces(new Random(11), 300,
+                20000, 5000);
+        ContactTracer sequential = new ContactTracer();
+        for (Trace trace : traces) {
+            sequential.addTrace(trace);
+        }
+
+        ContactTracer concurrent = ContactTracer.concurrent();
+        int writers = 4;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int offset = w;
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < traces.size(); i += writers) {
+                    concurrent.addTrace(traces.get(i));
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            Random random = new Random(r);
+            threads.add(new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        String person = "P" + random.nextInt(300);
+                        List<Integer> times = concurrent.getContactTimes(
+                                person, "P" + random.nextInt(300));
+                        for (int i = 1; i < times.size(); i++) {
+                            assertTrue(times.get(i - 1) < times.get(i));
+                        }
+                        int after = random.nextInt(5000);
+                        for (String contact
+                                : concurrent.getContactsAfter(person, after)) {
+                            assertFalse(concurrent.getContactTimes(person,
+                                    contact, after, 5000).isEmpty());
+                        }
+                        concurrent.contactTrace(person, 4900);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int w = 0; w < writers; w++) {
+            threads.get(w).join();
+        }
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        for (int i = 0; i < 300; i++) {
+            String person = "P" + i;
+            assertEquals(sequential.getContacts(person),
+                    concurrent.getContacts(person));
+            assertEquals(sequential.getContactTimes(person, "P" + (i + 1)),
+                    concurrent.getContactTimes(person, "P" + (i + 1)));
+            assertEquals(sequential.getContactsAfter(person, 2500),
+                    concurrent.getContactsAfter(person, 2500));
+            assertEquals(sequential.contactTrace(person, i * 15),
+                    concurrent.contactTrace(person, i * 15));
+        }
+    }
+
+    @Test
+    public void testConcurrentMiddleInserts() throws Exception {
+        // Every time added lands before the last one, so each add copies
+        // the contact times and the timeline. Readers must still see the
+        // contacts that were there before the writer started.
+        ContactTracer tracer = ContactTracer.concurrent();
+        tracer.addTrace(new Trace("Anna", "Sanni", 1000000));
+        tracer.addTrace(new Trace("Anna", "Sanni", 0));
+        int anna = tracer.getPersonId("Anna");
+        int sanni = tracer.getPersonId("Sanni");
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        IntBuffer times = tracer.getContactTimesView(anna,
+                                sanni);
+                        assertEquals(0, times.get(0));
+                        assertEquals(1000000, times.get(times.limit() - 1));
+                        assertArrayEquals(new int[]{sanni},
+                                tracer.getContactsAfter(anna, 999999));
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (int time = 20000; time > 0; time--) {
+            tracer.addTrace(new Trace("Anna", "Sanni", time));
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(20002, tracer.getContactTimes("Anna", "Sanni").size());
+    }
+
+    @Test
+    public void testConcurrentSpecExample() {
+        ContactTracer tracer = ContactTracer.concurrent();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Matt", "Kristian", 3240));
+        tracer.addTrace(new Trace("Kristian", "Sanni", 3270));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 4020));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 3360));
+        tracer.addTrace(new Trace("Kristian", "Max", 3360));
+
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                tracer.contactTrace("Anna", 130));
+        assertEquals(List.of(3360, 4020),
+                tracer.getContactTimes("Kristian", "Kenton"));
+        assertEquals(Set.of("Kenton", "Max"),
+                tracer.getContactsAfter("Kristian", 3300));
+        assertEquals(Set.of(), tracer.getContacts("Nobody"));
+        assertEquals(0, tracer.getPersonId("Anna"));
+        assertEquals("Max", tracer.getPersonName(5));
+    }
+
+    @Test
+    public void testMultiSourceMatchesCombinedTraces() {
+        List<Trace> traces = Fixtures.randomTraces(new Random(5), 400,
+                1200, 5000);
+        ContactTracer tracer = new ContactTracer(traces);
+        Random random = new Random(6);
+        for (int round = 0; round < 20; round++) {
+            Map<String, Integer> indexCases = new HashMap<>();
+            for (int i = 0; i < 1 + round; i++) {
+                indexCases.put("P" + random.nextInt(400),
+                        random.nextInt(5000));
+            }
+            Set<String> expected = new HashSet<>();
+            for (Map.Entry<String, Integer> indexCase : indexCases.entrySet()) {
+                expected.addAll(tracer.contactTrace(indexCase.getKey(),
+                        indexCase.getValue()));
+            }
+            expected.removeAll(indexCases.keySet());
+            assertEquals(expected, tracer.contactTrace(indexCases));
+
+            Map<String, String> sources =
+                    tracer.contactTraceSources(indexCases);
+            assertEquals(expected, sources.keySet());
+            for (Map.Entry<String, String> entry : sources.entrySet()) {
+                assertTrue(tracer.contactTrace(entry.getValue(),
+                        indexCases.get(entry.getValue()))
+                        .contains(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testMultiSourceFirstIndexCase() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Matt", 90));
+        tracer.addTrace(new Trace("Sanni", "Matt", 500));
+        tracer.addTrace(new Trace("Matt", "Kristian", 300));
+        tracer.addTrace(new Trace("Anna", "Sanni", 20));
+        tracer.addTrace(new Trace("Sanni", "Max", 500));
+        tracer.addTrace(new Trace("Kenton", "Max", 400));
+
+        Map<String, Integer> indexCases = new HashMap<>();
+        indexCases.put("Anna", 100);
+        indexCases.put("Sanni", 0);
+        indexCases.put("Kenton", 0);
+        indexCases.put("Nobody", 0);
+        assertEquals(Set.of("Matt", "Kristian", "Max"),
+                tracer.contactTrace(indexCases));
+        // Sanni infects Anna at 20 + 60, early enough to catch Anna's
+        // contact with Matt at 90; Kenton reaches Max before Sanni does.
+        Map<String, String> expected = new HashMap<>();
+        expected.put("Matt", "Sanni");
+        expected.put("Kristian", "Sanni");
+        expected.put("Max", "Kenton");
+        assertEquals(expected, tracer.contactTraceSources(indexCases));
+
+        int[] ids = tracer.contactTrace(
+                new int[]{tracer.getPersonId("Anna"),
+                        tracer.getPersonId("Kenton"), -1},
+                new int[]{100, 0, 0});
+        // Without Sanni as an index case, Anna misses Matt and Max passes
+        // the disease on to Sanni.
+        assertEquals(Set.of(tracer.getPersonId("Max"),
+                tracer.getPersonId("Sanni")), toSet(ids));
+        assertEquals(Set.of(), tracer.contactTrace(new HashMap<>()));
+    }
+
+    @Test
+    public void testCompactKeepsResultsInsideWindow() {
+        List<Trace> traces = Fixtures.randomTraces(new Random(13), 300,
+                4000, 10000);
+        ContactTracer tracer = new ContactTracer(traces.subList(0, 2000));
+        for (Trace trace : traces.subList(2000, 4000)) {
+            tracer.addTrace(trace);
+        }
+        List<Trace> recent = new ArrayList<>();
+        for (Trace trace : traces) {
+            if (trace.getTime() >= 6000) {
+                recent.add(trace);
+            }
+        }
+        ContactTracer expected = new ContactTracer(recent);
+
+        tracer.compact(6000);
+        tracer.addTrace(new Trace("P1", "Late", 9999));
+        expected.addTrace(new Trace("P1", "Late", 9999));
+        for (int i = 0; i < 300; i++) {
+            String person = "P" + i;
+            assertEquals(expected.getContacts(person),
+                    tracer.getContacts(person));
+            assertEquals(expected.getContactTimes(person, "P" + (i + 1)),
+                    tracer.getContactTimes(person, "P" + (i + 1)));
+            assertEquals(expected.getContactsAfter(person, 7000),
+                    tracer.getContactsAfter(person, 7000));
+            assertEquals(expected.contactTrace(person, 6000 + i * 10),
+                    tracer.contactTrace(person, 6000 + i * 10));
+        }
+        // IDs survive compaction even for people left with no contacts.
+        assertEquals(0, tracer.getPersonId(traces.get(0).getPerson1()));
+    }
+
+    @Test
+    public void testRetentionDropsOldContactsInBackground()
+            throws InterruptedException {
+        ContactTracer tracer = new ContactTracer();
+        tracer.setRetention(1000);
+        Random random = new Random(17);
+        int total = Compactor.MIN_BATCH * 3;
+        for (int i = 0; i < total; i++) {
+            tracer.addTrace(new Trace("P" + random.nextInt(1000),
+                    "P" + random.nextInt(1000), i / 4));
+        }
+        tracer.compactor().await();
+        int latest = (total - 1) / 4;
+        int cutoff = tracer.compactor().cutoff();
+        assertTrue(cutoff > 0 && cutoff <= latest - 1000);
+        for (int i = 0; i < 1000; i++) {
+            for (int time : tracer.getContactTimes("P" + i, "P" + (i + 1))) {
+                assertTrue(time >= cutoff);
+            }
+        }
+        // Traces already outside the window are ignored.
+        tracer.addTrace(new Trace("Old", "Older", 0));
+        assertEquals(-1, tracer.getPersonId("Old"));
+    }
+
+    private static Set<Integer> toSet(int[] ids) {
+        Set<Integer> result = new HashSet<>();
+        for (int id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Contact traces and checks shared by the tests.
+ */
+final class Fixtures {
+
+    // The example traces from the specification.
+    static final List<Trace> SPEC_TRACES = List.of(
+            new Trace("Anna", "Sanni", 100),
+            new Trace("Anna", "Matt", 1740),
+            new Trace("Matt", "Kristian", 3240),
+            new Trace("Kristian", "Sanni", 3270),
+            new Trace("Kristian", "Kenton", 3360),
+            new Trace("Kristian", "Max", 3360),
+            new Trace("Kenton", "Kristian", 4020)
+    );
+
+    // A short chain from Anna to Max through Sanni and Kristian, with Matt
+    // off to one side.
+    static final List<Trace> CHAIN_TRACES = List.of(
+            new Trace("Anna", "Sanni", 100),
+            new Trace("Sanni", "Matt", 150),
+            new Trace("Sanni", "Kristian", 200),
+            new Trace("Kristian", "Max", 300)
+    );
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return a tracer bulk-loaded with the example traces from the
+     * specification
+     */
+    static ContactTracer specTracer() {
+        return new ContactTracer(SPEC_TRACES);
+    }
+
+    /**
+     * Generate contacts between random people, named P0, P1 and so on.
+     *
+     * @param random  the source of the contacts
+     * @param people  the number of people
+     * @param count   the number of contacts
+     * @param maxTime one more than the latest contact time
+     * @return the contacts, some of them repeated or with oneself
+     */
+    static List<Trace> randomTraces(Random random, int people, int count,
+                                    int maxTime) {
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            traces.add(new Trace("P" + random.nextInt(people),
+                    "P" + random.nextInt(people), random.nextInt(maxTime)));
+        }
+        return traces;
+    }
+
+    /**
+     * Build a tracer of random contacts, most of them bulk-loaded into the
+     * snapshot and the rest added one at a time to the buffer.
+     *
+     * @param random  the source of the contacts
+     * @param people  the number of people
+     * @param bulk    the number of contacts bulk-loaded
+     * @param added   the number of contacts added afterwards
+     * @param maxTime one more than the latest contact time
+     * @return the tracer
+     */
+    static ContactTracer randomTracer(Random random, int people, int bulk,
+                                      int added, int maxTime) {
+        ContactTracer tracer = new ContactTracer(randomTraces(random, people,
+                bulk, maxTime));
+        for (Trace trace : randomTraces(random, people, added, maxTime)) {
+            tracer.addTrace(trace);
+        }
+        return tracer;
+    }
+
+    /**
+     * Check that two tracers holding the same contacts between people named
+     * P0, P1 and so on answer queries about a sample of them alike.
+     *
+     * @param expected the tracer to compare against
+     * @param actual   the tracer checked
+     * @param people   the number of people
+     * @param from     the time to query from
+     */
+    static void assertMatches(ContactTracer expected, ContactTracer actual,
+                              int people, int from) {
+        for (int i = 0; i < people; i += 13) {
+            String person = "P" + i;
+            String other = "P" + (i + 1);
+            assertEquals(expected.getPersonId(person),
+                    actual.getPersonId(person));
+            assertEquals(expected.getContacts(person),
+                    actual.getContacts(person));
+            assertEquals(expected.getContactTimes(person, other),
+                    actual.getContactTimes(person, other));
+            assertEquals(expected.getContactsAfter(person, from),
+                    actual.getContactsAfter(person, from));
+            int start = from + i * 5;
+            assertEquals(expected.contactTrace(person, start),
+                    actual.contactTrace(person, start));
+            InfectionPath path = expected.infectionPath(person, start, other);
+            InfectionPath actualPath = actual.infectionPath(person, start,
+                    other);
+            assertEquals(path == null, actualPath == null);
+            if (path != null) {
+                assertEquals(path.getInfectionTime(),
+                        actualPath.getInfectionTime());
+            }
+        }
+    }
+}
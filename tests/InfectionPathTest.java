@@ -0,0 +1,103 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InfectionPathTest {
+
+    @Test
+    public void testSpecExample() {
+        List<Trace> traces = new ArrayList<>(Fixtures.CHAIN_TRACES);
+        traces.add(new Trace("Anna", "Max", 400));
+        ContactTracer tracer = new ContactTracer(traces);
+        InfectionPath path = tracer.infectionPath("Anna", 0, "Max");
+        assertEquals(300, path.getInfectionTime());
+        List<Trace> chain = path.getChain();
+        assertEquals(3, chain.size());
+        assertEquals("Anna", chain.get(0).getPerson1());
+        assertEquals("Sanni", chain.get(0).getPerson2());
+        assertEquals(100, chain.get(0).getTime());
+        assertEquals("Kristian", chain.get(2).getPerson1());
+        assertEquals("Max", chain.get(2).getPerson2());
+        assertEquals(300, chain.get(2).getTime());
+
+        // Too late for the chain through Sanni, but Anna meets Max directly.
+        assertEquals(400, tracer.infectionPath("Anna", 150, "Max")
+                .getInfectionTime());
+        assertEquals(1, tracer.infectionPath("Anna", 150, "Max")
+                .getChain().size());
+
+        // Sanni is only contagious from 160, too late to meet Matt at 150.
+        assertNull(tracer.infectionPath("Anna", 0, "Matt"));
+        assertNull(tracer.infectionPath("Anna", 0, "Anna"));
+        assertNull(tracer.infectionPath("Anna", 0, "Nobody"));
+    }
+
+    @Test
+    public void testMatchesContactTrace() {
+        Random random = new Random(3);
+        List<Trace> traces = new ArrayList<>();
+        while (traces.size() < 4000) {
+            int person1 = random.nextInt(300);
+            int person2 = random.nextInt(300);
+            if (person1 != person2) {
+                traces.add(new Trace("P" + person1, "P" + person2,
+                        random.nextInt(20000)));
+            }
+        }
+        ContactTracer tracer = new ContactTracer(traces.subList(0, 3000));
+        for (Trace trace : traces.subList(3000, traces.size())) {
+            tracer.addTrace(trace);
+        }
+
+        for (int q = 0; q < 200; q++) {
+            int person = tracer.getPersonId("P" + random.nextInt(300));
+            int other = tracer.getPersonId("P" + random.nextInt(300));
+            int time = random.nextInt(20000);
+            IntIntMap contagious = tracer.contagiousTimes(person, time);
+            InfectionPath path = tracer.infectionPath(person, time, other);
+            if (person == other || !contagious.containsKey(other)) {
+                assertNull(path);
+                continue;
+            }
+            assertEquals(contagious.get(other, -1)
+                            - ContactTracer.CONTAGION_DELAY,
+                    path.getInfectionTime());
+            // Each contact happens once its first person is contagious, and
+            // hands on to the next.
+            String at = tracer.getPersonName(person);
+            int from = time;
+            for (Trace trace : path.getChain()) {
+                assertEquals(at, trace.getPerson1());
+                assertTrue(trace.getTime() >= from);
+                assertTrue(tracer.getContactTimes(trace.getPerson1(),
+                        trace.getPerson2()).contains(trace.getTime()));
+                at = trace.getPerson2();
+                from = trace.getTime() + ContactTracer.CONTAGION_DELAY;
+            }
+            assertEquals(tracer.getPersonName(other), at);
+        }
+    }
+
+    @Test
+    public void testVisitsFewerEdgesThanFullTrace() {
+        // A long line of people, each meeting the next 100 minutes later,
+        // and a crowd that meets someone further down the line.
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            traces.add(new Trace("L" + i, "L" + (i + 1), 100 * i));
+        }
+        for (int i = 0; i < 500; i++) {
+            traces.add(new Trace("L10", "C" + i, 10000 + i));
+            traces.add(new Trace("C" + i, "C" + (i + 1), 20000 + i));
+        }
+        ContactTracer tracer = new ContactTracer(traces);
+        InfectionPath path = tracer.infectionPath("L0", 0, "L3");
+        assertEquals(200, path.getInfectionTime());
+        assertTrue(path.edgesVisited() < 20);
+        assertTrue(tracer.contactTrace("L0", 0).size() > 500);
+    }
+}
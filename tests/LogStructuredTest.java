@@ -0,0 +1,167 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LogStructuredTest {
+
+    @Test
+    public void testSpecExample() {
+        ContactTracer tracer = ContactTracer.logStructured(3);
+        // Added latest first, so every trace arrives out of order.
+        List<Trace> traces = new ArrayList<>(Fixtures.SPEC_TRACES);
+        traces.add(new Trace("Kenton", "Kristian", 4020));
+        Collections.reverse(traces);
+        for (Trace trace : traces) {
+            tracer.addTrace(trace);
+        }
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                tracer.contactTrace("Anna", 130));
+        assertEquals(List.of(3360, 4020),
+                tracer.getContactTimes("Kristian", "Kenton"));
+        assertEquals(Set.of("Sanni", "Matt"), tracer.getContacts("Anna"));
+        assertEquals(Set.of("Kenton"),
+                tracer.getContactsAfter("Kristian", 3400));
+        assertTrue(tracer.canInfect("Anna", "Max", 0));
+        assertEquals(3360, tracer.infectionPath("Anna", 0, "Max")
+                .getInfectionTime());
+    }
+
+    @Test
+    public void testMatchesDefaultTracer() throws InterruptedException {
+        Random random = new Random(25);
+        ContactTracer expected = new ContactTracer();
+        // A small buffer seals many segments, merged in the background
+        // while traces are still being added.
+        ContactTracer actual = ContactTracer.logStructured(500);
+        for (int day = 0; day < 20; day++) {
+            for (int i = 0; i < 1000; i++) {
+                // Up to two days late.
+                int time = Math.max(0, day * 1440 - random.nextInt(2880));
+                Trace trace = new Trace("P" + random.nextInt(2000),
+                        "P" + random.nextInt(2000), time);
+                expected.addTrace(trace);
+                actual.addTrace(trace);
+                if (i % 100 == 0) {
+                    // Repeats are ignored.
+                    expected.addTrace(trace);
+                    actual.addTrace(trace);
+                }
+            }
+            // Queries in between see the buffer and segments together.
+            Fixtures.assertMatches(expected, actual, 2000, day * 1440);
+        }
+        actual.merger().await();
+        // Every merge the last seal called for is done.
+        assertFalse(actual.mergeSegments());
+        Fixtures.assertMatches(expected, actual, 2000, 0);
+
+        expected.compact(10000);
+        actual.compact(10000);
+        Fixtures.assertMatches(expected, actual, 2000, 10000);
+    }
+
+    @Test
+    public void testAppendBuffer() {
+        AppendBuffer buffer = new AppendBuffer();
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.degree(5));
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(buffer.addContact(i % 7, 7 + i % 11, 1000 - i));
+        }
+        assertFalse(buffer.addContact(3, 7 + 990 % 11, 10));
+        assertFalse(buffer.addContact(7 + 990 % 11, 3, 10));
+        assertFalse(buffer.isEmpty());
+        assertEquals(18, buffer.vertexCount());
+        assertEquals(11, buffer.degree(0));
+        int edge = buffer.findEdge(3, 7 + 990 % 11);
+        assertEquals(10, buffer.ceilingContact(3, edge, 0));
+        assertEquals(1000 - 990 + 77, buffer.ceilingContact(3, edge, 11));
+
+        // Reads share one sorted graph until more contacts are added, and a
+        // lone buffer is sealed into that same graph.
+        CsrGraph view = buffer.view();
+        assertSame(view, AppendBuffer.compact(
+                new ContactGraph[]{buffer}, 0));
+        assertTrue(buffer.addContact(0, 1, 5000));
+        assertNotSame(view, buffer.view());
+        assertEquals(1001, buffer.view().contactCount());
+        assertEquals(5000, buffer.lastContact(1, buffer.findEdge(1, 0)));
+    }
+
+    @Test
+    public void testMergedReads() {
+        Random random = new Random(25);
+        AppendBuffer buffer = new AppendBuffer();
+        int[] lows = new int[3000];
+        int[] highs = new int[3000];
+        int[] times = new int[3000];
+        int count = 0;
+        for (int i = 0; i < 3000; i++) {
+            int person1 = random.nextInt(300);
+            int person2 = random.nextInt(300);
+            int time = random.nextInt(500);
+            if (person1 != person2
+                    && buffer.addContact(person1, person2, time)) {
+                lows[count] = Math.min(person1, person2);
+                highs[count] = Math.max(person1, person2);
+                times[count++] = time;
+            }
+            // Read after batches of varying size, so each merges a tail.
+            if (random.nextInt(200) == 0) {
+                buffer.view();
+            }
+        }
+        CsrGraph merged = buffer.view();
+        CsrGraph built = CsrGraph.build(300, lows, highs, times, count);
+        assertEquals(built.contactCount(), merged.contactCount());
+        for (int v = 0; v < 300; v++) {
+            assertEquals(built.degree(v), merged.degree(v));
+            for (int i = 0; i < built.degree(v); i++) {
+                assertEquals(built.neighbour(v, i), merged.neighbour(v, i));
+                assertEquals(built.contactTimes(v, i, 0, 500),
+                        merged.contactTimes(v, i, 0, 500));
+            }
+            assertEquals(built.timelineSize(v), merged.timelineSize(v));
+            for (int i = 0; i < built.timelineSize(v); i++) {
+                assertEquals(built.timelineTime(v, i),
+                        merged.timelineTime(v, i));
+                assertEquals(built.timelineNeighbour(v, i),
+                        merged.timelineNeighbour(v, i));
+            }
+        }
+    }
+
+    @Test
+    public void testPinnedReads() throws InterruptedException {
+        AppendBuffer buffer = new AppendBuffer();
+        ContactGraph pinned = buffer.pin();
+        assertTrue(buffer.addContact(0, 1, 10));
+        assertEquals(0, pinned.degree(0));
+        assertEquals(1, buffer.pin().degree(0));
+
+        // A reader pinning the buffer while it is written to sees a graph
+        // that holds together, whichever contacts it holds.
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100000; i++) {
+                buffer.addContact(i % 1000, 1000 + i % 997, i);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            CsrGraph view = (CsrGraph) buffer.pin();
+            long timelines = 0;
+            for (int v = 0; v < view.vertexCount(); v++) {
+                timelines += view.timelineSize(v);
+            }
+            assertEquals(view.contactCount() * 2, timelines);
+        }
+        writer.join();
+        assertEquals(100001, buffer.view().contactCount());
+    }
+}
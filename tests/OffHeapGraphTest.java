@@ -0,0 +1,113 @@
+import static org.junit.Assert.*;
+
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class OffHeapGraphTest {
+
+    @Test
+    public void testSpecExample() {
+        ContactTracer tracer = ContactTracer.offHeap(3);
+        for (Trace trace : Fixtures.SPEC_TRACES) {
+            tracer.addTrace(trace);
+        }
+        // Repeats a contact already sealed.
+        tracer.addTrace(new Trace("Kenton", "Kristian", 4020));
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                tracer.contactTrace("Anna", 130));
+        assertEquals(List.of(3360, 4020),
+                tracer.getContactTimes("Kristian", "Kenton"));
+        assertEquals(Set.of("Sanni", "Matt"), tracer.getContacts("Anna"));
+        assertEquals(Set.of("Kenton"),
+                tracer.getContactsAfter("Kristian", 3400));
+        assertEquals(4, tracer.getPersonId("Kenton"));
+        assertEquals("Kenton", tracer.getPersonName(4));
+        assertEquals(-1, tracer.getPersonId("Nobody"));
+        assertTrue(tracer.canInfect("Anna", "Max", 0));
+        assertEquals(3360, tracer.infectionPath("Anna", 0, "Max")
+                .getInfectionTime());
+    }
+
+    @Test
+    public void testMatchesOnHeapTracer() {
+        Random random = new Random(11);
+        ContactTracer onHeap = new ContactTracer();
+        // A small buffer seals many segments, which are merged as they
+        // accumulate.
+        ContactTracer offHeap = ContactTracer.offHeap(500);
+        for (int i = 0; i < 20000; i++) {
+            Trace trace = new Trace("P" + random.nextInt(2000),
+                    "P" + random.nextInt(2000), random.nextInt(20000));
+            onHeap.addTrace(trace);
+            offHeap.addTrace(trace);
+        }
+        Fixtures.assertMatches(onHeap, offHeap, 2000, 10000);
+
+        offHeap.compact(5000);
+        onHeap.compact(5000);
+        Fixtures.assertMatches(onHeap, offHeap, 2000, 10000);
+        offHeap.buildReachabilityIndex();
+        assertTrue(offHeap.snapshot() instanceof OffHeapGraph);
+        for (int i = 0; i < 2000; i += 37) {
+            assertEquals(onHeap.canInfect("P" + i, "P" + (i + 1), 6000),
+                    offHeap.canInfect("P" + i, "P" + (i + 1), 6000));
+        }
+    }
+
+    @Test
+    public void testManyNames() {
+        OffHeapNames names = new OffHeapNames();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, names.intern("Person " + i + " \u00e9"));
+        }
+        assertEquals(5000, names.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, names.intern("Person " + i + " \u00e9"));
+            assertEquals(i, names.idOf("Person " + i + " \u00e9"));
+            assertEquals("Person " + i + " \u00e9", names.nameOf(i));
+        }
+        assertEquals(-1, names.idOf("Person 5000 \u00e9"));
+        assertEquals(-1, names.idOf(null));
+        assertNull(names.nameOf(5000));
+    }
+
+    @Test
+    public void testBufferAcrossChunks() {
+        // Chunks of 64 bytes, so runs of ints and bytes cross chunk ends.
+        OffHeapBuffer buffer = new OffHeapBuffer(6);
+        buffer.ensureCapacity(4);
+        buffer.putInt(0, 7);
+        buffer.ensureCapacity(4 * 100);
+        assertEquals(7, buffer.getInt(0));
+        for (int i = 0; i < 100; i++) {
+            buffer.putInt(4L * i, i * 3);
+        }
+        IntBuffer straddling = buffer.intSlice(4 * 10, 20);
+        IntBuffer within = buffer.intSlice(4 * 16, 16);
+        for (int i = 0; i < 20; i++) {
+            assertEquals((10 + i) * 3, straddling.get(i));
+        }
+        for (int i = 0; i < 16; i++) {
+            assertEquals((16 + i) * 3, within.get(i));
+        }
+        assertTrue(within.isReadOnly());
+        assertEquals(0, buffer.intSlice(4 * 100, 0).remaining());
+
+        byte[] bytes = new byte[150];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        buffer.putBytes(30, bytes);
+        byte[] read = new byte[150];
+        buffer.getBytes(30, read, read.length);
+        assertArrayEquals(bytes, read);
+
+        buffer.trim(100);
+        assertEquals(100, buffer.capacity());
+        assertEquals(3, buffer.getInt(4));
+    }
+}
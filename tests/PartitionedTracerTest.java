@@ -0,0 +1,136 @@
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PartitionedTracerTest {
+
+    @Test
+    public void testSpecExample() {
+        ContactTracer tracer = Fixtures.specTracer();
+        PartitionedTracer partitioned = tracer.partition(3);
+        assertEquals(3, partitioned.shardCount());
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                partitioned.contactTrace("Anna", 130));
+        assertEquals(Set.of("Sanni", "Matt", "Kristian", "Kenton", "Max"),
+                partitioned.contactTrace("Anna", 0));
+        assertEquals(Set.of(), partitioned.contactTrace("Max", 3400));
+        assertEquals(Set.of(), partitioned.contactTrace("Nobody", 0));
+        assertEquals(Set.of(), partitioned.contactTrace("Anna", -1));
+    }
+
+    @Test
+    public void testMatchesSingleTracer() {
+        Random random = new Random(11);
+        List<Trace> traces = Fixtures.randomTraces(random, 800, 4000, 10000);
+        ContactTracer tracer = new ContactTracer(traces);
+        // Some contacts in the buffer, repeating some in the snapshot.
+        for (int i = 0; i < 200; i++) {
+            Trace trace = i % 2 == 0 ? traces.get(i)
+                    : new Trace("P" + random.nextInt(800),
+                    "P" + random.nextInt(800), random.nextInt(10000));
+            tracer.addTrace(trace);
+        }
+        for (int shards : new int[]{1, 2, 7}) {
+            PartitionedTracer partitioned = tracer.partition(shards);
+            long contacts = 0;
+            for (int shard = 0; shard < shards; shard++) {
+                contacts += partitioned.getContactCount(shard);
+            }
+            assertTrue(contacts > 0);
+            for (int i = 0; i < 800; i += 7) {
+                int person = tracer.getPersonId("P" + i);
+                int time = random.nextInt(10000);
+                int[] expected = tracer.contactTrace(person, time);
+                int[] actual = partitioned.contactTrace(person, time);
+                Arrays.sort(expected);
+                Arrays.sort(actual);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterTraces() {
+        ContactTracer tracer = Fixtures.specTracer();
+        PartitionedTracer partitioned = tracer.partition(2);
+        tracer.addTrace(new Trace("Max", "Fiona", 5000));
+        assertEquals(Set.of(), partitioned.contactTrace("Max", 3400));
+        assertEquals(Set.of(), partitioned.contactTrace("Fiona", 0));
+        assertEquals(Set.of("Fiona"),
+                tracer.partition(2).contactTrace("Max", 3400));
+    }
+
+    @Test
+    public void testReportsExchange() {
+        // A chain alternating between two shards, one hop per superstep.
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            traces.add(new Trace("P" + i, "P" + (i + 1), i * 100));
+        }
+        ContactTracer tracer = new ContactTracer(traces);
+        QueryMetrics metrics = tracer.enableMetrics();
+        PartitionedTracer partitioned = tracer.partition(2);
+        assertEquals(5, partitioned.contactTrace(
+                tracer.getPersonId("P0"), 0).length);
+
+        QueryStats totals =
+                metrics.getTotals(QueryMetrics.Query.CONTACT_TRACE);
+        assertEquals(6, totals.getSupersteps());
+        assertEquals(5, totals.getMessagesSent());
+        assertEquals(40, totals.getBytesSent());
+        assertEquals(6, totals.getVerticesSettled());
+        assertEquals(5, metrics.getMessagesSent());
+
+        // Everyone on one shard needs one superstep and no messages.
+        metrics.reset();
+        tracer.partition(1).contactTrace("P0", 0);
+        totals = metrics.getTotals(QueryMetrics.Query.CONTACT_TRACE);
+        assertEquals(1, totals.getSupersteps());
+        assertEquals(0, totals.getMessagesSent());
+    }
+
+    @Test
+    public void testCustomTransport() {
+        ContactTracer tracer = Fixtures.specTracer();
+        LocalTransport local = new LocalTransport(4);
+        List<Integer> batches = new ArrayList<>();
+        ShardTransport counting = new ShardTransport() {
+            @Override
+            public int shardCount() {
+                return local.shardCount();
+            }
+
+            @Override
+            public void send(int from, int to, ByteBuffer messages) {
+                assertNotEquals(from, to);
+                assertEquals(0, messages.remaining() % 8);
+                local.send(from, to, messages);
+            }
+
+            @Override
+            public int barrier() {
+                int sent = local.barrier();
+                batches.add(sent);
+                return sent;
+            }
+
+            @Override
+            public List<ByteBuffer> receive(int shard) {
+                return local.receive(shard);
+            }
+        };
+        PartitionedTracer partitioned = tracer.partition(counting);
+        assertEquals(4, partitioned.shardCount());
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                partitioned.contactTrace("Anna", 130));
+        assertEquals(0, (int) batches.get(batches.size() - 1));
+        assertTrue(batches.get(0) > 0);
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PossibleSourcesTest {
+
+    private static List<String> describe(List<InfectionSource> sources) {
+        List<String> result = new ArrayList<>();
+        for (InfectionSource source : sources) {
+            result.add(source + "/" + source.getGeneration());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSpecExample() {
+        ContactTracer tracer = Fixtures.specTracer();
+        List<InfectionSource> sources = tracer.possibleSources("Kenton", 3360);
+        assertEquals(List.of("Kristian@3300/1", "Sanni@3210/2",
+                "Matt@3180/2", "Anna@1680/3"), describe(sources));
+        assertEquals(tracer.getPersonId("Kristian"),
+                sources.get(0).getPersonId());
+        assertEquals("Kristian", sources.get(0).getPerson());
+        assertEquals(3300, sources.get(0).getLatestInfectionTime());
+
+        // Max met Kristian too late to infect Kenton, and Kenton met nobody
+        // before 3360.
+        assertEquals(describe(sources),
+                describe(tracer.possibleSources("Max", 3360)));
+        assertTrue(tracer.possibleSources("Kenton", 3359).isEmpty());
+        assertEquals(List.of("Kristian@3960/1", "Max@3300/2",
+                "Sanni@3210/2", "Matt@3180/2", "Anna@1680/3"),
+                describe(tracer.possibleSources("Kenton", 5000)));
+        assertEquals(List.of("Anna@40/1"),
+                describe(tracer.possibleSources("Sanni", 3269)));
+        assertTrue(tracer.possibleSources("Anna", 99).isEmpty());
+        assertTrue(tracer.possibleSources("Anna", -1).isEmpty());
+        assertTrue(tracer.possibleSources("Nobody", 5000).isEmpty());
+    }
+
+    @Test
+    public void testMatchesForwardTraces() {
+        Random random = new Random(24);
+        ContactTracer tracer = Fixtures.randomTracer(random, 400, 2000, 100,
+                10000);
+        for (int i = 0; i < 400; i += 37) {
+            int person = tracer.getPersonId("P" + i);
+            if (person < 0) {
+                continue;
+            }
+            int deadline = random.nextInt(10000);
+            List<InfectionSource> sources =
+                    tracer.possibleSources(person, deadline);
+            Map<Integer, Integer> latest = new HashMap<>();
+            for (int j = 0; j < sources.size(); j++) {
+                InfectionSource source = sources.get(j);
+                latest.put(source.getPersonId(),
+                        source.getLatestInfectionTime());
+                if (j > 0) {
+                    assertTrue(sources.get(j - 1).getLatestInfectionTime()
+                            >= source.getLatestInfectionTime());
+                }
+            }
+            for (int other = 0; other < 400; other++) {
+                if (other == person || tracer.getPersonName(other) == null) {
+                    continue;
+                }
+                Integer time = latest.get(other);
+                // A trace from becoming contagious 60 minutes after the
+                // latest infection time reaches the case in time, and one
+                // from a minute later doesn't.
+                int from = time == null ? 0 : time + 61;
+                assertTrue(tracer.contagiousTimes(other, from)
+                        .get(person, Integer.MAX_VALUE) > deadline + 60);
+                if (time != null) {
+                    assertTrue(tracer.contagiousTimes(other, time + 60)
+                            .get(person, Integer.MAX_VALUE) <= deadline + 60);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsMetrics() {
+        ContactTracer tracer = Fixtures.specTracer();
+        QueryMetrics metrics = tracer.enableMetrics();
+        tracer.possibleSources("Kenton", 3360);
+        QueryMetrics.Query query = QueryMetrics.Query.POSSIBLE_SOURCES;
+        assertEquals(1, metrics.getLatency(query).getCount());
+        assertEquals(5, metrics.getTotals(query).getVerticesSettled());
+        assertEquals("possibleSources", query.toString());
+    }
+}
@@ -0,0 +1,69 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class QueryExecutorTest {
+
+    @Test
+    public void testResultsInSubmissionOrder() throws InterruptedException {
+        Random random = new Random(3);
+        ContactTracer tracer = new ContactTracer(Fixtures.randomTraces(random,
+                500, 4000, 5000));
+        List<QueryExecutor.Query> queries = new ArrayList<>();
+        List<Set<String>> expected = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            String person = "P" + random.nextInt(510);
+            int time = random.nextInt(5000);
+            if (i % 2 == 0) {
+                queries.add(QueryExecutor.Query.contactTrace(person, time));
+                expected.add(tracer.contactTrace(person, time));
+            } else {
+                queries.add(QueryExecutor.Query.contactsAfter(person, time));
+                expected.add(tracer.getContactsAfter(person, time));
+            }
+        }
+
+        for (int workers : new int[]{1, 3, 8}) {
+            try (QueryExecutor executor = new QueryExecutor(tracer, workers)) {
+                assertEquals(expected, executor.run(queries));
+                // Running a second batch reuses nothing left over from the
+                // first.
+                assertEquals(expected, executor.run(queries));
+            }
+        }
+    }
+
+    @Test
+    public void testExternalExecutorService() throws InterruptedException {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Sanni", "Matt", 200));
+        tracer.addTrace(new Trace("Matt", "Kristian", 100));
+        ExecutorService service = Executors.newCachedThreadPool();
+        try (QueryExecutor executor = new QueryExecutor(tracer, service, 4)) {
+            assertEquals(List.of(Set.of("Sanni", "Matt"), Set.of("Matt"),
+                    Set.of(), Set.of()),
+                    executor.run(List.of(
+                            QueryExecutor.Query.contactTrace("Anna", 0),
+                            QueryExecutor.Query.contactsAfter("Sanni", 150),
+                            QueryExecutor.Query.contactTrace("Nobody", 0),
+                            QueryExecutor.Query.contactsAfter("Anna", -1))));
+            assertEquals(List.of(), executor.run(List.of()));
+        }
+        // The service belongs to the caller and is still usable.
+        assertFalse(service.isShutdown());
+        service.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNoWorkers() {
+        new QueryExecutor(new ContactTracer(), 0);
+    }
+}
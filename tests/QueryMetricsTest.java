@@ -0,0 +1,169 @@
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class QueryMetricsTest {
+
+    @Test
+    public void testDisabledByDefault() {
+        ContactTracer tracer = new ContactTracer(Fixtures.CHAIN_TRACES);
+        assertNull(tracer.getMetrics());
+        QueryMetrics metrics = tracer.enableMetrics();
+        assertSame(metrics, tracer.enableMetrics());
+        tracer.disableMetrics();
+        assertNull(tracer.getMetrics());
+
+        tracer.contactTrace("Anna", 0);
+        assertEquals(0, metrics.getLatency(QueryMetrics.Query.CONTACT_TRACE)
+                .getCount());
+    }
+
+    @Test
+    public void testCountsWork() {
+        ContactTracer tracer = new ContactTracer(Fixtures.CHAIN_TRACES);
+        QueryMetrics metrics = tracer.enableMetrics();
+
+        assertEquals(Set.of("Sanni", "Kristian", "Max"),
+                tracer.contactTrace("Anna", 0));
+        LatencyHistogram latency =
+                metrics.getLatency(QueryMetrics.Query.CONTACT_TRACE);
+        assertEquals(1, latency.getCount());
+        assertTrue(latency.getMaxNanos() > 0);
+        // Anna and the three people reached each have their contacts
+        // followed once. Sanni has 3 contacts, Kristian 2, Anna and Max 1.
+        QueryStats totals =
+                metrics.getTotals(QueryMetrics.Query.CONTACT_TRACE);
+        assertEquals(4, totals.getVerticesSettled());
+        assertEquals(7, totals.getEdgesScanned());
+        assertEquals(4, totals.getHeapPushes());
+        assertEquals(4, totals.getHeapPops());
+
+        // Name and ID overloads are measured once each, as the same method.
+        tracer.getContactsAfter("Sanni", 160);
+        tracer.getContactsAfter(tracer.getPersonId("Sanni"), 160);
+        assertEquals(2, metrics.getLatency(
+                QueryMetrics.Query.GET_CONTACTS_AFTER).getCount());
+        tracer.getContactTimes("Anna", "Sanni");
+        assertEquals(1, metrics.getTotals(
+                QueryMetrics.Query.GET_CONTACT_TIMES)
+                .getContactTimesExamined());
+        assertTrue(tracer.canInfect("Anna", "Max", 0));
+        assertNotNull(tracer.infectionPath("Anna", 0, "Max"));
+        assertEquals(1, metrics.getLatency(QueryMetrics.Query.CAN_INFECT)
+                .getCount());
+        assertTrue(metrics.getTotals(QueryMetrics.Query.INFECTION_PATH)
+                .getEdgesScanned() > 0);
+        assertEquals(0, metrics.getLatency(QueryMetrics.Query.GET_CONTACTS)
+                .getCount());
+        // Ranking reads every contact once, from both ends of its edge.
+        assertEquals(3, tracer.rankSpreaders(3, 0).size());
+        QueryStats ranking =
+                metrics.getTotals(QueryMetrics.Query.RANK_SPREADERS);
+        assertEquals(8, ranking.getEdgesScanned());
+        assertEquals(4, ranking.getContactTimesExamined());
+
+        metrics.reset();
+        assertEquals(0, metrics.getLatency(QueryMetrics.Query.CONTACT_TRACE)
+                .getCount());
+        assertEquals(0, metrics.getVerticesSettled());
+    }
+
+    @Test
+    public void testSlowQueryLog() {
+        ContactTracer tracer = new ContactTracer(Fixtures.CHAIN_TRACES);
+        QueryMetrics metrics = tracer.enableMetrics();
+        List<String> logged = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logged.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(QueryMetrics.class.getName());
+        logger.addHandler(handler);
+        boolean useParentHandlers = logger.getUseParentHandlers();
+        logger.setUseParentHandlers(false);
+        try {
+            tracer.contactTrace("Anna", 0);
+            assertEquals(List.of(), logged);
+
+            metrics.setSlowQueryThresholdMillis(0);
+            assertEquals(0, metrics.getSlowQueryThresholdMillis());
+            tracer.contactTrace("Anna", 0);
+            assertEquals(1, logged.size());
+            assertTrue(logged.get(0), logged.get(0)
+                    .startsWith("Slow query contactTrace(Anna, 0) took "));
+            assertTrue(logged.get(0), logged.get(0)
+                    .endsWith("4 settled, 7 edges, 4 pushes, 4 pops, "
+                            + "7 contact times"));
+            int anna = tracer.getPersonId("Anna");
+            tracer.contactTrace(new int[]{anna}, new int[]{0});
+            assertEquals(2, logged.size());
+            assertTrue(logged.get(1), logged.get(1).startsWith(
+                    "Slow query contactTrace([" + anna + "], [0]) took "));
+
+            metrics.setSlowQueryThresholdMillis(-1);
+            tracer.contactTrace("Anna", 0);
+            assertEquals(2, logged.size());
+        } finally {
+            logger.removeHandler(handler);
+            logger.setUseParentHandlers(useParentHandlers);
+        }
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        ContactTracer tracer = new ContactTracer(Fixtures.CHAIN_TRACES);
+        QueryMetrics metrics = tracer.enableMetrics();
+        ObjectName name = metrics.registerMBean();
+        assertEquals(name, metrics.registerMBean());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            tracer.contactTrace("Anna", 0);
+            assertEquals(7L, server.getAttribute(name, "EdgesScanned"));
+            server.setAttribute(name, new Attribute(
+                    "SlowQueryThresholdMillis", 250L));
+            assertEquals(250, metrics.getSlowQueryThresholdMillis());
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "EdgesScanned"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram latency = new LatencyHistogram();
+        assertEquals(0, latency.getPercentileNanos(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            latency.record(i * 1000L);
+        }
+        assertEquals(1000, latency.getCount());
+        assertEquals(500_500, latency.getMeanNanos());
+        assertEquals(1_000_000, latency.getMaxNanos());
+        assertEquals(500_000, latency.getPercentileNanos(0.5), 500_000 / 16);
+        assertEquals(990_000, latency.getPercentileNanos(0.99), 990_000 / 16);
+        assertEquals(1_000_000, latency.getPercentileNanos(1));
+        assertEquals(1000, latency.getPercentileNanos(0), 1000 / 16);
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ReachabilityIndexTest {
+
+    @Test
+    public void testSpecExample() {
+        ContactTracer tracer = new ContactTracer(Fixtures.CHAIN_TRACES);
+        ReachabilityIndex index = tracer.buildReachabilityIndex();
+        assertTrue(index.nodeCount() > 0);
+        assertTrue(index.labelCount() > 0);
+
+        assertTrue(tracer.canInfect("Anna", "Sanni", 0));
+        // Sanni is only contagious from 160, too late to meet Matt at 150.
+        assertFalse(tracer.canInfect("Anna", "Matt", 0));
+        assertTrue(tracer.canInfect("Anna", "Max", 100));
+        assertFalse(tracer.canInfect("Anna", "Sanni", 101));
+        assertTrue(tracer.canInfect("Max", "Kristian", 300));
+        assertFalse(tracer.canInfect("Max", "Anna", 0));
+        assertFalse(tracer.canInfect("Anna", "Anna", 0));
+        assertFalse(tracer.canInfect("Anna", "Nobody", 0));
+    }
+
+    @Test
+    public void testMatchesContactTrace() {
+        Random random = new Random(7);
+        ContactTracer tracer = new ContactTracer(Fixtures.randomTraces(random,
+                150, 1500, 5000));
+        tracer.buildReachabilityIndex();
+        assertMatchesContactTrace(tracer, random, 150, 5000);
+
+        // Traces added after the index was built are found by searching.
+        for (Trace trace : Fixtures.randomTraces(random, 160, 300, 5000)) {
+            tracer.addTrace(trace);
+        }
+        assertMatchesContactTrace(tracer, random, 160, 5000);
+
+        tracer.buildReachabilityIndex();
+        assertMatchesContactTrace(tracer, random, 160, 5000);
+    }
+
+    @Test
+    public void testRebuiltAfterCompactionDropsContacts() throws Exception {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Sanni", "Matt", 200));
+        tracer.buildReachabilityIndex();
+        assertTrue(tracer.canInfect("Anna", "Matt", 0));
+
+        tracer.addTrace(new Trace("Kenton", "Max", 5000));
+        tracer.compact(1000);
+        tracer.reachability().await();
+        assertSame(tracer.snapshot(), tracer.reachability().index().graph());
+        assertFalse(tracer.canInfect("Anna", "Matt", 0));
+        assertTrue(tracer.canInfect("Kenton", "Max", 5000));
+    }
+
+    private static void assertMatchesContactTrace(ContactTracer tracer,
+                                                  Random random, int people,
+                                                  int maxTime) {
+        for (int q = 0; q < 100; q++) {
+            String person = "P" + random.nextInt(people);
+            int time = random.nextInt(maxTime);
+            Set<String> reached = tracer.contactTrace(person, time);
+            for (int i = 0; i < people; i++) {
+                String other = "P" + i;
+                assertEquals(person + "@" + time + " -> " + other,
+                        reached.contains(other),
+                        tracer.canInfect(person, other, time));
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSpecExampleRoundTrip() throws IOException {
+        ContactTracer tracer = Fixtures.specTracer();
+        Path file = folder.getRoot().toPath().resolve("spec.snapshot");
+        tracer.save(file);
+
+        ContactTracer opened = ContactTracer.open(file);
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                opened.contactTrace("Anna", 130));
+        assertEquals(List.of(3360, 4020),
+                opened.getContactTimes("Kristian", "Kenton"));
+        assertEquals(Set.of("Sanni", "Matt"), opened.getContacts("Anna"));
+        assertEquals(Set.of("Kenton"),
+                opened.getContactsAfter("Kristian", 3400));
+        assertEquals(tracer.getPersonId("Max"), opened.getPersonId("Max"));
+        assertEquals(-1, opened.getPersonId("Nobody"));
+    }
+
+    @Test
+    public void testRandomRoundTrip() throws IOException {
+        Random random = new Random(7);
+        ContactTracer tracer = new ContactTracer(Fixtures.randomTraces(random,
+                3000, 5000, 5000));
+        tracer.addTrace(new Trace("P1", "Late", 9000));
+        Path file = folder.getRoot().toPath().resolve("random.snapshot");
+        tracer.save(file);
+
+        ContactTracer opened = ContactTracer.open(file);
+        for (int i = 0; i < 3000; i += 7) {
+            String person = "P" + i;
+            assertEquals(tracer.getPersonId(person),
+                    opened.getPersonId(person));
+            assertEquals(tracer.getContacts(person),
+                    opened.getContacts(person));
+            assertEquals(tracer.getContactTimes(person, "P" + (i + 1)),
+                    opened.getContactTimes(person, "P" + (i + 1)));
+            assertEquals(tracer.getContactsAfter(person, 2500),
+                    opened.getContactsAfter(person, 2500));
+            assertEquals(tracer.contactTrace(person, i),
+                    opened.contactTrace(person, i));
+        }
+    }
+
+    @Test
+    public void testAddTracesAfterOpen() throws IOException {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Sanni", "Matt", 500));
+        Path file = folder.getRoot().toPath().resolve("added.snapshot");
+        tracer.save(file);
+
+        ContactTracer opened = ContactTracer.open(file);
+        opened.addTrace(new Trace("Sanni", "Anna", 200));
+        opened.addTrace(new Trace("Anna", "Sanni", 100));
+        opened.addTrace(new Trace("Matt", "Kristian", 600));
+
+        assertEquals(3, opened.getPersonId("Kristian"));
+        assertEquals("Kristian", opened.getPersonName(3));
+        assertEquals("Matt", opened.getPersonName(2));
+        assertEquals(List.of(100, 200),
+                opened.getContactTimes("Anna", "Sanni"));
+        assertEquals(Set.of("Sanni", "Kristian"), opened.getContacts("Matt"));
+        assertEquals(Set.of("Sanni", "Matt", "Kristian"),
+                opened.contactTrace("Anna", 0));
+
+        // The file itself is unchanged.
+        ContactTracer reopened = ContactTracer.open(file);
+        assertEquals(-1, reopened.getPersonId("Kristian"));
+        assertEquals(List.of(100), reopened.getContactTimes("Anna", "Sanni"));
+    }
+
+    @Test
+    public void testEmptyRoundTrip() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("empty.snapshot");
+        new ContactTracer().save(file);
+
+        ContactTracer opened = ContactTracer.open(file);
+        assertEquals(Set.of(), opened.getContacts("Anna"));
+        opened.addTrace(new Trace("Anna", "Sanni", 100));
+        assertEquals(Set.of("Sanni"), opened.contactTrace("Anna", 0));
+    }
+
+    @Test
+    public void testRejectsInvalidFiles() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("bad.snapshot");
+        new ContactTracer(List.of(new Trace("Anna", "Sanni", 100))).save(file);
+        byte[] valid = Files.readAllBytes(file);
+
+        byte[] magic = valid.clone();
+        magic[0] = 'X';
+        assertOpenFails(file, magic);
+
+        byte[] version = valid.clone();
+        version[7] = 9;
+        assertOpenFails(file, version);
+
+        byte[] header = valid.clone();
+        header[20] ^= 1;
+        assertOpenFails(file, header);
+
+        assertOpenFails(file, Arrays.copyOf(valid,
+                valid.length - 1));
+    }
+
+    @Test
+    public void testCorruptAdjacencyDetectedOnRead() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("corrupt.snapshot");
+        new ContactTracer(List.of(
+                new Trace("Anna", "Sanni", 100),
+                new Trace("Matt", "Kristian", 200)
+        )).save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        // First directory entry: the adjacency block of Anna.
+        long block = data.getLong((int) data.getLong(48));
+        bytes[(int) block + 11] ^= 1;
+        Files.write(file, bytes);
+
+        ContactTracer opened = ContactTracer.open(file);
+        assertEquals(Set.of("Kristian"), opened.getContacts("Matt"));
+        try {
+            opened.getContacts("Anna");
+            fail("corrupt adjacency should be detected");
+        } catch (UncheckedIOException expected) {
+            // Expected.
+        }
+    }
+
+    private static void assertOpenFails(Path file, byte[] contents)
+            throws IOException {
+        Files.write(file, contents);
+        try {
+            ContactTracer.open(file);
+            fail("invalid snapshot should be rejected");
+        } catch (IOException expected) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpreaderRankingTest {
+
+    @Test
+    public void testSpecExample() {
+        ContactTracer tracer = Fixtures.specTracer();
+        // Sets this small are counted exactly by a sketch this large.
+        List<Spreader> ranking = tracer.rankSpreaders(10, 0, 12);
+        assertEquals(6, ranking.size());
+        for (Spreader spreader : ranking) {
+            int exact = tracer.contactTrace(spreader.getPerson(), 0).size();
+            assertEquals(spreader.toString(), exact, spreader.getEstimate());
+            assertTrue(spreader.getLowerBound() <= exact);
+            assertTrue(spreader.getUpperBound() >= exact);
+        }
+        // Anna and Sanni both reach everyone, ranked by ID.
+        assertEquals("Anna", ranking.get(0).getPerson());
+        assertEquals(5, ranking.get(0).getEstimate());
+
+        // From 130, Anna's contact with Sanni is missed.
+        ranking = tracer.rankSpreaders(1, 130, 12);
+        assertEquals(1, ranking.size());
+        assertEquals(tracer.contactTrace(ranking.get(0).getPerson(), 130)
+                .size(), ranking.get(0).getEstimate());
+        assertEquals(List.of(), tracer.rankSpreaders(0, 0));
+    }
+
+    @Test
+    public void testHonoursContagionDelay() {
+        ContactTracer tracer = new ContactTracer(List.of(
+                new Trace("A", "B", 100),
+                new Trace("B", "C", 130),
+                new Trace("C", "D", 200),
+                new Trace("D", "E", 259),
+                new Trace("D", "F", 260)
+        ));
+        // B isn't contagious until 160, so A reaches only B. C reaches D,
+        // who is contagious from 260 and so reaches F but not E.
+        List<Spreader> ranking = tracer.rankSpreaders(6, 0, 12);
+        for (Spreader spreader : ranking) {
+            assertEquals(spreader.toString(), tracer.contactTrace(
+                    spreader.getPerson(), 0).size(), spreader.getEstimate());
+        }
+        assertEquals(1, estimateOf(ranking, "A"));
+        assertEquals(3, estimateOf(ranking, "C"));
+    }
+
+    @Test
+    public void testMatchesExactCounts() {
+        ContactTracer tracer = Fixtures.randomTracer(new Random(3),
+                300, 3000, 150, 20000);
+        int from = 5000;
+        List<Spreader> ranking = tracer.rankSpreaders(300, from, 14);
+        assertEquals(300, ranking.size());
+        for (Spreader spreader : ranking) {
+            int exact = tracer.contactTrace(spreader.getPerson(), from)
+                    .size();
+            assertTrue(spreader + " vs " + exact,
+                    spreader.getLowerBound() <= exact
+                            && exact <= spreader.getUpperBound());
+            assertEquals(exact, spreader.getEstimate(), 0.02 * exact + 2);
+        }
+        for (int i = 1; i < ranking.size(); i++) {
+            assertTrue(ranking.get(i - 1).getEstimate()
+                    >= ranking.get(i).getEstimate());
+        }
+    }
+
+    @Test
+    public void testDefaultPrecisionBounds() {
+        ContactTracer tracer = Fixtures.randomTracer(new Random(8),
+                2000, 12000, 600, 20000);
+        List<Spreader> ranking = tracer.rankSpreaders(200, 0);
+        assertEquals(200, ranking.size());
+        int within = 0;
+        int best = 0;
+        for (Spreader spreader : ranking) {
+            int exact = tracer.contactTrace(spreader.getPerson(), 0).size();
+            if (spreader.getLowerBound() <= exact
+                    && exact <= spreader.getUpperBound()) {
+                within++;
+            }
+            best = Math.max(best, exact);
+        }
+        assertTrue(within + " of 200 within bounds", within >= 180);
+        // The people ranked highest reach about as many as anyone.
+        int exactFirst = tracer.contactTrace(ranking.get(0).getPerson(), 0)
+                .size();
+        assertTrue(exactFirst >= 0.8 * best);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecisionOutOfRange() {
+        Fixtures.specTracer().rankSpreaders(1, 0, 17);
+    }
+
+    private static long estimateOf(List<Spreader> ranking, String person) {
+        for (Spreader spreader : ranking) {
+            if (spreader.getPerson().equals(person)) {
+                return spreader.getEstimate();
+            }
+        }
+        fail(person + " not ranked");
+        return -1;
+    }
+}
@@ -0,0 +1,93 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class StandingTracesTest {
+
+    @Test
+    public void testNewlyAtRiskCallbacks() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Matt", "Kristian", 400));
+        List<Set<String>> notified = new ArrayList<>();
+        try (StandingTraces standing = new StandingTraces(tracer)) {
+            StandingTraces.Watch watch = standing.watch("Anna", 0,
+                    (w, people) -> notified.add(people));
+            assertEquals(Set.of("Sanni"), watch.getAtRisk());
+
+            // Sanni is contagious from 160, and Matt passes it to Kristian.
+            tracer.addTrace(new Trace("Sanni", "Matt", 300));
+            assertEquals(List.of(Set.of("Matt", "Kristian")), notified);
+
+            // Too early for Sanni to pass on.
+            tracer.addTrace(new Trace("Sanni", "Max", 150));
+            // Already at risk.
+            tracer.addTrace(new Trace("Anna", "Matt", 200));
+            assertEquals(1, notified.size());
+            assertEquals(Set.of("Sanni", "Matt", "Kristian"),
+                    watch.getAtRisk());
+
+            // Matt is now contagious from 260 instead of 360, early enough
+            // to reach Kenton.
+            tracer.addTrace(new Trace("Matt", "Kenton", 300));
+            assertEquals(Set.of("Kenton"), notified.get(1));
+
+            watch.cancel();
+            tracer.addTrace(new Trace("Kenton", "Ben", 1000));
+            assertEquals(2, notified.size());
+        }
+    }
+
+    @Test
+    public void testIndexCaseNotYetSeen() {
+        ContactTracer tracer = new ContactTracer();
+        List<Set<String>> notified = new ArrayList<>();
+        try (StandingTraces standing = new StandingTraces(tracer)) {
+            StandingTraces.Watch watch = standing.watch("Anna", 50,
+                    (w, people) -> notified.add(people));
+            assertEquals(Set.of(), watch.getAtRisk());
+            tracer.addTrace(new Trace("Sanni", "Matt", 300));
+            tracer.addTrace(new Trace("Anna", "Sanni", 100));
+            assertEquals(List.of(Set.of("Sanni", "Matt")), notified);
+        }
+    }
+
+    @Test
+    public void testMatchesFullTraceUnderIngest() {
+        Random random = new Random(21);
+        ContactTracer tracer = new ContactTracer();
+        for (int i = 0; i < 200; i++) {
+            tracer.addTrace(new Trace("P" + random.nextInt(150),
+                    "P" + random.nextInt(150), random.nextInt(10000)));
+        }
+        try (StandingTraces standing = new StandingTraces(tracer)) {
+            List<StandingTraces.Watch> watches = new ArrayList<>();
+            List<Set<String>> notified = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                int index = i;
+                notified.add(new HashSet<>());
+                watches.add(standing.watch("P" + i * 7, i * 800,
+                        (w, people) -> notified.get(index).addAll(people)));
+                notified.get(i).addAll(watches.get(i).getAtRisk());
+            }
+            for (int i = 0; i < 1500; i++) {
+                tracer.addTrace(new Trace("P" + random.nextInt(160),
+                        "P" + random.nextInt(160), random.nextInt(10000)));
+                if (i % 50 == 0) {
+                    for (int w = 0; w < watches.size(); w++) {
+                        Set<String> expected = tracer.contactTrace("P" + w * 7,
+                                w * 800);
+                        assertEquals(expected, watches.get(w).getAtRisk());
+                        assertEquals(expected, notified.get(w));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TraceCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        ContactTracer tracer = new ContactTracer(List.of(
+                new Trace("Anna", "Sanni", 100),
+                new Trace("Sanni", "Matt", 200)
+        ));
+        try (TraceCache cache = new TraceCache(tracer, 100)) {
+            assertEquals(Set.of("Sanni", "Matt"),
+                    cache.contactTrace("Anna", 0));
+            assertEquals(Set.of("Sanni", "Matt"),
+                    cache.contactTrace("Anna", 0));
+            assertEquals(Set.of("Matt"), cache.contactTrace("Sanni", 150));
+            assertEquals(Set.of(), cache.contactTrace("Nobody", 0));
+            assertEquals(1, cache.hitCount());
+            assertEquals(2, cache.missCount());
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void testAddTraceInvalidatesOnlyAffectedResults() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Matt", "Kristian", 100));
+        tracer.addTrace(new Trace("Kenton", "Max", 500));
+        try (TraceCache cache = new TraceCache(tracer, 100)) {
+            cache.contactTrace("Anna", 0);
+            cache.contactTrace("Matt", 0);
+            cache.contactTrace("Kenton", 0);
+
+            // Sanni is contagious from 160, so meeting Max at 300 matters.
+            tracer.addTrace(new Trace("Sanni", "Max", 300));
+            assertEquals(1, cache.invalidationCount());
+            assertEquals(2, cache.size());
+            assertEquals(Set.of("Sanni", "Max", "Kenton"),
+                    cache.contactTrace("Anna", 0));
+
+            // Kristian is only contagious from 160, too late to pass this on,
+            // but Kenton's own trace changes.
+            tracer.addTrace(new Trace("Kristian", "Kenton", 150));
+            assertEquals(2, cache.invalidationCount());
+            assertEquals(Set.of("Kristian"), cache.contactTrace("Matt", 0));
+            assertEquals(1, cache.hitCount());
+
+            // Repeating a stored contact changes nothing.
+            tracer.addTrace(new Trace("Sanni", "Max", 300));
+            assertEquals(2, cache.invalidationCount());
+            assertEquals(4, cache.missCount());
+        }
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ContactTracer tracer = new ContactTracer();
+        for (int i = 0; i < 10; i++) {
+            tracer.addTrace(new Trace("P" + i, "Q" + i, 100));
+        }
+        // Each result holds two people: the source and their contact.
+        try (TraceCache cache = new TraceCache(tracer, 6)) {
+            cache.contactTrace("P0", 0);
+            cache.contactTrace("P1", 0);
+            cache.contactTrace("P2", 0);
+            cache.contactTrace("P0", 0);
+            cache.contactTrace("P3", 0);
+            assertEquals(1, cache.evictionCount());
+            assertEquals(3, cache.size());
+            long misses = cache.missCount();
+            cache.contactTrace("P0", 0);
+            assertEquals(misses, cache.missCount());
+            cache.contactTrace("P1", 0);
+            assertEquals(misses + 1, cache.missCount());
+        }
+    }
+
+    @Test
+    public void testCompactionDropsEarlierTraces() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 500));
+        try (TraceCache cache = new TraceCache(tracer, 100)) {
+            assertEquals(Set.of("Sanni", "Matt"),
+                    cache.contactTrace("Anna", 0));
+            assertEquals(Set.of("Matt"), cache.contactTrace("Anna", 400));
+            tracer.compact(300);
+            assertEquals(1, cache.invalidationCount());
+            assertEquals(Set.of("Matt"), cache.contactTrace("Anna", 0));
+            assertEquals(Set.of("Matt"), cache.contactTrace("Anna", 400));
+            assertEquals(1, cache.hitCount());
+        }
+    }
+
+    @Test
+    public void testMatchesTracerUnderIngest() {
+        Random random = new Random(9);
+        ContactTracer tracer = new ContactTracer();
+        List<int[]> queries = new ArrayList<>();
+        try (TraceCache cache = new TraceCache(tracer, 5000)) {
+            for (int i = 0; i < 1500; i++) {
+                tracer.addTrace(new Trace("P" + random.nextInt(200),
+                        "P" + random.nextInt(200), random.nextInt(10000)));
+                if (i % 10 == 0) {
+                    queries.add(new int[]{random.nextInt(200),
+                            random.nextInt(10000)});
+                }
+                for (int q = Math.max(0, queries.size() - 10);
+                     q < queries.size(); q++) {
+                    String person = "P" + queries.get(q)[0];
+                    int time = queries.get(q)[1];
+                    assertEquals(tracer.contactTrace(person, time),
+                            cache.contactTrace(person, time));
+                }
+            }
+            assertTrue(cache.hitCount() > 0);
+            assertTrue(cache.invalidationCount() > 0);
+        }
+    }
+}
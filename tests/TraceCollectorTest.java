@@ -0,0 +1,117 @@
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TraceCollectorTest {
+
+    @Test
+    public void testReportsInfectionTimesInOrder() {
+        ContactTracer tracer = Fixtures.specTracer();
+        List<String> people = new ArrayList<>();
+        List<Integer> times = new ArrayList<>();
+        int reached = tracer.contactTrace(tracer.getPersonId("Anna"), 130,
+                (person, infectionTime) -> {
+                    people.add(tracer.getPersonName(person));
+                    times.add(infectionTime);
+                });
+        assertEquals(4, reached);
+        assertEquals(List.of("Matt", "Kristian", "Kenton", "Max"), people);
+        assertEquals(List.of(1740, 3240, 3360, 3360), times);
+
+        assertEquals(0, tracer.contactTrace(-1, 0, (person, time) -> fail()));
+        assertEquals(0, tracer.contactTrace(tracer.getPersonId("Anna"), -1,
+                (person, time) -> fail()));
+    }
+
+    @Test
+    public void testMatchesMapEngine() {
+        Random random = new Random(5);
+        ContactTracer tracer = Fixtures.randomTracer(random, 800, 4000, 100,
+                10000);
+        // The same thread's working state is reused by every trace.
+        for (int i = 0; i < 800; i += 3) {
+            int person = tracer.getPersonId("P" + i);
+            int time = random.nextInt(10000);
+            IntIntMap expected = tracer.contagiousTimes(person, time);
+            expected.remove(person);
+            int[] actual = tracer.contactTrace(person, time);
+            int[] expectedIds = expected.keys();
+            Arrays.sort(expectedIds);
+            Arrays.sort(actual);
+            assertArrayEquals(expectedIds, actual);
+
+            Map<Integer, Integer> collected = new HashMap<>();
+            int[] last = {Integer.MIN_VALUE};
+            tracer.contactTrace(person, time, (other, infectionTime) -> {
+                assertTrue(infectionTime >= last[0]);
+                last[0] = infectionTime;
+                assertNull(collected.put(other, infectionTime));
+                assertEquals(expected.get(other, -1) - 60, infectionTime);
+            });
+            assertEquals(expected.size(), collected.size());
+        }
+    }
+
+    @Test
+    public void testCollectorMayStartAnotherTrace() {
+        ContactTracer tracer = Fixtures.specTracer();
+        int anna = tracer.getPersonId("Anna");
+        List<Integer> nested = new ArrayList<>();
+        int reached = tracer.contactTrace(anna, 0, (person, infectionTime) ->
+                nested.add(tracer.contactTrace(person, infectionTime + 60)
+                        .length));
+        assertEquals(5, reached);
+        assertEquals(5, nested.size());
+        assertEquals(Set.of("Sanni", "Matt", "Kristian", "Kenton", "Max"),
+                tracer.contactTrace("Anna", 0));
+    }
+
+    @Test
+    public void testHighIds() {
+        ContactTracer tracer = new ContactTracer();
+        for (int i = 0; i < 20000; i++) {
+            tracer.addTrace(new Trace("P" + i, "P" + (i + 1), i * 100));
+        }
+        // The chain from P10 onwards, and P9, met just before P10 became
+        // contagious.
+        int[] reached = {0};
+        assertEquals(19991, tracer.contactTrace(tracer.getPersonId("P10"),
+                900, (person, infectionTime) -> reached[0]++));
+        assertEquals(19991, reached[0]);
+        assertEquals(19991, tracer.contactTrace(tracer.getPersonId("P10"),
+                900).length);
+    }
+
+    @Test
+    public void testSteadyStateAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)
+                        ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Random random = new Random(3);
+        ContactTracer tracer = new ContactTracer(Fixtures.randomTraces(random,
+                2000, 20000, 100000));
+        long[] total = {0};
+        TraceCollector collector = (person, infectionTime) ->
+                total[0] += infectionTime;
+        for (int i = 0; i < 2000; i++) {
+            tracer.contactTrace(i, 0, collector);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 2000; i++) {
+            tracer.contactTrace(i, i * 10, collector);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // Allow for the measurement itself, but not a byte per trace.
+        assertTrue(allocated + " bytes", allocated < 1000);
+    }
+}
@@ -0,0 +1,196 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TraceLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCsvSpecExample() throws IOException {
+        Path file = writeCsv("person1,person2,time\n"
+                + "Anna,Sanni,100\n"
+                + "Anna,Matt,1740\n"
+                + "Matt,Kristian,3240\r\n"
+                + "Kristian,Sanni,3270\n"
+                + "Kristian,Kenton,3360\n"
+                + "Kristian,Max,3360\n"
+                + "Kenton,Kristian,4020");
+
+        ContactTracer tracer = new ContactTracer();
+        assertEquals(7, new TraceLoader(tracer).loadCsv(file));
+
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                tracer.contactTrace("Anna", 130));
+        assertEquals(List.of(3360, 4020),
+                tracer.getContactTimes("Kristian", "Kenton"));
+        assertEquals(Set.of("Sanni", "Matt"), tracer.getContacts("Anna"));
+    }
+
+    @Test
+    public void testCsvSkipsInvalidRows() throws IOException {
+        Path file = writeCsv("Anna,Sanni,100\n"
+                + "Anna,Anna,200\n"
+                + "Anna,Matt,-5\n"
+                + "Anna,Matt\n"
+                + "\n"
+                + "Anna,Kristian,12x\n"
+                + "Sanni,Matt,300\n");
+
+        ContactTracer tracer = new ContactTracer();
+        assertEquals(2, new TraceLoader(tracer).loadCsv(file));
+
+        assertEquals(Set.of("Sanni"), tracer.getContacts("Anna"));
+        assertEquals(Set.of("Anna", "Matt"), tracer.getContacts("Sanni"));
+        assertEquals(-1, tracer.getPersonId("Kristian"));
+    }
+
+    @Test
+    public void testCsvTrimsNames() throws IOException {
+        Path file = writeCsv("alice ,bob,10\n"
+                + " alice, bob ,20\n"
+                + "alice,bob, 20\n"
+                + "alice, alice ,30\n");
+
+        ContactTracer tracer = new ContactTracer();
+        // The third row repeats the second, so only two are added.
+        assertEquals(2, new TraceLoader(tracer).loadCsv(file));
+
+        assertEquals(List.of(10, 20), tracer.getContactTimes("alice", "bob"));
+        assertEquals(-1, tracer.getPersonId("alice "));
+        assertEquals(-1, tracer.getPersonId(" bob "));
+    }
+
+    @Test
+    public void testSkipsRowsOutsideRetention() throws IOException,
+            InterruptedException {
+        ContactTracer tracer = new ContactTracer();
+        tracer.setRetention(1000);
+        for (int i = 0; i < Compactor.MIN_BATCH; i++) {
+            tracer.addTrace(new Trace("P" + i % 100, "P" + (i + 1) % 100,
+                    i));
+        }
+        tracer.compactor().await();
+        int cutoff = tracer.compactor().cutoff();
+        assertTrue(cutoff > 0);
+
+        Path csv = writeCsv("Old,Older," + (cutoff - 1) + "\n"
+                + "Anna,Sanni," + cutoff + "\n");
+        assertEquals(1, new TraceLoader(tracer).loadCsv(csv));
+        Path binary = folder.newFile("traces.bin").toPath();
+        TraceLoader.writeBinary(binary, List.of(
+                new Trace("Elder", "Eldest", cutoff - 1),
+                new Trace("Anna", "Matt", cutoff)));
+        assertEquals(1, new TraceLoader(tracer).loadBinary(binary));
+
+        // Rows outside the window never reach the name table.
+        for (String name : List.of("Old", "Older", "Elder", "Eldest")) {
+            assertEquals(-1, tracer.getPersonId(name));
+        }
+        assertEquals(Set.of("Sanni", "Matt"), tracer.getContacts("Anna"));
+    }
+
+    @Test
+    public void testCsvAcrossWindows() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        ContactTracer expected = new ContactTracer();
+        for (int i = 0; i < 500; i++) {
+            Trace trace = new Trace("Person" + (i % 37), "Person" + (i % 11),
+                    i * 7);
+            expected.addTrace(trace);
+            csv.append(trace.getPerson1()).append(',')
+                    .append(trace.getPerson2()).append(',')
+                    .append(trace.getTime()).append('\n');
+        }
+        Path file = writeCsv(csv.toString());
+
+        ContactTracer tracer = new ContactTracer();
+        new TraceLoader(tracer, 64).loadCsv(file);
+
+        for (int i = 0; i < 37; i++) {
+            assertEquals(expected.getContacts("Person" + i),
+                    tracer.getContacts("Person" + i));
+            assertEquals(expected.contactTrace("Person" + i, i * 10),
+                    tracer.contactTrace("Person" + i, i * 10));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvLineLongerThanWindow() throws IOException {
+        Path file = writeCsv("Anna,Sanni,100\nAnnabelle,Sannikka,100\n");
+        new TraceLoader(new ContactTracer(), 16).loadCsv(file);
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        Path file = folder.newFile("traces.bin").toPath();
+        TraceLoader.writeBinary(file, Fixtures.SPEC_TRACES);
+
+        ContactTracer tracer = new ContactTracer();
+        assertEquals(7, new TraceLoader(tracer, 40).loadBinary(file));
+
+        assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"),
+                tracer.contactTrace("Anna", 130));
+        assertEquals(List.of(3360, 4020),
+                tracer.getContactTimes("Kenton", "Kristian"));
+    }
+
+    @Test
+    public void testBinaryNonAsciiNames() throws IOException {
+        Path file = folder.newFile("traces.bin").toPath();
+        TraceLoader.writeBinary(file, List.of(
+                new Trace("Zo\u00eb", "Bj\u00f6rn", 10),
+                new Trace("Bj\u00f6rn", "Zo\u00eb", 20)));
+
+        ContactTracer tracer = new ContactTracer();
+        new TraceLoader(tracer).loadBinary(file);
+
+        assertEquals(List.of(10, 20),
+                tracer.getContactTimes("Zo\u00eb", "Bj\u00f6rn"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBinaryBadMagic() throws IOException {
+        new TraceLoader(new ContactTracer()).loadBinary(
+                writeCsv("Anna,Sanni,100\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBinaryTruncated() throws IOException {
+        Path file = folder.newFile("traces.bin").toPath();
+        TraceLoader.writeBinary(file, Fixtures.SPEC_TRACES);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+
+        new TraceLoader(new ContactTracer()).loadBinary(file);
+    }
+
+    @Test
+    public void testLoadIntoPopulatedTracer() throws IOException {
+        ContactTracer tracer = new ContactTracer(Fixtures.SPEC_TRACES);
+        Path file = writeCsv("Max,Ben,4000\nMax,Ben,1000\nAnna,Sanni,100\n");
+
+        new TraceLoader(tracer).loadCsv(file);
+
+        assertEquals(Set.of("Ben", "Kristian"), tracer.getContacts("Max"));
+        assertEquals(List.of(1000, 4000), tracer.getContactTimes("Ben", "Max"));
+        assertEquals(List.of(100), tracer.getContactTimes("Anna", "Sanni"));
+    }
+
+    private Path writeCsv(String contents) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
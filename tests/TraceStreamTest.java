@@ -0,0 +1,124 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class TraceStreamTest {
+
+    @Test
+    public void testStreamsInOrder() {
+        ContactTracer tracer = Fixtures.specTracer();
+        List<Infection> infections = tracer.contactTraceStream("Anna", 130)
+                .collect(Collectors.toList());
+        assertEquals(4, infections.size());
+        assertEquals("Matt", infections.get(0).getPerson());
+        assertEquals(tracer.getPersonId("Matt"),
+                infections.get(0).getPersonId());
+        assertEquals("Kristian", infections.get(1).getPerson());
+        assertEquals(Set.of("Kenton", "Max"), Set.of(
+                infections.get(2).getPerson(), infections.get(3).getPerson()));
+        List<Integer> times = new ArrayList<>();
+        for (Infection infection : infections) {
+            times.add(infection.getInfectionTime());
+        }
+        assertEquals(List.of(1740, 3240, 3360, 3360), times);
+
+        assertEquals(0, tracer.contactTraceStream("Nobody", 0).count());
+        assertEquals(0, tracer.contactTraceStream("Anna", -1).count());
+        assertEquals(0, tracer.contactTraceStream(-1, 0).count());
+    }
+
+    @Test
+    public void testMatchesEagerTrace() {
+        Random random = new Random(9);
+        ContactTracer tracer = Fixtures.randomTracer(random, 800, 4000, 100,
+                10000);
+        for (int i = 0; i < 800; i += 9) {
+            int person = tracer.getPersonId("P" + i);
+            int time = random.nextInt(10000);
+            IntIntMap expected = tracer.contagiousTimes(person, time);
+            List<Infection> streamed = tracer.contactTraceStream(person, time)
+                    .collect(Collectors.toList());
+            int[] ids = new int[streamed.size()];
+            for (int j = 0; j < ids.length; j++) {
+                Infection infection = streamed.get(j);
+                ids[j] = infection.getPersonId();
+                assertEquals(expected.get(ids[j], -1) - 60,
+                        infection.getInfectionTime());
+                if (j > 0) {
+                    assertTrue(streamed.get(j - 1).getInfectionTime()
+                            <= infection.getInfectionTime());
+                }
+            }
+            int[] eager = tracer.contactTrace(person, time);
+            Arrays.sort(ids);
+            Arrays.sort(eager);
+            assertArrayEquals(eager, ids);
+        }
+    }
+
+    @Test
+    public void testStopsWhenConsumerStops() {
+        // A chain of 10000 people, each infecting the next.
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            traces.add(new Trace("P" + i, "P" + (i + 1), i * 100));
+        }
+        ContactTracer tracer = new ContactTracer(traces);
+        QueryMetrics metrics = tracer.enableMetrics();
+
+        try (Stream<Infection> stream = tracer.contactTraceStream("P0", 0)) {
+            assertEquals(List.of("P1", "P2", "P3"), stream.limit(3)
+                    .map(Infection::getPerson).collect(Collectors.toList()));
+        }
+        QueryStats totals = metrics.getTotals(
+                QueryMetrics.Query.CONTACT_TRACE_STREAM);
+        assertEquals(1, metrics.getLatency(
+                QueryMetrics.Query.CONTACT_TRACE_STREAM).getCount());
+        // Partial traces stay out of the full traces' latencies.
+        assertEquals(0, metrics.getLatency(QueryMetrics.Query.CONTACT_TRACE)
+                .getCount());
+        // The source and the three people pulled are settled, and only the
+        // contacts of the source and the first two are followed.
+        assertEquals(4, totals.getVerticesSettled());
+        assertEquals(5, totals.getEdgesScanned());
+
+        // Closing twice, or after exhausting the stream, records it once.
+        metrics.reset();
+        // P9990 reaches the ten after them, and P9989 back along their
+        // shared contact.
+        Stream<Infection> stream = tracer.contactTraceStream("P9990", 0);
+        assertEquals(11, stream.count());
+        stream.close();
+        assertEquals(1, metrics.getLatency(
+                QueryMetrics.Query.CONTACT_TRACE_STREAM).getCount());
+    }
+
+    @Test
+    public void testIteratorIsLazy() {
+        ContactTracer tracer = Fixtures.specTracer();
+        Iterator<Infection> iterator =
+                tracer.contactTraceStream("Anna", 0).iterator();
+        assertTrue(iterator.hasNext());
+        Infection first = iterator.next();
+        assertEquals("Sanni", first.getPerson());
+        assertEquals(100, first.getInfectionTime());
+        assertEquals("Sanni@100", first.toString());
+        // Traces added afterwards may be seen by the rest of the stream.
+        tracer.addTrace(new Trace("Max", "Fiona", 5000));
+        int rest = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            rest++;
+        }
+        assertTrue(rest == 4 || rest == 5);
+    }
+}